@@ -20,6 +20,7 @@ package com.actelion.research.datawarrior;
 
 import com.actelion.research.chem.io.CompoundTableConstants;
 import com.actelion.research.datawarrior.task.DEMacro;
+import com.actelion.research.datawarrior.task.data.UMAPModel;
 import com.actelion.research.table.model.CompoundTableExtensionHandler;
 
 import java.io.BufferedReader;
@@ -30,7 +31,13 @@ import java.util.ArrayList;
 public class DECompoundTableExtensionHandler implements CompoundTableConstants,CompoundTableExtensionHandler {
 	public static final int ID_FILE_EXPLANATION = 0;
 	public static final int ID_MACRO = 1;
-	private static final String[] SUPPORTED_NAME = { cExtensionNameFileExplanation, cExtensionNameMacroList };
+	public static final int ID_UMAP_MODEL_LIST = 2;
+
+	public static final String cExtensionNameUMAPModelList = "umapModelList";
+	private static final String cUMAPModelListStart = "<datawarrior "+cExtensionNameUMAPModelList+">";
+	private static final String cUMAPModelListEnd = "</datawarrior "+cExtensionNameUMAPModelList+">";
+
+	private static final String[] SUPPORTED_NAME = { cExtensionNameFileExplanation, cExtensionNameMacroList, cExtensionNameUMAPModelList };
 
 	@Override
 	public int getID(String name) {
@@ -52,6 +59,8 @@ public class DECompoundTableExtensionHandler implements CompoundTableConstants,C
 			writeExplanation(writer, (String)data);
 		if (name.equals(cExtensionNameMacroList))
 			writeMacroList(writer, (ArrayList<DEMacro>)data);
+		if (name.equals(cExtensionNameUMAPModelList))
+			writeUMAPModelList(writer, (ArrayList<UMAPModel>)data);
 		}
 
 	@Override
@@ -60,6 +69,8 @@ public class DECompoundTableExtensionHandler implements CompoundTableConstants,C
 			return readExplanation(reader);
 		if (name.equals(cExtensionNameMacroList))
 			return readMacroList(reader);
+		if (name.equals(cExtensionNameUMAPModelList))
+			return readUMAPModelList(reader);
 		return null;
 		}
 
@@ -151,4 +162,41 @@ public class DECompoundTableExtensionHandler implements CompoundTableConstants,C
 			}
 		return null;
 		}
+
+	private void writeUMAPModelList(BufferedWriter writer, ArrayList<UMAPModel> modelList) throws IOException {
+		writer.write(cUMAPModelListStart);
+		writer.newLine();
+
+		for (UMAPModel model:modelList)
+			model.write(writer);
+
+		writer.write(cUMAPModelListEnd);
+		writer.newLine();
+		}
+
+	private ArrayList<UMAPModel> readUMAPModelList(BufferedReader reader) {
+		ArrayList<UMAPModel> modelList = new ArrayList<>();
+		String theLine = null;
+		try {
+			while (true) {
+				theLine = reader.readLine();
+				if (theLine == null
+				 || theLine.equals(cUMAPModelListEnd)) {
+					break;
+					}
+
+				if (theLine.equals(UMAPModel.MODEL_START))
+					modelList.add(new UMAPModel(reader));
+				}
+			}
+		catch (Exception e) {
+			e.printStackTrace();
+			try {
+				while (theLine != null && !theLine.equals(cUMAPModelListEnd))
+					theLine = reader.readLine();
+				}
+			catch (IOException ioe) {}
+			}
+		return modelList.isEmpty() ? null : modelList;
+		}
 	}
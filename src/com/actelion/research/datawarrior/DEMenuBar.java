@@ -107,6 +107,8 @@ public class DEMenuBar extends JMenuBar implements ActionListener,
 	private static final String RUN_INTERNAL_MACRO = "runInternal_";
 	private static final String SHOW_NEWS = "showNews_";
 	private static final String SCALE_DPI = "scaleDPI_";
+	private static final String MAX_THREADS = "maxThreads_";
+	private static final String MAX_THREADS_ALL = "All";
 
 	private static final String DEFAULT_LIST_NAME = "Default List";
 
@@ -130,7 +132,7 @@ public class DEMenuBar extends JMenuBar implements ActionListener,
 					jMenuFileExportAll,jMenuFileExportSelected,jMenuFileExportVisible,jMenuEditPasteSpecial,jMenuDataRemoveRows,
 					jMenuDataSelfOrganizingMap,jMenuDataSetRange,jMenuDataViewLogarithmic,jMenuChemAddMoleculeDescriptor,
 					jMenuChemAddReactionDescriptor,jMenuListCreate,jMenuMacroExport,jMenuMacroCopy,jMenuMacroDelete,jMenuMacroRun,jMenuHelp,jMenuHelpNews,jMenuHelpLaF,
-					jMenuHelpDPIScaling,jMenuHelpUpdate,jMenuHelpTrustedPlugins,jMenuChemSuperpose,jMenuChem3DFragments,jMenuChemMachineLearning;
+					jMenuHelpDPIScaling,jMenuHelpMaxThreads,jMenuHelpUpdate,jMenuHelpTrustedPlugins,jMenuChemSuperpose,jMenuChem3DFragments,jMenuChemMachineLearning;
 
 	private JMenuItem jMenuFileNew,jMenuFileNewFromVisible,jMenuFileNewFromSelection,jMenuFileNewFromPivoting,jMenuFileNewFromReversePivoting,jMenuFileNewFromTransposition,
 					jMenuFileOpen,jMenuFileOpenMacro,jMenuFileOpenTemplate,jMenuFileOpenMDLReactions,jMenuFileMerge,
@@ -144,7 +146,7 @@ public class DEMenuBar extends JMenuBar implements ActionListener,
 					jMenuEditNewFilter,jMenuDataRemoveColumns,jMenuDataRemoveSelected,jMenuDataRemoveInvisible,
 					jMenuDataRemoveDuplicate,jMenuDataRemoveUnique,jMenuDataMergeColumns,jMenuDataMergeDuplicate,jMenuDataSplitRows,
 					jMenuDataAddEmptyColumns,jMenuDataAddEmptyRows,jMenuDataAddRowNumbers,jMenuDataAddCalculatedValues,
-					jMenuDataAddBinnedColumn,jMenuDataAddFuzzyScore,jMenuDataAddPrincipalComponents,jMenuDataCreateTSNE,jMenuDataCreateUMAP,
+					jMenuDataAddBinnedColumn,jMenuDataAddFuzzyScore,jMenuDataAddPrincipalComponents,jMenuDataCreateTSNE,jMenuDataCreateUMAP,jMenuDataAddRowsToUMAP,
 					jMenuDataSOMCreate,jMenuDataSOMApply,jMenuDataSOMAnalyse, jMenuChemPredictMissingValues, jMenuChemAssessPredictionQuality,
 					jMenuDataGiniScore,jMenuDataArrangeGraph,jMenuDataCorrelationMatrix,
 					jMenuChemExtractReactants,jMenuChemExtractCatalysts,jMenuChemExtractProducts,jMenuChemExtractTransformation,
@@ -783,6 +785,7 @@ public class DEMenuBar extends JMenuBar implements ActionListener,
 		jMenuDataAddPrincipalComponents = new JMenuItem();
 		jMenuDataCreateTSNE = new JMenuItem();
 		jMenuDataCreateUMAP = new JMenuItem();
+		jMenuDataAddRowsToUMAP = new JMenuItem();
 		jMenuDataSelfOrganizingMap = new JMenu();
 		jMenuDataSOMCreate = new JMenuItem();
 		jMenuDataSOMApply = new JMenuItem();
@@ -830,6 +833,8 @@ public class DEMenuBar extends JMenuBar implements ActionListener,
 		jMenuDataCreateTSNE.addActionListener(this);
 		jMenuDataCreateUMAP.setText("Create UMAP Visualization...");
 		jMenuDataCreateUMAP.addActionListener(this);
+		jMenuDataAddRowsToUMAP.setText("Add New Rows To UMAP Visualization");
+		jMenuDataAddRowsToUMAP.addActionListener(this);
 		jMenuDataSelfOrganizingMap.setText("Self Organizing Map");
 		jMenuDataSOMCreate.setText("Create...");
 		jMenuDataSOMCreate.addActionListener(this);
@@ -870,6 +875,7 @@ public class DEMenuBar extends JMenuBar implements ActionListener,
 		jMenuData.add(jMenuDataAddPrincipalComponents);
 		jMenuData.add(jMenuDataCreateTSNE);
 		jMenuData.add(jMenuDataCreateUMAP);
+		jMenuData.add(jMenuDataAddRowsToUMAP);
 		jMenuData.add(jMenuDataSelfOrganizingMap);
 		jMenuDataSelfOrganizingMap.add(jMenuDataSOMCreate);
 		jMenuDataSelfOrganizingMap.add(jMenuDataSOMApply);
@@ -1395,6 +1401,20 @@ public class DEMenuBar extends JMenuBar implements ActionListener,
 				}
 			}
 
+		int availableThreads = Runtime.getRuntime().availableProcessors();
+		int maxThreads = ComputeScheduler.getInstance().getMaxThreadCount();
+		jMenuHelpMaxThreads = new JMenu();
+		jMenuHelpMaxThreads.setText("Processor Cores For Calculations");
+		for (int threads=0; threads<availableThreads; threads=(threads == 0) ? 1 : 2*threads) {	// 0 stands for all
+			JCheckBoxMenuItem item = new JCheckBoxMenuItem();
+			String text = (threads == 0) ? MAX_THREADS_ALL : Integer.toString(threads);
+			item.setActionCommand(MAX_THREADS + text);
+			item.setText(text);
+			item.setSelected(maxThreads == (threads == 0 ? availableThreads : threads));
+			item.addActionListener(this);
+			jMenuHelpMaxThreads.add(item);
+			}
+
 		jMenuHelpHelp = new JMenuItem();
 		jMenuHelpShortcuts = new JMenuItem();
 		jMenuHelpAbout = new JMenuItem();
@@ -1430,6 +1450,7 @@ public class DEMenuBar extends JMenuBar implements ActionListener,
 		jMenuHelp.add(jMenuHelpLaF);
 		if (jMenuHelpDPIScaling != null)
 			jMenuHelp.add(jMenuHelpDPIScaling);
+		jMenuHelp.add(jMenuHelpMaxThreads);
 
 		addUpdateMenu(jMenuHelp);
 
@@ -1830,6 +1851,8 @@ public class DEMenuBar extends JMenuBar implements ActionListener,
 				new DETaskCreateTSNEVisualization(mParentFrame, true).defineAndRun();
 			else if (source == jMenuDataCreateUMAP)
 				new DETaskCreateUMAPVisualization(mParentFrame, true).defineAndRun();
+			else if (source == jMenuDataAddRowsToUMAP)
+				new DETaskAddRowsToUMAPVisualization(mParentFrame).defineAndRun();
 			else if (source == jMenuDataSOMCreate)
 				new DETaskCalculateSOM(mParentFrame, true).defineAndRun();
 			else if (source == jMenuDataSOMApply)
@@ -2082,6 +2105,23 @@ public class DEMenuBar extends JMenuBar implements ActionListener,
 					prefs.put(DataWarrior.PREFERENCES_KEY_DPI_SCALING, dpiFactor);
 				JOptionPane.showMessageDialog(mParentFrame, "When DataWarrior is lauched the next time, it will use\nthe new scaling factor for all user interface elements.");
 				}
+			else if (actionCommand.startsWith(MAX_THREADS)) {
+				for (int i=0; i<jMenuHelpMaxThreads.getItemCount(); i++) {
+					JCheckBoxMenuItem item = (JCheckBoxMenuItem)jMenuHelpMaxThreads.getItem(i);
+					if (item != source)
+						item.setSelected(false);
+					}
+				String maxThreads = actionCommand.substring(MAX_THREADS.length());
+				Preferences prefs = DataWarrior.getPreferences();
+				if (maxThreads.equals(MAX_THREADS_ALL)) {
+					prefs.remove(DataWarrior.PREFERENCES_KEY_MAX_THREADS);
+					ComputeScheduler.getInstance().setMaxThreadCount(0);
+					}
+				else {
+					prefs.put(DataWarrior.PREFERENCES_KEY_MAX_THREADS, maxThreads);
+					ComputeScheduler.getInstance().setMaxThreadCount(Integer.parseInt(maxThreads));
+					}
+				}
 			else if (actionCommand.startsWith(UPDATE)) {
 				for (int i=0; i<jMenuHelpUpdate.getItemCount(); i++) {
 					JCheckBoxMenuItem item = (JCheckBoxMenuItem)jMenuHelpUpdate.getItem(i);
@@ -37,6 +37,7 @@ import com.actelion.research.gui.hidpi.HiDPIHelper;
 import com.actelion.research.gui.hidpi.HiDPIIcon;
 import com.actelion.research.table.model.CompoundTableDetailHandler;
 import com.actelion.research.table.model.CompoundTableModel;
+import com.actelion.research.table.model.ComputeScheduler;
 import com.actelion.research.table.view.JVisualization;
 import com.actelion.research.util.Platform;
 
@@ -63,6 +64,7 @@ public abstract class DataWarrior implements WindowFocusListener {
 	public static final String PREFERENCES_KEY_LAST_VERSION_ERROR = "last_version_error";
 	public static final String PREFERENCES_KEY_DPI_SCALING = "dpiScaling";
 	public static final String PREFERENCES_KEY_LAF_NAME = "laf_name";
+	public static final String PREFERENCES_KEY_MAX_THREADS = "maxThreads";
 	public static final String PREFERENCES_KEY_SPAYA_SERVER = "spaya_server";
 	public static final String PREFERENCES_KEY_RECENT_FILE = "recentFile";
 	public static final int MAX_RECENT_FILE_COUNT = 24;
@@ -243,6 +245,7 @@ public abstract class DataWarrior implements WindowFocusListener {
 
 		mPluginRegistry = new PluginRegistry(this, Thread.currentThread().getContextClassLoader());
 		setInitialLookAndFeel();
+		setInitialMaxThreadCount();
 
 		mFrameList = new ArrayList<>();
 		createNewFrame(null, false);
@@ -560,6 +563,20 @@ public abstract class DataWarrior implements WindowFocusListener {
 			mFrameOnFocus = null;
 		}
 
+	/**
+	 * Limits the number of threads used for calculations, if the preferences define a limit.
+	 * A limit given as system property 'maxthreads' takes precedence.
+	 */
+	private void setInitialMaxThreadCount() {
+		String maxThreads = getPreferences().get(PREFERENCES_KEY_MAX_THREADS, "");
+		if (!maxThreads.isEmpty() && System.getProperty("maxthreads") == null) {
+			try {
+				ComputeScheduler.getInstance().setMaxThreadCount(Integer.parseInt(maxThreads));
+				}
+			catch (NumberFormatException nfe) {}
+			}
+		}
+
 	/**
 	 * Sets the look&feel, which is defined in the preferences. If the preferences don't contain
 	 * a look&feel name, then the default look&feel for this platform is chosen.
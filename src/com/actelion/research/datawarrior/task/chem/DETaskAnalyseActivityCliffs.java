@@ -28,6 +28,8 @@ import com.actelion.research.table.MarkerLabelDisplayer;
 import com.actelion.research.table.model.CompoundRecord;
 import com.actelion.research.table.model.CompoundTableEvent;
 import com.actelion.research.table.model.CompoundTableModel;
+import com.actelion.research.table.model.ComputeScheduler;
+import com.actelion.research.table.model.SimilarityGraph;
 import com.actelion.research.table.view.*;
 import com.actelion.research.table.view.chart.ChartType;
 import com.actelion.research.util.DoubleFormat;
@@ -38,9 +40,6 @@ import java.awt.*;
 import java.awt.event.ItemEvent;
 import java.awt.event.ItemListener;
 import java.util.*;
-import java.util.concurrent.CountDownLatch;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicIntegerArray;
 
@@ -75,14 +74,11 @@ public class DETaskAnalyseActivityCliffs extends ConfigurableTask implements Ite
 	private JComboBox			mComboBoxDescriptorColumn,mComboBoxActivityColumn,mComboBoxIdentifierColumn,mComboBoxGroupByColumn;
 	private JSlider				mSimilaritySlider;
 	private JCheckBox			mCheckBoxSimilarityAutomatic,mCheckBoxNewSimilarityView,mCheckBoxNewDocument;
-	private ExecutorService		mExecutor;
 	private AtomicIntegerArray  mX,mY,mDX,mDY;
 	private int[]				mNeighborCount;
 	private ArrayList<SimilarPair> mPairList;
 	private Integer[]			mSortedID;
-	private SMPWorker[]			mSMPWorker;
-	private AtomicInteger		mSMPRecordIndex,mSMPPairCount,mSMPPairIndex,mSMPMaxSali;
-	private CountDownLatch		mSMPDoneSignal;
+	private AtomicInteger		mSMPRecordIndex,mSMPPairIndex;
 
 	public DETaskAnalyseActivityCliffs(DEFrame parent, DataWarrior application) {
 		super(parent, true);
@@ -416,79 +412,40 @@ public class DETaskAnalyseActivityCliffs extends ConfigurableTask implements Ite
 		final int rowCount = mSourceTableModel.getTotalRowCount();
 		mPairList = new ArrayList<SimilarPair>();
 
-		startProgress((activityColumn == -1) ? "Calculating Similarities..." : "Calculating Activity Cliffs...", 0, (rowCount-1)/2);
-		float maxSali = 0f;
-		final AtomicIntegerArray similarityCount = new AtomicIntegerArray(100-MIN_SIMILARITY+1);
-
-		int threadCount = Runtime.getRuntime().availableProcessors();
-		mSMPRecordIndex = new AtomicInteger(rowCount);
-		mSMPPairCount = new AtomicInteger(0);
-		mSMPDoneSignal = new CountDownLatch(threadCount);
-
-		mSMPMaxSali = new AtomicInteger(Float.floatToIntBits(0.0f));
-
-		for (int i=0; i<threadCount; i++) {
-			Thread t = new Thread("SALI Similarity Calculator "+(i+1)) {
-				public void run() {
-					int row2 = mSMPRecordIndex.decrementAndGet();
-					while (row2 >= 1) {
-						CompoundRecord r2 = mSourceTableModel.getTotalRecord(row2);
-						if (r2.getData(descriptorColumn) != null) {
-							for (int row1=0; row1<row2 && !threadMustDie(); row1++) {
-								if (mSMPPairCount.incrementAndGet() % rowCount == 0)
-									updateProgress(-1);
-	
-								CompoundRecord r1 = mSourceTableModel.getTotalRecord(row1);
-								if (r1.getData(descriptorColumn) != null) {
-									float similarity = mSourceTableModel.getDescriptorSimilarity(r1, r2, descriptorColumn);
-									if (similarity >= initialSimilarityLimit-0.004999) {	// -0.005 (adapted for rounding problem) to have a complete bin
-										similarityCount.incrementAndGet((int)(100*similarity+0.5-MIN_SIMILARITY));
-
-										boolean calculateSALI = (activityColumn != -1
-												  && !Double.isNaN(r1.getDouble(activityColumn))
-												  && !Double.isNaN(r2.getDouble(activityColumn))
-												  && (groupByColumn == -1
-												   || Arrays.equals((byte[])r1.getData(groupByColumn),
-														   			(byte[])r2.getData(groupByColumn))));
-
-										if (calculateSALI) {
-											float activityDif = Math.abs(r1.getDouble(activityColumn) - r2.getDouble(activityColumn));
-											float saliValue = activityDif / (1.0f - similarity);
-											if (!Double.isInfinite(saliValue)) {
-												int maxSali = mSMPMaxSali.get();
-												while (Float.intBitsToFloat(maxSali) < saliValue) {
-													if (mSMPMaxSali.compareAndSet(maxSali, Float.floatToIntBits(saliValue)))
-														break;
-													maxSali = mSMPMaxSali.get();
-													}
-												}
-		   									synchronized(mPairList) {
-												mPairList.add(new SimilarPair(row1, row2, activityDif, similarity, saliValue));
-												}
-											}
-										else {
-											synchronized(mPairList) {
-												mPairList.add(new SimilarPair(row1, row2, Float.NaN, similarity, Float.NaN));
-												}
-											}
-										}
-									}
-								}
-							}
-
-						row2 = mSMPRecordIndex.decrementAndGet();
-						}
-					mSMPDoneSignal.countDown();
-					}
-				};
-			t.setPriority(Thread.MIN_PRIORITY);
-			t.start();
-			}
+		SimilarityGraph graph = new SimilarityGraph(mSourceTableModel, descriptorColumn, initialSimilarityLimit-0.004999f, this);	// -0.005 (adapted for rounding problem) to have a complete bin
+		if (threadMustDie())
+			return;
 
-		try {
-			mSMPDoneSignal.await();
+		startProgress((activityColumn == -1) ? "Collecting Similar Pairs..." : "Calculating Activity Cliffs...", 0, 0);
+		float maxSali = 0f;
+		final int[] similarityCount = new int[100-MIN_SIMILARITY+1];
+		mPairList.ensureCapacity(graph.getPairCount());
+		for (int pair=0; pair<graph.getPairCount(); pair++) {
+			int row1 = graph.getRow1(pair);
+			int row2 = graph.getRow2(pair);
+			float similarity = graph.getSimilarity(pair);
+			similarityCount[(int)(100*similarity+0.5-MIN_SIMILARITY)]++;
+
+			CompoundRecord r1 = mSourceTableModel.getTotalRecord(row1);
+			CompoundRecord r2 = mSourceTableModel.getTotalRecord(row2);
+			boolean calculateSALI = (activityColumn != -1
+					  && !Double.isNaN(r1.getDouble(activityColumn))
+					  && !Double.isNaN(r2.getDouble(activityColumn))
+					  && (groupByColumn == -1
+					   || Arrays.equals((byte[])r1.getData(groupByColumn),
+							   			(byte[])r2.getData(groupByColumn))));
+
+			if (calculateSALI) {
+				float activityDif = Math.abs(r1.getDouble(activityColumn) - r2.getDouble(activityColumn));
+				float saliValue = activityDif / (1.0f - similarity);
+				if (!Double.isInfinite(saliValue))
+					maxSali = Math.max(maxSali, saliValue);
+				mPairList.add(new SimilarPair(row1, row2, activityDif, similarity, saliValue));
+				}
+			else {
+				mPairList.add(new SimilarPair(row1, row2, Float.NaN, similarity, Float.NaN));
+				}
 			}
-		catch (InterruptedException e) {}
 
 		float optSimilarityLimit = initialSimilarityLimit;
 		if (automaticSimilarityLimit) {	// determine reasonable limit and remove sali pairs below this
@@ -496,7 +453,7 @@ public class DETaskAnalyseActivityCliffs extends ConfigurableTask implements Ite
 			if (mPairList.size() > desiredPairCount) {
 				int pairCount = 0;
 				for (int i=100-MIN_SIMILARITY; i>0; i--) {
-					pairCount += similarityCount.get(i);
+					pairCount += similarityCount[i];
 					if (pairCount > desiredPairCount) {
 						optSimilarityLimit = (float)(MIN_SIMILARITY+i)/100f;
 						break;
@@ -541,28 +498,31 @@ public class DETaskAnalyseActivityCliffs extends ConfigurableTask implements Ite
 
 			// depending on the combined number of neighbors adapt similarity limit
 			// and remove pair, if its similarity is below that limit
-			for (int i=mPairList.size()-1; i>=0; i--) {
-				SimilarPair sp = mPairList.get(i);
+			int keptCount = 0;
+			for (SimilarPair sp:mPairList) {
 				float neighborCount = (float)(minSimilarityNeighborCount[sp.row1] + minSimilarityNeighborCount[sp.row2]
 											+ maxSimilarityNeighborCount[sp.row1] + maxSimilarityNeighborCount[sp.row2]) / 4f;
 				float countFactor = (float)neighborCount / (float)AVERAGE_NEIGHBOR_COUNT;
 				float similarityShift = similarityMargin * (float)Math.log(countFactor) / log2Steepness;
 				float similarityLimit = optSimilarityLimit + Math.max(Math.min(similarityShift, similarityMargin), -similarityMargin);
 
-				if (sp.similarity < similarityLimit)
-					mPairList.remove(i);
-//				else
-//					mPairList.get(i).attraction = (mPairList.get(i).similarity - similarityLimit) / (1f - similarityLimit);
+				if (sp.similarity >= similarityLimit)
+					mPairList.set(keptCount++, sp);
+//				if (sp.similarity >= similarityLimit)
+//					sp.attraction = (sp.similarity - similarityLimit) / (1f - similarityLimit);
 				}
+			mPairList.subList(keptCount, mPairList.size()).clear();	// compacting is linear, removing every pair individually is not
 			}
 		else {
 			// just remove all pairs below similarity limit
-			for (int i=mPairList.size()-1; i>=0; i--) {
-				if (mPairList.get(i).similarity < optSimilarityLimit)
-					mPairList.remove(i);
-//						else
-//							mPairList.get(i).attraction = (mPairList.get(i).similarity - optSimilarityLimit) / (1f - optSimilarityLimit);
+			int keptCount = 0;
+			for (SimilarPair sp:mPairList) {
+				if (sp.similarity >= optSimilarityLimit)
+					mPairList.set(keptCount++, sp);
+//				if (sp.similarity >= optSimilarityLimit)
+//					sp.attraction = (sp.similarity - optSimilarityLimit) / (1f - optSimilarityLimit);
 				}
+			mPairList.subList(keptCount, mPairList.size()).clear();
 			}
 
 		String[] similarity = null;
@@ -598,16 +558,11 @@ public class DETaskAnalyseActivityCliffs extends ConfigurableTask implements Ite
 		mX = null;
 		mY = null;
 		final boolean addCoords = configuration.getProperty(PROPERTY_NEW_VIEW, "false").equals("true");
+		ComputeScheduler scheduler = ComputeScheduler.getInstance();
+		int threadCount = scheduler.getThreadCount(ComputeScheduler.PRIORITY_BACKGROUND);
 		if (!threadMustDie() && addCoords) {
 			startProgress("Calculating similarity based positions...", 0, VIEW_CYCLE_COUNT);
 
-			if (threadCount != 1) {
-				mExecutor = Executors.newFixedThreadPool(threadCount);
-				mSMPWorker = new SMPWorker[threadCount];
-				for (int t=0; t<threadCount; t++)
-					mSMPWorker[t] = new SMPWorker();
-				}
-
 			mX = new AtomicIntegerArray(rowCount);
 			mY = new AtomicIntegerArray(rowCount);
 			for (int row=0; row<rowCount; row++) {
@@ -649,12 +604,9 @@ public class DETaskAnalyseActivityCliffs extends ConfigurableTask implements Ite
 				mSMPPairIndex.set(0);
 				mSMPRecordIndex.set(0);
 
-				if (threadCount != 1) {
-					optimizeCoordinatesSMP(cycle);
-					}
-				else {
-					optimizeCoordinates(cycle);
-					}
+				// workers claim pairs and records from mSMPPairIndex and mSMPRecordIndex
+				final int _cycle = cycle;
+				scheduler.runParallel(ComputeScheduler.PRIORITY_BACKGROUND, threadCount, () -> optimizeCoordinates(_cycle), null);
 
 				for (int i=0; i<rowCount; i++) {
 					mX.set(i, Float.floatToIntBits(Math.min(Math.max(
@@ -980,18 +932,6 @@ public class DETaskAnalyseActivityCliffs extends ConfigurableTask implements Ite
 			}
 		}
 
-	private void optimizeCoordinatesSMP(int cycle) {
-		CountDownLatch doneSignal = new CountDownLatch(mSMPWorker.length);
-		for (SMPWorker w:mSMPWorker) {
-			w.initialize(doneSignal, cycle);
-			mExecutor.execute(w);
-			}
-		try {
-			doneSignal.await();
-			}
-		catch (InterruptedException e) {}
-		}
-
 	private void optimizeCoordinates(int cycle) {
 		int rowCount = mX.length();
 		float minDistance = 1.0f / (float)Math.sqrt(rowCount);
@@ -1189,26 +1129,6 @@ public class DETaskAnalyseActivityCliffs extends ConfigurableTask implements Ite
 		return mSourceTableModel.isColumnTypeCategory(column);
 		}
 
-	private class SMPWorker implements Runnable {
-		private CountDownLatch	mDoneSignal;
-		private int				mCycle;
-
-		private SMPWorker() {
-			}
-
-		public void initialize(CountDownLatch doneSignal, int cycle) {
-			mDoneSignal = doneSignal;
-			mCycle = cycle;
-			
-			}
-
-		public void run() {
-			optimizeCoordinates(mCycle);
-
-			mDoneSignal.countDown();
-			}
-		}
-
 	private class SimilarPair {
 		public int row1,row2;
 		public float sali,activityDif,similarity /* ,attraction */;
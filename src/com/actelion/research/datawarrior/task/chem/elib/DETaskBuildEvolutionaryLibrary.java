@@ -419,11 +419,11 @@ public class DETaskBuildEvolutionaryLibrary extends AbstractTask implements Acti
 					}
 				else {
 					CompoundTableListHandler listHandler = mSourceTableModel.getListHandler();
-					long listMask = (startSetOption == SELECTED_OPTION) ? listHandler.getListMask(CompoundTableListHandler.LISTINDEX_SELECTION)
-								  : (startSetOption == LIST_OPTION) ? listHandler.getListMask(listHandler.getListIndex(startSetList)) : 0L;
+					int listIndex = (startSetOption == SELECTED_OPTION) ? CompoundTableListHandler.LISTINDEX_SELECTION
+								  : (startSetOption == LIST_OPTION) ? listHandler.getListIndex(startSetList) : CompoundTableListHandler.LISTINDEX_NONE;
 					for (int row=0; row<mSourceTableModel.getTotalRowCount(); row++) {
 						CompoundRecord record = mSourceTableModel.getRecord(row);
-						if (listMask == 0 || (record.getFlags() & listMask) != 0) {
+						if (listIndex == CompoundTableListHandler.LISTINDEX_NONE || listHandler.isListMember(record, listIndex)) {
 							StereoMolecule compound = mSourceTableModel.getChemicalStructure(record, startSetColumn, CompoundTableModel.ATOM_COLOR_MODE_NONE, null);
 							if (compound != null)
 								parentCycleResults.add(new EvolutionResult(compound,
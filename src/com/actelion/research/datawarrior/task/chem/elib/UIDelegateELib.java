@@ -485,18 +485,17 @@ public class UIDelegateELib implements ActionListener,TaskConstantsELib,TaskUIDe
 
 	protected ArrayList<MoleculeWithDescriptor> getMoleculesFromColumn(int startSetOption, String descriptorType,
 	                                                                   String columnName, String listName) {
-		long mask = 0;
+		int listIndex = CompoundTableListHandler.LISTINDEX_NONE;
 		int idcodeColumn = mTableModel.findColumn(columnName);
 		if (startSetOption != COLUMN_OPTION) {
 			CompoundTableListHandler hh = mTableModel.getListHandler();
-			int listIndex = (startSetOption == SELECTED_OPTION) ? CompoundTableListHandler.LISTINDEX_SELECTION : hh.getListIndex(listName);
-			mask = hh.getListMask(listIndex);
+			listIndex = (startSetOption == SELECTED_OPTION) ? CompoundTableListHandler.LISTINDEX_SELECTION : hh.getListIndex(listName);
 			}
 		int descriptorColumn = (descriptorType == null) ? -1 : mTableModel.getChildColumn(idcodeColumn, descriptorType);
 		ArrayList<MoleculeWithDescriptor> moleculeList = new ArrayList<MoleculeWithDescriptor>();
 		for (int row=0; row<mTableModel.getTotalRowCount(); row++) {
 			CompoundRecord record = mTableModel.getTotalRecord(row);
-			if (mask == 0 || (record.getFlags() & mask) != 0) {
+			if (listIndex == CompoundTableListHandler.LISTINDEX_NONE || mTableModel.getListHandler().isListMember(record, listIndex)) {
 				StereoMolecule mol = mTableModel.getChemicalStructure(record, idcodeColumn, CompoundTableModel.ATOM_COLOR_MODE_NONE, null);
 				if (mol != null) {
 					Object descriptor = (descriptorColumn == -1) ? null : record.getData(descriptorColumn);
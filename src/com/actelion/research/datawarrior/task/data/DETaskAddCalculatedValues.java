@@ -26,6 +26,7 @@ import com.actelion.research.gui.hidpi.HiDPIHelper;
 import com.actelion.research.table.model.CompoundRecord;
 import com.actelion.research.table.model.CompoundTableListHandler;
 import com.actelion.research.table.model.CompoundTableModel;
+import com.actelion.research.table.model.ComputeScheduler;
 import com.actelion.research.util.DoubleFormat;
 import info.clearthought.layout.TableLayout;
 import org.nfunk.jep.JEP;
@@ -35,6 +36,7 @@ import java.awt.*;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class DETaskAddCalculatedValues extends ConfigurableTask implements ActionListener {
 	static final long serialVersionUID = 0x20061004;
@@ -58,6 +60,8 @@ public class DETaskAddCalculatedValues extends ConfigurableTask implements Actio
 	private static final String IS_SELECTED_ROW = "isSelectedRow";
 	private static final String IS_MEMBER_OF = "isMemberOf_";
 
+	private static final int MAX_CHUNK_SIZE = 4096;
+
 	private volatile CompoundTableModel	mTableModel;
 	private volatile String		mResolvedValue;
 	private volatile String		mFormula;
@@ -565,6 +569,91 @@ public class DETaskAddCalculatedValues extends ConfigurableTask implements Actio
 		int targetColumn = isOverwrite ? mTableModel.findColumn(configuration.getProperty(PROPERTY_COLUMN_NAME)) : mTableModel.addNewColumns(columnName);
 		mTableModel.setColumnProperty(targetColumn, CompoundTableConstants.cColumnPropertyFormula, formula);
 
+		JEPCompiledFormula compiledFormula = JEPCompiledFormula.compile(mParser, this::getVariableValues);
+		if (compiledFormula != null)
+			calculateValues(compiledFormula, targetColumn);
+		else
+			calculateValues(targetColumn);
+
+		if (isOverwrite)
+			mTableModel.finalizeChangeAlphaNumericalColumn(targetColumn, 0, mTableModel.getTotalRowCount());
+		else
+			mTableModel.finalizeNewColumns(targetColumn, this);
+		}
+
+	/**
+	 * Evaluates a compiled, row-independent formula for all rows in parallel.
+	 * @param formula
+	 * @param targetColumn
+	 */
+	private void calculateValues(JEPCompiledFormula formula, int targetColumn) {
+		int rowCount = mTableModel.getTotalRowCount();
+		String[] value = new String[rowCount];
+		AtomicInteger nextRow = new AtomicInteger();
+		ComputeScheduler scheduler = ComputeScheduler.getInstance();
+		int threadCount = scheduler.getThreadCount(ComputeScheduler.PRIORITY_BACKGROUND);
+		int chunkSize = ComputeScheduler.getChunkSize(rowCount, threadCount, MAX_CHUNK_SIZE);
+		scheduler.runParallel(ComputeScheduler.PRIORITY_BACKGROUND, threadCount, () -> {
+			for (int start=nextRow.getAndAdd(chunkSize); start<rowCount; start=nextRow.getAndAdd(chunkSize)) {
+				if (threadMustDie())
+					break;
+				int end = Math.min(rowCount, start+chunkSize);
+				for (int row=start; row<end; row++)
+					value[row] = DoubleFormat.toString(formula.evaluate(row), 7, true);
+				updateProgress(start-end);
+				}
+			}, null);
+
+		for (int row=0; row<rowCount && value[row] != null; row++)
+			mTableModel.setTotalValueAt(value[row], row, targetColumn);
+		}
+
+	/**
+	 * Provides numerical variable values for compiling a formula.
+	 * @param varName
+	 * @return value for every row or null, if the variable is not numerical
+	 */
+	private double[] getVariableValues(String varName) {
+		int rowCount = mTableModel.getTotalRowCount();
+		if (varName.equals(IS_VISIBLE_ROW) || varName.equals(IS_SELECTED_ROW)) {
+			boolean isVisibleRow = varName.equals(IS_VISIBLE_ROW);
+			double[] value = new double[rowCount];
+			for (int row=0; row<rowCount; row++) {
+				CompoundRecord record = mTableModel.getTotalRecord(row);
+				value[row] = (isVisibleRow ? mTableModel.isVisible(record) : mTableModel.isVisibleAndSelected(record)) ? 1.0 : 0.0;
+				}
+			return value;
+			}
+
+		Integer column = mRunTimeColumnMap.get(varName);
+		if (column == null)
+			return null;
+
+		if (CompoundTableListHandler.isListColumn(column)) {
+			CompoundTableListHandler hitlistHandler = mTableModel.getListHandler();
+			int listIndex = CompoundTableListHandler.convertToListIndex(column);
+			double[] value = new double[rowCount];
+			for (int row=0; row<rowCount; row++)
+				value[row] = hitlistHandler.isListMember(mTableModel.getTotalRecord(row), listIndex) ? 1.0 : 0.0;
+			return value;
+			}
+
+		if (mTableModel.getColumnSpecialType(column) != null
+		 || !mTableModel.isColumnTypeDouble(column))
+			return null;
+
+		double[] value = new double[rowCount];
+		for (int row=0; row<rowCount; row++)
+			value[row] = mTableModel.getTotalOriginalDoubleAt(row, column);
+		return value;
+		}
+
+	/**
+	 * Evaluates the parsed formula row by row, which is needed for text values,
+	 * and for functions that depend on the current row or on previously calculated rows.
+	 * @param targetColumn
+	 */
+	private void calculateValues(int targetColumn) {
 		CompoundTableListHandler hitlistHandler = mTableModel.getListHandler();
 
 		for (mCurrentRow=0; mCurrentRow<mTableModel.getTotalRowCount(); mCurrentRow++) {
@@ -609,8 +698,8 @@ public class DETaskAddCalculatedValues extends ConfigurableTask implements Actio
 			for (String varName:mRunTimeColumnMap.keySet()) {
 				int column = mRunTimeColumnMap.get(varName).intValue();
 				if (CompoundTableListHandler.isListColumn(column)) {
-					long hitlistMask = hitlistHandler.getListMask(CompoundTableListHandler.convertToListIndex(column));
-					mParser.addVariable(varName, (record.getFlags() & hitlistMask) != 0 ? 1.0 : 0.0 );
+					int listIndex = CompoundTableListHandler.convertToListIndex(column);
+					mParser.addVariable(varName, hitlistHandler.isListMember(record, listIndex) ? 1.0 : 0.0 );
 					}
 				else {
 					if (mTableModel.getColumnSpecialType(column) != null)
@@ -638,11 +727,6 @@ public class DETaskAddCalculatedValues extends ConfigurableTask implements Actio
 
 			mTableModel.setTotalValueAt(value, mCurrentRow, targetColumn);
 			}
-
-		if (isOverwrite)
-			mTableModel.finalizeChangeAlphaNumericalColumn(targetColumn, 0, mTableModel.getTotalRowCount());
-		else
-			mTableModel.finalizeNewColumns(targetColumn, this);
 		}
 
 	/**
@@ -0,0 +1,187 @@
+/*
+ * Copyright 2017 Idorsia Pharmaceuticals Ltd., Hegenheimermattweg 91, CH-4123 Allschwil, Switzerland
+ *
+ * This file is part of DataWarrior.
+ *
+ * DataWarrior is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * DataWarrior is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License along with DataWarrior.
+ * If not, see http://www.gnu.org/licenses/.
+ *
+ * @author Thomas Sander
+ */
+
+package com.actelion.research.datawarrior.task.data;
+
+import com.actelion.research.datawarrior.DECompoundTableExtensionHandler;
+import com.actelion.research.datawarrior.DEFrame;
+import com.actelion.research.datawarrior.task.AbstractTaskWithoutConfiguration;
+import com.actelion.research.table.model.CompoundRecord;
+import com.actelion.research.table.model.CompoundTableModel;
+
+import java.util.ArrayList;
+import java.util.Properties;
+
+/**
+ * Projects rows, which were added after a UMAP visualization was created, into the existing
+ * embedding by using the UMAP models kept by DETaskCreateUMAPVisualization. Only rows with
+ * empty UMAP coordinates and complete source data are touched. Thus, existing coordinates
+ * stay unchanged and the task may be run repeatedly.
+ */
+public class DETaskAddRowsToUMAPVisualization extends AbstractTaskWithoutConfiguration {
+	public static final String TASK_NAME = "Add New Rows To UMAP Visualization";
+
+	private CompoundTableModel mTableModel;
+
+	public DETaskAddRowsToUMAPVisualization(DEFrame parent) {
+		super(parent, true);
+		mTableModel = parent.getTableModel();
+		}
+
+	@Override
+	public boolean isConfigurable() {
+		ArrayList<UMAPModel> modelList = getModelList();
+		if (modelList == null || modelList.isEmpty()) {
+			showErrorMessage("No UMAP model found. Create a UMAP visualization with 'Keep UMAP model' checked first.");
+			return false;
+			}
+
+		return true;
+		}
+
+	@Override
+	public String getTaskName() {
+		return TASK_NAME;
+		}
+
+	@Override
+	public DEFrame getNewFrontFrame() {
+		return null;
+		}
+
+	@Override
+	public void runTask(Properties configuration) {
+		ArrayList<UMAPModel> modelList = getModelList();
+		if (modelList == null)
+			return;
+
+		for (UMAPModel model:modelList) {
+			if (threadMustDie())
+				return;
+
+			int[] targetColumn = findColumns(model.getTargetColumnNames());
+			int[] sourceColumn = findColumns(model.getSourceColumnNames());
+			if (targetColumn == null || sourceColumn == null)
+				continue;
+
+			int descriptorCount = 0;
+			for (int column:sourceColumn) {
+				if (mTableModel.isDescriptorColumn(column)) {
+					descriptorCount++;
+					waitForDescriptor(mTableModel, column);
+					if (threadMustDie())
+						return;
+					}
+				}
+
+			int[] descriptorColumn = new int[descriptorCount];
+			int[] regularColumn = new int[sourceColumn.length-descriptorCount];
+			for (int i=0; i<sourceColumn.length; i++) {
+				if (i < descriptorCount)
+					descriptorColumn[i] = sourceColumn[i];
+				else
+					regularColumn[i-descriptorCount] = sourceColumn[i];
+				}
+
+			int[] row = getNewRows(sourceColumn, targetColumn);
+			if (row.length == 0)
+				continue;
+
+			startProgress("Projecting "+row.length+" rows into '"+mTableModel.getColumnTitle(targetColumn[0])+"'...", 0, 0);
+			float[][] Y;
+			try {
+				Y = model.project(mTableModel, descriptorColumn, regularColumn, row);
+				}
+			catch (Exception e) {
+				showErrorMessage(e.getMessage());
+				return;
+				}
+
+			if (threadMustDie())
+				return;
+
+			for (int i=0; i<targetColumn.length; i++) {
+				for (int r=0; r<row.length; r++)
+					mTableModel.setTotalValueAt(""+Y[r][i], row[r], targetColumn[i]);
+				mTableModel.finalizeChangeAlphaNumericalColumn(targetColumn[i], 0, mTableModel.getTotalRowCount());
+				}
+			}
+		}
+
+	@SuppressWarnings("unchecked")
+	private ArrayList<UMAPModel> getModelList() {
+		return (ArrayList<UMAPModel>)mTableModel.getExtensionData(DECompoundTableExtensionHandler.cExtensionNameUMAPModelList);
+		}
+
+	/**
+	 * @return column indexes or null, if any column doesn't exist anymore
+	 */
+	private int[] findColumns(String[] columnName) {
+		int[] column = new int[columnName.length];
+		for (int i=0; i<columnName.length; i++) {
+			column[i] = mTableModel.findColumn(columnName[i]);
+			if (column[i] == -1)
+				return null;
+			}
+		return column;
+		}
+
+	/**
+	 * @return total row indexes of all rows with empty target cells and complete source data
+	 */
+	private int[] getNewRows(int[] sourceColumn, int[] targetColumn) {
+		int[] row = new int[mTableModel.getTotalRowCount()];
+		int rowCount = 0;
+		for (int r=0; r<mTableModel.getTotalRowCount(); r++) {
+			CompoundRecord record = mTableModel.getTotalRecord(r);
+
+			boolean isNew = true;
+			for (int column:targetColumn) {
+				if (!Float.isNaN(record.getDouble(column))) {
+					isNew = false;
+					break;
+					}
+				}
+
+			if (isNew) {
+				for (int column:sourceColumn) {
+					if (mTableModel.isDescriptorColumn(column)) {
+						if (record.getData(column) == null
+						 || mTableModel.getDescriptorHandler(column).calculationFailed(record.getData(column))) {
+							isNew = false;
+							break;
+							}
+						}
+					else {
+						if (Float.isNaN(record.getDouble(column))) {
+							isNew = false;
+							break;
+							}
+						}
+					}
+				}
+
+			if (isNew)
+				row[rowCount++] = r;
+			}
+
+		int[] newRow = new int[rowCount];
+		System.arraycopy(row, 0, newRow, 0, rowCount);
+		return newRow;
+		}
+	}
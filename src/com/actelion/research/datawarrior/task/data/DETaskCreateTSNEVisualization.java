@@ -33,6 +33,7 @@ import com.actelion.research.table.view.VisualizationPanel3D;
 import com.actelion.research.table.view.chart.ChartType;
 import com.jujutsu.tsne.TSneConfiguration;
 import com.jujutsu.tsne.barneshut.BarnesHutTSne;
+import com.jujutsu.tsne.barneshut.FlatBHTSne;
 import com.jujutsu.tsne.barneshut.ParallelBHTsne;
 import com.jujutsu.utils.TSneUtils;
 import info.clearthought.layout.TableLayout;
@@ -53,10 +54,16 @@ public class DETaskCreateTSNEVisualization extends ConfigurableTask {
 	private static final String PROPERTY_PCADIMENSIONS = "pcadimensions";
 	private static final String PROPERTY_ITERATIONS = "iterations";
 	private static final String PROPERTY_CREATE_VIEW = "createView";
+	private static final String PROPERTY_ENGINE = "engine";
+
+	private static final String[] ENGINE_CODE = { "standard", "parallel" };
+	private static final String[] ENGINE_TEXT = { "Standard", "Fully parallel (large data sets)" };
+	private static final int ENGINE_STANDARD = 0;
+	private static final int ENGINE_PARALLEL = 1;
 
     private DEFrame				mParentFrame;
 	private CompoundTableModel  mTableModel;
-	private JComboBox			mComboBoxNoOfComponents;
+	private JComboBox			mComboBoxNoOfComponents,mComboBoxEngine;
 	private JCheckBox			mCheckBoxCreateViews;
 	private JList				mListColumns;
 	private JTextArea			mTextArea;
@@ -128,7 +135,7 @@ public class DETaskCreateTSNEVisualization extends ConfigurableTask {
         int gap = HiDPIHelper.scale(8);
         double[][] size = { {gap, TableLayout.PREFERRED, gap/2, TableLayout.PREFERRED, gap/2, TableLayout.PREFERRED, gap},
                             {gap, TableLayout.PREFERRED, gap, HiDPIHelper.scale(128), gap,
-									TableLayout.PREFERRED, gap, TableLayout.PREFERRED, gap, TableLayout.PREFERRED, gap, TableLayout.PREFERRED, gap} };
+									TableLayout.PREFERRED, gap, TableLayout.PREFERRED, gap, TableLayout.PREFERRED, gap, TableLayout.PREFERRED, gap, TableLayout.PREFERRED, gap} };
         p1.setLayout(new TableLayout(size));
 
 		final String[] optionList = {"2", "3"};
@@ -176,8 +183,12 @@ public class DETaskCreateTSNEVisualization extends ConfigurableTask {
 		p1.add(new JLabel("Iterations:"), "1,9");
 		p1.add(mTextFieldIterations, "3,9");
 
+		mComboBoxEngine = new JComboBox(ENGINE_TEXT);
+		p1.add(new JLabel("Implementation:"), "1,11");
+		p1.add(mComboBoxEngine, "3,11,5,11");
+
 		mCheckBoxCreateViews = new JCheckBox("Automatically create 2D- or 3D-view");
-        p1.add(mCheckBoxCreateViews, "1,11,5,11");
+        p1.add(mCheckBoxCreateViews, "1,13,5,13");
 
         return p1;
 	    }
@@ -203,6 +214,7 @@ public class DETaskCreateTSNEVisualization extends ConfigurableTask {
 		configuration.put(PROPERTY_PERPLEXITY, mTextFieldPerplexity.getText());
 		configuration.put(PROPERTY_PCADIMENSIONS, mTextFieldPCADimensions.getText());
 		configuration.put(PROPERTY_ITERATIONS, mTextFieldIterations.getText());
+		configuration.put(PROPERTY_ENGINE, ENGINE_CODE[mComboBoxEngine.getSelectedIndex()]);
 
 		return configuration;
 		}
@@ -222,6 +234,7 @@ public class DETaskCreateTSNEVisualization extends ConfigurableTask {
 		mTextFieldPerplexity.setText(configuration.getProperty(PROPERTY_PERPLEXITY, "20.0"));
 		mTextFieldPCADimensions.setText(configuration.getProperty(PROPERTY_PCADIMENSIONS, "50"));
 		mTextFieldIterations.setText(configuration.getProperty(PROPERTY_ITERATIONS, "1000"));
+		mComboBoxEngine.setSelectedIndex(findListIndex(configuration.getProperty(PROPERTY_ENGINE), ENGINE_CODE, ENGINE_STANDARD));
 
 		mCheckBoxCreateViews.setSelected("true".equals(configuration.getProperty(PROPERTY_CREATE_VIEW, "true")));
 		}
@@ -238,6 +251,7 @@ public class DETaskCreateTSNEVisualization extends ConfigurableTask {
 		mTextFieldPerplexity.setText("20.0");
 		mTextFieldPCADimensions.setText("50");
 		mTextFieldIterations.setText("1000");
+		mComboBoxEngine.setSelectedIndex(ENGINE_PARALLEL);
 
 		mCheckBoxCreateViews.setSelected(true);
 		}
@@ -384,9 +398,138 @@ public class DETaskCreateTSNEVisualization extends ConfigurableTask {
 				regularColumn[regularCount++] = column;
 			}
 
-		int[] varyingBits = new int[descriptorCount];
-		Object[] varyingKey = new Object[descriptorCount];
-		for (int fp=0; fp<descriptorCount; fp++) {
+		long[][] fingerprint = getFingerprints(descriptorColumn, regularColumn);
+		double[][] X = (fingerprint != null) ? null : calculateParameterMatrix(descriptorColumn, regularColumn);
+		if (threadMustDie())
+			return;
+
+		int outputDims = 2;
+		try { outputDims = Integer.parseInt(configuration.getProperty(PROPERTY_DIMENSIONS, "2")); } catch (NumberFormatException nfe) {}
+
+		double perplexity = Float.parseFloat(configuration.getProperty(PROPERTY_PERPLEXITY, "20.0"));
+		int initial_dims = Integer.parseInt(configuration.getProperty(PROPERTY_PCADIMENSIONS, "50"));
+		int iterations = Integer.parseInt(configuration.getProperty(PROPERTY_ITERATIONS, "1000"));
+		double[][] Y = null;
+		try {
+			int engine = findListIndex(configuration.getProperty(PROPERTY_ENGINE), ENGINE_CODE, ENGINE_STANDARD);
+			BarnesHutTSne tsne = (engine == ENGINE_PARALLEL) ? new FlatBHTSne() : new ParallelBHTsne();    // this is the single thread alternative: new BHTSne();
+
+//BarnesHutTSne tsne = new BHTSne();	// for some small datasets the parallel implementation seems to hang; TLS 26-Oct-2018
+// on 04-Apr-2019 arofab suggested a change in BarnesHutTSne that seems to solve the issue. Thus going back to parallel; TLS 09-Apr-2019
+
+			TSneConfiguration config = (fingerprint != null) ? TSneUtils.buildConfig(fingerprint, outputDims, perplexity, iterations)
+											 : TSneUtils.buildConfig(X, outputDims, initial_dims, perplexity, iterations);
+			Y = tsne.tsne(config, this);
+			}
+		catch (Exception e) {
+			showErrorMessage(e.getMessage());
+			return;
+			}
+
+		if (!threadMustDie()) {
+			String[] columnTitle = new String[outputDims];
+			for (int i=0; i<outputDims; i++)
+				columnTitle[i] = "t-SNE "+(char)('X'+i);
+			final int firstNewColumn = mTableModel.addNewColumns(columnTitle);
+			for (int i=0; i<outputDims; i++)
+				for (int r=0; r<mFullDataRowCount; r++)
+					mTableModel.setTotalValueAt(""+Y[r][i], mFullDataRow[r], firstNewColumn+i);
+
+			mTableModel.finalizeNewColumns(firstNewColumn, this);
+
+			if (outputDims >= 2 && "true".equals(configuration.getProperty(PROPERTY_CREATE_VIEW, "true"))) {
+				int colorColumn = -1;
+				for (int column=0; column<firstNewColumn; column++) {
+					if (mTableModel.isColumnTypeDouble(column)) {
+						colorColumn = column;
+						break;
+						}
+					}
+				if (colorColumn == -1) {
+					for (int column=0; column<firstNewColumn; column++) {
+						if (mTableModel.isColumnTypeCategory(column) && mTableModel.getCategoryCount(column) < VisualizationColor.cMaxColorCategories) {
+							colorColumn = column;
+							break;
+							}
+						}
+					}
+
+				final int dimensions = outputDims;
+				final int _colorColumn = colorColumn;
+				SwingUtilities.invokeLater(new Runnable() {
+					public void run() {
+						DEMainPane mainPane = mParentFrame.getMainFrame().getMainPane();
+
+						int colorListMode = VisualizationColor.cColorListModeHSBLong;
+						Color[] colorList = (_colorColumn == -1) ? null : VisualizationColor.createColorWedge(Color.red, Color.blue, colorListMode, null);
+
+						if (dimensions == 2) {
+							VisualizationPanel2D vpanel1 = mainPane.add2DView("t-SNE 2D", null);
+							vpanel1.setAxisColumnName(0, mTableModel.getColumnTitle(firstNewColumn));
+							vpanel1.setAxisColumnName(1, mTableModel.getColumnTitle(firstNewColumn + 1));
+							vpanel1.getVisualization().setPreferredChartType(ChartType.cTypeScatterPlot, -1, -1);
+		                    if (_colorColumn != -1)
+								vpanel1.getVisualization().getMarkerColor().setColor(_colorColumn, colorList, colorListMode);
+							}
+	                    if (dimensions == 3) {
+		                    VisualizationPanel3D vpanel2 = mainPane.add3DView("t-SNE 3D", null);
+		                    vpanel2.setAxisColumnName(0, mTableModel.getColumnTitle(firstNewColumn));
+		                    vpanel2.setAxisColumnName(1, mTableModel.getColumnTitle(firstNewColumn+1));
+		                    vpanel2.setAxisColumnName(2, mTableModel.getColumnTitle(firstNewColumn+2));
+		                    vpanel2.getVisualization().setPreferredChartType(ChartType.cTypeScatterPlot, -1, -1);
+							if (_colorColumn != -1)
+			                    vpanel2.getVisualization().getMarkerColor().setColor(_colorColumn, colorList, colorListMode);
+	                    	}
+						}
+					} );
+				}
+			}
+		}
+
+	/**
+	 * If all selected columns are binary fingerprints, then t-SNE compares their packed bits
+	 * by Tanimoto distance without expanding them into a dense matrix and without PCA.
+	 * @return one fingerprint per full data row or null, if any column is not a binary long[] fingerprint
+	 */
+	private long[][] getFingerprints(int[] descriptorColumn, int[] regularColumn) {
+		if (regularColumn.length != 0 || descriptorColumn.length == 0)
+			return null;
+
+		int length = 0;
+		for (int column:descriptorColumn) {
+			if (!mTableModel.getDescriptorHandler(column).getInfo().isBinary
+			 || !(mTableModel.getTotalRecord(mFullDataRow[0]).getData(column) instanceof long[]))
+				return null;
+			length += ((long[])mTableModel.getTotalRecord(mFullDataRow[0]).getData(column)).length;
+			}
+
+		long[][] fingerprint = new long[mFullDataRowCount][];
+		for (int r=0; r<mFullDataRowCount; r++) {
+			if (descriptorColumn.length == 1) {
+				fingerprint[r] = (long[])mTableModel.getTotalRecord(mFullDataRow[r]).getData(descriptorColumn[0]);
+				}
+			else {
+				fingerprint[r] = new long[length];
+				int offset = 0;
+				for (int column:descriptorColumn) {
+					long[] fp = (long[])mTableModel.getTotalRecord(mFullDataRow[r]).getData(column);
+					System.arraycopy(fp, 0, fingerprint[r], offset, fp.length);
+					offset += fp.length;
+					}
+				}
+			}
+		return fingerprint;
+		}
+
+	/**
+	 * Expands all selected columns into one z-scored parameter per numerical column and varying descriptor key.
+	 * @return parameter matrix with one row per full data row
+	 */
+	private double[][] calculateParameterMatrix(int[] descriptorColumn, int[] regularColumn) {
+		int parameterCount = regularColumn.length;
+		int[] varyingBits = new int[descriptorColumn.length];
+		Object[] varyingKey = new Object[descriptorColumn.length];
+		for (int fp=0; fp<descriptorColumn.length; fp++) {
 			startProgress("Analysing '"+mTableModel.getColumnTitle(descriptorColumn[fp])+"'...", 0, 0);
         	if (mTableModel.getDescriptorHandler(descriptorColumn[fp]).getInfo().isBinary
 	         || DescriptorConstants.DESCRIPTOR_ReactionFP.shortName.equals(mTableModel.getColumnSpecialType(descriptorColumn[fp]))) {
@@ -415,7 +558,7 @@ public class DETaskCreateTSNEVisualization extends ConfigurableTask {
 				        varyingBits[fp] += Integer.bitCount(((int[])varyingKey[fp])[i]);
 		            }
 
-				regularCount += varyingBits[fp];
+				parameterCount += varyingBits[fp];
         		}
         	else {
 				byte[] firstIndex = (byte[])mTableModel.getTotalRecord(mFullDataRow[0]).getData(descriptorColumn[fp]);
@@ -437,14 +580,14 @@ public class DETaskCreateTSNEVisualization extends ConfigurableTask {
 					if (isVarying[i])
 						((int[])varyingKey[fp])[index++] = i;
 
-				regularCount += varyingKeyCount;
+				parameterCount += varyingKeyCount;
         		}
 			}
 
-		double[] rowParameter = new double[regularCount];
+		double[] rowParameter = new double[parameterCount];
 
 		startProgress("Calculating mean parameters...", 0, mFullDataRowCount);
-		double[] meanParameter = new double[regularCount];
+		double[] meanParameter = new double[parameterCount];
 		for (int r=0; r<mFullDataRowCount; r++) {
 			if (threadMustDie())
 				break;
@@ -452,15 +595,15 @@ public class DETaskCreateTSNEVisualization extends ConfigurableTask {
 
 			calculateParameterRow(descriptorColumn, regularColumn, mFullDataRow[r], varyingKey, rowParameter);
 
-			for (int i=0; i<regularCount; i++)
+			for (int i=0; i<parameterCount; i++)
 				meanParameter[i] += rowParameter[i];
 			}
 		if (!threadMustDie())
-			for (int i=0; i<regularCount; i++)
+			for (int i=0; i<parameterCount; i++)
 				meanParameter[i] /= (double)mFullDataRowCount;
 
 		startProgress("Calculating variance...", 0, mFullDataRowCount);
-		double[] variance = new double[regularCount];
+		double[] variance = new double[parameterCount];
 		for (int r=0; r<mFullDataRowCount; r++) {
 			if (threadMustDie())
 				break;
@@ -468,106 +611,28 @@ public class DETaskCreateTSNEVisualization extends ConfigurableTask {
 
 			calculateParameterRow(descriptorColumn, regularColumn, mFullDataRow[r], varyingKey, rowParameter);
 
-			for (int i=0; i<regularCount; i++) {
+			for (int i=0; i<parameterCount; i++) {
 				double dif = (rowParameter[i] - meanParameter[i]);
 				variance[i] += dif * dif;
 				}
 			}
 		if (!threadMustDie())
-			for (int i=0; i<regularCount; i++)
+			for (int i=0; i<parameterCount; i++)
 				variance[i] /= (double)(mFullDataRowCount-1);
 
-		int outputDims = 2;
-		try { outputDims = Integer.parseInt(configuration.getProperty(PROPERTY_DIMENSIONS, "2")); } catch (NumberFormatException nfe) {}
-
 		startProgress("Calculating t-SNE input array...", 0, mFullDataRowCount);
-		double [][] X = new double[mFullDataRowCount][regularCount];
+		double[][] X = new double[mFullDataRowCount][parameterCount];
 		for (int r=0; r<mFullDataRowCount; r++) {
 			if (threadMustDie())
 				break;
 			updateProgress(r);
 
 			calculateParameterRow(descriptorColumn, regularColumn, mFullDataRow[r], varyingKey, rowParameter);
-			for (int i=0; i<regularCount; i++)
+			for (int i=0; i<parameterCount; i++)
 				X[r][i] = (rowParameter[i] - meanParameter[i]) / Math.sqrt(variance[i]);
 			}
 
-		double perplexity = Float.parseFloat(configuration.getProperty(PROPERTY_PERPLEXITY, "20.0"));
-		int initial_dims = Integer.parseInt(configuration.getProperty(PROPERTY_PCADIMENSIONS, "50"));
-		int iterations = Integer.parseInt(configuration.getProperty(PROPERTY_ITERATIONS, "1000"));
-		double[][] Y = null;
-		try {
-			BarnesHutTSne tsne = new ParallelBHTsne();    // this is the single thread alternative: new BHTSne();
-
-//BarnesHutTSne tsne = new BHTSne();	// for some small datasets the parallel implementation seems to hang; TLS 26-Oct-2018
-// on 04-Apr-2019 arofab suggested a change in BarnesHutTSne that seems to solve the issue. Thus going back to parallel; TLS 09-Apr-2019
-
-			TSneConfiguration config = TSneUtils.buildConfig(X, outputDims, initial_dims, perplexity, iterations);
-			Y = tsne.tsne(config, this);
-			}
-		catch (Exception e) {
-			showErrorMessage(e.getMessage());
-			return;
-			}
-
-		if (!threadMustDie()) {
-			String[] columnTitle = new String[outputDims];
-			for (int i=0; i<outputDims; i++)
-				columnTitle[i] = "t-SNE "+(char)('X'+i);
-			final int firstNewColumn = mTableModel.addNewColumns(columnTitle);
-			for (int i=0; i<outputDims; i++)
-				for (int r=0; r<mFullDataRowCount; r++)
-					mTableModel.setTotalValueAt(""+Y[r][i], mFullDataRow[r], firstNewColumn+i);
-
-			mTableModel.finalizeNewColumns(firstNewColumn, this);
-
-			if (outputDims >= 2 && "true".equals(configuration.getProperty(PROPERTY_CREATE_VIEW, "true"))) {
-				int colorColumn = -1;
-				for (int column=0; column<firstNewColumn; column++) {
-					if (mTableModel.isColumnTypeDouble(column)) {
-						colorColumn = column;
-						break;
-						}
-					}
-				if (colorColumn == -1) {
-					for (int column=0; column<firstNewColumn; column++) {
-						if (mTableModel.isColumnTypeCategory(column) && mTableModel.getCategoryCount(column) < VisualizationColor.cMaxColorCategories) {
-							colorColumn = column;
-							break;
-							}
-						}
-					}
-
-				final int dimensions = outputDims;
-				final int _colorColumn = colorColumn;
-				SwingUtilities.invokeLater(new Runnable() {
-					public void run() {
-						DEMainPane mainPane = mParentFrame.getMainFrame().getMainPane();
-
-						int colorListMode = VisualizationColor.cColorListModeHSBLong;
-						Color[] colorList = (_colorColumn == -1) ? null : VisualizationColor.createColorWedge(Color.red, Color.blue, colorListMode, null);
-
-						if (dimensions == 2) {
-							VisualizationPanel2D vpanel1 = mainPane.add2DView("t-SNE 2D", null);
-							vpanel1.setAxisColumnName(0, mTableModel.getColumnTitle(firstNewColumn));
-							vpanel1.setAxisColumnName(1, mTableModel.getColumnTitle(firstNewColumn + 1));
-							vpanel1.getVisualization().setPreferredChartType(ChartType.cTypeScatterPlot, -1, -1);
-		                    if (_colorColumn != -1)
-								vpanel1.getVisualization().getMarkerColor().setColor(_colorColumn, colorList, colorListMode);
-							}
-	                    if (dimensions == 3) {
-		                    VisualizationPanel3D vpanel2 = mainPane.add3DView("t-SNE 3D", null);
-		                    vpanel2.setAxisColumnName(0, mTableModel.getColumnTitle(firstNewColumn));
-		                    vpanel2.setAxisColumnName(1, mTableModel.getColumnTitle(firstNewColumn+1));
-		                    vpanel2.setAxisColumnName(2, mTableModel.getColumnTitle(firstNewColumn+2));
-		                    vpanel2.getVisualization().setPreferredChartType(ChartType.cTypeScatterPlot, -1, -1);
-							if (_colorColumn != -1)
-			                    vpanel2.getVisualization().getMarkerColor().setColor(_colorColumn, colorList, colorListMode);
-	                    	}
-						}
-					} );
-				}
-			}
+		return X;
 		}
 
 	private void calculateParameterRow(int[] descriptorColumn, int[] regularColumn, int row, Object[] varyingKey, double[] rowParameter) {
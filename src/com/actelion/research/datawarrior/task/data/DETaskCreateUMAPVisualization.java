@@ -19,8 +19,8 @@
 package com.actelion.research.datawarrior.task.data;
 
 import com.actelion.research.chem.descriptor.DescriptorConstants;
-import com.actelion.research.chem.descriptor.DescriptorHandlerReactionFP;
 import com.actelion.research.chem.descriptor.DescriptorHelper;
+import com.actelion.research.datawarrior.DECompoundTableExtensionHandler;
 import com.actelion.research.datawarrior.DEFrame;
 import com.actelion.research.datawarrior.DEMainPane;
 import com.actelion.research.datawarrior.task.ConfigurableTask;
@@ -36,6 +36,7 @@ import info.clearthought.layout.TableLayout;
 
 import javax.swing.*;
 import java.awt.*;
+import java.util.ArrayList;
 import java.util.Properties;
 
 
@@ -50,6 +51,7 @@ public class DETaskCreateUMAPVisualization extends ConfigurableTask {
 	private static final String PROPERTY_MIN_DIST = "minDist";
 	private static final String PROPERTY_METRIC = "metric";
 	private static final String PROPERTY_CREATE_VIEW = "createView";
+	private static final String PROPERTY_KEEP_MODEL = "keepModel";
 
 	private static final String DEFAULT_DIMENSIONS = "3";
 	private static final String DEFAULT_MIN_DIST = "0.5";
@@ -62,13 +64,15 @@ public class DETaskCreateUMAPVisualization extends ConfigurableTask {
     private DEFrame			    mParentFrame;
 	private CompoundTableModel	mTableModel;
 	private JComboBox			mComboBoxNoOfComponents,mComboBoxMetric;
-	private JCheckBox			mCheckBoxCreateViews;
+	private JCheckBox			mCheckBoxCreateViews,mCheckBoxKeepModel;
 	private JList				mListColumns;
 	private JTextArea			mTextArea;
 	private JTextField          mTextFieldNeighbours, mTextFieldMinDist;
 	private boolean				mIsInteractive;
 	private int					mFullDataRowCount;
 	private int[]				mFullDataRow;
+	private Object[]			mVaryingKey;
+	private float[]				mMeanParameter,mStdDevParameter;
 
 	public DETaskCreateUMAPVisualization(DEFrame parent, boolean isInteractive) {
 		super(parent, true);
@@ -133,7 +137,8 @@ public class DETaskCreateUMAPVisualization extends ConfigurableTask {
         int gap = HiDPIHelper.scale(8);
         double[][] size = { {gap, TableLayout.PREFERRED, gap/2, TableLayout.PREFERRED, gap/2, TableLayout.PREFERRED, gap},
                             {gap, TableLayout.PREFERRED, gap, HiDPIHelper.scale(128), gap,
-									TableLayout.PREFERRED, gap, TableLayout.PREFERRED, gap, TableLayout.PREFERRED, gap, TableLayout.PREFERRED, gap} };
+									TableLayout.PREFERRED, gap, TableLayout.PREFERRED, gap, TableLayout.PREFERRED, gap, TableLayout.PREFERRED, gap/2,
+									TableLayout.PREFERRED, gap} };
         p1.setLayout(new TableLayout(size));
 
 		final String[] optionList = {"2", "3", "4", "5", "6", "7", "8", "9", "10"};
@@ -185,6 +190,9 @@ public class DETaskCreateUMAPVisualization extends ConfigurableTask {
 		mCheckBoxCreateViews = new JCheckBox("Automatically create 2D- or 3D-view");
         p1.add(mCheckBoxCreateViews, "1,11,5,11");
 
+		mCheckBoxKeepModel = new JCheckBox("Keep UMAP model to add new rows later");
+		p1.add(mCheckBoxKeepModel, "1,13,5,13");
+
         return p1;
 	    }
 
@@ -205,6 +213,7 @@ public class DETaskCreateUMAPVisualization extends ConfigurableTask {
 
 		configuration.put(PROPERTY_DIMENSIONS, mComboBoxNoOfComponents.getSelectedItem());
 		configuration.put(PROPERTY_CREATE_VIEW, mCheckBoxCreateViews.isSelected() ? "true" : "false");
+		configuration.put(PROPERTY_KEEP_MODEL, mCheckBoxKeepModel.isSelected() ? "true" : "false");
 
 		configuration.put(PROPERTY_NEIGHBOURS, mTextFieldNeighbours.getText());
 		configuration.put(PROPERTY_MIN_DIST, mTextFieldMinDist.getText());
@@ -230,6 +239,7 @@ public class DETaskCreateUMAPVisualization extends ConfigurableTask {
 		mComboBoxMetric.setSelectedItem(configuration.getProperty(PROPERTY_METRIC, METRIC_NAME[0]));
 
 		mCheckBoxCreateViews.setSelected("true".equals(configuration.getProperty(PROPERTY_CREATE_VIEW, "true")));
+		mCheckBoxKeepModel.setSelected("true".equals(configuration.getProperty(PROPERTY_KEEP_MODEL)));
 		}
 
 	@Override
@@ -246,6 +256,7 @@ public class DETaskCreateUMAPVisualization extends ConfigurableTask {
 		mComboBoxMetric.setSelectedItem(METRIC_NAME[0]);
 
 		mCheckBoxCreateViews.setSelected(true);
+		mCheckBoxKeepModel.setSelected(false);
 		}
 
 	@Override
@@ -402,9 +413,155 @@ public class DETaskCreateUMAPVisualization extends ConfigurableTask {
 				regularColumn[regularCount++] = column;
 			}
 
-		int[] varyingBits = new int[descriptorCount];
-		Object[] varyingKey = new Object[descriptorCount];
-		for (int fp=0; fp<descriptorCount; fp++) {
+		String metric = configuration.getProperty(PROPERTY_METRIC, METRIC_NAME[0]);
+		long[][] fingerprint = metric.equals("jaccard") ? getFingerprints(descriptorColumn, regularColumn) : null;
+		float[][] X = (fingerprint != null) ? null : calculateParameterMatrix(descriptorColumn, regularColumn);
+		if (threadMustDie())
+			return;
+
+		int parameterCount = (fingerprint != null) ? fingerprint[0].length * 64 : X[0].length;
+
+		int outputDims = 3;
+		try { outputDims = Integer.parseInt(configuration.getProperty(PROPERTY_DIMENSIONS, DEFAULT_DIMENSIONS)); } catch (NumberFormatException nfe) {}
+		if (outputDims > parameterCount)
+			outputDims = parameterCount;
+
+		int neighbours = Integer.parseInt(configuration.getProperty(PROPERTY_NEIGHBOURS, DEFAULT_NEIGHBOURS));
+		float minDist = Float.parseFloat(configuration.getProperty(PROPERTY_MIN_DIST, DEFAULT_MIN_DIST));
+		final Umap umap = new Umap();
+		float[][] Y = null;
+		try {
+			umap.setNumberComponents(outputDims);         // number of dimensions in result
+			umap.setNumberNearestNeighbours(neighbours);
+			umap.setMinDist(minDist);
+			umap.setMetric(metric);
+			umap.setThreads(Runtime.getRuntime().availableProcessors());
+			startProgress("Fitting UMAP transform...", 0, 0);
+			Y = (fingerprint != null) ? umap.fitTransform(fingerprint) : umap.fitTransform(X);
+			}
+		catch (Exception e) {
+			showErrorMessage(e.getMessage());
+			return;
+			}
+
+		if (!threadMustDie()) {
+			String[] columnTitle = new String[outputDims];
+			for (int i=0; i<outputDims; i++)
+				columnTitle[i] = (outputDims <= 3) ? "UMAP "+(char)('X'+i) : "UMAP "+(i+1);
+			final int firstNewColumn = mTableModel.addNewColumns(columnTitle);
+			for (int i=0; i<outputDims; i++)
+				for (int r=0; r<mFullDataRowCount; r++)
+					mTableModel.setTotalValueAt(""+Y[r][i], mFullDataRow[r], firstNewColumn+i);
+
+			mTableModel.finalizeNewColumns(firstNewColumn, this);
+
+			if ("true".equals(configuration.getProperty(PROPERTY_KEEP_MODEL)))
+				addModel(umap, descriptorColumn, regularColumn, firstNewColumn, outputDims, fingerprint != null);
+
+			if (outputDims >= 2 && "true".equals(configuration.getProperty(PROPERTY_CREATE_VIEW, "true"))) {
+				int colorColumn = -1;
+				for (int column=0; column<firstNewColumn; column++) {
+					if (mTableModel.isColumnTypeDouble(column)) {
+						colorColumn = column;
+						break;
+						}
+					}
+				if (colorColumn == -1) {
+					for (int column=0; column<firstNewColumn; column++) {
+						if (mTableModel.isColumnTypeCategory(column) && mTableModel.getCategoryCount(column) < VisualizationColor.cMaxColorCategories) {
+							colorColumn = column;
+							break;
+							}
+						}
+					}
+
+				final int dimensions = outputDims;
+				final int _colorColumn = colorColumn;
+				SwingUtilities.invokeLater(() -> {
+					DEMainPane mainPane = mParentFrame.getMainFrame().getMainPane();
+
+					int colorListMode = VisualizationColor.cColorListModeHSBLong;
+					Color[] colorList = (_colorColumn == -1) ? null : VisualizationColor.createColorWedge(Color.red, Color.blue, colorListMode, null);
+
+					if (dimensions == 2) {
+						VisualizationPanel2D vpanel1 = mainPane.add2DView("UMAP 2D", null);
+						vpanel1.setAxisColumnName(0, mTableModel.getColumnTitle(firstNewColumn));
+						vpanel1.setAxisColumnName(1, mTableModel.getColumnTitle(firstNewColumn + 1));
+						vpanel1.getVisualization().setPreferredChartType(ChartType.cTypeScatterPlot, -1, -1);
+	                    if (_colorColumn != -1)
+							vpanel1.getVisualization().getMarkerColor().setColor(_colorColumn, colorList, colorListMode);
+						}
+                    else {
+	                    VisualizationPanel3D vpanel2 = mainPane.add3DView("UMAP 3D", null);
+	                    vpanel2.setAxisColumnName(0, mTableModel.getColumnTitle(firstNewColumn));
+	                    vpanel2.setAxisColumnName(1, mTableModel.getColumnTitle(firstNewColumn+1));
+	                    vpanel2.setAxisColumnName(2, mTableModel.getColumnTitle(firstNewColumn+2));
+	                    vpanel2.getVisualization().setPreferredChartType(ChartType.cTypeScatterPlot, -1, -1);
+						if (_colorColumn != -1)
+		                    vpanel2.getVisualization().getMarkerColor().setColor(_colorColumn, colorList, colorListMode);
+	                    }
+					});
+				}
+			}
+		}
+
+	/**
+	 * Attaches the fitted UMAP to the table, such that DETaskAddRowsToUMAPVisualization can
+	 * later project new rows into the embedding without fitting again.
+	 */
+	@SuppressWarnings("unchecked")
+	private void addModel(Umap umap, int[] descriptorColumn, int[] regularColumn, int firstNewColumn, int outputDims, boolean isFingerprint) {
+		String[] sourceColumnName = new String[descriptorColumn.length+regularColumn.length];
+		for (int i=0; i<descriptorColumn.length; i++)
+			sourceColumnName[i] = mTableModel.getColumnTitleNoAlias(descriptorColumn[i]);
+		for (int i=0; i<regularColumn.length; i++)
+			sourceColumnName[descriptorColumn.length+i] = mTableModel.getColumnTitleNoAlias(regularColumn[i]);
+
+		String[] targetColumnName = new String[outputDims];
+		for (int i=0; i<outputDims; i++)
+			targetColumnName[i] = mTableModel.getColumnTitleNoAlias(firstNewColumn+i);
+
+		UMAPModel model = isFingerprint ? new UMAPModel(sourceColumnName, targetColumnName, null, null, null, umap)
+				: new UMAPModel(sourceColumnName, targetColumnName, mVaryingKey, mMeanParameter, mStdDevParameter, umap);
+
+		ArrayList<UMAPModel> modelList = (ArrayList<UMAPModel>)mTableModel.getExtensionData(DECompoundTableExtensionHandler.cExtensionNameUMAPModelList);
+		modelList = (modelList == null) ? new ArrayList<>() : new ArrayList<>(modelList);
+		modelList.add(model);
+		mTableModel.setExtensionData(DECompoundTableExtensionHandler.cExtensionNameUMAPModelList, modelList);
+		}
+
+	/**
+	 * If all selected columns are binary fingerprints, then UMAP with the jaccard metric
+	 * compares their packed bits directly without expanding them into a dense matrix.
+	 * @return one fingerprint per full data row or null, if any column is not a binary long[] fingerprint
+	 */
+	private long[][] getFingerprints(int[] descriptorColumn, int[] regularColumn) {
+		if (regularColumn.length != 0 || descriptorColumn.length == 0)
+			return null;
+
+		int length = 0;
+		for (int column:descriptorColumn) {
+			if (!mTableModel.getDescriptorHandler(column).getInfo().isBinary
+			 || !(mTableModel.getTotalRecord(mFullDataRow[0]).getData(column) instanceof long[]))
+				return null;
+			length += ((long[])mTableModel.getTotalRecord(mFullDataRow[0]).getData(column)).length;
+			}
+
+		long[][] fingerprint = new long[mFullDataRowCount][];
+		for (int r=0; r<mFullDataRowCount; r++)
+			fingerprint[r] = UMAPModel.getFingerprint(mTableModel, descriptorColumn, mFullDataRow[r], length);
+		return fingerprint;
+		}
+
+	/**
+	 * Expands all selected columns into one z-scored parameter per numerical column and varying descriptor key.
+	 * @return parameter matrix with one row per full data row
+	 */
+	private float[][] calculateParameterMatrix(int[] descriptorColumn, int[] regularColumn) {
+		int parameterCount = regularColumn.length;
+		int[] varyingBits = new int[descriptorColumn.length];
+		Object[] varyingKey = new Object[descriptorColumn.length];
+		for (int fp=0; fp<descriptorColumn.length; fp++) {
 			startProgress("Analysing '"+mTableModel.getColumnTitle(descriptorColumn[fp])+"'...", 0, 0);
         	if (mTableModel.getDescriptorHandler(descriptorColumn[fp]).getInfo().isBinary
 	         || DescriptorConstants.DESCRIPTOR_ReactionFP.shortName.equals(mTableModel.getColumnSpecialType(descriptorColumn[fp]))) {
@@ -433,7 +590,7 @@ public class DETaskCreateUMAPVisualization extends ConfigurableTask {
 				        varyingBits[fp] += Integer.bitCount(((int[])varyingKey[fp])[i]);
 		            }
 
-				regularCount += varyingBits[fp];
+				parameterCount += varyingBits[fp];
         		}
         	else {
 				byte[] firstIndex = (byte[])mTableModel.getTotalRecord(mFullDataRow[0]).getData(descriptorColumn[fp]);
@@ -455,194 +612,64 @@ public class DETaskCreateUMAPVisualization extends ConfigurableTask {
 					if (isVarying[i])
 						((int[])varyingKey[fp])[index++] = i;
 
-				regularCount += varyingKeyCount;
+				parameterCount += varyingKeyCount;
         		}
 			}
 
-		float[] rowParameter = new float[regularCount];
+		float[] rowParameter = new float[parameterCount];
 
 		startProgress("Calculating mean parameters...", 0, mFullDataRowCount);
-		float[] meanParameter = new float[regularCount];
+		float[] meanParameter = new float[parameterCount];
 		for (int r=0; r<mFullDataRowCount; r++) {
 			if (threadMustDie())
 				break;
 			updateProgress(r);
 
-			calculateParameterRow(descriptorColumn, regularColumn, mFullDataRow[r], varyingKey, rowParameter);
+			UMAPModel.calculateParameterRow(mTableModel, descriptorColumn, regularColumn, mFullDataRow[r], varyingKey, rowParameter);
 
-			for (int i=0; i<regularCount; i++)
+			for (int i=0; i<parameterCount; i++)
 				meanParameter[i] += rowParameter[i];
 			}
 		if (!threadMustDie())
-			for (int i=0; i<regularCount; i++)
+			for (int i=0; i<parameterCount; i++)
 				meanParameter[i] /= (double)mFullDataRowCount;
 
 		startProgress("Calculating variance...", 0, mFullDataRowCount);
-		double[] variance = new double[regularCount];
+		double[] variance = new double[parameterCount];
 		for (int r=0; r<mFullDataRowCount; r++) {
 			if (threadMustDie())
 				break;
 			updateProgress(r);
 
-			calculateParameterRow(descriptorColumn, regularColumn, mFullDataRow[r], varyingKey, rowParameter);
+			UMAPModel.calculateParameterRow(mTableModel, descriptorColumn, regularColumn, mFullDataRow[r], varyingKey, rowParameter);
 
-			for (int i=0; i<regularCount; i++) {
+			for (int i=0; i<parameterCount; i++) {
 				double dif = (rowParameter[i] - meanParameter[i]);
 				variance[i] += dif * dif;
 				}
 			}
 		if (!threadMustDie())
-			for (int i=0; i<regularCount; i++)
+			for (int i=0; i<parameterCount; i++)
 				variance[i] /= mFullDataRowCount-1;
 
-		int outputDims = 3;
-		try { outputDims = Integer.parseInt(configuration.getProperty(PROPERTY_DIMENSIONS, DEFAULT_DIMENSIONS)); } catch (NumberFormatException nfe) {}
-		if (outputDims > regularCount)
-			outputDims = regularCount;
+		mVaryingKey = varyingKey;
+		mMeanParameter = meanParameter;
+		mStdDevParameter = new float[parameterCount];
+		for (int i=0; i<parameterCount; i++)
+			mStdDevParameter[i] = (float)Math.sqrt(variance[i]);
 
 		startProgress("Calculating UMAP input array...", 0, mFullDataRowCount);
-		float [][] X = new float[mFullDataRowCount][regularCount];
+		float[][] X = new float[mFullDataRowCount][parameterCount];
 		for (int r=0; r<mFullDataRowCount; r++) {
 			if (threadMustDie())
 				break;
 			updateProgress(r);
 
-			calculateParameterRow(descriptorColumn, regularColumn, mFullDataRow[r], varyingKey, rowParameter);
-			for (int i=0; i<regularCount; i++)
-				X[r][i] = (rowParameter[i] - meanParameter[i]) / (float)Math.sqrt(variance[i]);
-			}
-
-		int neighbours = Integer.parseInt(configuration.getProperty(PROPERTY_NEIGHBOURS, DEFAULT_NEIGHBOURS));
-		float minDist = Float.parseFloat(configuration.getProperty(PROPERTY_MIN_DIST, DEFAULT_MIN_DIST));
-		String metric = configuration.getProperty(PROPERTY_METRIC, METRIC_NAME[0]);
-		float[][] Y = null;
-		try {
-			final Umap umap = new Umap();
-			umap.setNumberComponents(outputDims);         // number of dimensions in result
-			umap.setNumberNearestNeighbours(neighbours);
-			umap.setMinDist(minDist);
-			umap.setMetric(metric);
-			umap.setThreads(Runtime.getRuntime().availableProcessors());
-			startProgress("Fitting UMAP transform...", 0, 0);
-			Y = umap.fitTransform(X);
-			}
-		catch (Exception e) {
-			showErrorMessage(e.getMessage());
-			return;
-			}
-
-		if (!threadMustDie()) {
-			String[] columnTitle = new String[outputDims];
-			for (int i=0; i<outputDims; i++)
-				columnTitle[i] = (outputDims <= 3) ? "UMAP "+(char)('X'+i) : "UMAP "+(i+1);
-			final int firstNewColumn = mTableModel.addNewColumns(columnTitle);
-			for (int i=0; i<outputDims; i++)
-				for (int r=0; r<mFullDataRowCount; r++)
-					mTableModel.setTotalValueAt(""+Y[r][i], mFullDataRow[r], firstNewColumn+i);
-
-			mTableModel.finalizeNewColumns(firstNewColumn, this);
-
-			if (outputDims >= 2 && "true".equals(configuration.getProperty(PROPERTY_CREATE_VIEW, "true"))) {
-				int colorColumn = -1;
-				for (int column=0; column<firstNewColumn; column++) {
-					if (mTableModel.isColumnTypeDouble(column)) {
-						colorColumn = column;
-						break;
-						}
-					}
-				if (colorColumn == -1) {
-					for (int column=0; column<firstNewColumn; column++) {
-						if (mTableModel.isColumnTypeCategory(column) && mTableModel.getCategoryCount(column) < VisualizationColor.cMaxColorCategories) {
-							colorColumn = column;
-							break;
-							}
-						}
-					}
-
-				final int dimensions = outputDims;
-				final int _colorColumn = colorColumn;
-				SwingUtilities.invokeLater(() -> {
-					DEMainPane mainPane = mParentFrame.getMainFrame().getMainPane();
-
-					int colorListMode = VisualizationColor.cColorListModeHSBLong;
-					Color[] colorList = (_colorColumn == -1) ? null : VisualizationColor.createColorWedge(Color.red, Color.blue, colorListMode, null);
-
-					if (dimensions == 2) {
-						VisualizationPanel2D vpanel1 = mainPane.add2DView("UMAP 2D", null);
-						vpanel1.setAxisColumnName(0, mTableModel.getColumnTitle(firstNewColumn));
-						vpanel1.setAxisColumnName(1, mTableModel.getColumnTitle(firstNewColumn + 1));
-						vpanel1.getVisualization().setPreferredChartType(ChartType.cTypeScatterPlot, -1, -1);
-	                    if (_colorColumn != -1)
-							vpanel1.getVisualization().getMarkerColor().setColor(_colorColumn, colorList, colorListMode);
-						}
-                    else {
-	                    VisualizationPanel3D vpanel2 = mainPane.add3DView("UMAP 3D", null);
-	                    vpanel2.setAxisColumnName(0, mTableModel.getColumnTitle(firstNewColumn));
-	                    vpanel2.setAxisColumnName(1, mTableModel.getColumnTitle(firstNewColumn+1));
-	                    vpanel2.setAxisColumnName(2, mTableModel.getColumnTitle(firstNewColumn+2));
-	                    vpanel2.getVisualization().setPreferredChartType(ChartType.cTypeScatterPlot, -1, -1);
-						if (_colorColumn != -1)
-		                    vpanel2.getVisualization().getMarkerColor().setColor(_colorColumn, colorList, colorListMode);
-	                    }
-					});
-				}
-			}
-		}
-
-	private void calculateParameterRow(int[] descriptorColumn, int[] regularColumn, int row, Object[] varyingKey, float[] rowParameter) {
-		int paramIndex = 0;
-
-        for (int fp=0; fp<descriptorColumn.length; fp++) {
-	        if (DescriptorConstants.DESCRIPTOR_ReactionFP.shortName.equals(mTableModel.getColumnSpecialType(descriptorColumn[fp]))) {
-		        long[] currentIndex = (long[])mTableModel.getTotalRecord(row).getData(descriptorColumn[fp]);
-		        for (int i=0; i<currentIndex.length; i++) {
-			        boolean isReactionCenter = (i < DescriptorHandlerReactionFP.REACTION_CENTER_LONG_COUNT);
-			        long theBit = 1L;
-			        for (int j=0; j<64; j++) {
-				        if ((((long[])varyingKey[fp])[i] & theBit) != 0) {
-					        rowParameter[paramIndex++] = ((currentIndex[i] & theBit) == 0) ? 0.0f
-						: isReactionCenter ? DescriptorHandlerReactionFP.REACTION_CENTER_WEIGHT : DescriptorHandlerReactionFP.PERIPHERY_WEIGHT;
-					        }
-				        theBit <<= 1;
-				        }
-			        }
-		        }
-	        else if (mTableModel.getDescriptorHandler(descriptorColumn[fp]).getInfo().isBinary) {
-		        if (mTableModel.getTotalRecord(row).getData(descriptorColumn[fp]) instanceof long[]) {
-					long[] currentIndex = (long[])mTableModel.getTotalRecord(row).getData(descriptorColumn[fp]);
-					for (int i=0; i<currentIndex.length; i++) {
-						long theBit = 1L;
-						for (int j=0; j<64; j++) {
-							if ((((long[])varyingKey[fp])[i] & theBit) != 0) {
-								rowParameter[paramIndex++] = ((currentIndex[i] & theBit) != 0) ? 1.0f : 0.0f;
-								}
-							theBit <<= 1;
-							}
-						}
-		            }
-				else {
-			        int[] currentIndex = (int[])mTableModel.getTotalRecord(row).getData(descriptorColumn[fp]);
-			        for (int i=0; i<currentIndex.length; i++) {
-				        int theBit = 1;
-				        for (int j=0; j<32; j++) {
-					        if ((((int[])varyingKey[fp])[i] & theBit) != 0) {
-						        rowParameter[paramIndex++] = ((currentIndex[i] & theBit) != 0) ? 1.0f : 0.0f;
-						        }
-					        theBit <<= 1;
-					        }
-				        }
-			        }
-        		}
-        	else {
-				byte[] currentIndex = (byte[])mTableModel.getTotalRecord(row).getData(descriptorColumn[fp]);
-				for (int i=0; i<((int[])varyingKey[fp]).length; i++)
-					rowParameter[paramIndex++] = currentIndex[((int[])varyingKey[fp])[i]];
-        		}
+			UMAPModel.calculateParameterRow(mTableModel, descriptorColumn, regularColumn, mFullDataRow[r], varyingKey, rowParameter);
+			for (int i=0; i<parameterCount; i++)
+				X[r][i] = (rowParameter[i] - meanParameter[i]) / mStdDevParameter[i];
 			}
 
-		for (int i=0; i<regularColumn.length; i++) {
-			int column = regularColumn[i];
-			rowParameter[paramIndex++] = mTableModel.getTotalDoubleAt(row, column);
-			}
+		return X;
 		}
 	}
@@ -25,6 +25,8 @@ import com.actelion.research.datawarrior.task.ConfigurableTask;
 import com.actelion.research.gui.hidpi.HiDPIHelper;
 import com.actelion.research.table.model.CompoundRecord;
 import com.actelion.research.table.model.CompoundTableModel;
+import com.actelion.research.table.model.ComputeScheduler;
+import com.actelion.research.table.model.KeyHash;
 import info.clearthought.layout.TableLayout;
 
 import javax.swing.*;
@@ -33,8 +35,8 @@ import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Comparator;
 import java.util.Properties;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class DETaskDeleteDuplicateRows extends ConfigurableTask implements ActionListener {
 	public static final int MODE_MERGE_EQUIVALENT = 0;
@@ -278,7 +280,7 @@ public class DETaskDeleteDuplicateRows extends ConfigurableTask implements Actio
 				}
 			}
 
-		startProgress("Sorting Rows...", 0, 0);
+		startProgress("Finding Equivalent Rows...", 0, 0);
 
 		CompoundRecord[] record = new CompoundRecord[mTableModel.getTotalRowCount()];
 		for (int row=0; row<mTableModel.getTotalRowCount(); row++)
@@ -289,14 +291,13 @@ public class DETaskDeleteDuplicateRows extends ConfigurableTask implements Actio
 
 		ArrayList<ArrayList<Integer>> columnGroups = determineColumnGroups();
 
-		RedundancyComparator comparator = new RedundancyComparator(mTableModel, columnList, caseSensitive);
-
-		Arrays.sort(record, comparator);
+		EquivalentRowFinder finder = new EquivalentRowFinder(mTableModel, record, columnList, caseSensitive);
+		int[] group = finder.groupEquivalentRecords();
 
 		if (mMode == MODE_REMOVE_UNIQUE) {
 			boolean isFirstInSet = true;
 			for (int row=0; row<mTableModel.getTotalRowCount(); row++) {
-				boolean isLastInSet = (row + 1 == mTableModel.getTotalRowCount() || comparator.compare(record[row], record[row + 1]) != 0);
+				boolean isLastInSet = (row + 1 == mTableModel.getTotalRowCount() || group[row] != group[row + 1]);
 
 				if (isFirstInSet && isLastInSet)
 					record[row].markForDeletion();
@@ -311,7 +312,7 @@ public class DETaskDeleteDuplicateRows extends ConfigurableTask implements Actio
 			int firstRow = 0;
 			int row = 1;
 			while (row < mTableModel.getTotalRowCount()) {
-				if (comparator.compare(record[row - 1], record[row]) == 0)
+				if (group[row - 1] == group[row])
 					record[row].markForDeletion();
 				else if (mMode == MODE_MERGE_EQUIVALENT) {
 					if (firstRow < row - 1)
@@ -520,36 +521,171 @@ public class DETaskDeleteDuplicateRows extends ConfigurableTask implements Actio
 		}
 	}
 
-class RedundancyComparator implements Comparator<CompoundRecord> {
-	private final CompoundTableModel mTableModel;
+/**
+ * Finds groups of records with equivalent content in a given set of columns. Instead of sorting
+ * records with a comparator, one 64-bit hash is calculated per record from the raw cell data in
+ * parallel. Records are then assigned to groups using an open-addressing hash table.
+ * Full comparisons are only done for records whose hash matches a group's first record,
+ * such that hash collisions never cause non-equivalent records to be merged.
+ */
+class EquivalentRowFinder {
+	private static final int MAX_CHUNK_SIZE = 4096;
+	private static final int COLUMN_SEPARATOR = 0x10000;	// outside of char range
+
+	private final CompoundRecord[] mRecord;
 	private final int[] mColumnList;
 	private final boolean[] mIsCaseSensitive;
+	private final String[][] mFormattedValue;	// [column index][record], if values are rounded or summarized; otherwise null
 
-	public RedundancyComparator(CompoundTableModel tableModel, int[] columnList, boolean caseSensitive) {
-		mTableModel = tableModel;
+	public EquivalentRowFinder(CompoundTableModel tableModel, CompoundRecord[] record, int[] columnList, boolean caseSensitive) {
+		mRecord = record;
 		mColumnList = columnList;
 		mIsCaseSensitive = new boolean[columnList.length];
-		for (int i=0; i<columnList.length; i++)
-			mIsCaseSensitive[i] = caseSensitive || mTableModel.getColumnSpecialType(columnList[i]) != null;
+		mFormattedValue = new String[columnList.length][];
+		for (int i=0; i<columnList.length; i++) {
+			mIsCaseSensitive[i] = caseSensitive || tableModel.getColumnSpecialType(columnList[i]) != null;
+
+			// getValue() is not thread-safe; therefore, we get formatted values once before hashing
+			if (tableModel.isValueFormatted(columnList[i])) {
+				mFormattedValue[i] = new String[record.length];
+				for (int r=0; r<record.length; r++) {
+					String value = tableModel.getValue(record[r], columnList[i]);
+					mFormattedValue[i][r] = mIsCaseSensitive[i] ? value : value.toLowerCase();
+					}
+				}
+			}
+		}
+
+	/**
+	 * Reorders the records such that equivalent records are adjacent. Groups are ordered by the
+	 * original position of their first record. Records within a group keep their original order.
+	 * @return group index of every record in its new position
+	 */
+	public int[] groupEquivalentRecords() {
+		int count = mRecord.length;
+		long[] hash = new long[count];
+		AtomicInteger nextRecord = new AtomicInteger();
+		ComputeScheduler scheduler = ComputeScheduler.getInstance();
+		int threadCount = scheduler.getThreadCount(ComputeScheduler.PRIORITY_BACKGROUND);
+		int chunkSize = ComputeScheduler.getChunkSize(count, threadCount, MAX_CHUNK_SIZE);
+		scheduler.runParallel(ComputeScheduler.PRIORITY_BACKGROUND, threadCount, () -> {
+			for (int start=nextRecord.getAndAdd(chunkSize); start<count; start=nextRecord.getAndAdd(chunkSize)) {
+				int end = Math.min(count, start+chunkSize);
+				for (int r=start; r<end; r++)
+					hash[r] = calculateHash(r);
+				}
+			}, null);
+
+		// every used slot contains the first record of a group
+		int capacity = Integer.highestOneBit(Math.max(8, count)) << 2;
+		int mask = capacity - 1;
+		int[] slot = new int[capacity];
+		Arrays.fill(slot, -1);
+
+		int[] group = new int[count];
+		int groupCount = 0;
+		for (int r=0; r<count; r++) {
+			int index = (int)hash[r] & mask;
+			while (true) {
+				int first = slot[index];
+				if (first == -1) {
+					slot[index] = r;
+					group[r] = groupCount++;
+					break;
+					}
+				if (hash[first] == hash[r] && isEquivalent(first, r)) {
+					group[r] = group[first];
+					break;
+					}
+				index = (index + 1) & mask;
+				}
+			}
+
+		int[] groupStart = new int[groupCount+1];
+		for (int g:group)
+			groupStart[g+1]++;
+		for (int g=0; g<groupCount; g++)
+			groupStart[g+1] += groupStart[g];
+
+		CompoundRecord[] original = mRecord.clone();
+		int[] sortedGroup = new int[count];
+		for (int r=0; r<count; r++) {
+			int index = groupStart[group[r]]++;
+			mRecord[index] = original[r];
+			sortedGroup[index] = group[r];
+			}
+
+		return sortedGroup;
+		}
+
+	private long calculateHash(int r) {
+		long h = KeyHash.start();
+		for (int i=0; i<mColumnList.length; i++) {
+			if (mFormattedValue[i] != null) {
+				h = KeyHash.add(h, mFormattedValue[i][r]);
+				}
+			else {
+				byte[] bytes = (byte[])mRecord[r].getData(mColumnList[i]);
+				if (bytes != null) {
+					if (mIsCaseSensitive[i]) {
+						h = KeyHash.add(h, bytes);
+						}
+					else if (isASCII(bytes)) {
+						for (byte b:bytes)
+							h = KeyHash.add(h, toLowerCase(b));
+						}
+					else {
+						h = KeyHash.add(h, new String(bytes).toLowerCase());
+						}
+					}
+				}
+			h = KeyHash.add(h, COLUMN_SEPARATOR);
+			}
+		return KeyHash.finish(h);
 		}
 
-	public int compare(CompoundRecord o1, CompoundRecord o2) {
-		int comparison = 0;
+	private boolean isEquivalent(int r1, int r2) {
 		for (int i=0; i<mColumnList.length; i++) {
-			String s1 = mTableModel.getValue(o1, mColumnList[i]);
-			String s2 = mTableModel.getValue(o2, mColumnList[i]);
-			if (!mIsCaseSensitive[i]) {
-				if (s1 != null)
-					s1 = s1.toLowerCase();
-				if (s2 != null)
-					s2 = s2.toLowerCase();
+			if (mFormattedValue[i] != null) {
+				if (!mFormattedValue[i][r1].equals(mFormattedValue[i][r2]))
+					return false;
+				continue;
+				}
+
+			byte[] b1 = (byte[])mRecord[r1].getData(mColumnList[i]);
+			byte[] b2 = (byte[])mRecord[r2].getData(mColumnList[i]);
+			int length1 = (b1 == null) ? 0 : b1.length;
+			int length2 = (b2 == null) ? 0 : b2.length;
+			if (length1 == 0 || length2 == 0) {
+				if (length1 != length2)
+					return false;
+				}
+			else if (mIsCaseSensitive[i]) {
+				if (!Arrays.equals(b1, b2))
+					return false;
+				}
+			else if (isASCII(b1) && isASCII(b2)) {
+				if (length1 != length2)
+					return false;
+				for (int j=0; j<length1; j++)
+					if (toLowerCase(b1[j]) != toLowerCase(b2[j]))
+						return false;
+				}
+			else if (!new String(b1).toLowerCase().equals(new String(b2).toLowerCase())) {
+				return false;
 				}
-			comparison = (s1 == null) ? ((s2 == null) ? 0 : 1)
-					   : (s2 == null) ? -1
-					   : s1.compareTo(s2);
-			if (comparison != 0)
-				return comparison;
 			}
-		return comparison;
+		return true;
+		}
+
+	private static boolean isASCII(byte[] bytes) {
+		for (byte b:bytes)
+			if (b < 0)
+				return false;
+		return true;
+		}
+
+	private static int toLowerCase(byte b) {
+		return (b >= 'A' && b <= 'Z') ? b + ('a' - 'A') : b;
 		}
 	}
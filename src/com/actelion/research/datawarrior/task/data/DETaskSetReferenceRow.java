@@ -143,11 +143,10 @@ public class DETaskSetReferenceRow extends ConfigurableTask {
 
 		if (list != -1) {
 			CompoundTableListHandler hlh = mTableModel.getListHandler();
-			long mask = hlh.getListMask(list);
 
 			int count = 0;
 			for (int row=0; row<mTableModel.getTotalRowCount(); row++)
-				if ((mTableModel.getRecord(row).getFlags() & mask) != 0)
+				if (hlh.isListMember(mTableModel.getRecord(row), list))
 					count++;
 
 			if (count < 2) {
@@ -157,13 +156,13 @@ public class DETaskSetReferenceRow extends ConfigurableTask {
 				if (which == WHICH_RANDOM) {
 					do {
 						newRow = new Random().nextInt(mTableModel.getTotalRowCount());
-						} while (newRow == oldRow || (mTableModel.getRecord(newRow).getFlags() & mask) == 0);
+						} while (newRow == oldRow || !hlh.isListMember(mTableModel.getRecord(newRow), list));
 					}
 				else {	// WHICH_NEXT
 					newRow = oldRow;
 					do {
 						newRow = (newRow+1 == mTableModel.getTotalRowCount()) ? 0 : newRow+1;
-						} while ((mTableModel.getRecord(newRow).getFlags() & mask) == 0);
+						} while (!hlh.isListMember(mTableModel.getRecord(newRow), list));
 					}
 				}
 			}
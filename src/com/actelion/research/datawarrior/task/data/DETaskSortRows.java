@@ -40,8 +40,13 @@ public class DETaskSortRows extends ConfigurableTask {
 	private static final String PROPERTY_DESCENDING = "descending";
 	private static final String PROPERTY_SELECTED_FIRST = "selectedFirst";
 
-    private JComboBox			mComboBoxColumn;
-    private JRadioButton		mRadioButton,mRadioButtonSelectedFirst;
+	// secondary sort columns use the property names above with appended level number, e.g. 'column2'
+	private static final int MAX_SORT_LEVELS = 3;
+	private static final String ITEM_NONE = "<none>";
+
+    private JComboBox[]			mComboBoxColumn;
+    private JRadioButton[]		mRadioButton;
+    private JRadioButton		mRadioButtonSelectedFirst;
     private CompoundTableModel	mTableModel;
 	private int					mDefaultColumn;
 	private boolean				mSelectedFirst;
@@ -60,7 +65,13 @@ public class DETaskSortRows extends ConfigurableTask {
 
 	@Override
 	public boolean isRedundant(Properties previousConfiguration, Properties currentConfiguration) {
-		return currentConfiguration.getProperty(PROPERTY_COLUMN).equals(previousConfiguration.getProperty(PROPERTY_COLUMN));
+		return currentConfiguration.getProperty(PROPERTY_COLUMN).equals(previousConfiguration.getProperty(PROPERTY_COLUMN))
+			&& currentConfiguration.getProperty(PROPERTY_COLUMN+"2") == null
+			&& previousConfiguration.getProperty(PROPERTY_COLUMN+"2") == null;
+		}
+
+	private static String getLevelSuffix(int level) {
+		return (level == 0) ? "" : Integer.toString(level+1);
 		}
 
 	@Override
@@ -78,23 +89,31 @@ public class DETaskSortRows extends ConfigurableTask {
 	@Override
 	public JComponent createDialogContent() {
 		JPanel p = new JPanel();
-        double[][] size = { {8, TableLayout.PREFERRED, 4, TableLayout.PREFERRED, 8},
-                            {8, TableLayout.PREFERRED, 16, TableLayout.PREFERRED, TableLayout.PREFERRED, 8} };
-        p.setLayout(new TableLayout(size));
-
-		mComboBoxColumn = new JComboBox();
-		for (int column=0; column<mTableModel.getTotalColumnCount(); column++)
-			if (mTableModel.isColumnDisplayable(column))
-				mComboBoxColumn.addItem(mTableModel.getColumnTitle(column));
-		mComboBoxColumn.setEditable(true);
-		p.add(new JLabel("Column:"), "1,1");
-		p.add(mComboBoxColumn, "3,1");
-
-		mRadioButton = new JRadioButton("Descending order");
-		p.add(mRadioButton, "1,3,3,3");
+		double[][] size = { {8, TableLayout.PREFERRED, 4, TableLayout.PREFERRED, 8, TableLayout.PREFERRED, 8},
+							new double[2*MAX_SORT_LEVELS+3] };
+		for (int i=0; i<size[1].length; i++)
+			size[1][i] = (i % 2 == 1) ? TableLayout.PREFERRED : (i == 2*MAX_SORT_LEVELS) ? 16 : (i == 0 || i == size[1].length-1) ? 8 : 4;
+		p.setLayout(new TableLayout(size));
+
+		mComboBoxColumn = new JComboBox[MAX_SORT_LEVELS];
+		mRadioButton = new JRadioButton[MAX_SORT_LEVELS];
+		for (int level=0; level<MAX_SORT_LEVELS; level++) {
+			mComboBoxColumn[level] = new JComboBox();
+			if (level != 0)
+				mComboBoxColumn[level].addItem(ITEM_NONE);
+			for (int column=0; column<mTableModel.getTotalColumnCount(); column++)
+				if (mTableModel.isColumnDisplayable(column))
+					mComboBoxColumn[level].addItem(mTableModel.getColumnTitle(column));
+			mComboBoxColumn[level].setEditable(true);
+			p.add(new JLabel(level == 0 ? "Column:" : "Then by:"), "1,"+(1+2*level));
+			p.add(mComboBoxColumn[level], "3,"+(1+2*level));
+
+			mRadioButton[level] = new JRadioButton("Descending order");
+			p.add(mRadioButton[level], "5,"+(1+2*level));
+			}
 
 		mRadioButtonSelectedFirst = new JRadioButton("Move selected rows to top.");
-		p.add(mRadioButtonSelectedFirst, "1,4,3,4");
+		p.add(mRadioButtonSelectedFirst, "1,"+(1+2*MAX_SORT_LEVELS)+",5,"+(1+2*MAX_SORT_LEVELS));
 
         return p;
 		}
@@ -102,31 +121,45 @@ public class DETaskSortRows extends ConfigurableTask {
 	@Override
 	public Properties getDialogConfiguration() {
 		Properties configuration = new Properties();
-		configuration.put(PROPERTY_COLUMN, mTableModel.getColumnTitleNoAlias((String)mComboBoxColumn.getSelectedItem()));
-		configuration.put(PROPERTY_DESCENDING, mRadioButton.isSelected() ? "true" : "false");
+		int configLevel = 0;
+		for (int level=0; level<MAX_SORT_LEVELS; level++) {
+			String columnName = (String)mComboBoxColumn[level].getSelectedItem();
+			if (level == 0 || (columnName != null && !ITEM_NONE.equals(columnName))) {
+				String suffix = getLevelSuffix(configLevel++);
+				configuration.put(PROPERTY_COLUMN+suffix, mTableModel.getColumnTitleNoAlias(columnName));
+				configuration.put(PROPERTY_DESCENDING+suffix, mRadioButton[level].isSelected() ? "true" : "false");
+				}
+			}
 		configuration.put(PROPERTY_SELECTED_FIRST, mRadioButtonSelectedFirst.isSelected() ? "true" : "false");
 		return configuration;
 		}
 
 	@Override
 	public void setDialogConfiguration(Properties configuration) {
-		String columnName = configuration.getProperty(PROPERTY_COLUMN);
-		int column = mTableModel.findColumn(columnName);
-		if (column != -1)
-			mComboBoxColumn.setSelectedItem(mTableModel.getColumnTitle(column));
-		else
-			mComboBoxColumn.setSelectedItem(columnName);
-
-		mRadioButton.setSelected("true".equals(configuration.getProperty(PROPERTY_DESCENDING)));
+		for (int level=0; level<MAX_SORT_LEVELS; level++) {
+			String suffix = getLevelSuffix(level);
+			String columnName = configuration.getProperty(PROPERTY_COLUMN+suffix);
+			int column = (columnName == null) ? -1 : mTableModel.findColumn(columnName);
+			if (column != -1)
+				mComboBoxColumn[level].setSelectedItem(mTableModel.getColumnTitle(column));
+			else if (columnName != null)
+				mComboBoxColumn[level].setSelectedItem(columnName);
+			else if (level != 0)
+				mComboBoxColumn[level].setSelectedItem(ITEM_NONE);
+
+			mRadioButton[level].setSelected("true".equals(configuration.getProperty(PROPERTY_DESCENDING+suffix)));
+			}
 		mRadioButtonSelectedFirst.setSelected("true".equals(configuration.getProperty(PROPERTY_SELECTED_FIRST)));
 		}
 
 	@Override
 	public void setDialogConfigurationToDefault() {
-		if (mComboBoxColumn.getItemCount() != 0)
-			mComboBoxColumn.setSelectedIndex(0);
+		for (int level=0; level<MAX_SORT_LEVELS; level++) {
+			if (mComboBoxColumn[level].getItemCount() != 0)
+				mComboBoxColumn[level].setSelectedIndex(0);
+			mRadioButton[level].setSelected(false);
+			}
 
-		mRadioButton.setSelected(false);
 		mRadioButtonSelectedFirst.setSelected(false);
 		}
 
@@ -138,10 +171,15 @@ public class DETaskSortRows extends ConfigurableTask {
 	@Override
 	public boolean isConfigurationValid(Properties configuration, boolean isLive) {
 		if (isLive) {
-			int column = mTableModel.findColumn(configuration.getProperty(PROPERTY_COLUMN, ""));
-			if (column == -1 || !mTableModel.isColumnDisplayable(column)) {
-				showErrorMessage("Column '"+configuration.getProperty(PROPERTY_COLUMN)+"' not found.");
-		        return false;
+			for (int level=0; level<MAX_SORT_LEVELS; level++) {
+				String columnName = configuration.getProperty(PROPERTY_COLUMN+getLevelSuffix(level));
+				if (columnName == null && level != 0)
+					break;
+				int column = mTableModel.findColumn(columnName == null ? "" : columnName);
+				if (column == -1 || !mTableModel.isColumnDisplayable(column)) {
+					showErrorMessage("Column '"+columnName+"' not found.");
+			        return false;
+					}
 				}
 			}
 		return true;
@@ -149,8 +187,17 @@ public class DETaskSortRows extends ConfigurableTask {
 
 	@Override
 	public void runTask(Properties configuration) {
-		int column = mTableModel.findColumn(configuration.getProperty(PROPERTY_COLUMN, ""));
-		boolean descending = "true".equals(configuration.getProperty(PROPERTY_DESCENDING));
+		int levelCount = 1;
+		while (levelCount < MAX_SORT_LEVELS && configuration.getProperty(PROPERTY_COLUMN+getLevelSuffix(levelCount)) != null)
+			levelCount++;
+
+		int[] column = new int[levelCount];
+		boolean[] descending = new boolean[levelCount];
+		for (int level=0; level<levelCount; level++) {
+			String suffix = getLevelSuffix(level);
+			column[level] = mTableModel.findColumn(configuration.getProperty(PROPERTY_COLUMN+suffix, ""));
+			descending[level] = "true".equals(configuration.getProperty(PROPERTY_DESCENDING+suffix));
+			}
 		boolean selectedFirst = "true".equals(configuration.getProperty(PROPERTY_SELECTED_FIRST));
 		mTableModel.sort(column, descending, selectedFirst);
 		}
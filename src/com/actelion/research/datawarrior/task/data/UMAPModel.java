@@ -0,0 +1,276 @@
+/*
+ * Copyright 2017 Idorsia Pharmaceuticals Ltd., Hegenheimermattweg 91, CH-4123 Allschwil, Switzerland
+ *
+ * This file is part of DataWarrior.
+ *
+ * DataWarrior is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * DataWarrior is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License along with DataWarrior.
+ * If not, see http://www.gnu.org/licenses/.
+ *
+ * @author Thomas Sander
+ */
+
+package com.actelion.research.datawarrior.task.data;
+
+import com.actelion.research.chem.descriptor.DescriptorConstants;
+import com.actelion.research.chem.descriptor.DescriptorHandlerReactionFP;
+import com.actelion.research.table.model.CompoundTableModel;
+import com.tagbio.umap.Umap;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+
+/**
+ * A fitted UMAP model together with everything needed to project further rows into the
+ * embedding, which was created by DETaskCreateUMAPVisualization: the names of the source
+ * and target columns and, unless fingerprints are compared directly, the varying descriptor
+ * keys and the mean and standard deviation used to normalize the input parameters.
+ * UMAPModels are kept as table extension and, thus, are saved as part of DataWarrior files.
+ */
+public class UMAPModel {
+	public static final String MODEL_START = "<umapModel>";
+	public static final String MODEL_END = "</umapModel>";
+
+	private static final String SOURCE = "source";
+	private static final String TARGET = "target";
+	private static final String KEYS = "keys";
+	private static final String MEAN = "mean";
+	private static final String STDDEV = "stdDev";
+
+	private String[] mSourceColumnName,mTargetColumnName;
+	private Object[] mVaryingKey;	// long[] or int[] per descriptor; null if fingerprints are compared directly
+	private float[] mMeanParameter,mStdDevParameter;
+	private Umap mUmap;
+
+	/**
+	 * @param sourceColumnName names of all columns used for fitting the UMAP, descriptor columns first
+	 * @param targetColumnName names of the columns containing the embedding coordinates
+	 * @param varyingKey null, if umap was fitted on fingerprints; otherwise the varying keys per descriptor column
+	 * @param meanParameter null or mean of every input parameter
+	 * @param stdDevParameter null or standard deviation of every input parameter
+	 * @param umap fitted UMAP
+	 */
+	public UMAPModel(String[] sourceColumnName, String[] targetColumnName, Object[] varyingKey,
+					 float[] meanParameter, float[] stdDevParameter, Umap umap) {
+		mSourceColumnName = sourceColumnName;
+		mTargetColumnName = targetColumnName;
+		mVaryingKey = varyingKey;
+		mMeanParameter = meanParameter;
+		mStdDevParameter = stdDevParameter;
+		mUmap = umap;
+		}
+
+	/**
+	 * Creates a model from the lines following the MODEL_START line up to and including the MODEL_END line.
+	 * @param reader
+	 * @throws IOException
+	 */
+	public UMAPModel(BufferedReader reader) throws IOException {
+		mSourceColumnName = readEntry(reader, SOURCE);
+		mTargetColumnName = readEntry(reader, TARGET);
+		int keyCount = Integer.parseInt(readEntry(reader, KEYS)[0]);
+		if (keyCount != -1) {
+			mVaryingKey = new Object[keyCount];
+			for (int i=0; i<keyCount; i++) {
+				String[] entry = reader.readLine().split("\\t");
+				if (entry[0].equals("long")) {
+					long[] key = new long[entry.length-1];
+					for (int j=0; j<key.length; j++)
+						key[j] = Long.parseUnsignedLong(entry[j+1], 16);
+					mVaryingKey[i] = key;
+					}
+				else {
+					int[] key = new int[entry.length-1];
+					for (int j=0; j<key.length; j++)
+						key[j] = Integer.parseInt(entry[j+1]);
+					mVaryingKey[i] = key;
+					}
+				}
+			mMeanParameter = parseFloats(readEntry(reader, MEAN));
+			mStdDevParameter = parseFloats(readEntry(reader, STDDEV));
+			}
+		mUmap = Umap.readModel(reader);
+		if (!MODEL_END.equals(reader.readLine()))
+			throw new IOException("Invalid UMAP model end");
+		}
+
+	public void write(BufferedWriter writer) throws IOException {
+		writer.write(MODEL_START);
+		writer.newLine();
+		writeEntry(writer, SOURCE, mSourceColumnName);
+		writeEntry(writer, TARGET, mTargetColumnName);
+		writer.write(KEYS+"\t"+(mVaryingKey == null ? -1 : mVaryingKey.length));
+		writer.newLine();
+		if (mVaryingKey != null) {
+			for (Object key:mVaryingKey) {
+				StringBuilder sb = new StringBuilder();
+				if (key instanceof long[]) {
+					sb.append("long");
+					for (long l:(long[])key)
+						sb.append('\t').append(Long.toHexString(l));
+					}
+				else {
+					sb.append("int");
+					for (int i:(int[])key)
+						sb.append('\t').append(i);
+					}
+				writer.write(sb.toString());
+				writer.newLine();
+				}
+			writeEntry(writer, MEAN, mMeanParameter);
+			writeEntry(writer, STDDEV, mStdDevParameter);
+			}
+		mUmap.writeModel(writer);
+		writer.write(MODEL_END);
+		writer.newLine();
+		}
+
+	public String[] getSourceColumnNames() {
+		return mSourceColumnName;
+		}
+
+	public String[] getTargetColumnNames() {
+		return mTargetColumnName;
+		}
+
+	/**
+	 * Calculates embedding coordinates for the given rows, which must have complete data in all source columns.
+	 * @param tableModel
+	 * @param descriptorColumn source descriptor columns in the order of getSourceColumnNames()
+	 * @param regularColumn source numerical columns in the order of getSourceColumnNames()
+	 * @param row total row indexes
+	 * @return coordinates per row
+	 */
+	public float[][] project(CompoundTableModel tableModel, int[] descriptorColumn, int[] regularColumn, int[] row) {
+		if (mVaryingKey == null) {
+			int length = 0;
+			for (int column:descriptorColumn)
+				length += ((long[])tableModel.getTotalRecord(row[0]).getData(column)).length;
+
+			long[][] fingerprint = new long[row.length][];
+			for (int r=0; r<row.length; r++)
+				fingerprint[r] = getFingerprint(tableModel, descriptorColumn, row[r], length);
+			return mUmap.transform(fingerprint);
+			}
+
+		float[][] X = new float[row.length][mMeanParameter.length];
+		for (int r=0; r<row.length; r++) {
+			calculateParameterRow(tableModel, descriptorColumn, regularColumn, row[r], mVaryingKey, X[r]);
+			for (int i=0; i<mMeanParameter.length; i++)
+				X[r][i] = (X[r][i] - mMeanParameter[i]) / mStdDevParameter[i];
+			}
+		return mUmap.transform(X);
+		}
+
+	/**
+	 * @param length total number of longs of all descriptors' fingerprints
+	 * @return fingerprint of one descriptor column or concatenated fingerprints of multiple columns
+	 */
+	protected static long[] getFingerprint(CompoundTableModel tableModel, int[] descriptorColumn, int row, int length) {
+		if (descriptorColumn.length == 1)
+			return (long[])tableModel.getTotalRecord(row).getData(descriptorColumn[0]);
+
+		long[] fingerprint = new long[length];
+		int offset = 0;
+		for (int column:descriptorColumn) {
+			long[] fp = (long[])tableModel.getTotalRecord(row).getData(column);
+			System.arraycopy(fp, 0, fingerprint, offset, fp.length);
+			offset += fp.length;
+			}
+		return fingerprint;
+		}
+
+	protected static void calculateParameterRow(CompoundTableModel tableModel, int[] descriptorColumn, int[] regularColumn,
+												int row, Object[] varyingKey, float[] rowParameter) {
+		int paramIndex = 0;
+
+        for (int fp=0; fp<descriptorColumn.length; fp++) {
+	        if (DescriptorConstants.DESCRIPTOR_ReactionFP.shortName.equals(tableModel.getColumnSpecialType(descriptorColumn[fp]))) {
+		        long[] currentIndex = (long[])tableModel.getTotalRecord(row).getData(descriptorColumn[fp]);
+		        for (int i=0; i<currentIndex.length; i++) {
+			        boolean isReactionCenter = (i < DescriptorHandlerReactionFP.REACTION_CENTER_LONG_COUNT);
+			        long theBit = 1L;
+			        for (int j=0; j<64; j++) {
+				        if ((((long[])varyingKey[fp])[i] & theBit) != 0) {
+					        rowParameter[paramIndex++] = ((currentIndex[i] & theBit) == 0) ? 0.0f
+						: isReactionCenter ? DescriptorHandlerReactionFP.REACTION_CENTER_WEIGHT : DescriptorHandlerReactionFP.PERIPHERY_WEIGHT;
+					        }
+				        theBit <<= 1;
+				        }
+			        }
+		        }
+	        else if (tableModel.getDescriptorHandler(descriptorColumn[fp]).getInfo().isBinary) {
+		        if (tableModel.getTotalRecord(row).getData(descriptorColumn[fp]) instanceof long[]) {
+					long[] currentIndex = (long[])tableModel.getTotalRecord(row).getData(descriptorColumn[fp]);
+					for (int i=0; i<currentIndex.length; i++) {
+						long theBit = 1L;
+						for (int j=0; j<64; j++) {
+							if ((((long[])varyingKey[fp])[i] & theBit) != 0) {
+								rowParameter[paramIndex++] = ((currentIndex[i] & theBit) != 0) ? 1.0f : 0.0f;
+								}
+							theBit <<= 1;
+							}
+						}
+		            }
+				else {
+			        int[] currentIndex = (int[])tableModel.getTotalRecord(row).getData(descriptorColumn[fp]);
+			        for (int i=0; i<currentIndex.length; i++) {
+				        int theBit = 1;
+				        for (int j=0; j<32; j++) {
+					        if ((((int[])varyingKey[fp])[i] & theBit) != 0) {
+						        rowParameter[paramIndex++] = ((currentIndex[i] & theBit) != 0) ? 1.0f : 0.0f;
+						        }
+					        theBit <<= 1;
+					        }
+				        }
+			        }
+        		}
+        	else {
+				byte[] currentIndex = (byte[])tableModel.getTotalRecord(row).getData(descriptorColumn[fp]);
+				for (int i=0; i<((int[])varyingKey[fp]).length; i++)
+					rowParameter[paramIndex++] = currentIndex[((int[])varyingKey[fp])[i]];
+        		}
+			}
+
+		for (int i=0; i<regularColumn.length; i++) {
+			int column = regularColumn[i];
+			rowParameter[paramIndex++] = tableModel.getTotalDoubleAt(row, column);
+			}
+		}
+
+	private static void writeEntry(BufferedWriter writer, String key, String[] value) throws IOException {
+		writer.write(key);
+		for (String v:value)
+			writer.write("\t"+v);
+		writer.newLine();
+		}
+
+	private static void writeEntry(BufferedWriter writer, String key, float[] value) throws IOException {
+		StringBuilder sb = new StringBuilder(key);
+		for (float v:value)
+			sb.append('\t').append(v);
+		writer.write(sb.toString());
+		writer.newLine();
+		}
+
+	private static String[] readEntry(BufferedReader reader, String key) throws IOException {
+		String line = reader.readLine();
+		if (line == null || !line.startsWith(key+"\t"))
+			throw new IOException("Invalid UMAP model entry: "+line);
+		return line.substring(key.length()+1).split("\\t");
+		}
+
+	private static float[] parseFloats(String[] value) {
+		float[] f = new float[value.length];
+		for (int i=0; i<value.length; i++)
+			f[i] = Float.parseFloat(value[i]);
+		return f;
+		}
+	}
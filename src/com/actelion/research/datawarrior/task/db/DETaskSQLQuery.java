@@ -30,6 +30,7 @@ import com.actelion.research.gui.JLoginDialog;
 import com.actelion.research.gui.hidpi.HiDPIHelper;
 import com.actelion.research.table.model.CompoundTableEvent;
 import com.actelion.research.table.model.CompoundTableModel;
+import com.actelion.research.table.model.ComputeScheduler;
 import info.clearthought.layout.TableLayout;
 
 import javax.swing.*;
@@ -38,8 +39,12 @@ import java.awt.event.ItemEvent;
 import java.awt.event.ItemListener;
 import java.sql.*;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.Properties;
 import java.util.TreeMap;
+import java.util.concurrent.ForkJoinTask;
 
 import static com.actelion.research.chem.io.CompoundTableConstants.NEWLINE_REGEX;
 import static com.actelion.research.chem.io.CompoundTableConstants.NEWLINE_STRING;
@@ -59,6 +64,7 @@ public class DETaskSQLQuery extends ConfigurableTask implements ItemListener {
 	public static final String PROPERTY_SQL = "sql";
 	public static final String PROPERTY_USER = "user";
 	public static final String PROPERTY_PASSWORD = "password";
+	public static final String PROPERTY_FETCH_SIZE = "fetchSize";
 
 	private static final String PREFS_KEY_SQL = "datawarriorSQL";
 	private static final String PREFS_KEY_CONNECT_STRING = "datawarriorRecentConnectString";
@@ -69,17 +75,27 @@ public class DETaskSQLQuery extends ConfigurableTask implements ItemListener {
 	private static final int MAX_TOLERATED_SMILES_FAILURES = 4;
 	private static final String STRUCTURE_COLUMN_NAME_START ="Structure of ";
 
+	private static final int SMILES_UNDECIDED = 0;
+	private static final int SMILES_YES = 1;
+	private static final int SMILES_NO = 2;
+
+	private static final int DEFAULT_FETCH_SIZE = 1000;
+	private static final int ROW_BATCH_SIZE = 1024;
+	private static final int MAX_CACHED_STATEMENTS = 16;
+	private static final int CONNECTION_VALIDATION_TIMEOUT = 5;	// seconds
+
 	private static JLoginDialog sLoginDialog;
 	private static boolean	sOracleDriverRegistered,sMySQLDriverRegistered,sPostgreSQLDriverRegistered,sSQLServerDriverRegistered,sMSAccessDriverRegistered,sIRISDriverRegistered;
 	private static TreeMap<String,DatabaseSpec> sKnownDatabaseMap;	// map from database name to connect string
 	private static TreeMap<String,Connection> sConnectionCache;	// map from connect string to connection
+	private static LinkedHashMap<String,PreparedStatement> sStatementCache;	// map from connect string and SQL to statement
 
 	private final DEFrame mSourceFrame;
     private DEFrame mTargetFrame;
 	private final DataWarrior mApplication;
 	private JComboBox<String> mComboBoxDatabase;
 	private JTextArea mTextAreaSQL;
-	private JTextField mTextFieldConnectString;
+	private JTextField mTextFieldConnectString,mTextFieldFetchSize;
 
 	/**
 	 * When calling this method before actually using this task, then the dialog will show
@@ -376,7 +392,7 @@ public class DETaskSQLQuery extends ConfigurableTask implements ItemListener {
 		int gap = HiDPIHelper.scale(8);
 		double[][] size = { {gap, TableLayout.PREFERRED, gap, TableLayout.PREFERRED, gap, TableLayout.FILL, gap},
 							{gap, TableLayout.PREFERRED, gap, TableLayout.PREFERRED, 2*gap, TableLayout.PREFERRED, gap, TableLayout.PREFERRED,
-							 gap, TableLayout.PREFERRED, gap>>1, TableLayout.PREFERRED, gap>>1, TableLayout.PREFERRED, gap>>1,
+							 gap, TableLayout.PREFERRED, gap, TableLayout.PREFERRED, gap>>1, TableLayout.PREFERRED, gap>>1, TableLayout.PREFERRED, gap>>1,
 									TableLayout.PREFERRED, gap>>1, TableLayout.PREFERRED, gap>>1, TableLayout.PREFERRED, gap} };
 
 		JPanel content = new JPanel();
@@ -405,15 +421,19 @@ public class DETaskSQLQuery extends ConfigurableTask implements ItemListener {
 		content.add(new JLabel("Connect string:"), "1,7");
 		content.add(mTextFieldConnectString, "3,7,5,7");
 
-		content.add(new JLabel("Examples:"), "1,9");
-		content.add(new JLabel("mysql://other.server.com/test_db"), "3,9,5,9");
-		content.add(new JLabel("postgresql://some.server.com/test_db"), "3,11,5,11");
-		content.add(new JLabel("oracle:thin:@some.server.com:1521:my_sid"), "3,13,5,13");
-		content.add(new JLabel("sqlserver://some.server.com:1433;databaseName=test_db"), "3,15,5,15");
-		content.add(new JLabel("IRIS://some.server.com:1972/IRISAPP"), "3,17,5,17");
+		mTextFieldFetchSize = new JTextField(6);
+		content.add(new JLabel("Fetch size:"), "1,9");
+		content.add(mTextFieldFetchSize, "3,9");
+
+		content.add(new JLabel("Examples:"), "1,11");
+		content.add(new JLabel("mysql://other.server.com/test_db"), "3,11,5,11");
+		content.add(new JLabel("postgresql://some.server.com/test_db"), "3,13,5,13");
+		content.add(new JLabel("oracle:thin:@some.server.com:1521:my_sid"), "3,15,5,15");
+		content.add(new JLabel("sqlserver://some.server.com:1433;databaseName=test_db"), "3,17,5,17");
+		content.add(new JLabel("IRIS://some.server.com:1972/IRISAPP"), "3,19,5,19");
 		try {
 			Class.forName("net.ucanaccess.jdbc.UcanaccessDriver");
-			content.add(new JLabel("ucanaccess://c:/sample.mdb;memory=true"), "3,19,5,19");
+			content.add(new JLabel("ucanaccess://c:/sample.mdb;memory=true"), "3,21,5,21");
 			}
 		catch (ClassNotFoundException cnfe) {}
 
@@ -458,6 +478,9 @@ public class DETaskSQLQuery extends ConfigurableTask implements ItemListener {
 
 		configuration.setProperty(PROPERTY_SQL, mTextAreaSQL.getText().replaceAll(NEWLINE_REGEX, NEWLINE_STRING));
 
+		if (!mTextFieldFetchSize.getText().isEmpty())
+			configuration.setProperty(PROPERTY_FETCH_SIZE, mTextFieldFetchSize.getText());
+
 		return configuration;
 		}
 
@@ -476,6 +499,7 @@ public class DETaskSQLQuery extends ConfigurableTask implements ItemListener {
 			}
 		mTextFieldConnectString.setText(configuration.getProperty(PROPERTY_CONNECT_STRING, ""));
 		mTextAreaSQL.setText(configuration.getProperty(PROPERTY_SQL, "").replace(NEWLINE_STRING, "\n"));
+		mTextFieldFetchSize.setText(configuration.getProperty(PROPERTY_FETCH_SIZE, Integer.toString(DEFAULT_FETCH_SIZE)));
 		}
 
 	@Override
@@ -484,6 +508,7 @@ public class DETaskSQLQuery extends ConfigurableTask implements ItemListener {
 			mComboBoxDatabase.setSelectedIndex(0);
 		String sql = DataWarrior.getPreferences().get(PREFS_KEY_SQL, "");
 		mTextAreaSQL.setText(sql);
+		mTextFieldFetchSize.setText(Integer.toString(DEFAULT_FETCH_SIZE));
 		}
 
 	@Override
@@ -501,6 +526,19 @@ public class DETaskSQLQuery extends ConfigurableTask implements ItemListener {
 			showErrorMessage("No SQL-query defined.");
 			return false;
 			}
+		String fetchSize = configuration.getProperty(PROPERTY_FETCH_SIZE);
+		if (fetchSize != null) {
+			try {
+				if (Integer.parseInt(fetchSize) < 1) {
+					showErrorMessage("The fetch size must be a positive integer.");
+					return false;
+					}
+				}
+			catch (NumberFormatException nfe) {
+				showErrorMessage("The fetch size is not numerical.");
+				return false;
+				}
+			}
 		return true;	// assuming that the connect string and sql syntax is OK
 		}
 
@@ -510,80 +548,243 @@ public class DETaskSQLQuery extends ConfigurableTask implements ItemListener {
 		String user = configuration.getProperty(PROPERTY_USER);
 		String password = configuration.getProperty(PROPERTY_PASSWORD);
 		DatabaseSpec spec = (databaseName == null) ? null : sKnownDatabaseMap.get(databaseName);
-		String connectString = configuration.getProperty(PROPERTY_CONNECT_STRING, "");
+		String connectString = (spec != null) ? spec.connectString : configuration.getProperty(PROPERTY_CONNECT_STRING, "");
 
-		if (spec != null)
-			openConnection(getParentFrame(), spec.connectString, spec.user, spec.password, spec.connector);
-		else
-			openConnection(getParentFrame(), connectString, user, password, null);
+		// Unless explicit credentials are given, we re-use an open connection, e.g. if a macro runs queries repeatedly
+		Connection connection = (sConnectionCache == null || user != null) ? null : sConnectionCache.get(connectString);
+		if (!isConnectionValid(connection)) {
+			if (spec != null)
+				openConnection(getParentFrame(), spec.connectString, spec.user, spec.password, spec.connector);
+			else
+				openConnection(getParentFrame(), connectString, user, password, null);
 
-		Connection connection = (sConnectionCache == null) ? null : sConnectionCache.get(spec != null ? spec.connectString : connectString);
+			connection = (sConnectionCache == null) ? null : sConnectionCache.get(connectString);
+			}
 
 		if (connection == null) {
 			showErrorMessage("Could not connect to database.");
 			return;
 			}
 
+		int fetchSize = DEFAULT_FETCH_SIZE;
+		try {
+			fetchSize = Integer.parseInt(configuration.getProperty(PROPERTY_FETCH_SIZE, Integer.toString(DEFAULT_FETCH_SIZE)));
+			}
+		catch (NumberFormatException nfe) {}
+
 		startProgress("Retrieving data ...", 0, 0);
 
+		// Rows are kept in batches, whose SMILES are converted on background threads while further rows arrive
 		String[] columnName = null;
-		ArrayList<byte[][]> resultList = new ArrayList<>();
+		ArrayList<byte[][][]> batchList = new ArrayList<>();
+		SmilesConverter smilesConverter = null;
+		int rowCount = 0;
 		try {
 			String sql = resolveINClauses(resolveVariables(configuration.getProperty(PROPERTY_SQL).replace(NEWLINE_STRING, " ")));
 			sql = resolveVariables(sql);
-			Statement stmt = connection.createStatement();
-			ResultSet rset = stmt.executeQuery (sql);
-			ResultSetMetaData metaData = rset.getMetaData();
-
-			columnName = new String[metaData.getColumnCount()];
-			for (int column=0; column<metaData.getColumnCount(); column++)
-				columnName[column] = metaData.getColumnName(column+1);
-	
-			while (rset.next()) {
-				byte[][] result = new byte[metaData.getColumnCount()][];
-				for (int column=0; column<metaData.getColumnCount(); column++) {
-					String s = rset.getString(column+1);
-					result[column] = (s == null) ? null : s.getBytes();
+			String statementKey = connectString.concat("\n").concat(sql);
+
+			// Only SQL without '?' is prepared and cached, because prepared statements would take
+			// a literal '?', e.g. a PostgreSQL JSONB operator, as parameter placeholder.
+			boolean isPrepared = (sql.indexOf('?') == -1);
+			Statement stmt = isPrepared ? checkOutPreparedStatement(connection, statementKey, sql) : connection.createStatement();
+			stmt.setFetchSize(fetchSize);
+
+			// in auto-commit mode some drivers, e.g. PostgreSQL, ignore the fetch size and buffer the entire result
+			boolean isAutoCommit = connection.getAutoCommit();
+			if (isAutoCommit)
+				connection.setAutoCommit(false);
+
+			try (ResultSet rset = isPrepared ? ((PreparedStatement)stmt).executeQuery() : stmt.executeQuery(sql)) {
+				ResultSetMetaData metaData = rset.getMetaData();
+				int columnCount = metaData.getColumnCount();
+				columnName = new String[columnCount];
+				int[] columnType = new int[columnCount];
+				for (int column=0; column<columnCount; column++) {
+					columnName[column] = metaData.getColumnName(column+1);
+					columnType[column] = metaData.getColumnType(column+1);
 					}
-				resultList.add(result);
+
+				smilesConverter = new SmilesConverter(Math.min(MAX_COLUMNS_FOR_SMILES_CHECK, columnCount));
+				byte[][][] batch = new byte[ROW_BATCH_SIZE][][];
+				int batchRowCount = 0;
+				while (rset.next()) {
+					byte[][] row = new byte[columnCount][];
+					for (int column=0; column<columnCount; column++)
+						row[column] = getCellBytes(rset, column+1, columnType[column]);
+					batch[batchRowCount++] = row;
+					if (batchRowCount == ROW_BATCH_SIZE) {
+						batchList.add(batch);
+						smilesConverter.addBatch(batch);
+						rowCount += batchRowCount;
+						batch = new byte[ROW_BATCH_SIZE][][];
+						batchRowCount = 0;
+						if (threadMustDie())
+							break;
+						}
+					}
+				if (batchRowCount != 0) {
+					batch = Arrays.copyOf(batch, batchRowCount);
+					batchList.add(batch);
+					smilesConverter.addBatch(batch);
+					rowCount += batchRowCount;
+					}
+				}
+			finally {
+				if (isAutoCommit)
+					connection.setAutoCommit(true);
+				if (isPrepared)
+					checkInPreparedStatement(statementKey, (PreparedStatement)stmt);
+				else
+					closeStatement(stmt);
 				}
-			rset.close();
-			stmt.close();
 			}
 		catch (SQLException e) {
+			if (smilesConverter != null)
+				smilesConverter.finish();
 			showErrorMessage(e.toString());
 			return;
 			}
 
-		int oldColumnCount = columnName.length;
-		columnName = handleSmiles(columnName, resultList);
+		smilesConverter.finish();
+		boolean isRetrievalCancelled = threadMustDie();	// if cancelled while retrieving, we show the rows retrieved so far
+
+		// every structure column is inserted in front of its SMILES column
+		int[] smilesColumn = smilesConverter.getSmilesColumns();
+		int[] destColumn = new int[columnName.length];
+		int insertedCount = 0;
+		for (int column=0; column<columnName.length; column++) {
+			if (insertedCount < smilesColumn.length && smilesColumn[insertedCount] == column)
+				insertedCount++;
+			destColumn[column] = column + insertedCount;
+			}
 
 		mTargetFrame = mApplication.getEmptyFrame("Custom SQL Result");
-		mTargetFrame.getTableModel().initializeTable(resultList.size(), columnName.length);
+		CompoundTableModel tableModel = mTargetFrame.getTableModel();
+		tableModel.initializeTable(rowCount, columnName.length + smilesColumn.length);
 
 		for (int column=0; column<columnName.length; column++)
-			mTargetFrame.getTableModel().setColumnName(columnName[column], column);
+			tableModel.setColumnName(columnName[column], destColumn[column]);
+		for (int column:smilesColumn) {
+			tableModel.setColumnName(STRUCTURE_COLUMN_NAME_START+columnName[column], destColumn[column]-1);
+			tableModel.setColumnProperty(destColumn[column]-1,
+					CompoundTableConstants.cColumnPropertySpecialType, CompoundTableConstants.cColumnTypeIDCode);
+			}
+
+		startProgress("Populating table ...", 0, rowCount);
+		int row = 0;
+		for (int b=0; b<batchList.size() && (isRetrievalCancelled || !threadMustDie()); b++) {
+			byte[][][] batch = batchList.get(b);
+			byte[][][] idcode = smilesConverter.getIDCodes(b);
+			batchList.set(b, null);	// the table model keeps the cell data, but not the row arrays
+			for (int i=0; i<batch.length; i++) {
+				for (int column=0; column<batch[i].length; column++)
+					tableModel.setTotalDataAt(batch[i][column], row, destColumn[column]);
+				for (int column:smilesColumn)
+					tableModel.setTotalDataAt(idcode[column][i], row, destColumn[column]-1);
+				row++;
+				}
+			updateProgress(row);
+			}
 
-		startProgress("Populating table ...", 0, resultList.size());
-		for (int row=0; row<resultList.size(); row++) {
-			if (threadMustDie())
-				break;
+		tableModel.finalizeTable(CompoundTableEvent.cSpecifierDefaultFiltersAndViews, this);
+		}
 
-			if ((row & 15) == 15)
-				updateProgress(row);
+	/**
+	 * Returns the cell content as bytes of its text. Integer columns are retrieved with typed
+	 * getters, which avoids creating intermediate Strings and, depending on the driver, BigDecimals.
+	 * Other columns are retrieved as Strings to keep the text as formatted by the database.
+	 * @param rset
+	 * @param column 1-based column index
+	 * @param sqlType java.sql.Types of the column
+	 * @return cell text or null
+	 * @throws SQLException
+	 */
+	private static byte[] getCellBytes(ResultSet rset, int column, int sqlType) throws SQLException {
+		switch (sqlType) {
+		case Types.TINYINT:
+		case Types.SMALLINT:
+		case Types.INTEGER:
+			long value = rset.getLong(column);
+			return rset.wasNull() ? null : toBytes(value);
+		default:
+			String s = rset.getString(column);
+			return (s == null) ? null : s.getBytes();
+			}
+		}
+
+	private static byte[] toBytes(long value) {
+		if (value == Long.MIN_VALUE)
+			return Long.toString(value).getBytes();
+
+		byte[] buffer = new byte[20];
+		int index = buffer.length;
+		boolean isNegative = (value < 0);
+		if (isNegative)
+			value = -value;
+		do {
+			buffer[--index] = (byte)('0' + value % 10);
+			value /= 10;
+			} while (value != 0);
+		if (isNegative)
+			buffer[--index] = '-';
+		return Arrays.copyOfRange(buffer, index, buffer.length);
+		}
+
+	private static boolean isConnectionValid(Connection connection) {
+		try {
+			return connection != null && connection.isValid(CONNECTION_VALIDATION_TIMEOUT);
+			}
+		catch (Exception e) {
+			return false;
+			}
+		}
 
-			byte[][] result = resultList.get(row);
-			for (int column=0; column<columnName.length; column++)
-				mTargetFrame.getTableModel().setTotalDataAt(result[column], row, column);
+	/**
+	 * Takes a prepared statement for the given SQL from the statement cache or prepares a new one.
+	 * While checked out, the statement is not available to other queries. Caching statements
+	 * avoids repeated parsing and planning by the database, if macros run the same query again.
+	 * @param connection
+	 * @param key connect string and SQL
+	 * @param sql
+	 * @return prepared statement, which must be returned with checkInPreparedStatement()
+	 * @throws SQLException
+	 */
+	private static synchronized PreparedStatement checkOutPreparedStatement(Connection connection, String key, String sql) throws SQLException {
+		PreparedStatement statement = (sStatementCache == null) ? null : sStatementCache.remove(key);
+		if (statement != null && (statement.isClosed() || statement.getConnection() != connection)) {
+			closeStatement(statement);
+			statement = null;
 			}
+		return (statement != null) ? statement : connection.prepareStatement(sql);
+		}
+
+	/**
+	 * Puts a statement back into the statement cache. If the cache is full,
+	 * then the least recently used statement is closed.
+	 * @param key connect string and SQL
+	 * @param statement
+	 */
+	private static synchronized void checkInPreparedStatement(String key, PreparedStatement statement) {
+		if (sStatementCache == null)
+			sStatementCache = new LinkedHashMap<>(16, 0.75f, true);
+
+		PreparedStatement oldStatement = sStatementCache.put(key, statement);
+		if (oldStatement != null)
+			closeStatement(oldStatement);
 
-		if (oldColumnCount != columnName.length)
-			for (int i=0; i<columnName.length; i++)
-				if (columnName[i].startsWith(STRUCTURE_COLUMN_NAME_START))
-					mTargetFrame.getTableModel().setColumnProperty(i,
-							CompoundTableConstants.cColumnPropertySpecialType, CompoundTableConstants.cColumnTypeIDCode);
+		Iterator<PreparedStatement> iterator = sStatementCache.values().iterator();
+		while (sStatementCache.size() > MAX_CACHED_STATEMENTS) {
+			closeStatement(iterator.next());
+			iterator.remove();
+			}
+		}
 
-		mTargetFrame.getTableModel().finalizeTable(CompoundTableEvent.cSpecifierDefaultFiltersAndViews, this);
+	private static void closeStatement(Statement statement) {
+		try {
+			statement.close();
+			}
+		catch (SQLException e) {}
 		}
 
 	private String resolveINClauses(String sql) {
@@ -626,67 +827,115 @@ public class DETaskSQLQuery extends ConfigurableTask implements ItemListener {
 		return mTargetFrame;
 		}
 
-	private String[] handleSmiles(String[] columnName, ArrayList<byte[][]> resultList) {
-		StereoMolecule mol = new StereoMolecule();
-		int columns = Math.min(MAX_COLUMNS_FOR_SMILES_CHECK, columnName.length);
-		for (int column=columns-1; column>=0; column--) {
-			if (checkForSmiles(resultList, mol, column)) {
-				columnName = insertStructureColumnFromSmiles(columnName, resultList, mol, column);
-				}
-			}
-		return columnName;
-		}
-
-	private String[] insertStructureColumnFromSmiles(String[] columnName, ArrayList<byte[][]> resultList, StereoMolecule mol, int smilesColumn) {
-		int columnCount = columnName.length;
-		String structureColumnName = STRUCTURE_COLUMN_NAME_START+columnName[smilesColumn];
-
-		String[] newColumnName = new String[columnCount+1];
-		for (int i=0; i<columnCount; i++) {
-			newColumnName[i < smilesColumn ? i : i+1] = columnName[i];
-			}
-		newColumnName[smilesColumn] = structureColumnName;
-
-		byte[][][] rowList = resultList.toArray(new byte[0][][]);
-		resultList.clear();
-		for (byte[][] row:rowList) {
-			byte[][] newRow = new byte[columnCount+1][];
-			for (int i=0; i<columnCount; i++)
-				newRow[i < smilesColumn ? i : i+1] = row[i];
-			if (isValidSmiles(mol, row[smilesColumn]))
-				newRow[smilesColumn] = getIDCodeFromMolecule(mol);
-			resultList.add(newRow);
-			}
-
-		return newColumnName;
-		}
-
 	/**
-	 * Checks whether a column contains valid SMILES codes, which is considered true if<br>
-	 * - the first MAX_ROWS_FOR_SMILES_CHECK non-null entries in the column are valid SMILES<br>
-	 * - or (if the column contains less than MAX_ROWS_FOR_SMILES_CHECK rows) every row contains a valid SMILES
-	 * @param column
-	 * @return
+	 * Checks the first columns of arriving result batches for SMILES codes and converts SMILES of
+	 * qualifying columns into idcodes on background threads, while further rows are retrieved.
+	 * A column qualifies, if the first MAX_ROWS_FOR_SMILES_CHECK non-null entries are valid SMILES
+	 * with at most MAX_TOLERATED_SMILES_FAILURES exceptions, or if the result has less rows and
+	 * every row contains a valid SMILES.
 	 */
-	private boolean checkForSmiles(ArrayList<byte[][]> resultList, StereoMolecule mol, int column) {
-		int found = 0;
-		int failures = 0;
-		for (byte[][] row:resultList) {
-			byte[] data = row[column];
-			if (data != null && data.length > 3) {
-				if (!isValidSmiles(mol, data)) {
-					failures++;
-					if (failures > MAX_TOLERATED_SMILES_FAILURES)
-						return false;
+	private class SmilesConverter {
+		private final StereoMolecule mMol;
+		private final int[] mFoundCount,mFailureCount,mState;
+		private final ArrayList<byte[][][]> mBatchList;
+		private final ArrayList<byte[][][]> mIDCodeList;	// [batch][column][row]
+		private final ArrayList<ForkJoinTask<?>> mTaskList;
+		private int mRowCount;
+
+		public SmilesConverter(int columnCount) {
+			mMol = new StereoMolecule();
+			mFoundCount = new int[columnCount];
+			mFailureCount = new int[columnCount];
+			mState = new int[columnCount];
+			mBatchList = new ArrayList<>();
+			mIDCodeList = new ArrayList<>();
+			mTaskList = new ArrayList<>();
+			}
+
+		public void addBatch(byte[][][] batch) {
+			mBatchList.add(batch);
+			mIDCodeList.add(new byte[mState.length][][]);
+			mRowCount += batch.length;
+
+			for (int column=0; column<mState.length; column++) {
+				if (mState[column] == SMILES_YES) {
+					convert(mBatchList.size()-1, column);
 					}
-				else {
-					found++;
-					if (found == MAX_ROWS_FOR_SMILES_CHECK)
-						return true;
+				else if (mState[column] == SMILES_UNDECIDED) {
+					for (byte[][] row:batch) {
+						byte[] data = row[column];
+						if (data != null && data.length > 3) {
+							if (!isValidSmiles(mMol, data)) {
+								if (++mFailureCount[column] > MAX_TOLERATED_SMILES_FAILURES) {
+									mState[column] = SMILES_NO;
+									break;
+									}
+								}
+							else if (++mFoundCount[column] == MAX_ROWS_FOR_SMILES_CHECK) {
+								mState[column] = SMILES_YES;
+								for (int b=0; b<mBatchList.size(); b++)
+									convert(b, column);
+								break;
+								}
+							}
+						}
 					}
 				}
 			}
-		return (!resultList.isEmpty() && found == resultList.size());
+
+		/**
+		 * Decides on columns, which didn't contain enough SMILES to decide earlier,
+		 * and waits until all conversions are complete.
+		 */
+		public void finish() {
+			for (int column=0; column<mState.length; column++) {
+				if (mState[column] == SMILES_UNDECIDED) {
+					mState[column] = (mRowCount != 0 && mFoundCount[column] == mRowCount) ? SMILES_YES : SMILES_NO;
+					if (mState[column] == SMILES_YES)
+						for (int b=0; b<mBatchList.size(); b++)
+							convert(b, column);
+					}
+				}
+
+			for (ForkJoinTask<?> task:mTaskList)
+				task.join();
+			}
+
+		/**
+		 * @return ascending indexes of columns containing SMILES
+		 */
+		public int[] getSmilesColumns() {
+			int count = 0;
+			for (int state:mState)
+				if (state == SMILES_YES)
+					count++;
+			int[] smilesColumn = new int[count];
+			count = 0;
+			for (int column=0; column<mState.length; column++)
+				if (mState[column] == SMILES_YES)
+					smilesColumn[count++] = column;
+			return smilesColumn;
+			}
+
+		/**
+		 * @param batch
+		 * @return idcodes of batch rows for every SMILES column; [column][row]
+		 */
+		public byte[][][] getIDCodes(int batch) {
+			return mIDCodeList.get(batch);
+			}
+
+		private void convert(int batchIndex, int column) {
+			byte[][][] batch = mBatchList.get(batchIndex);
+			byte[][] idcode = new byte[batch.length][];
+			mIDCodeList.get(batchIndex)[column] = idcode;
+			mTaskList.add(ComputeScheduler.getInstance().submit(ComputeScheduler.PRIORITY_BACKGROUND, () -> {
+				StereoMolecule mol = new StereoMolecule();
+				for (int row=0; row<batch.length; row++)
+					if (isValidSmiles(mol, batch[row][column]))
+						idcode[row] = getIDCodeFromMolecule(mol);
+				} ));
+			}
 		}
 
 	private boolean isValidSmiles(StereoMolecule mol, byte[] smiles) {
@@ -72,22 +72,16 @@ public class DETaskNewFileFromList extends DETaskAbstractListTask {
 		CompoundTableListHandler sourceHitlistHandler = sourceTableModel.getListHandler();
 
 	   	boolean[] hitlistUsed = new boolean[sourceHitlistHandler.getListCount()];
-	   	long[] hitlistMask = null;
-	   	if (hitlistUsed.length != 0) {
-	   		hitlistMask = new long[hitlistUsed.length];
-	   		for (int i=0; i<hitlistUsed.length; i++)
-	   			hitlistMask[i] = sourceHitlistHandler.getListMask(i);
-	   		}
 
-		long mask = getTableModel().getListHandler().getListMask(getListIndex(configuration));
+		int listIndex = getListIndex(configuration);
 
 		int listMemberCount = 0;
 		for (int row=0; row<sourceTableModel.getTotalRowCount(); row++) {
 	   		CompoundRecord record = sourceTableModel.getTotalRecord(row);
-			if ((record.getFlags() & mask) != 0) {
+			if (sourceHitlistHandler.isListMember(record, listIndex)) {
 				listMemberCount++;
 		   		for (int i=0; i<hitlistUsed.length; i++)
-		   			if ((record.getFlags() & hitlistMask[i]) != 0)
+		   			if (sourceHitlistHandler.isListMember(record, i))
 		   				hitlistUsed[i] = true;
 				}
 			}
@@ -108,7 +102,7 @@ public class DETaskNewFileFromList extends DETaskAbstractListTask {
 		TreeSet<String> detaiIDSet = new TreeSet<String>();
 	   	for (int targetRow=0,row=0; row<sourceTableModel.getTotalRowCount(); row++) {
 	   		CompoundRecord record = sourceTableModel.getTotalRecord(row);
-			if ((record.getFlags() & mask) != 0) {
+			if (sourceHitlistHandler.isListMember(record, listIndex)) {
  				for (int column=0; column<sourceTableModel.getTotalColumnCount(); column++) {
 					targetTableModel.setTotalValueAt(sourceTableModel.encodeDataWithDetail(record, column), targetRow, column);
 					String[][] key = record.getDetailReferences(column);
@@ -130,8 +124,8 @@ public class DETaskNewFileFromList extends DETaskAbstractListTask {
 			   	int tRow = 0;
 				for (int row=0; row<sourceTableModel.getTotalRowCount(); row++) {
 			   		CompoundRecord record = sourceTableModel.getTotalRecord(row);
-					if ((record.getFlags() & mask) != 0) {
-						if ((record.getFlags() & hitlistMask[i]) != 0)
+					if (sourceHitlistHandler.isListMember(record, listIndex)) {
+						if (sourceHitlistHandler.isListMember(record, i))
 							targetHitlistHandler.addRecordSilent(targetTableModel.getTotalRecord(tRow), flagNo);
 						tRow++;
 						}
@@ -75,19 +75,13 @@ public class DETaskNewFileFromSelection extends AbstractTaskWithoutConfiguration
         CompoundTableListHandler sourceHitlistHandler = sourceTableModel.getListHandler();
 
        	boolean[] hitlistUsed = new boolean[sourceHitlistHandler.getListCount()];
-       	long[] hitlistMask = null;
-       	if (hitlistUsed.length != 0) {
-       		hitlistMask = new long[hitlistUsed.length];
-       		for (int i=0; i<hitlistUsed.length; i++)
-       			hitlistMask[i] = sourceHitlistHandler.getListMask(i);
-       		}
 
 		int selectionCount = 0;
         for (int row=0; row<sourceTableModel.getRowCount(); row++) {
 			if (sourceTableModel.isSelected(row)) {
 				selectionCount++;
 	       		for (int i=0; i<hitlistUsed.length; i++)
-	       			if ((sourceTableModel.getRecord(row).getFlags() & hitlistMask[i]) != 0)
+	       			if (sourceHitlistHandler.isListMember(sourceTableModel.getRecord(row), i))
 	       				hitlistUsed[i] = true;
 				}
         	}
@@ -129,7 +123,7 @@ public class DETaskNewFileFromSelection extends AbstractTaskWithoutConfiguration
                	int tRow = 0;
                	for (int row=0; row<sourceTableModel.getRowCount(); row++) {
         			if (sourceTableModel.isSelected(row)) {
-        				if ((sourceTableModel.getRecord(row).getFlags() & hitlistMask[i]) != 0)
+        				if (sourceHitlistHandler.isListMember(sourceTableModel.getRecord(row), i))
         					targetHitlistHandler.addRecordSilent(targetTableModel.getTotalRecord(tRow), flagNo);
         				tRow++;
         				}
@@ -75,16 +75,10 @@ public class DETaskNewFileFromVisible extends AbstractTaskWithoutConfiguration {
         CompoundTableListHandler sourceHitlistHandler = sourceTableModel.getListHandler();
 
        	boolean[] hitlistUsed = new boolean[sourceHitlistHandler.getListCount()];
-       	long[] hitlistMask = null;
-       	if (hitlistUsed.length != 0) {
-       		hitlistMask = new long[hitlistUsed.length];
-       		for (int i=0; i<hitlistUsed.length; i++)
-       			hitlistMask[i] = sourceHitlistHandler.getListMask(i);
-       		}
 
         for (int row=0; row<sourceTableModel.getRowCount(); row++)
        		for (int i=0; i<hitlistUsed.length; i++)
-       			if ((sourceTableModel.getRecord(row).getFlags() & hitlistMask[i]) != 0)
+       			if (sourceHitlistHandler.isListMember(sourceTableModel.getRecord(row), i))
        				hitlistUsed[i] = true;
 
         mTargetFrame = mApplication.getEmptyFrame("Subset of "+mSourceFrame.getTitle());
@@ -119,7 +113,7 @@ public class DETaskNewFileFromVisible extends AbstractTaskWithoutConfiguration {
         		int flagNo = targetHitlistHandler.getListFlagNo(targetHitlistHandler.createList(
         				sourceHitlistHandler.getListName(i), -1, CompoundTableListHandler.EMPTY_LIST, -1, null, false));
                	for (int row=0; row<sourceTableModel.getRowCount(); row++)
-       				if ((sourceTableModel.getRecord(row).getFlags() & hitlistMask[i]) != 0)
+       				if (sourceHitlistHandler.isListMember(sourceTableModel.getRecord(row), i))
        					targetHitlistHandler.addRecordSilent(targetTableModel.getTotalRecord(row), flagNo);
         		}
         	}
@@ -0,0 +1,184 @@
+/*
+ * Copyright 2017 Idorsia Pharmaceuticals Ltd., Hegenheimermattweg 91, CH-4123 Allschwil, Switzerland
+ *
+ * This file is part of DataWarrior.
+ *
+ * DataWarrior is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * DataWarrior is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License along with DataWarrior.
+ * If not, see http://www.gnu.org/licenses/.
+ *
+ * @author Thomas Sander
+ */
+
+package com.actelion.research.datawarrior.task.jep;
+
+import org.nfunk.jep.*;
+import org.nfunk.jep.function.*;
+
+import java.util.function.Function;
+
+/**
+ * Numerical formula compiled from the expression tree of a JEP parser. Instead of binding
+ * all variables of a row to the parser and interpreting the tree with boxed values,
+ * a compiled formula evaluates typed operands directly on arrays of column values.
+ * Only row-independent operators and functions with purely numerical arguments and results
+ * are compiled. Thus, a compiled formula may be evaluated for any rows concurrently.
+ * Expressions with text values, chemistry functions or functions that depend on the
+ * row order, e.g. cumulativeSum() or previousInCategory(), cannot be compiled.
+ */
+public class JEPCompiledFormula {
+	private final Operand mRoot;
+
+	/**
+	 * Compiles the expression most recently parsed by parser.
+	 * @param parser parser with a successfully parsed expression
+	 * @param variableValues returns for a variable name its value for every row, or null if not numerical
+	 * @return compiled formula or null, if the expression contains anything that cannot be compiled
+	 */
+	public static JEPCompiledFormula compile(JEP parser, Function<String,double[]> variableValues) {
+		Node topNode = parser.getTopNode();
+		if (topNode == null)
+			return null;
+
+		Operand root = compile(topNode, variableValues);
+		return (root == null) ? null : new JEPCompiledFormula(root);
+		}
+
+	private JEPCompiledFormula(Operand root) {
+		mRoot = root;
+		}
+
+	/**
+	 * This method is thread-safe.
+	 * @param row total row index
+	 * @return formula result for the given row
+	 */
+	public double evaluate(int row) {
+		return mRoot.evaluate(row);
+		}
+
+	private static Operand compile(Node node, Function<String,double[]> variableValues) {
+		if (node instanceof ASTConstant) {
+			Object value = ((ASTConstant)node).getValue();
+			if (!(value instanceof Double))
+				return null;
+			double v = (Double)value;
+			return row -> v;
+			}
+
+		if (node instanceof ASTVarNode) {
+			Variable variable = ((ASTVarNode)node).getVar();
+			if (variable.isConstant()) {
+				if (!(variable.getValue() instanceof Double))
+					return null;
+				double v = (Double)variable.getValue();
+				return row -> v;
+				}
+			double[] value = variableValues.apply(((ASTVarNode)node).getName());
+			return (value == null) ? null : row -> value[row];
+			}
+
+		if (!(node instanceof ASTFunNode))
+			return null;
+
+		int count = node.jjtGetNumChildren();
+		Operand[] child = new Operand[count];
+		for (int i=0; i<count; i++) {
+			child[i] = compile(node.jjtGetChild(i), variableValues);
+			if (child[i] == null)
+				return null;
+			}
+
+		PostfixMathCommandI function = ((ASTFunNode)node).getPFMC();
+		String name = ((ASTFunNode)node).getName();
+		if (count == 1) {
+			Operand a = child[0];
+			if (function instanceof UMinus)
+				return row -> -a.evaluate(row);
+			if (function instanceof Not)
+				return row -> (a.evaluate(row) == 0.0) ? 1.0 : 0.0;
+			if (function instanceof Abs)
+				return row -> Math.abs(a.evaluate(row));
+			if (function instanceof Sine)
+				return row -> Math.sin(a.evaluate(row));
+			if (function instanceof Cosine)
+				return row -> Math.cos(a.evaluate(row));
+			if (function instanceof Tangent)
+				return row -> Math.tan(a.evaluate(row));
+			if (function instanceof Exp)
+				return row -> Math.exp(a.evaluate(row));
+			if (function instanceof JEPIntFunction)
+				return row -> (int)a.evaluate(row);
+			return null;
+			}
+
+		if (count == 2) {
+			Operand a = child[0];
+			Operand b = child[1];
+			if (function instanceof Add)
+				return row -> a.evaluate(row) + b.evaluate(row);
+			if (function instanceof Subtract)
+				return row -> a.evaluate(row) - b.evaluate(row);
+			if (function instanceof Multiply)
+				return row -> a.evaluate(row) * b.evaluate(row);
+			if (function instanceof Divide)
+				return row -> a.evaluate(row) / b.evaluate(row);
+			if (function instanceof Modulus)
+				return row -> a.evaluate(row) % b.evaluate(row);
+			if (function instanceof Power) {
+				// negative bases with non-integer exponents would give complex numbers
+				Node exponent = node.jjtGetChild(1);
+				if (!(exponent instanceof ASTConstant)
+				 || !(((ASTConstant)exponent).getValue() instanceof Double))
+					return null;
+				double e = (Double)((ASTConstant)exponent).getValue();
+				if (e != Math.rint(e))
+					return null;
+				return row -> Math.pow(a.evaluate(row), e);
+				}
+			if (function instanceof Comparative) {
+				switch (name) {
+				case "<":
+					return row -> (a.evaluate(row) < b.evaluate(row)) ? 1.0 : 0.0;
+				case ">":
+					return row -> (a.evaluate(row) > b.evaluate(row)) ? 1.0 : 0.0;
+				case "<=":
+					return row -> (a.evaluate(row) <= b.evaluate(row)) ? 1.0 : 0.0;
+				case ">=":
+					return row -> (a.evaluate(row) >= b.evaluate(row)) ? 1.0 : 0.0;
+				default:	// equality uses a tolerance in JEP
+					return null;
+					}
+				}
+			if (function instanceof Logical) {
+				switch (name) {
+				case "&&":
+					return row -> (a.evaluate(row) != 0.0 && b.evaluate(row) != 0.0) ? 1.0 : 0.0;
+				case "||":
+					return row -> (a.evaluate(row) != 0.0 || b.evaluate(row) != 0.0) ? 1.0 : 0.0;
+				default:
+					return null;
+					}
+				}
+			if (function instanceof JEPMaxFunction)
+				return row -> Math.max(a.evaluate(row), b.evaluate(row));
+			if (function instanceof JEPMinFunction)
+				return row -> Math.min(a.evaluate(row), b.evaluate(row));
+			if (function instanceof JEPRoundFunction)
+				return row -> JEPRoundFunction.round(a.evaluate(row), b.evaluate(row));
+			return null;
+			}
+
+		return null;
+		}
+
+	private interface Operand {
+		double evaluate(int row);
+		}
+	}
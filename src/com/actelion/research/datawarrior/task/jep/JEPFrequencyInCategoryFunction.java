@@ -18,6 +18,7 @@
 
 package com.actelion.research.datawarrior.task.jep;
 
+import java.util.Arrays;
 import java.util.Stack;
 import java.util.TreeMap;
 
@@ -25,6 +26,7 @@ import com.actelion.research.datawarrior.task.data.DETaskAddCalculatedValues;
 import org.nfunk.jep.ParseException;
 import org.nfunk.jep.function.PostfixMathCommand;
 
+import com.actelion.research.table.model.CategoryAggregateIndex;
 import com.actelion.research.table.model.CompoundTableModel;
 
 /**
@@ -33,7 +35,7 @@ import com.actelion.research.table.model.CompoundTableModel;
 public class JEPFrequencyInCategoryFunction extends PostfixMathCommand {
 	private DETaskAddCalculatedValues mParentTask;
 	private CompoundTableModel mTableModel;
-	private TreeMap<Integer,TreeMap<String,Integer>> mCountMaps;
+	private TreeMap<Integer,PairFrequencies> mFrequencyMap;
 
 	/**
 	 * Constructor
@@ -45,30 +47,18 @@ public class JEPFrequencyInCategoryFunction extends PostfixMathCommand {
 		numberOfParameters = 2;
 	}
 
-	private TreeMap<String,Integer> createMap(int valueColumn, int categoryColumn) {
-		if (mCountMaps == null)
-			mCountMaps = new TreeMap<>();
-
-		TreeMap<String,Integer> countMap = mCountMaps.get(categoryColumn + 0x00010000 * valueColumn);
-		if (countMap == null) {
-			countMap = new TreeMap<>();
-			boolean isValueNumerical = mTableModel.isColumnTypeDouble(valueColumn);
-			boolean isCategoryNumerical = mTableModel.isColumnTypeDouble(categoryColumn);
-			for (int row=0; row<mTableModel.getTotalRowCount(); row++) {
-				String value = isValueNumerical ? Float.toString(mTableModel.getTotalDoubleAt(row, valueColumn))
-						: mTableModel.getTotalValueAt(row, valueColumn);
-				String category = isCategoryNumerical ? Float.toString(mTableModel.getTotalDoubleAt(row, categoryColumn))
-						: mTableModel.getTotalValueAt(row, categoryColumn);
-				String key = value.concat("@#").concat(category);
-				Integer count = countMap.get(key);
-				if (count == null)
-					countMap.put(key, Integer.valueOf(1));
-				else
-					countMap.put(key, Integer.valueOf(count.intValue()+1));
-				}
-			mCountMaps.put(categoryColumn + 0x00010000 * valueColumn, countMap);
+	private PairFrequencies getFrequencies(int valueColumn, int categoryColumn) {
+		if (mFrequencyMap == null)
+			mFrequencyMap = new TreeMap<>();
+
+		PairFrequencies frequencies = mFrequencyMap.get(categoryColumn + 0x00010000 * valueColumn);
+		if (frequencies == null) {
+			frequencies = new PairFrequencies(mTableModel.getCategoryAggregateIndex(valueColumn),
+											  mTableModel.getCategoryAggregateIndex(categoryColumn),
+											  mTableModel.getTotalRowCount());
+			mFrequencyMap.put(categoryColumn + 0x00010000 * valueColumn, frequencies);
 			}
-		return countMap;
+		return frequencies;
 		}
 
 	/**
@@ -102,18 +92,47 @@ public class JEPFrequencyInCategoryFunction extends PostfixMathCommand {
 		if (mTableModel.isMultiEntryColumn(categoryColumn))
 			throw new ParseException("Some cells of category column '"+param1+"' contain multiple values.");
 
-		String category = mTableModel.isColumnTypeDouble(categoryColumn) ?
-				Float.toString(mTableModel.getTotalDoubleAt(mParentTask.getCurrentRow(), categoryColumn))
-				: mTableModel.getTotalValueAt(mParentTask.getCurrentRow(), categoryColumn);
+		int count = getFrequencies(valueColumn, categoryColumn).getCount(mParentTask.getCurrentRow());
+		inStack.push(Double.valueOf(count));
+		}
 
-		String value = mTableModel.isColumnTypeDouble(valueColumn) ?
-				Float.toString(mTableModel.getTotalDoubleAt(mParentTask.getCurrentRow(), valueColumn))
-				: mTableModel.getTotalValueAt(mParentTask.getCurrentRow(), valueColumn);
+	/**
+	 * Counts rows for every combination of value and category. Value and category are
+	 * represented by their groups in the columns' CategoryAggregateIndex, which are combined
+	 * into one long key per row. Empty cells are counted as their own value or category.
+	 */
+	private static class PairFrequencies {
+		private final CategoryAggregateIndex mValueIndex,mCategoryIndex;
+		private final long[] mKey;	// sorted unique pair keys
+		private final int[] mCount;
+
+		public PairFrequencies(CategoryAggregateIndex valueIndex, CategoryAggregateIndex categoryIndex, int rowCount) {
+			mValueIndex = valueIndex;
+			mCategoryIndex = categoryIndex;
+
+			long[] key = new long[rowCount];
+			for (int row=0; row<rowCount; row++)
+				key[row] = getKey(row);
+			Arrays.parallelSort(key);
+
+			int uniqueCount = 0;
+			int[] count = new int[rowCount];
+			for (int i=0; i<rowCount; i++) {
+				if (uniqueCount == 0 || key[i] != key[uniqueCount-1])
+					key[uniqueCount++] = key[i];
+				count[uniqueCount-1]++;
+				}
+			mKey = Arrays.copyOf(key, uniqueCount);
+			mCount = Arrays.copyOf(count, uniqueCount);
+			}
 
-		String key = value.concat("@#").concat(category);
+		public int getCount(int row) {
+			int index = Arrays.binarySearch(mKey, getKey(row));
+			return (index < 0) ? 0 : mCount[index];
+			}
 
-		Integer co = createMap(valueColumn, categoryColumn).get(key);
-		int count = (co == null) ? 0 : co.intValue();
-		inStack.push(Double.valueOf(count));
+		private long getKey(int row) {
+			return ((long)(mCategoryIndex.getGroup(row) + 1) << 32) | (mValueIndex.getGroup(row) + 1);
+			}
 		}
 	}
@@ -21,6 +21,7 @@ package com.actelion.research.datawarrior.task.jep;
 import com.actelion.research.chem.descriptor.DescriptorHandler;
 import com.actelion.research.table.model.CompoundRecord;
 import com.actelion.research.table.model.CompoundTableModel;
+import com.actelion.research.table.model.FingerprintSimilarityIndex;
 import org.nfunk.jep.ParseException;
 import org.nfunk.jep.function.PostfixMathCommand;
 
@@ -64,6 +65,12 @@ public class JEPMaxChemSimilarityFunction extends PostfixMathCommand {
 			if (refDescriptor == null)
 				throw new ParseException("The parameter of maxsim() is empty");
 
+			FingerprintSimilarityIndex index = mTableModel.getFingerprintSimilarityIndex(jepParam.column);
+			if (index != null) {
+				inStack.push(Double.valueOf(index.getMaxSimilarity((long[])refDescriptor, jepParam.record.getID())));
+				return;
+				}
+
 			float maxSim = Float.NaN;
 			for (int row=0; row<mTableModel.getTotalRowCount(); row++) {
 				CompoundRecord record = mTableModel.getTotalRecord(row);
@@ -19,6 +19,7 @@
 package com.actelion.research.datawarrior.task.jep;
 
 import com.actelion.research.datawarrior.task.data.DETaskAddCalculatedValues;
+import com.actelion.research.table.model.CategoryAggregateIndex;
 import com.actelion.research.table.model.CompoundTableModel;
 import org.nfunk.jep.ParseException;
 import org.nfunk.jep.function.PostfixMathCommand;
@@ -61,22 +62,41 @@ public class JEPMovingInCategoryFunction extends PostfixMathCommand {
 		double[] result = mResultMap.get(key);
 		if (result == null) {
 			result = new double[mTableModel.getTotalRowCount()];
-			TreeMap<String,MovingWindow> categoryValueMap = new TreeMap<>();
 			mIsLogarithmic = mTableModel.isLogarithmicViewMode(valueColumn);
-			for (int row=0; row<mTableModel.getTotalRowCount(); row++) {
-				String category = mTableModel.getTotalValueAt(row, categoryColumn);
-				double value = mTableModel.getTotalDoubleAt(row, valueColumn);
-				MovingWindow window = categoryValueMap.get(category);
-				if (window == null) {
-					window = new MovingWindow(n1, n2);
-					categoryValueMap.put(category, window);
+			if (mTableModel.isColumnTypeDouble(categoryColumn)) {
+				// numerical categories are distinguished by their cell text rather than by their value
+				TreeMap<String,MovingWindow> categoryValueMap = new TreeMap<>();
+				for (int row=0; row<mTableModel.getTotalRowCount(); row++) {
+					String category = mTableModel.getTotalValueAt(row, categoryColumn);
+					double value = mTableModel.getTotalDoubleAt(row, valueColumn);
+					MovingWindow window = categoryValueMap.get(category);
+					if (window == null) {
+						window = new MovingWindow(n1, n2);
+						categoryValueMap.put(category, window);
+						}
+					window.addValue(value, row, result);
 					}
-				window.addValue(value, row, result);
+
+				if (mCalculateEdgeValues)
+					for (MovingWindow window:categoryValueMap.values())
+						window.processTailValues(result);
 				}
+			else {
+				// window 0 is used for empty category cells
+				CategoryAggregateIndex index = mTableModel.getCategoryAggregateIndex(categoryColumn);
+				MovingWindow[] window = new MovingWindow[index.getGroupCount()+1];
+				for (int row=0; row<mTableModel.getTotalRowCount(); row++) {
+					int group = index.getGroup(row) + 1;
+					if (window[group] == null)
+						window[group] = new MovingWindow(n1, n2);
+					window[group].addValue(mTableModel.getTotalDoubleAt(row, valueColumn), row, result);
+					}
 
-			if (mCalculateEdgeValues)
-				for (MovingWindow window:categoryValueMap.values())
-					window.processTailValues(result);
+				if (mCalculateEdgeValues)
+					for (MovingWindow w:window)
+						if (w != null)
+							w.processTailValues(result);
+				}
 
 			mResultMap.put(key, result);
 			}
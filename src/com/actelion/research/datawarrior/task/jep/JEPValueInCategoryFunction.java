@@ -19,17 +19,17 @@
 package com.actelion.research.datawarrior.task.jep;
 
 import com.actelion.research.datawarrior.task.data.DETaskAddCalculatedValues;
+import com.actelion.research.table.model.CategoryAggregateIndex;
 import com.actelion.research.table.model.CompoundTableModel;
-import com.actelion.research.util.ByteArrayComparator;
 import org.nfunk.jep.ParseException;
 import org.nfunk.jep.function.PostfixMathCommand;
 
-import java.util.Arrays;
 import java.util.Stack;
-import java.util.TreeMap;
 
 /**
  * An example custom function class for JEP.
+ * Aggregated values are taken from the category column's CategoryAggregateIndex, which
+ * is shared by all functions and formulas and is calculated once per value column.
  */
 public class JEPValueInCategoryFunction extends PostfixMathCommand {
 	public static final int TYPE_FIRST = 1;
@@ -40,10 +40,14 @@ public class JEPValueInCategoryFunction extends PostfixMathCommand {
 	public static final int TYPE_SUM = 6;
 	public static final int TYPE_LAST = 7;
 
+	private static final int[] AGGREGATE_TYPE = { -1,
+			CategoryAggregateIndex.AGGREGATE_FIRST, CategoryAggregateIndex.AGGREGATE_MIN,
+			CategoryAggregateIndex.AGGREGATE_MAX, CategoryAggregateIndex.AGGREGATE_MEAN,
+			CategoryAggregateIndex.AGGREGATE_MEDIAN, CategoryAggregateIndex.AGGREGATE_SUM,
+			CategoryAggregateIndex.AGGREGATE_LAST };
+
 	private DETaskAddCalculatedValues mParentTask;
 	private CompoundTableModel mTableModel;
-	private TreeMap<Integer,TreeMap<byte[],Object>> mBytesMaps;
-	private TreeMap<Integer,TreeMap<Double,Object>> mDoubleMaps;
 	private int mType;
 
 	/**
@@ -57,185 +61,6 @@ public class JEPValueInCategoryFunction extends PostfixMathCommand {
 		numberOfParameters = 2;
 		}
 
-	private TreeMap<byte[],Object> createBytesMap(int categoryColumn, int valueColumn, boolean isNumericalValue) {
-		if (mBytesMaps == null)
-			mBytesMaps = new TreeMap<>();
-
-		TreeMap<byte[],Object> bytesMap = mBytesMaps.get(categoryColumn + 0x00010000 * valueColumn);
-		if (bytesMap == null) {
-			bytesMap = new TreeMap<>(new ByteArrayComparator());
-			TreeMap<byte[],Integer> countMap = (mType == TYPE_MEAN || mType == TYPE_MEDIAN) ?
-					new TreeMap<>(new ByteArrayComparator()) : null;
-
-			for (int row=0; row<mTableModel.getTotalRowCount(); row++) {
-				byte[] key = (byte[])mTableModel.getTotalRecord(row).getData(categoryColumn);
-				if (key != null) {
-					if (isNumericalValue) {
-						double val = mTableModel.getTotalOriginalDoubleAt(row, valueColumn);
-						if (Double.isFinite(val)) {
-							switch (mType) {
-							case TYPE_FIRST:
-							case TYPE_LAST:
-								if (mType == TYPE_LAST || !bytesMap.containsKey(key))
-									bytesMap.put(key, val);
-								break;
-							case TYPE_MIN:
-								Double min = (Double)bytesMap.get(key);
-								bytesMap.put(key, min == null ? val : Math.min(val, min));
-								break;
-							case TYPE_MAX:
-								Double max = (Double)bytesMap.get(key);
-								bytesMap.put(key, max == null ? val : Math.max(val, max));
-								break;
-							case TYPE_SUM:
-							case TYPE_MEAN:
-								Double sum = (Double)bytesMap.get(key);
-								bytesMap.put(key, sum == null ? val : sum + val);
-								break;
-								}
-
-							if (mType == TYPE_MEAN || mType == TYPE_MEDIAN) {
-								Integer count = countMap.get(key);
-								countMap.put(key, count == null ? 1 : count + 1);
-								}
-							}
-						}
-					else {
-						if (mType == TYPE_LAST || !bytesMap.containsKey(key))
-							bytesMap.put(key, mTableModel.getTotalValueAt(row, valueColumn));
-						}
-					}
-				}
-
-			if (mType == TYPE_MEAN) {
-				for (byte[] key:countMap.keySet())
-					bytesMap.put(key, (Double)bytesMap.get(key) / countMap.get(key));
-				}
-			else if (mType == TYPE_MEDIAN) {
-				TreeMap<byte[],double[]> valueMap = new TreeMap<>(new ByteArrayComparator());
-				for (int row=0; row<mTableModel.getTotalRowCount(); row++) {
-					byte[] key = (byte[])mTableModel.getTotalRecord(row).getData(categoryColumn);
-					if (key != null) {
-						double val = mTableModel.getTotalOriginalDoubleAt(row, valueColumn);
-						if (Double.isFinite(val)) {
-							double[] values = valueMap.get(key);
-							if (values == null) {
-								values = new double[countMap.get(key)];
-								values[0] = val;
-								valueMap.put(key, values);
-								countMap.put(key, 1);
-								}
-							else {
-								int count = countMap.get(key);
-								values[count] = val;
-								countMap.put(key, count + 1);
-								}
-							}
-						}
-					}
-				for (byte[] key:valueMap.keySet()) {
-					double[] values = valueMap.get(key);
-					Arrays.sort(values);
-					int count = values.length;
-					bytesMap.put(key, (count & 1) == 0 ? (values[count/2-1] + values[count/2]) / 2 : values[count/2]);
-					}
-				}
-			mBytesMaps.put(categoryColumn + 0x00010000 * valueColumn, bytesMap);
-			}
-
-		return bytesMap;
-		}
-
-	private TreeMap<Double,Object> createDoubleMap(int categoryColumn, int valueColumn, boolean isNumericalValue) {
-		if (mDoubleMaps == null)
-			mDoubleMaps = new TreeMap<>();
-
-		TreeMap<Double,Object> doubleMap = mDoubleMaps.get(categoryColumn + 0x00010000 * valueColumn);
-		if (doubleMap == null) {
-			doubleMap = new TreeMap<>();
-			TreeMap<Double, Integer> countMap = (mType == TYPE_MEAN || mType == TYPE_MEDIAN) ?
-					new TreeMap<>() : null;
-
-			for (int row=0; row<mTableModel.getTotalRowCount(); row++) {
-				double key = mTableModel.getTotalOriginalDoubleAt(row, categoryColumn);
-				if (!Double.isNaN(key)) {
-					if (isNumericalValue) {
-						double val = mTableModel.getTotalOriginalDoubleAt(row, valueColumn);
-						if (Double.isFinite(val)) {
-							switch (mType) {
-								case TYPE_FIRST:
-								case TYPE_LAST:
-									if (mType == TYPE_LAST || !doubleMap.containsKey(key))
-										doubleMap.put(key, (double)mTableModel.getTotalOriginalDoubleAt(row, valueColumn));
-									break;
-								case TYPE_MIN:
-									Double min = (Double)doubleMap.get(key);
-									doubleMap.put(key, min == null ? val : Math.min(val, min));
-									break;
-								case TYPE_MAX:
-									Double max = (Double)doubleMap.get(key);
-									doubleMap.put(key, max == null ? val : Math.max(val, max));
-									break;
-								case TYPE_SUM:
-								case TYPE_MEAN:
-									Double sum = (Double)doubleMap.get(key);
-									doubleMap.put(key, sum == null ? val : sum + val);
-									break;
-								}
-
-							if (mType == TYPE_MEAN || mType == TYPE_MEDIAN) {
-								Integer count = countMap.get(key);
-								countMap.put(key, count == null ? 1 : count + 1);
-								}
-							}
-						}
-					else {
-						if (mType == TYPE_LAST || !doubleMap.containsKey(key))
-							doubleMap.put(key, mTableModel.getTotalValueAt(row, valueColumn));
-						}
-					}
-				}
-
-			if (mType == TYPE_MEAN) {
-				for (double key:countMap.keySet())
-					doubleMap.put(key, (Double)doubleMap.get(key) / countMap.get(key));
-				}
-			else if (mType == TYPE_MEDIAN) {
-				TreeMap<Double,double[]> valueMap = new TreeMap<Double,double[]>();
-				for (int row=0; row<mTableModel.getTotalRowCount(); row++) {
-					double key = mTableModel.getTotalOriginalDoubleAt(row, categoryColumn);
-					if (!Double.isNaN(key)) {
-						double val = mTableModel.getTotalOriginalDoubleAt(row, valueColumn);
-						if (Double.isFinite(val)) {
-							double[] values = valueMap.get(key);
-							if (values == null) {
-								values = new double[countMap.get(key)];
-								values[0] = val;
-								valueMap.put(key, values);
-								countMap.put(key, 1);
-							}
-							else {
-								int count = countMap.get(key);
-								values[count] = val;
-								countMap.put(key, count + 1);
-							}
-						}
-					}
-				}
-				for (double key:valueMap.keySet()) {
-					double[] values = valueMap.get(key);
-					Arrays.sort(values);
-					int count = values.length;
-					doubleMap.put(key, (count & 1) == 0 ? (values[count/2-1] + values[count/2]) / 2 : values[count/2]);
-					}
-				}
-
-			mDoubleMaps.put(categoryColumn + 0x00010000 * valueColumn, doubleMap);
-			}
-
-		return doubleMap;
-		}
-
 	/**
 	 * Runs the operation on the inStack. The parameters are popped
 	 * off the <code>inStack</code>, and the result is pushed back to the top of <code>inStack</code>.
@@ -259,16 +84,6 @@ public class JEPValueInCategoryFunction extends PostfixMathCommand {
 		if (categoryColumn == -1)
 			throw new ParseException("Column '"+param1+"' not found.");
 
-		boolean isDoubleCategory = mTableModel.isColumnTypeDouble(categoryColumn);
-		Object category = isDoubleCategory ?
-				Double.valueOf(mTableModel.getTotalOriginalDoubleAt(mParentTask.getCurrentRow(), categoryColumn))
-			  : mTableModel.getTotalValueAt(mParentTask.getCurrentRow(), categoryColumn);
-
-		if (isDoubleCategory && !mTableModel.isColumnTypeDouble(categoryColumn))
-			throw new ParseException("1st parameter is numerical, but column '"+param1+"' is not.");
-		if (!isDoubleCategory && mTableModel.isColumnTypeDouble(categoryColumn))
-			throw new ParseException("Column '"+param1+"' is numerical, but 1st parameter is not.");
-
 		int valueColumn = mTableModel.findColumn((String)param2);
 		if (valueColumn == -1)
 			throw new ParseException("Column '"+param2+"' not found.");
@@ -278,17 +93,15 @@ public class JEPValueInCategoryFunction extends PostfixMathCommand {
 		if (mType != TYPE_FIRST && mType != TYPE_LAST && !isNumericalValue)
 			throw new ParseException("Column '"+param2+"' is not numerical nor date.");
 
-		if (isDoubleCategory) {
-			if (isNumericalValue)
-				inStack.push(createDoubleMap(categoryColumn, valueColumn, isNumericalValue).get(category));
-			else
-				inStack.push(createDoubleMap(categoryColumn, valueColumn, isNumericalValue).get(category));
+		CategoryAggregateIndex index = mTableModel.getCategoryAggregateIndex(categoryColumn);
+		int row = mParentTask.getCurrentRow();
+		if (isNumericalValue) {
+			double value = index.getAggregate(row, valueColumn, AGGREGATE_TYPE[mType]);
+			inStack.push(Double.isNaN(value) ? null : Double.valueOf(value));
 			}
 		else {
-			if (isNumericalValue)
-				inStack.push(createBytesMap(categoryColumn, valueColumn, isNumericalValue).get(((String)category).getBytes()));
-			else
-				inStack.push(createBytesMap(categoryColumn, valueColumn, isNumericalValue).get(((String)category).getBytes()));
+			int groupRow = index.getGroupRow(row, mType == TYPE_LAST);
+			inStack.push(groupRow == -1 ? null : mTableModel.getTotalValueAt(groupRow, valueColumn));
 			}
 		}
 	}
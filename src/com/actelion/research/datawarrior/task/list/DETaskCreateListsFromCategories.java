@@ -169,11 +169,11 @@ public class DETaskCreateListsFromCategories extends ConfigurableTask {
 		String[] category = mTableModel.getCategoryList(column);
 		int categoryCount = mTableModel.isMultiCategoryColumn(column) ? category.length-1 : category.length;
 
-		TreeMap<String,Long> map = new TreeMap<String,Long>();
+		TreeMap<String,Integer> map = new TreeMap<String,Integer>();
 		for (int i=0; i<categoryCount; i++) {
 			String name = prefix+(category[i].length() == 0 ? "<empty>" : category[i])+postfix;
 			name = hh.createList(name, -1, CompoundTableListHandler.EMPTY_LIST, -1, null, false);
-			map.put(category[i], hh.getListMask(hh.getListIndex(name)));
+			map.put(category[i], hh.getListFlagNo(hh.getListIndex(name)));
 			}
 
         startProgress("Populating row lists...", 0, mTableModel.getTotalRowCount());
@@ -189,7 +189,7 @@ public class DETaskCreateListsFromCategories extends ConfigurableTask {
 			if (record.getData(column) != null) {
 				String[] entries = mTableModel.separateEntries(mTableModel.getTotalValueAt(row, column));
 				for (String entry:entries)
-					record.setFlags(map.get(mTableModel.normalizeCategoryEntry(entry, column)));
+					record.setFlag(map.get(mTableModel.normalizeCategoryEntry(entry, column)));
 				}
 			}
 		}
@@ -0,0 +1,436 @@
+/*
+ * Copyright 2017 Idorsia Pharmaceuticals Ltd., Hegenheimermattweg 91, CH-4123 Allschwil, Switzerland
+ *
+ * This file is part of DataWarrior.
+ *
+ * DataWarrior is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * DataWarrior is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License along with DataWarrior.
+ * If not, see http://www.gnu.org/licenses/.
+ *
+ * @author Thomas Sander
+ */
+
+package com.actelion.research.table;
+
+import com.actelion.research.chem.descriptor.DescriptorHandler;
+import com.actelion.research.table.model.CompoundTableModel;
+import com.actelion.research.table.model.ComputeScheduler;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.UnaryOperator;
+
+/**
+ * Binary, column-wise companion file of a native DataWarrior file, which contains the same
+ * row data as the .dwar file's data section. If a valid companion file exists when opening
+ * a .dwar file, then the loader maps the companion file's column blocks into memory, decodes
+ * them in parallel and skips the data section of the .dwar file, which avoids splitting text
+ * lines and decoding descriptors. Binary descriptors (long[] and int[]) are stored raw.
+ * Text columns with few distinct values are stored as dictionary and index per row.
+ * A companion file is only valid for the .dwar file with the exact length and modification
+ * date that it was written for. Companion files are written by the CompoundTableSaver after
+ * saving all rows of a native file, if enabled with the system property 'datacache=true'
+ * or with setEnabled().
+ */
+public class ColumnarDataFile {
+	private static final String FILE_EXTENSION = "c";	// appended to the .dwar file name
+	private static final int MAGIC = 0x44574331;	// "DWC1"
+	private static final int FORMAT_VERSION = 1;
+	private static final int HEADER_SIZE = 48;
+
+	private static final byte TYPE_TEXT = 0;
+	private static final byte TYPE_DICTIONARY = 1;
+	private static final byte TYPE_LONGS = 2;
+	private static final byte TYPE_INTS = 3;
+	private static final byte TYPE_ENCODED_DESCRIPTOR = 4;
+
+	private static final int MAX_DICTIONARY_FRACTION = 8;	// use dictionary if distinct values <= rows/8
+
+	private static volatile boolean sIsEnabled = "true".equals(System.getProperty("datacache"));
+
+	private final File mFile;
+	private final long mDataCharCount;
+	private final int mRowCount;
+	private final String[] mColumnName;
+	private final byte[] mColumnType;
+	private final long[] mBlockOffset,mBlockLength;
+
+	public static void setEnabled(boolean b) {
+		sIsEnabled = b;
+		}
+
+	public static boolean isEnabled() {
+		return sIsEnabled;
+		}
+
+	/**
+	 * @param dwarFile native DataWarrior file
+	 * @return the companion file's location, whether it exists or not
+	 */
+	public static File getFile(File dwarFile) {
+		return new File(dwarFile.getPath().concat(FILE_EXTENSION));
+		}
+
+	/**
+	 * Deletes an existing companion file, e.g. before the .dwar file is overwritten.
+	 * @param dwarFile native DataWarrior file
+	 */
+	public static void delete(File dwarFile) {
+		File file = getFile(dwarFile);
+		if (file.exists())
+			file.delete();
+		}
+
+	/**
+	 * Opens the companion file of the given .dwar file and reads its header.
+	 * @param dwarFile native DataWarrior file
+	 * @return null, if there is no valid companion file for the given .dwar file in its current state
+	 */
+	public static ColumnarDataFile open(File dwarFile) {
+		File file = getFile(dwarFile);
+		if (!file.exists())
+			return null;
+
+		try (DataInputStream is = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+			if (is.readInt() != MAGIC || is.readInt() != FORMAT_VERSION)
+				return null;
+			long tableOffset = is.readLong();
+			long dwarLength = is.readLong();
+			long dwarLastModified = is.readLong();
+			long dataCharCount = is.readLong();
+			int rowCount = is.readInt();
+			int columnCount = is.readInt();
+			if (tableOffset == 0
+			 || dwarLength != dwarFile.length()
+			 || dwarLastModified != dwarFile.lastModified())
+				return null;
+
+			is.skipNBytes(tableOffset - HEADER_SIZE);
+			String[] columnName = new String[columnCount];
+			byte[] columnType = new byte[columnCount];
+			long[] blockOffset = new long[columnCount];
+			long[] blockLength = new long[columnCount];
+			for (int column=0; column<columnCount; column++) {
+				columnName[column] = is.readUTF();
+				columnType[column] = is.readByte();
+				blockOffset[column] = is.readLong();
+				blockLength[column] = is.readLong();
+				if (blockLength[column] < 0 || blockLength[column] > Integer.MAX_VALUE)
+					return null;
+				}
+
+			return new ColumnarDataFile(file, dataCharCount, rowCount, columnName, columnType, blockOffset, blockLength);
+			}
+		catch (IOException ioe) {
+			return null;
+			}
+		}
+
+	private ColumnarDataFile(File file, long dataCharCount, int rowCount, String[] columnName, byte[] columnType, long[] blockOffset, long[] blockLength) {
+		mFile = file;
+		mDataCharCount = dataCharCount;
+		mRowCount = rowCount;
+		mColumnName = columnName;
+		mColumnType = columnType;
+		mBlockOffset = blockOffset;
+		mBlockLength = blockLength;
+		}
+
+	/**
+	 * @return number of characters of all data rows in the .dwar file, not including the column header line
+	 */
+	public long getDataCharCount() {
+		return mDataCharCount;
+		}
+
+	/**
+	 * Reads all rows in the same form as the CompoundTableLoader creates them from the .dwar file's
+	 * data section: descriptor columns contain decoded descriptors, if they are valid, and all other
+	 * columns contain the cell content as byte[] after applying the cellConverter.
+	 * Column blocks are memory mapped and decoded in parallel.
+	 * @param fieldNames column names of the .dwar file's header line, which must match the companion file
+	 * @param descriptorHandler for every column null or the descriptor handler
+	 * @param descriptorValid for every column whether descriptors are valid and shall be decoded
+	 * @param cellConverter converts raw text cell content as the loader does
+	 * @return row data or null, if the columns don't match or if the file couldn't be read
+	 */
+	public Object[][] readData(String[] fieldNames, DescriptorHandler<?,?>[] descriptorHandler,
+							   boolean[] descriptorValid, UnaryOperator<byte[]> cellConverter) {
+		if (fieldNames.length != mColumnName.length)
+			return null;
+		for (int column=0; column<fieldNames.length; column++)
+			if (!fieldNames[column].equals(mColumnName[column]))
+				return null;
+
+		final Object[][] fieldData = new Object[mRowCount][fieldNames.length];
+		try (FileChannel channel = FileChannel.open(mFile.toPath(), StandardOpenOption.READ)) {
+			MappedByteBuffer[] block = new MappedByteBuffer[fieldNames.length];
+			for (int column=0; column<fieldNames.length; column++)
+				block[column] = channel.map(FileChannel.MapMode.READ_ONLY, mBlockOffset[column], mBlockLength[column]);
+
+			AtomicInteger nextColumn = new AtomicInteger();
+			AtomicInteger errorCount = new AtomicInteger();
+			ComputeScheduler scheduler = ComputeScheduler.getInstance();
+			int threadCount = Math.min(fieldNames.length, scheduler.getThreadCount(ComputeScheduler.PRIORITY_BACKGROUND));
+			scheduler.runParallel(ComputeScheduler.PRIORITY_BACKGROUND, threadCount, () -> {
+				for (int column=nextColumn.getAndIncrement(); column<fieldNames.length; column=nextColumn.getAndIncrement()) {
+					try {
+						DescriptorHandler<?,?> dh = (descriptorHandler[column] == null || !descriptorValid[column]) ?
+								null : descriptorHandler[column].getThreadSafeCopy();
+						readColumn(block[column], column, fieldData, descriptorHandler[column] != null, dh, cellConverter);
+						}
+					catch (RuntimeException e) {	// e.g. BufferUnderflowException of damaged file
+						errorCount.incrementAndGet();
+						}
+					}
+				}, null);
+
+			return errorCount.get() == 0 ? fieldData : null;
+			}
+		catch (IOException ioe) {
+			return null;
+			}
+		}
+
+	/**
+	 * @param block
+	 * @param column
+	 * @param fieldData
+	 * @param isDescriptor whether the column is a descriptor column
+	 * @param dh null or descriptor handler, if the descriptor column's descriptors are valid
+	 * @param cellConverter
+	 */
+	private void readColumn(ByteBuffer block, int column, Object[][] fieldData, boolean isDescriptor,
+							DescriptorHandler<?,?> dh, UnaryOperator<byte[]> cellConverter) {
+		switch (mColumnType[column]) {
+		case TYPE_DICTIONARY:
+			byte[][] entry = new byte[block.getInt()][];
+			for (int i=0; i<entry.length; i++)
+				entry[i] = readBytes(block);
+			for (int row=0; row<mRowCount; row++) {
+				int index = block.getInt();
+				if (index != -1)
+					fieldData[row][column] = cellConverter.apply(entry[index].clone());
+				}
+			break;
+		case TYPE_LONGS:
+			for (int row=0; row<mRowCount; row++) {
+				int length = block.getInt();
+				if (length != -1) {
+					long[] descriptor = new long[length];
+					block.asLongBuffer().get(descriptor);
+					block.position(block.position() + 8*length);
+					if (dh != null)
+						fieldData[row][column] = descriptor;
+					}
+				}
+			break;
+		case TYPE_INTS:
+			for (int row=0; row<mRowCount; row++) {
+				int length = block.getInt();
+				if (length != -1) {
+					int[] descriptor = new int[length];
+					block.asIntBuffer().get(descriptor);
+					block.position(block.position() + 4*length);
+					if (dh != null)
+						fieldData[row][column] = descriptor;
+					}
+				}
+			break;
+		default:	// TYPE_TEXT and TYPE_ENCODED_DESCRIPTOR
+			for (int row=0; row<mRowCount; row++) {
+				byte[] bytes = readBytes(block);
+				if (bytes != null)
+					fieldData[row][column] = !isDescriptor ? cellConverter.apply(bytes)
+										   : (dh == null) ? null : dh.decode(bytes);
+				}
+			break;
+			}
+		}
+
+	private static byte[] readBytes(ByteBuffer block) {
+		int length = block.getInt();
+		if (length == -1)
+			return null;
+		byte[] bytes = new byte[length];
+		block.get(bytes);
+		return bytes;
+		}
+
+	/**
+	 * Writes the companion file of a native DataWarrior file that was just completely written.
+	 * If anything goes wrong, then no companion file is left behind.
+	 * @param dwarFile the .dwar file, which must not be changed afterwards
+	 * @param tableModel
+	 * @param column columns in the order of the .dwar file's data section
+	 * @param dataCharCount number of characters of all data rows in the .dwar file, not including the column header line
+	 */
+	public static void write(File dwarFile, CompoundTableModel tableModel, int[] column, long dataCharCount) {
+		File file = getFile(dwarFile);
+		int rowCount = tableModel.getTotalRowCount();
+		boolean successful = false;
+		try (FileOutputStream fos = new FileOutputStream(file)) {
+			DataOutputStream os = new DataOutputStream(new BufferedOutputStream(fos, 1 << 16));
+			os.writeInt(MAGIC);
+			os.writeInt(FORMAT_VERSION);
+			os.writeLong(0);	// table offset is updated when all blocks are written
+			os.writeLong(dwarFile.length());
+			os.writeLong(dwarFile.lastModified());
+			os.writeLong(dataCharCount);
+			os.writeInt(rowCount);
+			os.writeInt(column.length);
+
+			byte[] columnType = new byte[column.length];
+			long[] blockOffset = new long[column.length];
+			long[] blockLength = new long[column.length];
+			// blocks are written directly to the file and their length is taken from the file position
+			long offset = HEADER_SIZE;
+			for (int i=0; i<column.length; i++) {
+				columnType[i] = writeColumn(os, tableModel, column[i], rowCount);
+				os.flush();
+				long end = fos.getChannel().position();
+				blockOffset[i] = offset;
+				blockLength[i] = end - offset;
+				if (blockLength[i] > Integer.MAX_VALUE)
+					return;	// a block cannot be memory mapped when reading
+				offset = end;
+				}
+
+			for (int i=0; i<column.length; i++) {
+				os.writeUTF(tableModel.getColumnTitleNoAlias(column[i]));
+				os.writeByte(columnType[i]);
+				os.writeLong(blockOffset[i]);
+				os.writeLong(blockLength[i]);
+				}
+			os.flush();
+
+			ByteBuffer tableOffset = ByteBuffer.allocate(8);
+			tableOffset.putLong(offset).flip();
+			fos.getChannel().write(tableOffset, 8);
+			successful = true;
+			}
+		catch (IOException ioe) {}
+		finally {
+			if (!successful)
+				file.delete();
+			}
+		}
+
+	private static byte writeColumn(DataOutputStream os, CompoundTableModel tableModel, int column, int rowCount) throws IOException {
+		if (tableModel.isDescriptorColumn(column)) {
+			Object firstDescriptor = null;
+			for (int row=0; row<rowCount && firstDescriptor == null; row++)
+				firstDescriptor = tableModel.getTotalRecord(row).getData(column);
+
+			if (firstDescriptor instanceof long[]) {
+				for (int row=0; row<rowCount; row++) {
+					long[] descriptor = (long[])tableModel.getTotalRecord(row).getData(column);
+					os.writeInt(descriptor == null ? -1 : descriptor.length);
+					if (descriptor != null)
+						for (long l:descriptor)
+							os.writeLong(l);
+					}
+				return TYPE_LONGS;
+				}
+
+			if (firstDescriptor instanceof int[]) {
+				for (int row=0; row<rowCount; row++) {
+					int[] descriptor = (int[])tableModel.getTotalRecord(row).getData(column);
+					os.writeInt(descriptor == null ? -1 : descriptor.length);
+					if (descriptor != null)
+						for (int i:descriptor)
+							os.writeInt(i);
+					}
+				return TYPE_INTS;
+				}
+			}
+
+		byte[][] value = new byte[rowCount][];
+		for (int row=0; row<rowCount; row++) {
+			String s = CompoundTableSaver.convertNewlines(tableModel.encodeDataWithDetail(tableModel.getTotalRecord(row), column));
+			value[row] = s.isEmpty() ? null : s.getBytes();
+			}
+
+		if (!tableModel.isDescriptorColumn(column)) {
+			HashMap<String,Integer> dictionary = new HashMap<>();
+			int maxEntries = rowCount / MAX_DICTIONARY_FRACTION;
+			int[] index = new int[rowCount];
+			for (int row=0; row<rowCount && dictionary.size() <= maxEntries; row++) {
+				if (value[row] == null) {
+					index[row] = -1;
+					}
+				else {
+					Integer i = dictionary.putIfAbsent(new String(value[row]), dictionary.size());
+					index[row] = (i == null) ? dictionary.size()-1 : i;
+					}
+				}
+			if (dictionary.size() <= maxEntries) {
+				byte[][] entry = new byte[dictionary.size()][];
+				for (String key:dictionary.keySet())
+					entry[dictionary.get(key)] = key.getBytes();
+				os.writeInt(entry.length);
+				for (byte[] e:entry)
+					writeBytes(os, e);
+				for (int i:index)
+					os.writeInt(i);
+				return TYPE_DICTIONARY;
+				}
+			}
+
+		for (byte[] bytes:value)
+			writeBytes(os, bytes);
+
+		return tableModel.isDescriptorColumn(column) ? TYPE_ENCODED_DESCRIPTOR : TYPE_TEXT;
+		}
+
+	private static void writeBytes(DataOutputStream os, byte[] bytes) throws IOException {
+		os.writeInt(bytes == null ? -1 : bytes.length);
+		if (bytes != null)
+			os.write(bytes);
+		}
+
+	/**
+	 * Writer, which counts all characters written through it. This is used to determine
+	 * the number of characters of the data section of a .dwar file.
+	 */
+	public static class CharCountingWriter extends FilterWriter {
+		private long mCount;
+
+		public CharCountingWriter(Writer writer) {
+			super(writer);
+			}
+
+		public long getCount() {
+			return mCount;
+			}
+
+		@Override
+		public void write(int c) throws IOException {
+			super.write(c);
+			mCount++;
+			}
+
+		@Override
+		public void write(char[] buf, int off, int len) throws IOException {
+			super.write(buf, off, len);
+			mCount += len;
+			}
+
+		@Override
+		public void write(String str, int off, int len) throws IOException {
+			super.write(str, off, len);
+			mCount += len;
+			}
+		}
+	}
@@ -19,7 +19,6 @@
 package com.actelion.research.table;
 
 import com.actelion.research.chem.IDCodeParser;
-import com.actelion.research.chem.StereoMolecule;
 import com.actelion.research.gui.LookAndFeelHelper;
 import com.actelion.research.gui.table.ChemistryCellRenderer;
 import com.actelion.research.table.model.CompoundRecord;
@@ -63,10 +62,9 @@ public class CompoundTableChemistryCellRenderer extends ChemistryCellRenderer im
 						renderPanel = getErrorRendererComponent();
 						}
 					else {
-						StereoMolecule mol = new StereoMolecule();
-						new IDCodeParser(true).parse(mol, idcode, coords);
-						tableModel.colorizeStructureAtoms(record, idcodeColumn, CompoundTableModel.ATOM_COLOR_MODE_ALL, mol);
-						value = mol;
+						value = tableModel.getCachedChemicalStructure(record, idcodeColumn, CompoundTableModel.ATOM_COLOR_MODE_ALL, null);
+						if (isLastVisibleRow(table, row))
+							prefetchNextRows(table, tableModel, idcodeColumn, row);
 						}
 					}
 				}
@@ -96,6 +94,26 @@ public class CompoundTableChemistryCellRenderer extends ChemistryCellRenderer im
 		return renderPanel;
 		}
 
+	private boolean isLastVisibleRow(JTable table, int row) {
+		Rectangle visibleRect = table.getVisibleRect();
+		int lastRow = table.rowAtPoint(new Point(visibleRect.x, visibleRect.y+visibleRect.height-1));
+		return row == (lastRow == -1 ? table.getRowCount()-1 : lastRow);
+		}
+
+	/**
+	 * Lets the table model parse the structures of one screen of rows following the given row
+	 * in the background, such that they are available when the user scrolls down.
+	 */
+	private void prefetchNextRows(JTable table, CompoundTableModel tableModel, int idcodeColumn, int row) {
+		int rowCount = Math.min(table.getRowCount()-row-1, table.getVisibleRect().height / Math.max(1, table.getRowHeight()) + 1);
+		if (rowCount > 0) {
+			CompoundRecord[] record = new CompoundRecord[rowCount];
+			for (int i=0; i<rowCount; i++)
+				record[i] = tableModel.getRecord(row+1+i);
+			tableModel.prefetchChemicalStructures(record, idcodeColumn);
+			}
+		}
+
 	private JPanel getErrorRendererComponent() {
 		return new JPanel() {
 			private static final long serialVersionUID = 20150417L;
@@ -39,8 +39,6 @@ import com.actelion.research.io.BOMSkipper;
 import com.actelion.research.table.model.*;
 import com.actelion.research.table.view.config.ViewConfiguration;
 import com.actelion.research.util.BinaryDecoder;
-import com.actelion.research.util.ByteArrayArrayComparator;
-import com.actelion.research.util.ByteArrayComparator;
 
 import javax.swing.*;
 import java.awt.*;
@@ -52,6 +50,7 @@ import java.nio.charset.StandardCharsets;
 import java.text.SimpleDateFormat;
 import java.util.*;
 import java.util.List;
+import java.util.concurrent.ForkJoinTask;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.zip.GZIPInputStream;
@@ -90,6 +89,9 @@ public class CompoundTableLoader implements CompoundTableConstants,Runnable {
 
 	private static final int PROGRESS_LIMIT = 50000;
 	private static final int PROGRESS_STEP = 200;
+	private static final int MAX_MERGE_CHUNK_SIZE = 1024;
+	private static final int PARSE_BATCH_SIZE = 2048;	// lines handed over at once to a parsing thread
+	private static final int READ_BUFFER_SIZE = 1 << 16;
 
 	private static final int MAX_COLUMNS_FOR_SMILES_CHECK = 64;
 	private static final int MAX_ROWS_FOR_SMILES_CHECK = 20;
@@ -341,7 +343,7 @@ public class CompoundTableLoader implements CompoundTableConstants,Runnable {
 	 */
 	public boolean areMergeKeysUnique(String[] keyColumnName, boolean[] isIgnoreCase, ProgressListener pl) {
 		if (pl != null)
-			pl.startProgress("Sorting new keys...", 0, (mFieldData.length > PROGRESS_LIMIT) ? mFieldData.length : 0);
+			pl.startProgress("Checking new keys...", 0, (mFieldData.length > PROGRESS_LIMIT) ? mFieldData.length : 0);
 
 		int[] keyColumn = new int[keyColumnName.length];
 		for (int i=0; i<keyColumnName.length; i++) {
@@ -353,18 +355,14 @@ public class CompoundTableLoader implements CompoundTableConstants,Runnable {
 				}
 			}
 
-		TreeSet<byte[]> newKeySet = new TreeSet<byte[]>(new ByteArrayComparator());
+		MergeKeyIndex keyIndex = new MergeKeyIndex(mFieldData.length);
 		for (int row=0; row<mFieldData.length; row++) {
 			if (pl != null && mFieldData.length > PROGRESS_LIMIT && row%PROGRESS_STEP == 0)
 				pl.updateProgress(row);
 
 			byte[] key = constructMergeKey(mFieldData[row], keyColumn, isIgnoreCase);
-			if (key != null) {
-				if (newKeySet.contains(key))
-					return false;
-
-				newKeySet.add(key);
-				}
+			if (key != null && keyIndex.put(new byte[][] { key }, row) != -1)
+				return false;
 			}
 		return true;
 		}
@@ -566,16 +564,30 @@ public class CompoundTableLoader implements CompoundTableConstants,Runnable {
 		}
 
 	private boolean readTextData() {
-		BufferedReader theReader = new BufferedReader(mDataReader);
+		BufferedReader theReader = new BufferedReader(mDataReader, READ_BUFFER_SIZE);
 		String header = null;
 		mVersion = null;
 		int rowCount = -1;
 		boolean wasTouched = false;
 		boolean runtimePropertiesRead = false;
 		CompoundTableExtensionHandler extensionHandler = mTableModel.getExtensionHandler();
-		ArrayList<byte[]> lineList = new ArrayList<>();
+		ArrayList<byte[]> lineList = new ArrayList<>();	// unparsed lines of current batch
 		StringBuilder lineBuilder = new StringBuilder();
 
+		// Data lines are handed over in batches to background threads, which split and decode them
+		// while this thread continues reading. The number of unparsed batches is limited to keep
+		// transient memory low. If we don't know the row count, we report progress by file position.
+		LineParser lineParser = null;
+		Object[][] columnarFieldData = null;	// rows from binary companion file, if available
+		ArrayList<ForkJoinTask<Object[][]>> parseTaskList = new ArrayList<>();
+		int maxPendingBatches = 4 * ComputeScheduler.getInstance().getThreadCount(ComputeScheduler.PRIORITY_BACKGROUND);
+		int completedBatchCount = 0;
+		int lineCount = 0;
+		long charCount = 0;
+		long fileLength = (mFile == null) ? 0 : mFile.length();
+		if (fileLength > 1024L * PROGRESS_LIMIT)
+			mProgressController.startProgress("Reading Data...", 0, (int)(fileLength >> 10));
+
 		try {
 			while (true) {
 				boolean isFirstLine = !wasTouched;
@@ -680,13 +692,35 @@ public class CompoundTableLoader implements CompoundTableConstants,Runnable {
 					if (mWithHeaderLine && header == null) {
 						evaluateSeparatorSymbol(theLine);
 						header = convertCSVLine(theLine, lineBuilder, theReader);
+						if (mDataType == FileHelper.cFileTypeDataWarrior && mFile != null) {
+							lineParser = new LineParser(header, null);
+							columnarFieldData = readColumnarData(lineParser, theReader);
+							}
 						}
 					else {
-						if (!mWithHeaderLine && lineList.isEmpty())
+						if (!mWithHeaderLine && lineCount == 0)
 							evaluateSeparatorSymbol(theLine);
 						lineList.add(convertCSVLine(theLine, lineBuilder, theReader).getBytes());
-						if (rowCount > PROGRESS_LIMIT && lineList.size()%PROGRESS_STEP == 0)
-							mProgressController.updateProgress(lineList.size());
+						lineCount++;
+						charCount += theLine.length() + 1;
+						if (lineList.size() == PARSE_BATCH_SIZE) {
+							if (lineParser == null)
+								lineParser = new LineParser(header, lineList.get(0));
+							final LineParser parser = lineParser;
+							final ArrayList<byte[]> batch = lineList;
+							parseTaskList.add(ComputeScheduler.getInstance().submit(ComputeScheduler.PRIORITY_BACKGROUND, () -> parser.parse(batch)));
+							lineList = new ArrayList<>(PARSE_BATCH_SIZE);
+							while (parseTaskList.size() - completedBatchCount > maxPendingBatches)
+								parseTaskList.get(completedBatchCount++).join();
+							if (mProgressController.threadMustDie())
+								break;
+							}
+						if (lineCount%PROGRESS_STEP == 0) {
+							if (rowCount > PROGRESS_LIMIT)
+								mProgressController.updateProgress(lineCount);
+							else if (fileLength > 1024L * PROGRESS_LIMIT)
+								mProgressController.updateProgress((int)(charCount >> 10));
+							}
 						}
 					}
 				}
@@ -709,12 +743,48 @@ public class CompoundTableLoader implements CompoundTableConstants,Runnable {
 				}
 			}
 
-		if (mDataType != FileHelper.cFileTypeDataWarriorTemplate)
-			processLines(header, lineList);
+		if (mDataType != FileHelper.cFileTypeDataWarriorTemplate) {
+			if (lineParser == null)
+				lineParser = new LineParser(header, lineList.isEmpty() ? null : lineList.get(0));
+			processLines(lineParser, columnarFieldData, parseTaskList, lineList, lineCount);
+			}
 
 		return true;
 		}
 
+	/**
+	 * If companion files are enabled and the .dwar file being read has a valid binary companion file,
+	 * then this reads all rows from the companion file and positions the reader behind the data section
+	 * of the .dwar file.
+	 * @param lineParser
+	 * @param reader positioned at the first data row
+	 * @return null or row data of companion file
+	 * @throws IOException
+	 */
+	private Object[][] readColumnarData(LineParser lineParser, BufferedReader reader) throws IOException {
+		if (!ColumnarDataFile.isEnabled())
+			return null;
+
+		ColumnarDataFile dataFile = ColumnarDataFile.open(mFile);
+		if (dataFile == null)
+			return null;
+
+		mProgressController.startProgress("Reading Binary Data...", 0, 0);
+		Object[][] fieldData = dataFile.readData(mFieldNames, lineParser.mDescriptorHandler, lineParser.mDescriptorValid, this::convertNLAndTAB);
+		if (fieldData == null)
+			return null;
+
+		long remaining = dataFile.getDataCharCount();
+		while (remaining > 0) {
+			long skipped = reader.skip(remaining);
+			if (skipped <= 0)
+				break;
+			remaining -= skipped;
+			}
+
+		return fieldData;
+		}
+
 	private boolean isGooglePatentsFile(String firstLine) {
 		if (firstLine.startsWith("search URL:")) {
 			int index = firstLine.indexOf("https://patents.google.com");
@@ -907,132 +977,188 @@ public class CompoundTableLoader implements CompoundTableConstants,Runnable {
 		return lineBuilder.toString();
 		}
 
-	private void processLines(String header, ArrayList<byte[]> lineList) {
-		ArrayList<String> columnNameList = new ArrayList<String>();
-		byte columnSeparator = (byte)'\t';
-
-		// In case we have an old style idcode column 'name [idcode]', which may also be a modern
-		// clipboard transfer, then we may have space delimited atom coordinates and potentially
-		// need insert a new column for the detached coordinates.
-		ArrayList<Integer> oldStyleIDCodeColumnList = null;
+	/**
+	 * Waits for all submitted parse batches to complete, parses the remaining lines,
+	 * combines all parsed rows into mFieldData and post-processes the columns.
+	 * @param lineParser
+	 * @param columnarFieldData null or rows read from binary companion file instead of lines
+	 * @param parseTaskList submitted batches in line order
+	 * @param lineList remaining lines, which were not submitted
+	 * @param lineCount total number of lines
+	 */
+	private void processLines(LineParser lineParser, Object[][] columnarFieldData, ArrayList<ForkJoinTask<Object[][]>> parseTaskList, ArrayList<byte[]> lineList, int lineCount) {
+		if (columnarFieldData != null) {
+			mFieldData = columnarFieldData;
+			}
+		else {
+			mProgressController.startProgress("Processing Records...", 0, (lineCount > PROGRESS_LIMIT) ? parseTaskList.size() : 0);
 
-		if (mWithHeaderLine) {
-			int fromIndex = 0;
-			int toIndex = 0;
-			do {
-				String columnName;
-				toIndex = header.indexOf(columnSeparator, fromIndex);
-				if (toIndex == -1) {
-					columnName = header.substring(fromIndex);
-					}
-				else {
-					columnName = header.substring(fromIndex, toIndex);
-					fromIndex = toIndex+1;
-					}
+			mFieldData = new Object[lineCount][];
+			int row = 0;
+			for (int i=0; i<parseTaskList.size(); i++) {
+				Object[][] rowData = parseTaskList.get(i).join();
+				parseTaskList.set(i, null);
+				System.arraycopy(rowData, 0, mFieldData, row, rowData.length);
+				row += rowData.length;
+				if (lineCount > PROGRESS_LIMIT)
+					mProgressController.updateProgress(i);
+				}
+			Object[][] rowData = lineParser.parse(lineList);
+			System.arraycopy(rowData, 0, mFieldData, row, rowData.length);
+			row += rowData.length;
 
-				if (columnName.startsWith("\"") && columnName.endsWith("\""))
-					columnName = columnName.substring(1, columnName.length()-1).trim();
+			if (row < lineCount)	// cancelled
+				mFieldData = Arrays.copyOf(mFieldData, row);
+			}
 
-				String[] type = cParentSpecialColumnTypes;
-				for (int i=0; i<type.length; i++) {
-					if (columnName.endsWith("["+type[i]+"]")) {
-						columnName = columnName.substring(0, columnName.length()-type[i].length()-2).trim();
-						addColumnProperty(columnName, cColumnPropertySpecialType, type[i]);
-						if (type[i].equals(cColumnTypeIDCode)) {
-							if (oldStyleIDCodeColumnList == null)
-								oldStyleIDCodeColumnList = new ArrayList<>();
-							oldStyleIDCodeColumnList.add(columnNameList.size());
-							}
-						}
-					}
+		if (!mWithHeaderLine)
+			deduceColumnTitles();
 
-				if (mDataType == FileHelper.cFileTypeDataWarrior)
-					columnNameList.add(columnName);
-				else
-					columnNameList.add(sIdentifierHandler.normalizeIdentifierName(columnName));
-				} while (toIndex != -1);
-			}
+		if (lineParser.mOldStyleIDCodeColumnList != null)
+			handleOldStyleIDCodes(lineParser.mOldStyleIDCodeColumnList.toArray(new Integer[0]));
 
-		if (mVersion == null)
-			createColumnPropertiesForFilesPriorVersion270(columnNameList);
+		if (mDataType != FileHelper.cFileTypeDataWarrior)
+			handleSmiles();
 
-		if (!mWithHeaderLine && !lineList.isEmpty()) {
-			byte[] lineBytes = lineList.get(0);
-			columnNameList.add("Column 1");
-			int no = 2;
-			for (byte b:lineBytes)
-				if (b == columnSeparator)
-					columnNameList.add("Column "+no++);
-			}
+		if (mIsGooglePatentsFile)
+			postProcessGooglePatentsFile();
 
-		int columnCount = columnNameList.size();
+		addDefaultLookupColumnProperties();
 
-		mFieldNames = new String[columnCount];
-		mFieldData = new Object[lineList.size()][columnCount];
+		if (mVersion == null) // a version entry exists since V3.0
+			handlePotentially3DCoordinates();
+		}
 
-		for (int column=0; column<columnCount; column++)
-			mFieldNames[column] = columnNameList.get(column);
+	/**
+	 * Determines column names and properties from the header line, or from the first data line
+	 * if there is no header, and splits and decodes batches of data lines into row data.
+	 * Batches may be parsed concurrently by multiple threads.
+	 */
+	private class LineParser {
+		private static final byte COLUMN_SEPARATOR = (byte)'\t';
 
-		boolean[] descriptorValid = new boolean[columnCount];
-		DescriptorHandler<?,?>[] descriptorHandler = new DescriptorHandler[columnCount];
-		for (int column=0; column<columnCount; column++) {
-			descriptorHandler[column] = CompoundTableModel.getDefaultDescriptorHandler(getColumnSpecialType(mFieldNames[column]));
-			descriptorValid[column] = descriptorHandler[column] != null
-					&& descriptorHandler[column].getVersion().equals(
-							mColumnProperties.get(mFieldNames[column] + "\t" + cColumnPropertyDescriptorVersion));
-			}
+		private final int mColumnCount;
+		private final boolean[] mDescriptorValid;
+		private final DescriptorHandler<?,?>[] mDescriptorHandler;
 
-		mProgressController.startProgress("Processing Records...", 0, (mFieldData.length > PROGRESS_LIMIT) ? mFieldData.length : 0);
+		// In case we have an old style idcode column 'name [idcode]', which may also be a modern
+		// clipboard transfer, then we may have space delimited atom coordinates and potentially
+		// need insert a new column for the detached coordinates.
+		private ArrayList<Integer> mOldStyleIDCodeColumnList;
+
+		/**
+		 * @param header null or header line
+		 * @param firstLine null or first data line
+		 */
+		public LineParser(String header, byte[] firstLine) {
+			ArrayList<String> columnNameList = new ArrayList<String>();
+
+			if (mWithHeaderLine) {
+				int fromIndex = 0;
+				int toIndex = 0;
+				do {
+					String columnName;
+					toIndex = header.indexOf(COLUMN_SEPARATOR, fromIndex);
+					if (toIndex == -1) {
+						columnName = header.substring(fromIndex);
+						}
+					else {
+						columnName = header.substring(fromIndex, toIndex);
+						fromIndex = toIndex+1;
+						}
 
-		for (int row=0; row<mFieldData.length; row++) {
-			if (mProgressController.threadMustDie())
-				break;
-			if (mFieldData.length > PROGRESS_LIMIT && row%PROGRESS_STEP == 0)
-				mProgressController.updateProgress(row);
-			byte[] lineBytes = lineList.get(row);
-			lineList.set(row, null);
-			int fromIndex = 0;
-			int column = 0;
-			do {
-				int toIndex = fromIndex;
-				int spaces = 0;
+					if (columnName.startsWith("\"") && columnName.endsWith("\""))
+						columnName = columnName.substring(1, columnName.length()-1).trim();
+
+					String[] type = cParentSpecialColumnTypes;
+					for (int i=0; i<type.length; i++) {
+						if (columnName.endsWith("["+type[i]+"]")) {
+							columnName = columnName.substring(0, columnName.length()-type[i].length()-2).trim();
+							addColumnProperty(columnName, cColumnPropertySpecialType, type[i]);
+							if (type[i].equals(cColumnTypeIDCode)) {
+								if (mOldStyleIDCodeColumnList == null)
+									mOldStyleIDCodeColumnList = new ArrayList<>();
+								mOldStyleIDCodeColumnList.add(columnNameList.size());
+								}
+							}
+						}
 
-				while (toIndex<lineBytes.length && lineBytes[toIndex] != columnSeparator)
-					toIndex++;
+					if (mDataType == FileHelper.cFileTypeDataWarrior)
+						columnNameList.add(columnName);
+					else
+						columnNameList.add(sIdentifierHandler.normalizeIdentifierName(columnName));
+					} while (toIndex != -1);
+				}
 
-				if (toIndex == fromIndex) {
-					mFieldData[row][column] = null;
-					}
-				else {
-					byte[] cellBytes = Arrays.copyOfRange(lineBytes, fromIndex, toIndex);
-	
-					if (descriptorHandler[column] == null)
-						mFieldData[row][column] = convertNLAndTAB(cellBytes);
-					else if (descriptorValid[column])
-						mFieldData[row][column] = descriptorHandler[column].decode(cellBytes);
-					}
+			if (mVersion == null)
+				createColumnPropertiesForFilesPriorVersion270(columnNameList);
 
-				fromIndex = toIndex + 1 + spaces;
-				column++;
-				} while (fromIndex<lineBytes.length && column<columnCount);
-			}
+			if (!mWithHeaderLine && firstLine != null) {
+				columnNameList.add("Column 1");
+				int no = 2;
+				for (byte b:firstLine)
+					if (b == COLUMN_SEPARATOR)
+						columnNameList.add("Column "+no++);
+				}
 
-		if (!mWithHeaderLine)
-			deduceColumnTitles();
+			mColumnCount = columnNameList.size();
 
-		if (oldStyleIDCodeColumnList != null)
-			handleOldStyleIDCodes(oldStyleIDCodeColumnList.toArray(new Integer[0]));
+			mFieldNames = new String[mColumnCount];
+			for (int column=0; column<mColumnCount; column++)
+				mFieldNames[column] = columnNameList.get(column);
 
-		if (mDataType != FileHelper.cFileTypeDataWarrior)
-			handleSmiles();
+			mDescriptorValid = new boolean[mColumnCount];
+			mDescriptorHandler = new DescriptorHandler[mColumnCount];
+			for (int column=0; column<mColumnCount; column++) {
+				mDescriptorHandler[column] = CompoundTableModel.getDefaultDescriptorHandler(getColumnSpecialType(mFieldNames[column]));
+				mDescriptorValid[column] = mDescriptorHandler[column] != null
+						&& mDescriptorHandler[column].getVersion().equals(
+								mColumnProperties.get(mFieldNames[column] + "\t" + cColumnPropertyDescriptorVersion));
+				}
+			}
 
-		if (mIsGooglePatentsFile)
-			postProcessGooglePatentsFile();
+		/**
+		 * Splits lines into cells and decodes descriptors. Lines are released while being parsed.
+		 * @param lineList
+		 * @return row data; fewer rows than lines, if the loading was cancelled
+		 */
+		public Object[][] parse(ArrayList<byte[]> lineList) {
+			DescriptorHandler<?,?>[] descriptorHandler = new DescriptorHandler[mColumnCount];
+			for (int column=0; column<mColumnCount; column++)
+				if (mDescriptorValid[column])
+					descriptorHandler[column] = mDescriptorHandler[column].getThreadSafeCopy();
 
-		addDefaultLookupColumnProperties();
+			Object[][] fieldData = new Object[lineList.size()][];
+			for (int row=0; row<fieldData.length; row++) {
+				if (mProgressController.threadMustDie())
+					return Arrays.copyOf(fieldData, row);
+
+				byte[] lineBytes = lineList.get(row);
+				lineList.set(row, null);
+				fieldData[row] = new Object[mColumnCount];
+				int fromIndex = 0;
+				int column = 0;
+				do {
+					int toIndex = fromIndex;
+
+					while (toIndex<lineBytes.length && lineBytes[toIndex] != COLUMN_SEPARATOR)
+						toIndex++;
+
+					if (toIndex != fromIndex) {
+						byte[] cellBytes = Arrays.copyOfRange(lineBytes, fromIndex, toIndex);
+
+						if (mDescriptorHandler[column] == null)
+							fieldData[row][column] = convertNLAndTAB(cellBytes);
+						else if (mDescriptorValid[column])
+							fieldData[row][column] = descriptorHandler[column].decode(cellBytes);
+						}
 
-		if (mVersion == null) // a version entry exists since V3.0
-			handlePotentially3DCoordinates();
+					fromIndex = toIndex + 1;
+					column++;
+					} while (fromIndex<lineBytes.length && column<mColumnCount);
+				}
+			return fieldData;
+			}
 		}
 
 	private void addColumnProperty(String columnName, String key, String value) {
@@ -1269,47 +1395,25 @@ public class CompoundTableLoader implements CompoundTableConstants,Runnable {
 		}
 
 	private void insertChemistryFromSmilesSMP(int chemistryColumn, int smilesColumn, boolean isReaction) {
-		Thread st = new Thread("Smiles Supervisor") {
-			public void run() {
-				int threadCount = Runtime.getRuntime().availableProcessors();
-				final AtomicInteger mSMPIndex = new AtomicInteger(mFieldData.length);
-				mProgressController.startProgress("Converting Smiles...", 0, mFieldData.length);
-				Thread[] t = new Thread[threadCount];
-				for (int i=0; i<threadCount; i++) {
-					t[i] = new Thread("Smiles Parser "+(i+1)) {
-						public void run() {
-							StereoMolecule mol = new StereoMolecule();
-							int row = mSMPIndex.decrementAndGet();
-							while (row >= 0) {
-								if (isReaction)
-									insertReactionCodeFromSmiles(chemistryColumn, smilesColumn, row);
-								else
-									insertIDCodeFromSmiles(mol, chemistryColumn, smilesColumn, row);
+		int threadCount = ComputeScheduler.getInstance().getThreadCount(ComputeScheduler.PRIORITY_BACKGROUND);
+		final AtomicInteger mSMPIndex = new AtomicInteger(mFieldData.length);
+		mProgressController.startProgress("Converting Smiles...", 0, mFieldData.length);
+		ComputeScheduler.getInstance().runParallel(ComputeScheduler.PRIORITY_BACKGROUND, threadCount, () -> {
+			StereoMolecule mol = new StereoMolecule();
+			int row = mSMPIndex.decrementAndGet();
+			while (row >= 0) {
+				if (isReaction)
+					insertReactionCodeFromSmiles(chemistryColumn, smilesColumn, row);
+				else
+					insertIDCodeFromSmiles(mol, chemistryColumn, smilesColumn, row);
 
-								int progress = mFieldData.length - row;
-								if ((progress & 63) == 0)
-									mProgressController.updateProgress(progress);
+				int progress = mFieldData.length - row;
+				if ((progress & 63) == 0)
+					mProgressController.updateProgress(progress);
 
-								row = mSMPIndex.decrementAndGet();
-								}
-							}
-						};
-					t[i].setPriority(Thread.MIN_PRIORITY);
-					t[i].start();
-					}
-				for (int i = 0; i < threadCount; i++)
-					try {
-						t[i].join();
-						}
-					catch (InterruptedException ie) {
-					}
+				row = mSMPIndex.decrementAndGet();
 				}
-			};
-		st.start();
-		try {
-			st.join();
-			}
-		catch (InterruptedException ie) {}
+			}, null);
 		}
 
 	private void insertIDCodeFromSmiles(StereoMolecule mol, int structureColumn, int smilesColumn, int row) {
@@ -1397,52 +1501,30 @@ public class CompoundTableLoader implements CompoundTableConstants,Runnable {
 		}
 
 	private void insertReactionMappingSMP(int rxnColumn, int coordsColumn, int mappingColumn, int unmappedCount) {
-		Thread st = new Thread("Mapping Supervisor") {
-			public void run() {
-				int threadCount = Runtime.getRuntime().availableProcessors();
-				final AtomicInteger mSMPIndex = new AtomicInteger(mFieldData.length);
-				final AtomicInteger mMapCount = new AtomicInteger(0);
-				mProgressController.startProgress("Mapping atoms of "+unmappedCount+" reactions...", 0, unmappedCount);
-				Thread[] t = new Thread[threadCount];
-				for (int i=0; i<threadCount; i++) {
-					t[i] = new Thread("Mapping Calculator "+(i+1)) {
-						public void run() {
-							int row = mSMPIndex.decrementAndGet();
-							while (row >= 0) {
-								if (mFieldData[row][mappingColumn] == null) {
+		int threadCount = ComputeScheduler.getInstance().getThreadCount(ComputeScheduler.PRIORITY_BACKGROUND);
+		final AtomicInteger mSMPIndex = new AtomicInteger(mFieldData.length);
+		final AtomicInteger mMapCount = new AtomicInteger(0);
+		mProgressController.startProgress("Mapping atoms of "+unmappedCount+" reactions...", 0, unmappedCount);
+		ComputeScheduler.getInstance().runParallel(ComputeScheduler.PRIORITY_BACKGROUND, threadCount, () -> {
+			int row = mSMPIndex.decrementAndGet();
+			while (row >= 0) {
+				if (mFieldData[row][mappingColumn] == null) {
 try {
-									Object[] rowData = mFieldData[row];
-									Reaction rxn = ReactionEncoder.decode((byte[])rowData[rxnColumn], null, (byte[])rowData[coordsColumn], null, null, false);
-									ChemicalRuleEnhancedReactionMapper mapper = new ChemicalRuleEnhancedReactionMapper();
-									mapper.map(rxn);
-									String[] encoding = ReactionEncoder.encode(rxn, false);
-									if (encoding != null && encoding[1] != null)
-										rowData[mappingColumn] = encoding[1].getBytes();
+					Object[] rowData = mFieldData[row];
+					Reaction rxn = ReactionEncoder.decode((byte[])rowData[rxnColumn], null, (byte[])rowData[coordsColumn], null, null, false);
+					ChemicalRuleEnhancedReactionMapper mapper = new ChemicalRuleEnhancedReactionMapper();
+					mapper.map(rxn);
+					String[] encoding = ReactionEncoder.encode(rxn, false);
+					if (encoding != null && encoding[1] != null)
+						rowData[mappingColumn] = encoding[1].getBytes();
 } catch (Exception e) { for (Object c:mFieldData[row]) if (c instanceof byte[]) System.out.println(new String((byte[])c)); e.printStackTrace(); /* System.exit(0); */ }
 
-									mProgressController.updateProgress(mMapCount.incrementAndGet());
-									}
-
-								row = mSMPIndex.decrementAndGet();
-								}
-							}
-						};
-					t[i].setPriority(Thread.MIN_PRIORITY);
-					t[i].start();
-					}
-				for (int i = 0; i < threadCount; i++)
-					try {
-						t[i].join();
-						}
-					catch (InterruptedException ie) {
+					mProgressController.updateProgress(mMapCount.incrementAndGet());
 					}
+
+				row = mSMPIndex.decrementAndGet();
 				}
-			};
-		st.start();
-		try {
-			st.join();
-			}
-		catch (InterruptedException ie) {}
+			}, null);
 		}
 
 	private void deduceColumnTitles() {
@@ -2701,22 +2783,6 @@ try {
 		populateDetails();
 		}
 
-	private void addSourceToDestRowEntry(int sourceRow, int destRow, TreeMap<Integer, int[]> sourceToDestRowMap) {
-		int[] destRowList = sourceToDestRowMap.get(sourceRow);
-		if (destRowList == null) {
-			destRowList = new int[1];
-			destRowList[0] = destRow;
-			}
-		else {
-			int[] newDestRowList = new int[destRowList.length+1];
-			for (int i=0; i<destRowList.length; i++)
-				newDestRowList[i] = destRowList[i];
-			newDestRowList[destRowList.length] = destRow;
-			destRowList = newDestRowList;
-			}
-		sourceToDestRowMap.put(sourceRow, destRowList);
-		}
-
 	private boolean mergeTable() {
 		mProgressController.startProgress("Preparing merge...", 0, 0);
 
@@ -2733,10 +2799,8 @@ try {
 			}
 		}
 
-		int[] keyColumn = null;
-		boolean[] isIgnoreCase = null;
-		keyColumn = new int[keyColumns];
-		isIgnoreCase = new boolean[keyColumns];
+		int[] keyColumn = new int[keyColumns];
+		boolean[] isIgnoreCase = new boolean[keyColumns];
 		keyColumns = 0;
 		for (int sourceColumn=0; sourceColumn<mMergeMode.length; sourceColumn++) {
 			if (mMergeMode[sourceColumn] == MERGE_MODE_IS_KEY
@@ -2748,12 +2812,14 @@ try {
 				}
 			}
 
-		TreeMap<byte[][],Integer> keyToSourceRowMap = new TreeMap<>(new ByteArrayArrayComparator());
+		int maxWordCount = 0;
+		MergeKeyIndex keyIndex = new MergeKeyIndex(mFieldData.length);
 		for (int row=0; row<mFieldData.length; row++) {
 			byte[][] key = new byte[keyColumns][];
 			for (int i=0; i<keyColumns; i++) {
 				if (i == wordSearchIndex && mFieldData[row][keyColumn[i]] != null) {
 					key[i] = new String((byte[])mFieldData[row][keyColumn[i]]).trim().toLowerCase().getBytes();
+					maxWordCount = Math.max(maxWordCount, getWordCount(key[i]));
 					}
 				else if (isIgnoreCase[i] && mFieldData[row][keyColumn[i]] != null) {
 					key[i] = new String((byte[])mFieldData[row][keyColumn[i]]).toLowerCase().getBytes();
@@ -2762,64 +2828,43 @@ try {
 					key[i] = (byte[])mFieldData[row][keyColumn[i]];
 					}
 				}
-			keyToSourceRowMap.put(key, row);
+			keyIndex.put(key, row);
 			}
 
-		int maxWordCount = (wordSearchIndex == -1) ? -1 : determineMaxWordCount(keyToSourceRowMap.keySet());
-
-		TreeMap<Integer, int[]> sourceToDestRowMap = new TreeMap<>();
-
-		mProgressController.startProgress("Assigning new rows to current rows...", 0, mTableModel.getTotalRowCount());
+		int destRowCount = mTableModel.getTotalRowCount();
+		mProgressController.startProgress("Assigning new rows to current rows...", 0, destRowCount);
 
-		for (int destRow=0; destRow<mTableModel.getTotalRowCount(); destRow++) {
-			if (mProgressController.threadMustDie())
-				break;
-			if (destRow % PROGRESS_STEP == 0)
-				mProgressController.updateProgress(destRow);
-
-			// create combined key array from all key columns and find
-			byte[][] key = new byte[keyColumns][];
-			for (int i=0; i<keyColumns; i++) {
-				key[i] = (byte[])mTableModel.getTotalRecord(destRow).getData(mMergeDestColumn[keyColumn[i]]);
-				if (key[i] != null && isIgnoreCase[i])
-					key[i] = new String(key[i]).toLowerCase().getBytes();
-				}
-
-			if (wordSearchIndex == -1 || key[wordSearchIndex] == null) {
-				Integer sourceRow = keyToSourceRowMap.get(key);
-				if (sourceRow != null)
-					addSourceToDestRowEntry(sourceRow, destRow, sourceToDestRowMap);
-				}
-			else {  // one of the key columns requires a sub-word search
-				byte[] targetCellText = key[wordSearchIndex];
-				int spaceCount = 0;
-				for (byte b : targetCellText)
-					if (b == 32)
-						spaceCount++;
-				int[] wordIndex = new int[spaceCount+2];
-				spaceCount = 0;
-				for (int i=0; i<targetCellText.length; i++)
-					if (targetCellText[i] == 32)
-						wordIndex[++spaceCount] = i+1;
-				wordIndex[++spaceCount] = targetCellText.length+1;
-
-				boolean found = false;
-				for (int i1=0; !found && i1<wordIndex.length-1; i1++) {
-					if (wordIndex[i1+1]>wordIndex[i1]+1) {
-						for (int i2=Math.min(i1+maxWordCount, wordIndex.length-1); !found && i2>i1; i2--) {
-							if (wordIndex[i2-1]<wordIndex[i2]-1) {
-								key[wordSearchIndex] = Arrays.copyOfRange(targetCellText, wordIndex[i1], wordIndex[i2] - 1);
-								Integer sourceRow = keyToSourceRowMap.get(key);
-								if (sourceRow != null) {
-									addSourceToDestRowEntry(sourceRow, destRow, sourceToDestRowMap);
-									found = true;
-									}
-								}
-							}
-						}
-					}
-				}
-			}
+		// probe the index with the keys of all current rows in parallel
+		final int finalWordSearchIndex = wordSearchIndex;
+		final int finalMaxWordCount = maxWordCount;
+		int[] destToSourceRow = new int[destRowCount];
+		AtomicInteger nextDestRow = new AtomicInteger();
+		int threadCount = ComputeScheduler.getInstance().getThreadCount(ComputeScheduler.PRIORITY_BACKGROUND);
+		int chunkSize = ComputeScheduler.getChunkSize(destRowCount, threadCount, MAX_MERGE_CHUNK_SIZE);
+		ComputeScheduler.getInstance().runParallel(ComputeScheduler.PRIORITY_BACKGROUND, threadCount, () -> {
+			for (int start=nextDestRow.getAndAdd(chunkSize); start<destRowCount; start=nextDestRow.getAndAdd(chunkSize)) {
+				if (mProgressController.threadMustDie())
+					break;
+				int end = Math.min(destRowCount, start+chunkSize);
+				for (int destRow=start; destRow<end; destRow++)
+					destToSourceRow[destRow] = findMergeSourceRow(keyIndex, destRow, keyColumn,
+							isIgnoreCase, finalWordSearchIndex, finalMaxWordCount);
+				mProgressController.updateProgress(start-end);
+				}
+			}, null);
+
+		// collect the matching current rows of every new row without per-row lists
+		int[] destRowStart = new int[mFieldData.length+1];
+		for (int sourceRow:destToSourceRow)
+			if (sourceRow != -1)
+				destRowStart[sourceRow+1]++;
+		for (int sourceRow=0; sourceRow<mFieldData.length; sourceRow++)
+			destRowStart[sourceRow+1] += destRowStart[sourceRow];
+		int[] destRowList = new int[destRowStart[mFieldData.length]];
+		int[] destRowIndex = Arrays.copyOf(destRowStart, mFieldData.length);
+		for (int destRow=0; destRow<destRowCount; destRow++)
+			if (destToSourceRow[destRow] != -1)
+				destRowList[destRowIndex[destToSourceRow[destRow]]++] = destRow;
 
 		if (mProgressController.threadMustDie()) {
 			clearBufferedData();
@@ -2877,9 +2922,9 @@ try {
 			if (sourceRow % PROGRESS_STEP == 0)
 				mProgressController.updateProgress(sourceRow);
 
-			int[] rowList = sourceToDestRowMap.get(sourceRow);
-			if (rowList != null) {
-				for (int destRow:rowList) {
+			if (destRowStart[sourceRow] != destRowStart[sourceRow+1]) {
+				for (int i=destRowStart[sourceRow]; i<destRowStart[sourceRow+1]; i++) {
+					int destRow = destRowList[i];
 					// In case we have child columns with merge mode MERGE_MODE_AS_PARENT, we need to handle them first.
 					for (int column=0; column<mMergeDestColumn.length; column++) {
 						if (mMergeDestColumn[column] != NO_COLUMN) {
@@ -2911,7 +2956,7 @@ try {
 					}
 
 				if (destRowMap != null)
-					destRowMap[sourceRow] = rowList;
+					destRowMap[sourceRow] = Arrays.copyOfRange(destRowList, destRowStart[sourceRow], destRowStart[sourceRow+1]);
 
 				mFieldData[sourceRow] = null;
 				mergedColumns++;
@@ -2982,18 +3027,59 @@ try {
 		return false;
 		}
 
-	private int determineMaxWordCount(Set<byte[][]> keySet) {
-		int maxCount = 0;
-		for (byte[][] key:keySet) {
-			String s = new String(key[0]);
-			int count = (s.isEmpty()) ? 0 : 1;
-			for (int i=0; i<s.length(); i++)
-				if (s.charAt(i) == ' ')
-					count++;
-			if (maxCount < count)
-				maxCount = count;
+	private static int getWordCount(byte[] text) {
+		int count = (text.length == 0) ? 0 : 1;
+		for (byte b:text)
+			if (b == ' ')
+				count++;
+		return count;
+		}
+
+	/**
+	 * Finds the new row, whose merge key matches the key of the given current row.
+	 * If one of the key columns requires a sub-word search, then all word sequences
+	 * of the current row's cell are tried, longest sequences first.
+	 * This method is thread-safe.
+	 * @return matching row of new file content or -1
+	 */
+	private int findMergeSourceRow(MergeKeyIndex keyIndex, int destRow, int[] keyColumn, boolean[] isIgnoreCase, int wordSearchIndex, int maxWordCount) {
+		// create combined key array from all key columns and find
+		byte[][] key = new byte[keyColumn.length][];
+		for (int i=0; i<keyColumn.length; i++) {
+			key[i] = (byte[])mTableModel.getTotalRecord(destRow).getData(mMergeDestColumn[keyColumn[i]]);
+			if (key[i] != null && isIgnoreCase[i])
+				key[i] = new String(key[i]).toLowerCase().getBytes();
+			}
+
+		if (wordSearchIndex == -1 || key[wordSearchIndex] == null)
+			return keyIndex.get(key);
+
+		// one of the key columns requires a sub-word search
+		byte[] targetCellText = key[wordSearchIndex];
+		int spaceCount = 0;
+		for (byte b : targetCellText)
+			if (b == 32)
+				spaceCount++;
+		int[] wordIndex = new int[spaceCount+2];
+		spaceCount = 0;
+		for (int i=0; i<targetCellText.length; i++)
+			if (targetCellText[i] == 32)
+				wordIndex[++spaceCount] = i+1;
+		wordIndex[++spaceCount] = targetCellText.length+1;
+
+		for (int i1=0; i1<wordIndex.length-1; i1++) {
+			if (wordIndex[i1+1]>wordIndex[i1]+1) {
+				for (int i2=Math.min(i1+maxWordCount, wordIndex.length-1); i2>i1; i2--) {
+					if (wordIndex[i2-1]<wordIndex[i2]-1) {
+						key[wordSearchIndex] = Arrays.copyOfRange(targetCellText, wordIndex[i1], wordIndex[i2] - 1);
+						int sourceRow = keyIndex.get(key);
+						if (sourceRow != -1)
+							return sourceRow;
+						}
+					}
+				}
 			}
-		return maxCount;
+		return -1;
 		}
 
 	/**
@@ -62,6 +62,8 @@ public class CompoundTableSaver implements CompoundTableConstants,Runnable {
 	private RuntimeProperties	mRuntimeProperties;
 	private ArrayList<DataDependentPropertyWriter> mDataDependentPropertyWriterList;
 	private StereoMolecule[]    mSDReferenceMolecules;
+	private ColumnarDataFile.CharCountingWriter mCharCounter;
+	private long				mDataCharStart,mDataCharEnd;
 
 	public CompoundTableSaver(Frame parent, CompoundTableModel tableModel, JTable table) {
 		mTableModel = tableModel;
@@ -202,7 +204,8 @@ public class CompoundTableSaver implements CompoundTableConstants,Runnable {
 
 	private void writeTextData() throws IOException {
 		synchronized(mDataWriter) {
-			BufferedWriter theWriter = new BufferedWriter(mDataWriter);
+			mCharCounter = isColumnarDataFileNeeded() ? new ColumnarDataFile.CharCountingWriter(mDataWriter) : null;
+			BufferedWriter theWriter = new BufferedWriter(mCharCounter != null ? mCharCounter : mDataWriter);
 
 			int realRowCount = determineRowCount();
 
@@ -303,6 +306,11 @@ public class CompoundTableSaver implements CompoundTableConstants,Runnable {
 		if (!mToClipboard)
 			theWriter.write("\n");
 
+		if (mCharCounter != null) {
+			theWriter.flush();
+			mDataCharStart = mCharCounter.getCount();
+			}
+
 		int rowCount = (mRowMask == ROW_MASK_VISIBLE) ? mTableModel.getRowCount() : mTableModel.getTotalRowCount();
 
 		if (mProgressDialog != null)
@@ -365,6 +373,33 @@ public class CompoundTableSaver implements CompoundTableConstants,Runnable {
 			if (!mToClipboard)
 				theWriter.newLine();
 			}
+
+		if (mCharCounter != null) {
+			theWriter.flush();
+			mDataCharEnd = mCharCounter.getCount();
+			}
+		}
+
+	private boolean isColumnarDataFileNeeded() {
+		return mDataType == FileHelper.cFileTypeDataWarrior
+			&& mRowMask == ROW_MASK_ALL
+			&& !mToClipboard
+			&& ColumnarDataFile.isEnabled();
+		}
+
+	/**
+	 * @return columns in the order they are written into the data section of a native file
+	 */
+	private int[] getNativeColumnOrder() {
+		int[] column = new int[mTableModel.getTotalColumnCount()];
+		int index = 0;
+		for (int i=0; i<column.length; i++)
+			if (!mTableModel.isColumnDisplayable(i))
+				column[index++] = i;
+		for (int i=0; i<column.length; i++)
+			if (mTableModel.isColumnDisplayable(i))
+				column[index++] = i;
+		return column;
 		}
 
 	private String getValue(CompoundRecord record, int column) {
@@ -779,6 +814,9 @@ public class CompoundTableSaver implements CompoundTableConstants,Runnable {
 		if (mEmbedDetails)
 			embedAllDetails();
 
+		if (mDataType == FileHelper.cFileTypeDataWarrior)
+			ColumnarDataFile.delete(mFile);	// would be outdated
+
 		try {
 			switch (mDataType) {
 			case FileHelper.cFileTypeDataWarrior:
@@ -793,6 +831,12 @@ public class CompoundTableSaver implements CompoundTableConstants,Runnable {
 				break;
 				}
 
+			if (mCharCounter != null && (mProgressDialog == null || !mProgressDialog.threadMustDie())) {
+				if (mProgressDialog != null)
+					mProgressDialog.startProgress("Saving Binary Data...", 0, 0);
+				ColumnarDataFile.write(mFile, mTableModel, getNativeColumnOrder(), mDataCharEnd - mDataCharStart);
+				}
+
 			if (mDataType == FileHelper.cFileTypeDataWarrior && mRowMask == ROW_MASK_ALL) {
 				mTableModel.setFile(mFile);
 				if (mParentFrame != null)
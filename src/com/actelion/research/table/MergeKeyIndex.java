@@ -0,0 +1,106 @@
+/*
+ * Copyright 2017 Idorsia Pharmaceuticals Ltd., Hegenheimermattweg 91, CH-4123 Allschwil, Switzerland
+ *
+ * This file is part of DataWarrior.
+ *
+ * DataWarrior is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * DataWarrior is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License along with DataWarrior.
+ * If not, see http://www.gnu.org/licenses/.
+ *
+ * @author Thomas Sander
+ */
+
+package com.actelion.research.table;
+
+import com.actelion.research.table.model.KeyHash;
+
+import java.util.Arrays;
+
+/**
+ * Hash index from multi-column merge keys to row indexes, which is used to join rows of a file
+ * being merged with the rows of the current table. Keys consist of one byte[] per key column,
+ * which may be null. Rows are stored in an open-addressing table of ints, which avoids boxing
+ * and comparator based tree lookups. Once all keys are added, get() may be called concurrently.
+ */
+class MergeKeyIndex {
+	private final byte[][][] mKey;	// [row][key column]
+	private final long[] mHash;
+	private final int[] mSlot;		// row index or -1
+	private final int mMask;
+
+	/**
+	 * @param rowCount number of rows, whose keys may be added
+	 */
+	public MergeKeyIndex(int rowCount) {
+		mKey = new byte[rowCount][][];
+		mHash = new long[rowCount];
+		int capacity = Integer.highestOneBit(Math.max(8, rowCount)) << 2;
+		mMask = capacity - 1;
+		mSlot = new int[capacity];
+		Arrays.fill(mSlot, -1);
+		}
+
+	/**
+	 * Adds the key of a row. If another row with an equal key was added before, it is replaced.
+	 * @param key one byte[] or null per key column
+	 * @param row
+	 * @return replaced row or -1
+	 */
+	public int put(byte[][] key, int row) {
+		long hash = hash(key);
+		mKey[row] = key;
+		mHash[row] = hash;
+		int index = (int)hash & mMask;
+		while (mSlot[index] != -1) {
+			int other = mSlot[index];
+			if (mHash[other] == hash && keysEqual(mKey[other], key)) {
+				mSlot[index] = row;
+				return other;
+				}
+			index = (index + 1) & mMask;
+			}
+		mSlot[index] = row;
+		return -1;
+		}
+
+	/**
+	 * @param key one byte[] or null per key column
+	 * @return row of the most recently added equal key or -1
+	 */
+	public int get(byte[][] key) {
+		long hash = hash(key);
+		int index = (int)hash & mMask;
+		while (mSlot[index] != -1) {
+			int row = mSlot[index];
+			if (mHash[row] == hash && keysEqual(mKey[row], key))
+				return row;
+			index = (index + 1) & mMask;
+			}
+		return -1;
+		}
+
+	private static long hash(byte[][] key) {
+		long h = KeyHash.start();
+		for (byte[] k:key) {
+			if (k != null)
+				h = KeyHash.add(h, k);
+			h = KeyHash.add(h, k == null ? 0x200 : 0x100);	// column separator outside of byte range
+			}
+		return KeyHash.finish(h);
+		}
+
+	private static boolean keysEqual(byte[][] k1, byte[][] k2) {
+		if (k1.length != k2.length)
+			return false;
+		for (int i=0; i<k1.length; i++)
+			if (!Arrays.equals(k1[i], k2[i]))
+				return false;
+		return true;
+		}
+	}
@@ -24,6 +24,7 @@ import com.actelion.research.gui.hidpi.HiDPIIconButton;
 import com.actelion.research.gui.hidpi.HiDPIToggleButton;
 import com.actelion.research.gui.swing.SwingCursorHelper;
 import com.actelion.research.table.model.CompoundTableEvent;
+import com.actelion.research.table.model.ComputeScheduler;
 import com.actelion.research.table.model.CompoundTableListener;
 import com.actelion.research.table.model.CompoundTableModel;
 import info.clearthought.layout.TableLayout;
@@ -455,7 +456,7 @@ public abstract class JFilterPanel extends JPanel
 		}*/
 
 	protected void showProgressBar(final AtomicInteger concurrentIndex, final int maxIndexValue, String progressText) {
-		int threadCount = Runtime.getRuntime().availableProcessors();
+		int threadCount = ComputeScheduler.getInstance().getThreadCount(ComputeScheduler.PRIORITY_INTERACTIVE);
 		mColumnNameLabel.setVisible(false);
 		mProgressPanel.setVisible(true);
 		mProgressPanel.startProgress(progressText, 0, maxIndexValue);
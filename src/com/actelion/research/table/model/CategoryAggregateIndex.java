@@ -0,0 +1,258 @@
+/*
+ * Copyright 2017 Idorsia Pharmaceuticals Ltd., Hegenheimermattweg 91, CH-4123 Allschwil, Switzerland
+ *
+ * This file is part of DataWarrior.
+ *
+ * DataWarrior is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * DataWarrior is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License along with DataWarrior.
+ * If not, see http://www.gnu.org/licenses/.
+ *
+ * @author Thomas Sander
+ */
+
+package com.actelion.research.table.model;
+
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * Assigns all rows to groups of equal cell content of one column and lazily calculates
+ * aggregated values of other numerical columns per group. Cells of numerical columns are
+ * grouped by their float value, all other cells by their raw content. Empty cells belong to
+ * no group. Groups are kept by record ID and, thus, survive sorting. Aggregated values,
+ * however, are calculated in current row order, e.g. for 'first' and 'last', and are
+ * discarded by the CompoundTableModel whenever the sort order or the value column changes.
+ * The index itself is discarded, if the column data or the row count changes.
+ * An index is obtained from CompoundTableModel.getCategoryAggregateIndex().
+ */
+public class CategoryAggregateIndex {
+	public static final int AGGREGATE_FIRST = 0;
+	public static final int AGGREGATE_LAST = 1;
+	public static final int AGGREGATE_MIN = 2;
+	public static final int AGGREGATE_MAX = 3;
+	public static final int AGGREGATE_SUM = 4;
+	public static final int AGGREGATE_MEAN = 5;
+	public static final int AGGREGATE_MEDIAN = 6;
+	public static final int AGGREGATE_COUNT = 7;
+	private static final int AGGREGATE_TYPE_COUNT = 8;
+
+	private final CompoundTableModel mTableModel;
+	private final int[] mGroup;		// [record ID], -1 if empty
+	private final int mGroupCount;
+	private final HashMap<Integer,double[]> mAggregateMap;	// key: valueColumn*AGGREGATE_TYPE_COUNT+type
+	private int[][] mGroupRow;		// [first,last][group]; null if not calculated yet
+
+	protected CategoryAggregateIndex(CompoundTableModel tableModel, int column) {
+		mTableModel = tableModel;
+		mAggregateMap = new HashMap<>();
+
+		int rowCount = tableModel.getTotalRowCount();
+		mGroup = new int[rowCount];
+		Arrays.fill(mGroup, -1);
+
+		int groupCount = 0;
+		if (tableModel.isColumnTypeDouble(column)) {
+			long[] entry = new long[rowCount];	// float bits in high, record ID in low int
+			int count = 0;
+			for (int row=0; row<rowCount; row++) {
+				CompoundRecord record = tableModel.getTotalRecord(row);
+				float value = record.getDouble(column);
+				if (!Float.isNaN(value))
+					entry[count++] = ((long)Float.floatToIntBits(value) << 32) | record.mOriginalIndex;
+				}
+			Arrays.parallelSort(entry, 0, count);
+			for (int i=0; i<count; i++) {
+				if (i != 0 && (int)(entry[i] >> 32) != (int)(entry[i-1] >> 32))
+					groupCount++;
+				mGroup[(int)entry[i]] = groupCount;
+				}
+			if (count != 0)
+				groupCount++;
+			}
+		else {
+			byte[][] value = new byte[rowCount][];	// [record ID]
+			int count = 0;
+			for (int row=0; row<rowCount; row++) {
+				CompoundRecord record = tableModel.getTotalRecord(row);
+				value[record.mOriginalIndex] = (byte[])record.getData(column);
+				if (value[record.mOriginalIndex] != null)
+					count++;
+				}
+			Integer[] id = new Integer[count];
+			count = 0;
+			for (int i=0; i<rowCount; i++)
+				if (value[i] != null)
+					id[count++] = i;
+			Arrays.parallelSort(id, (i1, i2) -> RecordSorter.compareBytes(value[i1], value[i2]));
+			for (int i=0; i<count; i++) {
+				if (i != 0 && RecordSorter.compareBytes(value[id[i-1]], value[id[i]]) != 0)
+					groupCount++;
+				mGroup[id[i]] = groupCount;
+				}
+			if (count != 0)
+				groupCount++;
+			}
+		mGroupCount = groupCount;
+		}
+
+	protected boolean isValid(int rowCount) {
+		return mGroup.length == rowCount;
+		}
+
+	public int getGroupCount() {
+		return mGroupCount;
+		}
+
+	/**
+	 * @param row total row index
+	 * @return group of the row or -1, if the row's cell is empty
+	 */
+	public int getGroup(int row) {
+		return mGroup[mTableModel.getTotalRecord(row).mOriginalIndex];
+		}
+
+	/**
+	 * @param row total row index
+	 * @param last whether to return the last rather than the first row of the group
+	 * @return first or last total row index of the row's group or -1, if the row's cell is empty
+	 */
+	public synchronized int getGroupRow(int row, boolean last) {
+		int group = getGroup(row);
+		if (group == -1)
+			return -1;
+
+		if (mGroupRow == null) {
+			mGroupRow = new int[2][mGroupCount];
+			Arrays.fill(mGroupRow[0], -1);
+			for (int r=0; r<mGroup.length; r++) {
+				int g = getGroup(r);
+				if (g != -1) {
+					if (mGroupRow[0][g] == -1)
+						mGroupRow[0][g] = r;
+					mGroupRow[1][g] = r;
+					}
+				}
+			}
+
+		return mGroupRow[last ? 1 : 0][group];
+		}
+
+	/**
+	 * Returns an aggregated value of all finite values of valueColumn within the row's group.
+	 * Values are taken as shown, i.e. delogarithmized in logarithmic view mode.
+	 * @param row total row index
+	 * @param valueColumn numerical column
+	 * @param type one of the AGGREGATE_ types
+	 * @return aggregated value or NaN, if the row's cell is empty or the group has no finite values
+	 */
+	public double getAggregate(int row, int valueColumn, int type) {
+		int group = getGroup(row);
+		return (group == -1) ? Double.NaN : getAggregates(valueColumn, type)[group];
+		}
+
+	/**
+	 * Discards all aggregated values, e.g. because the row order has changed.
+	 */
+	protected synchronized void clearAggregates() {
+		mAggregateMap.clear();
+		mGroupRow = null;
+		}
+
+	/**
+	 * Discards aggregated values of the given value column, because its values have changed.
+	 * @param valueColumn
+	 */
+	protected synchronized void removeAggregates(int valueColumn) {
+		for (int type=0; type<AGGREGATE_TYPE_COUNT; type++)
+			mAggregateMap.remove(valueColumn*AGGREGATE_TYPE_COUNT+type);
+		}
+
+	private synchronized double[] getAggregates(int valueColumn, int type) {
+		double[] aggregate = mAggregateMap.get(valueColumn*AGGREGATE_TYPE_COUNT+type);
+		if (aggregate == null) {
+			aggregate = (type == AGGREGATE_MEDIAN) ? calculateMedians(valueColumn) : calculateAggregates(valueColumn, type);
+			mAggregateMap.put(valueColumn*AGGREGATE_TYPE_COUNT+type, aggregate);
+			}
+		return aggregate;
+		}
+
+	private double[] calculateAggregates(int valueColumn, int type) {
+		double[] aggregate = new double[mGroupCount];
+		int[] count = new int[mGroupCount];
+		for (int row=0; row<mGroup.length; row++) {
+			int group = getGroup(row);
+			if (group != -1) {
+				double value = mTableModel.getTotalOriginalDoubleAt(row, valueColumn);
+				if (Double.isFinite(value)) {
+					switch (type) {
+					case AGGREGATE_FIRST:
+						if (count[group] == 0)
+							aggregate[group] = value;
+						break;
+					case AGGREGATE_LAST:
+						aggregate[group] = value;
+						break;
+					case AGGREGATE_MIN:
+						aggregate[group] = (count[group] == 0) ? value : Math.min(aggregate[group], value);
+						break;
+					case AGGREGATE_MAX:
+						aggregate[group] = (count[group] == 0) ? value : Math.max(aggregate[group], value);
+						break;
+					case AGGREGATE_SUM:
+					case AGGREGATE_MEAN:
+						aggregate[group] += value;
+						break;
+						}
+					count[group]++;
+					}
+				}
+			}
+
+		for (int group=0; group<mGroupCount; group++)
+			aggregate[group] = (type == AGGREGATE_COUNT) ? count[group]
+							 : (count[group] == 0) ? Double.NaN
+							 : (type == AGGREGATE_MEAN) ? aggregate[group] / count[group]
+							 : aggregate[group];
+
+		return aggregate;
+		}
+
+	private double[] calculateMedians(int valueColumn) {
+		double[] rowValue = new double[mGroup.length];
+		int[] valueStart = new int[mGroupCount+1];
+		for (int row=0; row<mGroup.length; row++) {
+			int group = getGroup(row);
+			rowValue[row] = (group == -1) ? Double.NaN : mTableModel.getTotalOriginalDoubleAt(row, valueColumn);
+			if (Double.isFinite(rowValue[row]))
+				valueStart[group+1]++;
+			}
+		for (int group=0; group<mGroupCount; group++)
+			valueStart[group+1] += valueStart[group];
+
+		double[] value = new double[valueStart[mGroupCount]];
+		int[] valueIndex = Arrays.copyOf(valueStart, mGroupCount);
+		for (int row=0; row<mGroup.length; row++)
+			if (Double.isFinite(rowValue[row]))
+				value[valueIndex[getGroup(row)]++] = rowValue[row];
+
+		double[] median = new double[mGroupCount];
+		for (int group=0; group<mGroupCount; group++) {
+			int start = valueStart[group];
+			int count = valueStart[group+1] - start;
+			if (count == 0) {
+				median[group] = Double.NaN;
+				}
+			else {
+				Arrays.sort(value, start, start+count);
+				median[group] = ((count & 1) == 0) ? (value[start+count/2-1] + value[start+count/2]) / 2 : value[start+count/2];
+				}
+			}
+		return median;
+		}
+	}
@@ -0,0 +1,76 @@
+/*
+ * Copyright 2017 Idorsia Pharmaceuticals Ltd., Hegenheimermattweg 91, CH-4123 Allschwil, Switzerland
+ *
+ * This file is part of DataWarrior.
+ *
+ * DataWarrior is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * DataWarrior is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License along with DataWarrior.
+ * If not, see http://www.gnu.org/licenses/.
+ *
+ * @author Thomas Sander
+ */
+
+package com.actelion.research.table.model;
+
+import com.actelion.research.table.category.CategoryList;
+
+/**
+ * Pre-calculated category indexes of all cells of one category column, indexed by record ID.
+ * For every cell the index keeps the cell's category index, or the category count if the cell's
+ * entries belong to different categories. If any cell of the column contains multiple entries,
+ * then the category indexes of all individual entries are kept in compressed row form,
+ * i.e. the entries of the cell with ID id are found from mEntryStart[id] to mEntryStart[id+1]-1.
+ * An index is valid only for the CategoryList instance it was built for and as long as
+ * the row count doesn't change.
+ */
+class CategoryIndex {
+	private final CategoryList<?> mCategoryList;
+	private final int[] mCellCategory;	// [rowID]
+	private final int[] mEntryStart;	// [rowID], one more than row count; null if no cell has multiple entries
+	private final int[] mEntryCategory;
+
+	protected CategoryIndex(CategoryList<?> categoryList, int[] cellCategory, int[] entryStart, int[] entryCategory) {
+		mCategoryList = categoryList;
+		mCellCategory = cellCategory;
+		mEntryStart = entryStart;
+		mEntryCategory = entryCategory;
+		}
+
+	protected boolean isValid(CategoryList<?> categoryList, int rowCount) {
+		return mCategoryList == categoryList && mCellCategory.length == rowCount;
+		}
+
+	/**
+	 * @param id record ID
+	 * @return category index or category count, if the cell belongs to multiple categories
+	 */
+	protected int getCellCategory(int id) {
+		return mCellCategory[id];
+		}
+
+	/**
+	 * @return whether any cell contains more than one entry
+	 */
+	protected boolean hasMultipleEntries() {
+		return mEntryStart != null;
+		}
+
+	protected int getEntryCount(int id) {
+		return (mEntryStart == null) ? 1 : mEntryStart[id+1] - mEntryStart[id];
+		}
+
+	/**
+	 * @param id record ID
+	 * @param entry entry index within cell
+	 * @return category index of the given entry
+	 */
+	protected int getEntryCategory(int id, int entry) {
+		return (mEntryStart == null) ? mCellCategory[id] : mEntryCategory[mEntryStart[id]+entry];
+		}
+	}
@@ -25,13 +25,15 @@ public class CompoundRecord {
     private static final int cFlagDeleted = 1;
 	protected static final int cFlagFirstUnusedFlagNo = 2;
 	protected static final int cFlagLastUnusedFlagNo = 63;
+	public static final int cFlagFirstExtendedFlagNo = 64;	// flags from here on are kept as bitsets in the CompoundRecordStore
+	public static final int cFlagLastExtendedFlagNo = 1023;	// each extended flag needs one bit per row
 
     public static final long cFlagMaskSelected = (1L << cFlagSelected);
     public static final long cFlagMaskDeleted = (1L << cFlagDeleted);
 
 	private Object[]		mData;
 	protected String[][][]	mDetailReference;	// [column][detailIndex][count]
-	protected float[]		mFloat;
+	protected final CompoundRecordStore mStore;	// float values and extended flags are stored column-wise by record ID
 	protected long			mFlags;
 	protected int			mOriginalIndex;
 
@@ -50,17 +52,27 @@ public class CompoundRecord {
 		mFloat = new float[data.length];
 		}*/
 
+	/**
+	 * Creates a stand-alone record, which is not part of any CompoundTableModel.
+	 * @param index
+	 * @param columns
+	 */
 	protected CompoundRecord(int index, int columns) {
+		this(new CompoundRecordStore(index+1, columns), index, columns);
+		}
+
+	protected CompoundRecord(CompoundRecordStore store, int index, int columns) {
+		mStore = store;
 		mOriginalIndex = index;
-        if (columns != 0) {
+        if (columns != 0)
             mData = new Object[columns];
-            mFloat = new float[columns];
-            }
 		}
 
 	protected CompoundRecord(CompoundRecord record, int index) {
+		mStore = record.mStore;
 		mOriginalIndex = index;
 		mFlags = record.mFlags;
+		mStore.copyFlags(record.mOriginalIndex, index);
 		int columns = record.mData == null ? 0 : record.mData.length;
 		if (columns != 0) {
 			mData = new Object[columns];
@@ -82,8 +94,6 @@ public class CompoundRecord {
 						}
 					}
 				}
-
-			mFloat = new float[columns];
 			}
 		}
 
@@ -126,11 +136,12 @@ public class CompoundRecord {
      * @return whether the specified flag is set or not
      */
     public boolean isFlagSet(int flagNo) {
-        return (mFlags & (1L << flagNo)) != 0;
+        return (flagNo < cFlagFirstExtendedFlagNo) ? (mFlags & (1L << flagNo)) != 0
+             : mStore.isFlagSet(flagNo, mOriginalIndex);
         }
 
     /**
-     * @return all set flags as a mask
+     * @return all set flags below cFlagFirstExtendedFlagNo as a mask
      */
     public long getFlags() {
         return mFlags;
@@ -147,7 +158,7 @@ public class CompoundRecord {
 	 * @return valid double value or NaN if cell is empty
 	 */
 	public float getDouble(int column) {
-		return mFloat[column];
+		return mStore.getFloat(column, mOriginalIndex);
 		}
 
 	public void setDetailReferences(int column, String[][] detailReferences) {
@@ -291,16 +302,13 @@ public class CompoundRecord {
 	public void addColumns(int no) {
 		int currentColumnCount = mData.length;
 		Object[] newData = new Object[currentColumnCount+no];
-		float[] newFloat = new float[currentColumnCount+no];
 		String[][][] newDetailReference = (mDetailReference == null) ? null : new String[currentColumnCount+no][][];
 		for (int i=0; i<currentColumnCount; i++) {
 			newData[i] = mData[i];
-			newFloat[i] = mFloat[i];
 			if (newDetailReference != null)
 				newDetailReference[i] = mDetailReference[i];
 			}
 		mData = newData;
-		mFloat = newFloat;
 		mDetailReference = newDetailReference;
 		}
 
@@ -308,14 +316,12 @@ public class CompoundRecord {
 		int currentColumnCount = mData.length;
 		int newColumnCount = mData.length - removalCount;
 		Object[] newData = new Object[newColumnCount];
-		float[] newFloat = new float[newColumnCount];
 		String[][][] newDetailReference = (mDetailReference == null) ? null : new String[newColumnCount][][];
 		int newIndex = 0;
 		boolean detailFound = false;
 		for (int i=0; i<currentColumnCount; i++) {
 			if (!removeColumn[i]) {
 				newData[newIndex] = mData[i];
-				newFloat[newIndex] = mFloat[i];
 				if (newDetailReference != null && mDetailReference[i] != null) {
 					newDetailReference[newIndex] = mDetailReference[i];
 					detailFound = true;
@@ -324,7 +330,6 @@ public class CompoundRecord {
 				}
 			}
 		mData = newData;
-		mFloat = newFloat;
 		mDetailReference = (detailFound) ? newDetailReference : null;
 		}
 
@@ -333,15 +338,32 @@ public class CompoundRecord {
      * @param flagNo
      */
     public void setFlag(int flagNo) {
-        mFlags |= (1L << flagNo);
+        if (flagNo < cFlagFirstExtendedFlagNo)
+            mFlags |= (1L << flagNo);
+        else
+            mStore.setFlag(flagNo, mOriginalIndex);
         }
 
     /**
-     * sets the flag specified by the flag number (>= 0)
+     * clears the flag specified by the flag number (>= 0)
      * @param flagNo
      */
     public void clearFlag(int flagNo) {
-        mFlags &= ~(1L << flagNo);
+        if (flagNo < cFlagFirstExtendedFlagNo)
+            mFlags &= ~(1L << flagNo);
+        else
+            mStore.clearFlag(flagNo, mOriginalIndex);
+        }
+
+    /**
+     * inverts the flag specified by the flag number (>= 0)
+     * @param flagNo
+     */
+    public void invertFlag(int flagNo) {
+        if (flagNo < cFlagFirstExtendedFlagNo)
+            mFlags ^= (1L << flagNo);
+        else
+            mStore.invertFlag(flagNo, mOriginalIndex);
         }
 
     /**
@@ -0,0 +1,291 @@
+/*
+ * Copyright 2017 Idorsia Pharmaceuticals Ltd., Hegenheimermattweg 91, CH-4123 Allschwil, Switzerland
+ *
+ * This file is part of DataWarrior.
+ *
+ * DataWarrior is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * DataWarrior is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License along with DataWarrior.
+ * If not, see http://www.gnu.org/licenses/.
+ *
+ * @author Thomas Sander
+ */
+
+package com.actelion.research.table.model;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Columnar storage for the primitive per-row data of a CompoundTableModel.
+ * Instead of every CompoundRecord owning a float[] with one value per column,
+ * all float values of one column are kept in one contiguous array, which is
+ * indexed by the record ID (CompoundRecord.getID()). This keeps the number of
+ * heap objects independent of the row count and lets column scans, e.g. when
+ * filtering or sorting, run over one primitive array.
+ * Row flags beyond the 64 flags, which fit into CompoundRecord.mFlags, are
+ * also kept here as one bitset per flag with one bit per record ID. Bitset
+ * words are updated atomically, because exclusion flags are set and cleared
+ * from multiple threads during structure searches.
+ * For range filters the store also provides, per column, the IDs of all rows
+ * with a finite value sorted by value, which is dropped whenever a value of the
+ * column changes or rows are added or removed.
+ * Row IDs are dense (0...rowCount-1); when rows are deleted, compactRows()
+ * must be called with the same mapping that is used to re-assign record IDs.
+ */
+class CompoundRecordStore {
+	private static final int MIN_ROW_CAPACITY = 16;
+
+	private float[][]	mFloat;	// [column][rowID]
+	private int[][]		mSortedID;	// [column][index] IDs of rows with finite values in ascending value order
+	private volatile AtomicLongArray[] mExtendedFlag;	// [flagNo-cFlagFirstExtendedFlagNo][rowID/64]
+	private int			mRowCapacity;
+
+	protected CompoundRecordStore(int rows, int columns) {
+		mRowCapacity = Math.max(MIN_ROW_CAPACITY, rows);
+		mFloat = new float[columns][];
+		mSortedID = new int[columns][];
+		for (int column=0; column<columns; column++)
+			mFloat[column] = new float[mRowCapacity];
+		mExtendedFlag = new AtomicLongArray[0];
+		}
+
+	protected int getColumnCount() {
+		return mFloat.length;
+		}
+
+	/**
+	 * @param column
+	 * @param id record ID
+	 * @return the float value of the cell or NaN, if the record was deleted
+	 */
+	protected float getFloat(int column, int id) {
+		return (id < 0) ? Float.NaN : mFloat[column][id];
+		}
+
+	protected void setFloat(int column, int id, float value) {
+		mFloat[column][id] = value;
+		mSortedID[column] = null;
+		}
+
+	/**
+	 * Replaces the first count values of the column, which are indexed by record ID.
+	 * @param column
+	 * @param value
+	 * @param count
+	 */
+	protected void setFloats(int column, float[] value, int count) {
+		System.arraycopy(value, 0, mFloat[column], 0, count);
+		mSortedID[column] = null;
+		}
+
+	/**
+	 * Returns the column's value array, which is indexed by record ID.
+	 * The array may be larger than the current row count and is replaced
+	 * when rows or columns are added. Thus, don't keep a reference to it.
+	 * The array must not be modified; use setFloat() or setFloats() instead.
+	 * @param column
+	 * @return float values of all rows of this column
+	 */
+	protected float[] getFloatColumn(int column) {
+		return mFloat[column];
+		}
+
+	/**
+	 * Makes sure that row IDs up to rows-1 can be stored. Grows by 50% to
+	 * amortize repeated calls when rows are added one by one. Since rows are
+	 * about to be added, all sorted ID indexes are dropped.
+	 * @param rows
+	 */
+	protected void ensureRowCapacity(int rows) {
+		Arrays.fill(mSortedID, null);
+		if (rows > mRowCapacity) {
+			mRowCapacity = Math.max(rows, mRowCapacity + (mRowCapacity >> 1));
+			for (int column=0; column<mFloat.length; column++)
+				mFloat[column] = Arrays.copyOf(mFloat[column], mRowCapacity);
+			for (int i=0; i<mExtendedFlag.length; i++)
+				if (mExtendedFlag[i] != null)
+					mExtendedFlag[i] = copyOf(mExtendedFlag[i], getWordCount());
+			}
+		}
+
+	protected void addColumns(int count) {
+		int oldCount = mFloat.length;
+		mFloat = Arrays.copyOf(mFloat, oldCount+count);
+		mSortedID = Arrays.copyOf(mSortedID, oldCount+count);
+		for (int column=oldCount; column<mFloat.length; column++)
+			mFloat[column] = new float[mRowCapacity];
+		}
+
+	protected void removeColumns(boolean[] removeColumn, int removalCount) {
+		float[][] newFloat = new float[mFloat.length - removalCount][];
+		int[][] newSortedID = new int[newFloat.length][];
+		int newIndex = 0;
+		for (int column=0; column<mFloat.length; column++) {
+			if (!removeColumn[column]) {
+				newSortedID[newIndex] = mSortedID[column];
+				newFloat[newIndex++] = mFloat[column];
+				}
+			}
+		mFloat = newFloat;
+		mSortedID = newSortedID;
+		}
+
+	/**
+	 * Moves the data of surviving rows to their new IDs after row deletion.
+	 * Since new IDs are assigned in row order, old IDs are not monotonous
+	 * and every column array needs to be copied.
+	 * @param oldID maps the new row IDs to the IDs before the deletion
+	 */
+	protected void compactRows(int[] oldID) {
+		mRowCapacity = Math.max(MIN_ROW_CAPACITY, oldID.length);
+		Arrays.fill(mSortedID, null);
+		for (int column=0; column<mFloat.length; column++) {
+			float[] oldValue = mFloat[column];
+			mFloat[column] = new float[mRowCapacity];
+			for (int id=0; id<oldID.length; id++)
+				mFloat[column][id] = oldValue[oldID[id]];
+			}
+		for (int i=0; i<mExtendedFlag.length; i++) {
+			AtomicLongArray oldWord = mExtendedFlag[i];
+			if (oldWord != null) {
+				AtomicLongArray word = new AtomicLongArray(getWordCount());
+				for (int id=0; id<oldID.length; id++)
+					if ((oldWord.get(oldID[id] >>> 6) & (1L << oldID[id])) != 0)
+						word.set(id >>> 6, word.get(id >>> 6) | (1L << id));
+				mExtendedFlag[i] = word;
+				}
+			}
+		}
+
+	/**
+	 * Returns the IDs of all rows with a finite value in the given column sorted by
+	 * ascending value. The index is created on first request and kept until a value
+	 * of the column is changed or rows are added or removed. Thus, as long as the
+	 * same array instance is returned, the column values are unchanged.
+	 * The returned array must not be modified.
+	 * @param column
+	 * @param rowCount current number of rows, i.e. highest valid row ID + 1
+	 * @return IDs of rows with finite values in ascending value order
+	 */
+	protected int[] getSortedIDs(int column, int rowCount) {
+		int[] sortedID = mSortedID[column];
+		if (sortedID == null) {
+			// sort (value,ID) pairs encoded as longs with the value in the high bits mapped to ascending int order
+			float[] value = mFloat[column];
+			long[] key = new long[rowCount];
+			int count = 0;
+			for (int id=0; id<rowCount; id++) {
+				if (!Float.isNaN(value[id]) && !Float.isInfinite(value[id])) {
+					int bits = Float.floatToIntBits(value[id] == 0f ? 0f : value[id]);	// treat -0 as 0
+					bits ^= (bits >> 31) & 0x7FFFFFFF;
+					key[count++] = ((long)bits << 32) | id;
+					}
+				}
+			Arrays.sort(key, 0, count);
+			sortedID = new int[count];
+			for (int i=0; i<count; i++)
+				sortedID[i] = (int)key[i];
+			mSortedID[column] = sortedID;
+			}
+		return sortedID;
+		}
+
+	/**
+	 * @param flagNo >= CompoundRecord.cFlagFirstExtendedFlagNo
+	 * @param id record ID
+	 * @return whether the flag is set for the given record
+	 */
+	protected boolean isFlagSet(int flagNo, int id) {
+		AtomicLongArray word = getFlagWords(flagNo, false);
+		return word != null && id >= 0 && (word.get(id >>> 6) & (1L << id)) != 0;
+		}
+
+	protected void setFlag(int flagNo, int id) {
+		getFlagWords(flagNo, true).accumulateAndGet(id >>> 6, 1L << id, (w, bit) -> w | bit);
+		}
+
+	protected void clearFlag(int flagNo, int id) {
+		AtomicLongArray word = getFlagWords(flagNo, false);
+		if (word != null)
+			word.accumulateAndGet(id >>> 6, ~(1L << id), (w, mask) -> w & mask);
+		}
+
+	protected void invertFlag(int flagNo, int id) {
+		getFlagWords(flagNo, true).accumulateAndGet(id >>> 6, 1L << id, (w, bit) -> w ^ bit);
+		}
+
+	/**
+	 * Copies the states of all extended flags from one record to another one, e.g. when cloning rows.
+	 * @param sourceID
+	 * @param destID
+	 */
+	protected void copyFlags(int sourceID, int destID) {
+		for (int i=0; i<mExtendedFlag.length; i++) {
+			if (mExtendedFlag[i] != null) {
+				int flagNo = CompoundRecord.cFlagFirstExtendedFlagNo + i;
+				if (isFlagSet(flagNo, sourceID))
+					setFlag(flagNo, destID);
+				else
+					clearFlag(flagNo, destID);
+				}
+			}
+		}
+
+	/**
+	 * Clears the flag for all records and releases its bitset.
+	 * @param flagNo >= CompoundRecord.cFlagFirstExtendedFlagNo
+	 */
+	protected void clearFlagOfAllRows(int flagNo) {
+		int index = flagNo - CompoundRecord.cFlagFirstExtendedFlagNo;
+		if (index < mExtendedFlag.length)
+			mExtendedFlag[index] = null;
+		}
+
+	/**
+	 * ORs the bitset of the given flag word by word into words.
+	 * @param flagNo >= CompoundRecord.cFlagFirstExtendedFlagNo
+	 * @param words array with at least (rowCount+63)/64 elements
+	 */
+	protected void orFlagWords(int flagNo, long[] words) {
+		AtomicLongArray word = getFlagWords(flagNo, false);
+		if (word != null) {
+			int count = Math.min(words.length, word.length());
+			for (int i=0; i<count; i++)
+				words[i] |= word.get(i);
+			}
+		}
+
+	protected int getWordCount() {
+		return (mRowCapacity + 63) >>> 6;
+		}
+
+	private AtomicLongArray getFlagWords(int flagNo, boolean create) {
+		int index = flagNo - CompoundRecord.cFlagFirstExtendedFlagNo;
+		AtomicLongArray[] extendedFlag = mExtendedFlag;
+		if (index < extendedFlag.length && extendedFlag[index] != null)
+			return extendedFlag[index];
+		if (!create)
+			return null;
+
+		synchronized (this) {
+			if (index >= mExtendedFlag.length)
+				mExtendedFlag = Arrays.copyOf(mExtendedFlag, index+1);
+			if (mExtendedFlag[index] == null)
+				mExtendedFlag[index] = new AtomicLongArray(getWordCount());
+			return mExtendedFlag[index];
+			}
+		}
+
+	private static AtomicLongArray copyOf(AtomicLongArray source, int length) {
+		AtomicLongArray copy = new AtomicLongArray(length);
+		for (int i=0; i<Math.min(length, source.length()); i++)
+			copy.set(i, source.get(i));
+		return copy;
+		}
+	}
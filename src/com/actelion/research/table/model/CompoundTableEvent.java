@@ -53,6 +53,7 @@ public class CompoundTableEvent extends EventObject {
 	private int		mType,mColumn,mSpecifier,mOldCategoryCount;
 	private int[]	mMapping;    // maps new to original columns/rows after column/row removal
 	private int[]   mOldCategoryCounts;
+	private int[]	mChangedRowID;	// IDs of rows, whose exclusion changed, if type is cChangeExcluded
 	private boolean	mIsAdjusting;
 
 	/**
@@ -96,10 +97,22 @@ public class CompoundTableEvent extends EventObject {
 	    }
 
 	public CompoundTableEvent(Object source, int type, int specifier, boolean isAdjusting) {
+		this(source, type, specifier, isAdjusting, null);
+	    }
+
+	/**
+	 * @param source
+	 * @param type
+	 * @param specifier
+	 * @param isAdjusting
+	 * @param changedRowID in case of cChangeExcluded IDs of rows whose exclusion flags changed; null if unknown
+	 */
+	public CompoundTableEvent(Object source, int type, int specifier, boolean isAdjusting, int[] changedRowID) {
 		super(source);
 		mType = type;
 		mSpecifier = specifier;
 		mIsAdjusting = isAdjusting;
+		mChangedRowID = changedRowID;
 	    }
 
 	public int getType() {
@@ -125,4 +138,14 @@ public class CompoundTableEvent extends EventObject {
 	public boolean isAdjusting() {
 		return mIsAdjusting;
 		}
+
+	/**
+	 * If a cChangeExcluded event was caused by moving a filter's bounds, then the event knows
+	 * those rows that may have changed their visibility. Views may use this to update only
+	 * these rows. Rows are given as record IDs (CompoundRecord.getID()).
+	 * @return IDs of rows whose exclusion flags changed or null, if any row may have changed
+	 */
+	public int[] getChangedRowIDs() {
+		return mChangedRowID;
+		}
 	}
\ No newline at end of file
@@ -152,9 +152,12 @@ public class CompoundTableListHandler {
         }
 
     /**
-     * Creates a mask containing one all flags of those lists specified in index
+     * Creates a mask containing one all flags of those lists specified in index.
+     * Lists, whose flagNo is >= CompoundRecord.cFlagFirstExtendedFlagNo, cannot be
+     * represented by a mask. Use isListMember() or list flag numbers to cover all lists.
      * @param index list index or LISTINDEX_NONE, LISTINDEX_SELECTION or LISTINDEX_ANY
      * @return mask
+     * @throws IllegalArgumentException if any of the specified lists uses an extended flag
      */
     public long getListMask(int index) {
         if (index == LISTINDEX_NONE)
@@ -164,10 +167,30 @@ public class CompoundTableListHandler {
         if (index == LISTINDEX_ANY) {
             long mask = 0;
             for (int i = 0; i< mListInfoList.size(); i++)
-                mask |= (1L << mListInfoList.get(i).flagNo);
+                mask |= mTableModel.convertRowFlagToMask(mListInfoList.get(i).flagNo);
             return mask;
             }
-		return (1L << mListInfoList.get(index).flagNo);
+		return mTableModel.convertRowFlagToMask(mListInfoList.get(index).flagNo);
+		}
+
+	/**
+	 * Checks list membership independent of whether the list's flag can be represented by a mask.
+	 * @param record
+	 * @param index list index or LISTINDEX_NONE, LISTINDEX_SELECTION or LISTINDEX_ANY
+	 * @return true if the record belongs to the list, to the selection, or to any list respectively
+	 */
+	public boolean isListMember(CompoundRecord record, int index) {
+		if (index == LISTINDEX_NONE)
+			return false;
+		if (index == LISTINDEX_SELECTION)
+			return record.isSelected();
+		if (index == LISTINDEX_ANY) {
+			for (ListInfo info:mListInfoList)
+				if (record.isFlagSet(info.flagNo))
+					return true;
+			return false;
+			}
+		return record.isFlagSet(mListInfoList.get(index).flagNo);
 		}
 
 
@@ -310,28 +333,25 @@ public class CompoundTableListHandler {
 
 		mListInfoList.add(new ListInfo(name, flagNo));
 
-		long mask1 = getListMask(list1);
-        long mask2 = getListMask(list2);
-        long maskBoth = (mask1 | mask2);
-
 		for (int row=0; row<mTableModel.getTotalRowCount(); row++) {
 			CompoundRecord record = mTableModel.getTotalRecord(row);
-			long availableFlags = (record.mFlags & maskBoth);
+			boolean inList1 = isListMember(record, list1);
+			boolean inList2 = isListMember(record, list2);
 			switch (operation) {
 			case OPERATION_AND:
-				if (availableFlags == maskBoth)
+				if (inList1 && inList2)
 					record.setFlag(flagNo);
 				break;
 			case OPERATION_OR:
-				if (availableFlags != 0)
+				if (inList1 || inList2)
                     record.setFlag(flagNo);
 				break;
 			case OPERATION_XOR:
-				if (availableFlags == mask1 || availableFlags == mask2)
+				if (inList1 ^ inList2)
                     record.setFlag(flagNo);
 				break;
 			case OPERATION_NOT:
-				if (availableFlags == mask1)
+				if (inList1 && !inList2)
                     record.setFlag(flagNo);
 				break;
 				}
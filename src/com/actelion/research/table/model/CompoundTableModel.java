@@ -47,6 +47,7 @@ import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.regex.PatternSyntaxException;
 
@@ -68,6 +69,11 @@ public class CompoundTableModel extends AbstractTableModel
 		// a comma (',') cannot be a delimiter, because it would interfere with the date format
 	private static final String cSeparatorRegex = " *"+cLineSeparator.replace("\n", "\\n")+" *"+"| *; *";
 
+	private static final int cTextSearchChunkSize = 4096;		// rows claimed at once by text search threads
+	private static final int cMinRowsForTextIndex = 50000;	// smaller tables are scanned without trigram index
+	private static final int cMaxSimilarityChunkSize = 1024;	// rows claimed at once by similarity threads
+	private static final int cMaxDescriptorChunkSize = 32;	// rows claimed at once by descriptor threads
+
 	public static final int ATOM_COLOR_MODE_NONE = 0;
 	public static final int ATOM_COLOR_MODE_EXPLICIT = 1;
 	public static final int ATOM_COLOR_MODE_ALL = 2;
@@ -80,10 +86,13 @@ public class CompoundTableModel extends AbstractTableModel
 	private final ArrayList<HighlightListener> mHighlightListener;
 	private TreeMap<String,Object> mTableExtensionMap;
 	private CompoundRecord[]	mRecord,mNonExcludedRecord,mSMPRecord;
+	private CompoundRecordStore	mRecordStore;
 	private CompoundRecord		mHighlightedRow,mActiveRow;
 	private File				mFile;
 	private long				mAllocatedExclusionFlags,mAllocatedCompoundFlags,
 								mDirtyCompoundFlags;
+	private final BitSet		mAllocatedExtendedFlags,mExtendedExclusionFlags,mDirtyExtendedFlags;	// flagNo >= cFlagFirstExtendedFlagNo
+	private volatile int[]		mExtendedExclusionFlagNo;	// set bits of mExtendedExclusionFlags for fast visibility checks
 	private int					mLastSortColumn,mParseDoubleValueCount,
 								mAllColumns,mNonExcludedRecords,mExclusionTag;
 	private double              mParseDoubleStdDev;
@@ -92,14 +101,17 @@ public class CompoundTableModel extends AbstractTableModel
 	private CompoundTableColumnInfo[] mColumnInfo;
 	private volatile Thread     mSMPThread;
 	private volatile float[]	mSimilarityListSMP,mSimilarityList2SMP;
-	private volatile boolean	mSMPProcessWaiting,mSMPStopDescriptorCalculation;
+	private volatile boolean	mSMPProcessWaiting;
+	private volatile ComputeScheduler.CancellationToken mSMPDescriptorCancellation;
 	private volatile int		mRecords;
 	private volatile AtomicInteger mSMPIndex,mSMPThreadIndex,mSimRecordIndex,mSMPDescriptorThreads,mSMPSimilarityThreads;
 	private volatile DescriptorColumnSpec[] mSMPColumnSpec;
-	private volatile int		mSMPSimilarityErrors;
 	private final AtomicBoolean mLock;
-	private volatile ConcurrentHashMap<String,float[]> mFlexophoreSimilarityListCache;	// TODO prevent this to grow to much
+	private final SimilarityListCache mSimilarityListCache;
+	private final StructureCache mStructureCache;
 	private final ConcurrentHashMap<Integer,ConcurrentLinkedQueue<Object>> mStoppableSearcherMap;	// flagNo->SSSearcherList to notify that search is stopped
+	private final ConcurrentHashMap<Integer,RangeExclusion> mRangeExclusionMap;	// flagNo->most recent bounds of double filter
+	private final ConcurrentHashMap<Integer,Integer> mTextIndexColumnMap;	// flagNo->column, whose text index is used by text filter
 	private volatile MolDistHist mMostRecentExclusionFlexophore;
 	private volatile FlexophoreAtomContributionColors mMostRecentExclusionFlexophoreColors;
 	private volatile int mMostRecentExclusionFlexophoreFlagNo,mMostRecentExclusionFlexophoreColumn,mMostRecentExclusionFlexophoreAtomCount;
@@ -133,6 +145,14 @@ public class CompoundTableModel extends AbstractTableModel
 		mCompoundTableListener = new ArrayList<>();
 		mHighlightListener = new ArrayList<>();
 		mStoppableSearcherMap = new ConcurrentHashMap<>();
+		mRangeExclusionMap = new ConcurrentHashMap<>();
+		mTextIndexColumnMap = new ConcurrentHashMap<>();
+		mSimilarityListCache = new SimilarityListCache();
+		mStructureCache = new StructureCache(this);
+		mAllocatedExtendedFlags = new BitSet();
+		mExtendedExclusionFlags = new BitSet();
+		mExtendedExclusionFlagNo = new int[0];
+		mDirtyExtendedFlags = new BitSet();
 		mLastSortColumn = -1;
 		mLock = new AtomicBoolean(false);
 		}
@@ -239,6 +259,12 @@ public class CompoundTableModel extends AbstractTableModel
 		mNonExcludedRecords = 0;
 		mAllocatedCompoundFlags = 0;
 		mAllocatedExclusionFlags = 0;
+		mAllocatedExtendedFlags.clear();
+		mExtendedExclusionFlags.clear();
+		mExtendedExclusionFlagNo = new int[0];
+		mDirtyExtendedFlags.clear();
+		mRangeExclusionMap.clear();
+		mTextIndexColumnMap.clear();
 
 		mDisplayableColumnToColumn = null;
 		mColumnToDisplayableColumn = null;
@@ -255,7 +281,7 @@ public class CompoundTableModel extends AbstractTableModel
 		if (mDetailHandler != null)
 			mDetailHandler.clearDetailData();
 
-		mFlexophoreSimilarityListCache = null;
+		mSimilarityListCache.clear();
 		mMostRecentExclusionFlexophoreFlagNo = -1;
 		mMostRecentExclusionFlexophoreColumn = -1;
 
@@ -264,10 +290,11 @@ public class CompoundTableModel extends AbstractTableModel
 						 -1, CompoundTableEvent.cSpecifierNoRuntimeProperties, -1),
 						  new TableModelEvent(this, TableModelEvent.HEADER_ROW));
 
+		mRecordStore = new CompoundRecordStore(rows, columns);
 		mRecord = new CompoundRecord[rows];
 		mNonExcludedRecord = new CompoundRecord[rows];
 		for (int i=0; i<rows; i++)
-			mRecord[i] = new CompoundRecord(i, columns);
+			mRecord[i] = new CompoundRecord(mRecordStore, i, columns);
 
 		mColumnInfo = new CompoundTableColumnInfo[columns];
 		for (int i=0; i<columns; i++)
@@ -388,13 +415,13 @@ public class CompoundTableModel extends AbstractTableModel
 				if (entry.length > 1) {
 					if ((mColumnInfo[column].type & cColumnTypeDate) != 0) {
 						String date = DateFormat.getDateInstance().format(new Date(
-								86400000 * (long) record.mFloat[column] + 43200000));
+								86400000 * (long) record.getDouble(column) + 43200000));
 						return mColumnInfo[column].summaryCountHidden ? date : date + getSummaryModeString(column, entry.length);
 						}
 	
 					float value = (mColumnInfo[column].logarithmicViewMode) ?
-							(float)Math.pow(10.0, record.mFloat[column])
-						  : record.mFloat[column];
+							(float)Math.pow(10.0, record.getDouble(column))
+						  : record.getDouble(column);
 	
 					String numPart = (mColumnInfo[column].roundingMode == DoubleFormat.ROUNDING_MODE_NONE) ?
 							  DoubleFormat.toString(value)
@@ -447,6 +474,17 @@ public class CompoundTableModel extends AbstractTableModel
 		return encodeData(record, column);
 		}
 
+	/**
+	 * @param column
+	 * @return whether getValue() may return something else than the unmodified cell content, e.g. due to rounding or summary mode
+	 */
+	public boolean isValueFormatted(int column) {
+		return (mColumnInfo[column].type & cColumnTypeDouble) != 0
+			&& (mColumnInfo[column].summaryMode != cSummaryModeNormal
+			 || mColumnInfo[column].roundingMode != DoubleFormat.ROUNDING_MODE_NONE
+			 || mColumnInfo[column].excludeModifierValues);
+		}
+
 	private String getSummaryModeString(int column, int valueCount) {
 		switch (mColumnInfo[column].summaryMode) {
 		case cSummaryModeMean:
@@ -490,7 +528,7 @@ public class CompoundTableModel extends AbstractTableModel
 	 * @return 
 	 */
 	public float getDoubleAt(int row, int column) {
-		return mNonExcludedRecord[row].mFloat[column];
+		return mNonExcludedRecord[row].getDouble(column);
 		}
 
 	public int getRowCount() {
@@ -506,7 +544,7 @@ public class CompoundTableModel extends AbstractTableModel
 	 * @return 
 	 */
 	public float getTotalDoubleAt(int row, int column) {
-		return mRecord[row].mFloat[column];
+		return mRecord[row].getDouble(column);
 		}
 
 	/**
@@ -530,7 +568,7 @@ public class CompoundTableModel extends AbstractTableModel
 	 * @return 
 	 */
 	public float getTotalOriginalDoubleAt(int row, int column) {
-		float value = mRecord[row].mFloat[column];
+		float value = mRecord[row].getDouble(column);
 		return isLogarithmicViewMode(column) ? (float)Math.pow(10.0, value) : value;
 		}
 
@@ -658,6 +696,32 @@ public class CompoundTableModel extends AbstractTableModel
 		return null;
 		}
 
+	/**
+	 * Same as getChemicalStructure(), but takes the structure from a least-recently-used cache
+	 * of parsed molecules, if available. Use this for repeatedly painting visible structures
+	 * rather than for processing all rows. Cached molecules are removed when a CompoundTableEvent
+	 * indicates a change of the structure column or any of its child columns.
+	 * @param record
+	 * @param column idcode column or 3D-coords column
+	 * @param atomColorMode one of ATOM_COLOR_MODE_...
+	 * @param mol null or a StereoMolecule to be filled
+	 * @return null, if record doesn't contain molecule information
+	 */
+	public StereoMolecule getCachedChemicalStructure(CompoundRecord record, int column, int atomColorMode, StereoMolecule mol) {
+		return mStructureCache.getChemicalStructure(record, column, atomColorMode, mol);
+		}
+
+	/**
+	 * Parses the structures of the given records in a background thread into the cache used by
+	 * getCachedChemicalStructure(), e.g. for rows that will become visible when scrolling.
+	 * A new call abandons any still running prefetch.
+	 * @param record
+	 * @param column idcode column
+	 */
+	public void prefetchChemicalStructures(CompoundRecord[] record, int column) {
+		mStructureCache.prefetch(record, column);
+		}
+
 	public StereoMolecule getChemicalStructureFromReaction(CompoundRecord record, int reactionColumn, String reactionPart, boolean includeMapping) {
 		if (record == null || reactionColumn == -1)
 			return null;
@@ -1603,9 +1667,8 @@ public class CompoundTableModel extends AbstractTableModel
 	 * @param flagNo >= 0
 	 */
 	public void deselectByList(int flagNo) {
-		long mask = convertRowFlagToMask(flagNo);
 		for (int row=0; row<mRecords; row++)
-			if ((mRecord[row].mFlags & mask) != 0)
+			if (mRecord[row].isFlagSet(flagNo))
 				mRecord[row].mFlags &= ~CompoundRecord.cFlagMaskSelected;
 
 		fireEventsNow(new CompoundTableEvent(this, CompoundTableEvent.cChangeSelection, -1), null);
@@ -1616,9 +1679,8 @@ public class CompoundTableModel extends AbstractTableModel
 	 * @param flagNo >= 0
 	 */
 	public void selectByList(int flagNo) {
-		long mask = convertRowFlagToMask(flagNo);
 		for (int row=0; row<mRecords; row++)
-			if ((mRecord[row].mFlags & mask) != 0)
+			if (mRecord[row].isFlagSet(flagNo))
 				mRecord[row].mFlags |= CompoundRecord.cFlagMaskSelected;
 
 		fireEventsNow(new CompoundTableEvent(this, CompoundTableEvent.cChangeSelection, -1), null);
@@ -1629,7 +1691,8 @@ public class CompoundTableModel extends AbstractTableModel
 							| CompoundRecord.cFlagMaskSelected;
 
 		for (int row=0; row<mRecords; row++)
-			if ((mRecord[row].mFlags & unselectionMask) != 0)
+			if ((mRecord[row].mFlags & unselectionMask) != 0
+			 || isExcludedByExtendedFlag(mRecord[row]))
 				mRecord[row].mFlags &= ~CompoundRecord.cFlagMaskSelected;
 			else
 				mRecord[row].mFlags |= CompoundRecord.cFlagMaskSelected;
@@ -1645,12 +1708,14 @@ public class CompoundTableModel extends AbstractTableModel
 	public void addNewRows(int newRowCount, boolean initializeNewRows) {
 		stopDescriptorCalculation();
 
+		mRecordStore.ensureRowCapacity(mRecords + newRowCount);
+
 		CompoundRecord[] record = new CompoundRecord[mRecords + newRowCount];
 		for (int row=0; row<mRecords; row++)
 			record[row] = mRecord[row];
 		if (initializeNewRows)
 			for (int row=mRecords; row<record.length; row++)
-				record[row] = new CompoundRecord(row, mColumnInfo.length);
+				record[row] = new CompoundRecord(mRecordStore, row, mColumnInfo.length);
 		mRecord = record;
 
 		CompoundRecord[] nonExcludedRecord = new CompoundRecord[mRecords + newRowCount];
@@ -1688,6 +1753,7 @@ public class CompoundTableModel extends AbstractTableModel
 
 		for (int row=0; row<mRecord.length; row++)
 			mRecord[row].addColumns(columnCount);
+		mRecordStore.addColumns(columnCount);
 
 		mColumnInfo = newColumnInfo;
 
@@ -1706,9 +1772,12 @@ public class CompoundTableModel extends AbstractTableModel
 
 		if (mRecord == null)
 			mRecord = new CompoundRecord[0];
+		if (mRecordStore == null)
+			mRecordStore = new CompoundRecordStore(0, 0);
 
 		for (int row=0; row<mRecord.length; row++)
 			mRecord[row].addColumns(columnName.length);
+		mRecordStore.addColumns(columnName.length);
 
 		mColumnInfo = newColumnInfo;
 
@@ -2091,8 +2160,14 @@ public class CompoundTableModel extends AbstractTableModel
 			}
 		mColumnInfo = newColumnInfo;
 
+		for (CompoundTableColumnInfo info:mColumnInfo)
+			if (info.aggregateIndex != null)
+				info.aggregateIndex.clearAggregates();	// value column indexes have changed
+
 		for (int row=0; row<mRecords; row++)
 			mRecord[row].removeColumns(removeColumn, removalCount);
+		mRecordStore.removeColumns(removeColumn, removalCount);
+		mSimilarityListCache.clear();	// column indexes have changed
 
 		mAllColumns -= removalCount;
 
@@ -2257,7 +2332,12 @@ public class CompoundTableModel extends AbstractTableModel
 		if (startDescriptorThread)
 			updateDescriptors();
 
-		mFlexophoreSimilarityListCache = null;
+		for (int i=0; i<mColumnInfo.length; i++) {
+			if (isDescriptorColumn(i) && getParentColumn(i) == column) {
+				mSimilarityListCache.remove(i);
+				mColumnInfo[i].fingerprintIndex = null;
+				}
+			}
 
 		fireEventsNow(new CompoundTableEvent(this, CompoundTableEvent.cChangeColumnData, column, -1, oldCategoryCount),
 					  new TableModelEvent(this, 0, mNonExcludedRecords-1, mColumnToDisplayableColumn[column], TableModelEvent.UPDATE));
@@ -2429,16 +2509,18 @@ public class CompoundTableModel extends AbstractTableModel
 		}
 
 	public void removeSelected() {
-		for (int row=0; row<mRecords; row++)
-			if ((mRecord[row].mFlags & mAllocatedExclusionFlags) != 0)
-				mRecord[row].mFlags &= ~CompoundRecord.cFlagMaskSelected;
-
+		unselectInvisibleRecords();
 		removeRecords(CompoundRecord.cFlagMaskSelected);
 		}
 
 	public void removeInvisible() {
-		removeRecords(mAllocatedExclusionFlags);
+		for (int row=0; row<mRecords; row++)
+			if (!isVisible(mRecord[row]))
+				mRecord[row].mFlags |= CompoundRecord.cFlagMaskDeleted;
+
+		removeRecords(CompoundRecord.cFlagMaskDeleted);
 		mDirtyCompoundFlags &= ~mAllocatedExclusionFlags;
+		mDirtyExtendedFlags.andNot(mExtendedExclusionFlags);
 		}
 
 	public void finalizeDeletion() {
@@ -2457,7 +2539,7 @@ public class CompoundTableModel extends AbstractTableModel
 		for (int row=0; row<mRecords; row++) {
 			if ((mRecord[row].mFlags & mask) != 0) {
 				removalCount++;
-				if ((mRecord[row].mFlags & mAllocatedExclusionFlags) == 0)
+				if (isVisible(mRecord[row]))
 					visibleChanged = true;
 				}
 			}
@@ -2490,13 +2572,14 @@ public class CompoundTableModel extends AbstractTableModel
 
 			mRecords -= removalCount;
 			mRecord = newRecord;
+			mRecordStore.compactRows(mapping);
 
 			analyzeDataAfterRemoval();
 
 			if (calculateDescriptors)
 				updateDescriptors();
 
-			mFlexophoreSimilarityListCache = null;
+			mSimilarityListCache.clear();
 
 			TableModelEvent tme = null;
 			if (visibleChanged) {
@@ -2574,34 +2657,37 @@ public class CompoundTableModel extends AbstractTableModel
 		}
 
 	public synchronized void sort(int column, boolean descending, boolean selectedFirst) {
+		sort(new int[] { column }, new boolean[] { descending }, selectedFirst);
+		}
+
+	/**
+	 * Sorts all rows by one or more columns. Ties of the first column are resolved by the
+	 * second column, and so on. Rows with identical values in all sort columns keep their order.
+	 * Empty cells are sorted to the end independent of the sort direction.
+	 * @param column sort columns in order of decreasing significance
+	 * @param descending sort direction for every sort column
+	 * @param selectedFirst whether selected rows are moved in front of all others
+	 */
+	public synchronized void sort(int[] column, boolean[] descending, boolean selectedFirst) {
 		boolean calculateDescriptors = (mSMPDescriptorThreads != null);
 		if (calculateDescriptors)
 			stopDescriptorCalculation();
 
-		String specialType = getColumnSpecialType(column);
-		UniqueList<String> order = mColumnInfo[column].mCategoryCustomOrder;
+		RecordSorter sorter = new RecordSorter(mRecord);
+		if (selectedFirst)
+			sorter.addSelectionKey();
+		for (int i=0; i<column.length; i++)
+			addSortKey(sorter, column[i], descending[i]);
+		sorter.sort();
 
-		if (order != null && order.size() != 0
-		 && (mColumnInfo[column].type & cColumnTypeCategory) != 0)
-			Arrays.sort(mRecord, new DoubleComparator(column, descending, selectedFirst));
-		else if (cColumnTypeIDCode.equals(specialType))
-			Arrays.sort(mRecord, new IDCodeComparator(column, descending, selectedFirst));
-		else if (isDescriptorColumn(column))
-			Arrays.sort(mRecord, new DoubleComparator(column, descending, selectedFirst));
-		else if ("Idorsia No".equals(mColumnInfo[column].name) || "Actelion No".equals(mColumnInfo[column].name))
-			Arrays.sort(mRecord, new ActNoComparator(column, descending, selectedFirst));
-		else if (mColumnInfo[column].type == cColumnTypeRangeCategory
-			 || (mColumnInfo[column].type & cColumnTypeDouble) != 0)
-			Arrays.sort(mRecord, new DoubleComparator(column, descending, selectedFirst));
-		else
-			Arrays.sort(mRecord, new StringComparator(column, descending, selectedFirst));
+		mLastSortColumn = (column.length != 1 || descending[0]) ? -1 : column[0];
 
-		mLastSortColumn = descending ? -1 : column;
+		for (CompoundTableColumnInfo info:mColumnInfo)
+			if (info.aggregateIndex != null)
+				info.aggregateIndex.clearAggregates();	// first, last and sums depend on row order
 
 		compileVisibleRecords();
 
-		mFlexophoreSimilarityListCache = null;
-
 		if (calculateDescriptors)
 			updateDescriptors();
 
@@ -2610,9 +2696,29 @@ public class CompoundTableModel extends AbstractTableModel
 							TableModelEvent.ALL_COLUMNS, TableModelEvent.UPDATE));
 		}
 
+	private void addSortKey(RecordSorter sorter, int column, boolean descending) {
+		String specialType = getColumnSpecialType(column);
+		UniqueList<String> order = mColumnInfo[column].mCategoryCustomOrder;
+
+		if (order != null && order.size() != 0
+		 && (mColumnInfo[column].type & cColumnTypeCategory) != 0)
+			sorter.addFloatKey(column, descending);
+		else if (cColumnTypeIDCode.equals(specialType))
+			sorter.addIDCodeKey(column, descending);
+		else if (isDescriptorColumn(column))
+			sorter.addFloatKey(column, descending);
+		else if ("Idorsia No".equals(mColumnInfo[column].name) || "Actelion No".equals(mColumnInfo[column].name))
+			sorter.addBytesKey(column, descending, RecordSorter::compareActNo);
+		else if (mColumnInfo[column].type == cColumnTypeRangeCategory
+			 || (mColumnInfo[column].type & cColumnTypeDouble) != 0)
+			sorter.addFloatKey(column, descending);
+		else
+			sorter.addBytesKey(column, descending, RecordSorter::compareBytes);
+		}
+
 	public synchronized void sortBySimilarity(float[] similarity, int descriptorColumn) {
-		for (int row=0; row<mRecords; row++)
-			mRecord[row].mFloat[descriptorColumn] = similarity[mRecord[row].mOriginalIndex];
+		// similarity lists and float columns are both indexed by record ID
+		mRecordStore.setFloats(descriptorColumn, similarity, mRecords);
 		sort(descriptorColumn, true, false);
 		}
 
@@ -2888,12 +2994,33 @@ public class CompoundTableModel extends AbstractTableModel
 		}
 
 	public boolean isVisible(CompoundRecord record) {
-		return (record.mFlags & mAllocatedExclusionFlags) == 0;
+		return (record.mFlags & mAllocatedExclusionFlags) == 0
+			&& !isExcludedByExtendedFlag(record);
 		}
 
 	public boolean isVisibleAndSelected(CompoundRecord record) {
 		long mask = mAllocatedExclusionFlags | CompoundRecord.cFlagMaskSelected;
-		return (record.mFlags & mask) == CompoundRecord.cFlagMaskSelected;
+		return (record.mFlags & mask) == CompoundRecord.cFlagMaskSelected
+			&& !isExcludedByExtendedFlag(record);
+		}
+
+	/**
+	 * @param record
+	 * @return true if any active exclusion flag beyond the first 64 flags is set for this record
+	 */
+	private boolean isExcludedByExtendedFlag(CompoundRecord record) {
+		for (int flagNo:mExtendedExclusionFlagNo)
+			if (record.isFlagSet(flagNo))
+				return true;
+
+		return false;
+		}
+
+	/**
+	 * Must be called whenever mExtendedExclusionFlags was changed.
+	 */
+	private void updateExtendedExclusionFlagNos() {
+		mExtendedExclusionFlagNo = mExtendedExclusionFlags.stream().toArray();
 		}
 
 	public boolean isSelected(CompoundRecord record) {
@@ -2928,16 +3055,25 @@ public class CompoundTableModel extends AbstractTableModel
 	}
 
 	public boolean isVisibleNeglecting(CompoundRecord record, int exclusionFlagNo) {
-		long mask = mAllocatedExclusionFlags & ~convertRowFlagToMask(exclusionFlagNo);
-		return (record.mFlags & mask) == 0;
+		long mask = (exclusionFlagNo >= CompoundRecord.cFlagFirstExtendedFlagNo) ? mAllocatedExclusionFlags
+				: mAllocatedExclusionFlags & ~convertRowFlagToMask(exclusionFlagNo);
+		if ((record.mFlags & mask) != 0)
+			return false;
+
+		for (int flagNo:mExtendedExclusionFlagNo)
+			if (flagNo != exclusionFlagNo && record.isFlagSet(flagNo))
+				return false;
+
+		return true;
 		}
 
 	public void updateExternalExclusion(int exclusionFlagNo, boolean isAdjusting, boolean excludedRowsFound) {
-		long mask = convertRowFlagToMask(exclusionFlagNo);
 		if (excludedRowsFound)
-			mDirtyCompoundFlags |= mask;
+			setRowFlagToDirty(exclusionFlagNo);
+		else if (exclusionFlagNo >= CompoundRecord.cFlagFirstExtendedFlagNo)
+			mDirtyExtendedFlags.clear(exclusionFlagNo);
 		else
-			mDirtyCompoundFlags &= ~mask;
+			mDirtyCompoundFlags &= ~convertRowFlagToMask(exclusionFlagNo);
 
 		updateVisibleRecords(isAdjusting);
 		}
@@ -2957,9 +3093,10 @@ public class CompoundTableModel extends AbstractTableModel
 		}
 
 	/**
-	 * Currently the number of row flags (exclusion, list membership, selection) is limited
-	 * to 64. Once the limit is removed, this method will be useless.
-	 * @return number of available row flags
+	 * If the row flags that fit into CompoundRecord.mFlags are used up, further flags
+	 * are allocated as bitsets in the CompoundRecordStore up to flagNo
+	 * CompoundRecord.cFlagLastExtendedFlagNo.
+	 * @return number of row flags (exclusion, list membership) that can still be allocated
 	 */
 	public int getUnusedRowFlagCount() {
 		int count = 0;
@@ -2972,13 +3109,16 @@ public class CompoundTableModel extends AbstractTableModel
 			flagNo++;
 			}
 
-		return count;
+		return count + CompoundRecord.cFlagLastExtendedFlagNo + 1 - CompoundRecord.cFlagFirstExtendedFlagNo
+					 - mAllocatedExtendedFlags.cardinality();
 		}
 
 	/**
 	 * Allocates an opaque flag number to be used for filtering or hitlists.
 	 * Flags obtained this way should be returned with freeRowFlag() once
-	 * they are not used anymore.
+	 * they are not used anymore. The first 62 flags are kept in CompoundRecord.mFlags
+	 * and can be converted into a mask. Any further flag number is
+	 * >= CompoundRecord.cFlagFirstExtendedFlagNo and cannot be converted into a mask.
 	 * @param useForExclusion
 	 * @return flagNo >= 0 or -1 if no flag available
 	 */
@@ -2986,8 +3126,17 @@ public class CompoundTableModel extends AbstractTableModel
 		int flagNo = CompoundRecord.cFlagFirstUnusedFlagNo;
 		long bit = (1L << flagNo);
 		while ((bit & mAllocatedCompoundFlags) != 0) {
-			if (flagNo == CompoundRecord.cFlagLastUnusedFlagNo)
-				return -1;
+			if (flagNo == CompoundRecord.cFlagLastUnusedFlagNo) {
+				flagNo = mAllocatedExtendedFlags.nextClearBit(CompoundRecord.cFlagFirstExtendedFlagNo);
+				if (flagNo > CompoundRecord.cFlagLastExtendedFlagNo)
+					return -1;
+				mAllocatedExtendedFlags.set(flagNo);
+				if (useForExclusion) {
+					mExtendedExclusionFlags.set(flagNo);
+					updateExtendedExclusionFlagNos();
+					}
+				return flagNo;
+				}
 			bit <<= 1;
 			flagNo++;
 			}
@@ -3000,22 +3149,42 @@ public class CompoundTableModel extends AbstractTableModel
 		}
 
 	public void setRowFlagToDirty(int flagNo) {
-		mDirtyCompoundFlags |= (1L << flagNo);
+		if (flagNo >= CompoundRecord.cFlagFirstExtendedFlagNo)
+			mDirtyExtendedFlags.set(flagNo);
+		else
+			mDirtyCompoundFlags |= (1L << flagNo);
 		}
 
 	public void freeRowFlag(int flagNo) {
 		clearRowFlag(flagNo);
-		long mask = convertRowFlagToMask(flagNo);
-		mAllocatedCompoundFlags &= ~mask;
-		mAllocatedExclusionFlags &= ~mask;
+		releaseTextIndex(flagNo);
+		if (flagNo >= CompoundRecord.cFlagFirstExtendedFlagNo) {
+			mAllocatedExtendedFlags.clear(flagNo);
+			mExtendedExclusionFlags.clear(flagNo);
+			updateExtendedExclusionFlagNos();
+			}
+		else {
+			long mask = convertRowFlagToMask(flagNo);
+			mAllocatedCompoundFlags &= ~mask;
+			mAllocatedExclusionFlags &= ~mask;
+			}
 		}
 
 	public boolean isRowFlagSuspended(int flagNo) {
+		if (flagNo >= CompoundRecord.cFlagFirstExtendedFlagNo)
+			return !mExtendedExclusionFlags.get(flagNo);
+
 		long mask = convertRowFlagToMask(flagNo);
 		return (mAllocatedExclusionFlags & mask) == 0;
 		}
 
 	public void setRowFlagSuspension(int flagNo, boolean suspend) {
+		if (flagNo >= CompoundRecord.cFlagFirstExtendedFlagNo) {
+			mExtendedExclusionFlags.set(flagNo, !suspend);
+			updateExtendedExclusionFlagNos();
+			return;
+			}
+
 		long mask = convertRowFlagToMask(flagNo);
 		if (suspend)
 			mAllocatedExclusionFlags &= ~mask;
@@ -3025,6 +3194,7 @@ public class CompoundTableModel extends AbstractTableModel
 
 	public void clearRowFlag(int flagNo) {
 		stopExclusionThreads(flagNo);
+		mRangeExclusionMap.remove(flagNo);
 
 		if (mMostRecentExclusionFlexophoreFlagNo == flagNo) {
 			mMostRecentExclusionFlexophoreFlagNo = -1;
@@ -3033,6 +3203,18 @@ public class CompoundTableModel extends AbstractTableModel
 			mMostRecentExclusionFlexophoreColors = null;
 			}
 
+		if (flagNo >= CompoundRecord.cFlagFirstExtendedFlagNo) {
+			if (mDirtyExtendedFlags.get(flagNo)) {
+				mRecordStore.clearFlagOfAllRows(flagNo);
+				mDirtyExtendedFlags.clear(flagNo);
+
+				if (mRecords != 0
+				 && mExtendedExclusionFlags.get(flagNo))
+					updateVisibleRecords(false);
+				}
+			return;
+			}
+
 		long mask = convertRowFlagToMask(flagNo);
 		if ((mDirtyCompoundFlags & mask) != 0) {
 			for (int row=0; row<mRecords; row++)
@@ -3046,19 +3228,24 @@ public class CompoundTableModel extends AbstractTableModel
 			}
 		}
 
+	/**
+	 * Flags >= CompoundRecord.cFlagFirstExtendedFlagNo cannot be represented by a mask. Since a mask of 0
+	 * would be taken as 'no restriction' by some consumers, e.g. CompoundTableSaver, an exception is thrown.
+	 * @param flagNo
+	 * @return mask for flagNo or 0, if flagNo is -1
+	 * @throws IllegalArgumentException if flagNo >= CompoundRecord.cFlagFirstExtendedFlagNo
+	 */
 	public long convertRowFlagToMask(int flagNo) {
+		if (flagNo >= CompoundRecord.cFlagFirstExtendedFlagNo)
+			throw new IllegalArgumentException("Row flag "+flagNo+" cannot be represented by a mask.");
 		return (flagNo == -1) ? 0L : (1L << flagNo);
 		}
 
 	public void invertExclusion(int exclusionFlagNo) {
-		long mask = convertRowFlagToMask(exclusionFlagNo);
-		mDirtyCompoundFlags |= mask;
-		for (int row=0; row<mRecords; row++) {
-			if ((mRecord[row].mFlags & mask) == 0)
-				mRecord[row].mFlags |= mask;
-			else
-				mRecord[row].mFlags &= ~mask;
-			}
+		mRangeExclusionMap.remove(exclusionFlagNo);
+		setRowFlagToDirty(exclusionFlagNo);
+		for (int row=0; row<mRecords; row++)
+			mRecord[row].invertFlag(exclusionFlagNo);
 
 		updateVisibleRecords(false);
 		}
@@ -3066,22 +3253,23 @@ public class CompoundTableModel extends AbstractTableModel
 	public void setCategoryExclusion(int exclusionFlagNo, int column,
 									 boolean[] selection, boolean inverse) {
 		boolean changed = false;
-		long mask = convertRowFlagToMask(exclusionFlagNo);
 
-		CategoryList<?> categoryList = mColumnInfo[column].categoryList;
+		CategoryIndex categoryIndex = ensureCategoryIndex(column);
+		int multipleCategoriesIndex = mColumnInfo[column].categoryList.getSize();
 
 		for (int row=0; row<mRecords; row++) {
-			String[] entry = separateEntries(encodeData(mRecord[row], column));
+			int id = mRecord[row].mOriginalIndex;
+			int entryCount = categoryIndex.getEntryCount(id);
 
-			boolean isSet = ((mRecord[row].mFlags & mask) != 0);
+			boolean isSet = mRecord[row].isFlagSet(exclusionFlagNo);
 			boolean mustBeSet;
-			if (entry.length == 1) {
-				mustBeSet = (inverse == selection[categoryList.getIndexOfString(entry[0])]);
+			if (entryCount == 1) {
+				mustBeSet = (inverse == selection[categoryIndex.getCellCategory(id)]);
 				}
 			else {	  // record may belong to more than one category
 				boolean visible = false;
-				for (int i=0; i<entry.length; i++) {
-					if (selection[categoryList.getIndexOfString(entry[i])]) {
+				for (int i=0; i<entryCount; i++) {
+					if (selection[categoryIndex.getEntryCategory(id, i)]) {
 						visible = true;
 						break;
 						}
@@ -3089,40 +3277,35 @@ public class CompoundTableModel extends AbstractTableModel
 
 				if (!visible
 				 && mColumnInfo[column].belongsToMultipleCategories
-				 && selection[categoryList.getSize()]) {
-					for (int i=1; i<entry.length; i++) {
-						if (!entry[i-1].equals(entry[i])) {
-							visible = true;
-							break;
-							}
-						}
-					}
+				 && selection[multipleCategoriesIndex])
+					visible = (categoryIndex.getCellCategory(id) == multipleCategoriesIndex);
 
 				mustBeSet = (visible == inverse);
 				}
 
 			if (isSet ^ mustBeSet) {
 				if (mustBeSet)
-					mRecord[row].mFlags |= mask;
+					mRecord[row].setFlag(exclusionFlagNo);
 				else
-					mRecord[row].mFlags &= ~mask;
+					mRecord[row].clearFlag(exclusionFlagNo);
 				changed = true;
 				}
 			}
 
 		if (changed) {
-			mDirtyCompoundFlags |= mask;
+			setRowFlagToDirty(exclusionFlagNo);
 			updateVisibleRecords(false);
 			}
 		}
 
 	public void initializeDoubleExclusion(int exclusionFlagNo, int column) {
+		mRangeExclusionMap.remove(exclusionFlagNo);
 		if (!mColumnInfo[column].isComplete) {
-			long mask = convertRowFlagToMask(exclusionFlagNo);
-			mDirtyCompoundFlags |= mask;
+			setRowFlagToDirty(exclusionFlagNo);
+			float[] value = mRecordStore.getFloatColumn(column);
 			for (int row=0; row<mRecords; row++)
-				if (Float.isNaN(mRecord[row].mFloat[column]))
-					mRecord[row].mFlags |= mask;
+				if (Float.isNaN(value[mRecord[row].mOriginalIndex]))
+					mRecord[row].setFlag(exclusionFlagNo);
 
 			updateVisibleRecords(false);
 			}
@@ -3145,9 +3328,10 @@ public class CompoundTableModel extends AbstractTableModel
 			queryString = queryString.toLowerCase();
 
 		String[] queryList = new String[1];
+		Pattern pattern = null;
 		if (type == cTextExclusionTypeRegEx) {
 			try {
-				Pattern.compile(queryString);
+				pattern = Pattern.compile(queryString);
 				queryList[0] = queryString;
 				}
 			catch (PatternSyntaxException e) {
@@ -3205,70 +3389,246 @@ public class CompoundTableModel extends AbstractTableModel
 			columns[0] = filterColumn;
 			}
 
-		boolean changed = false;
-		long mask = convertRowFlagToMask(exclusionFlagNo);
-		for (int row=0; row<mRecords; row++) {
-			boolean found = false;
-			for (int column:columns) {
-				String theString = encodeData(mRecord[row], column);
-				if (!caseSensitive)
-					theString = theString.toLowerCase();
-				for (String query:queryList) {
-					switch (type) {
-					case cTextExclusionTypeEquals:
-						if (theString.equals(query))
-							found = true;
-						break;
-					case cTextExclusionTypeStartsWith:
-						if (theString.startsWith(query))
-							found = true;
-						break;
-					case cTextExclusionTypeEndsWith:
-						if (theString.endsWith(query))
-							found = true;
-						break;
-					case cTextExclusionTypeContains:
-						if (theString.contains(query))
-							found = true;
-						break;
-					case cTextExclusionTypeRegEx:
-						if (theString.matches(query))
-							found = true;
-						break;
-						}
-					if (found)
-						break;
+		// For case-insensitive 'contains' queries on one column of a large table, cells that cannot
+		// contain any query are skipped, once the column's text index is ready.
+		boolean[] mayContain = null;	// [rowID]; null, if all cells must be checked
+		if (filterColumn >= 0
+		 && type == cTextExclusionTypeContains
+		 && !caseSensitive
+		 && mRecords >= cMinRowsForTextIndex) {
+			boolean queriesAreLongEnough = true;
+			for (String query:queryList)
+				if (query.length() < TextTrigramIndex.MIN_QUERY_LENGTH)
+					queriesAreLongEnough = false;
+			if (queriesAreLongEnough) {
+				TextTrigramIndex textIndex = getTextIndex(filterColumn, exclusionFlagNo);
+				if (textIndex != null) {
+					mayContain = new boolean[mRecords];
+					for (String query:queryList)
+						for (int id:textIndex.getCandidateIDs(query))
+							mayContain[id] = true;
 					}
-				if (found)
-					break;
 				}
+			}
+
+		// match rows in parallel threads, which claim chunks of rows until all rows are done
+		final int rowCount = mRecords;
+		final boolean[] isFound = new boolean[rowCount];
+		final AtomicInteger nextRow = new AtomicInteger(0);
+		final int[] searchColumns = columns;
+		final boolean[] candidate = mayContain;
+		final String[] queries = queryList;
+		final Pattern regex = pattern;
+		final boolean isCaseSensitive = caseSensitive;
+		Runnable matcher = () -> {
+			Matcher regexMatcher = (regex == null) ? null : regex.matcher("");
+			for (int start=nextRow.getAndAdd(cTextSearchChunkSize); start<rowCount; start=nextRow.getAndAdd(cTextSearchChunkSize)) {
+				int end = Math.min(rowCount, start+cTextSearchChunkSize);
+				for (int row=start; row<end; row++)
+					isFound[row] = matchesTextQuery(mRecord[row], searchColumns, candidate, queries, type, isCaseSensitive, regexMatcher);
+				}
+			};
 
-			boolean isSet = ((mRecord[row].mFlags & mask) != 0);
-			boolean mustBeSet = (inverse == found);
+		ComputeScheduler scheduler = ComputeScheduler.getInstance();
+		int threadCount = Math.min(scheduler.getThreadCount(ComputeScheduler.PRIORITY_INTERACTIVE), (rowCount+cTextSearchChunkSize-1) / cTextSearchChunkSize);
+		scheduler.runParallel(ComputeScheduler.PRIORITY_INTERACTIVE, threadCount, matcher, null);
+
+		boolean changed = false;
+		for (int row=0; row<rowCount; row++) {
+			boolean isSet = mRecord[row].isFlagSet(exclusionFlagNo);
+			boolean mustBeSet = (inverse == isFound[row]);
 
 			if (isSet ^ mustBeSet) {
 				if (mustBeSet)
-					mRecord[row].mFlags |= mask;
+					mRecord[row].setFlag(exclusionFlagNo);
 				else
-					mRecord[row].mFlags &= ~mask;
+					mRecord[row].clearFlag(exclusionFlagNo);
 				changed = true;
 				}
 			}
 
 		if (changed) {
-			mDirtyCompoundFlags |= mask;
+			setRowFlagToDirty(exclusionFlagNo);
 			updateVisibleRecords(false);
 			}
 		}
 
+	/**
+	 * @param record
+	 * @param column columns to be searched
+	 * @param mayContain null or, if only one column is searched, flags by row ID telling, whether the cell may contain the query
+	 * @param queryList
+	 * @param type
+	 * @param caseSensitive if false, then queries are expected to be lower case
+	 * @param regexMatcher matcher of the compiled query, if type is cTextExclusionTypeRegEx
+	 * @return whether any of the record's cells in column matches any of the queries
+	 */
+	private boolean matchesTextQuery(CompoundRecord record, int[] column, boolean[] mayContain,
+									 String[] queryList, int type, boolean caseSensitive, Matcher regexMatcher) {
+		if (mayContain != null && !mayContain[record.mOriginalIndex])
+			return false;
+
+		for (int i=0; i<column.length; i++) {
+			String theString = encodeData(record, column[i]);
+			if (!caseSensitive)
+				theString = theString.toLowerCase();
+			for (String query:queryList) {
+				switch (type) {
+				case cTextExclusionTypeEquals:
+					if (theString.equals(query))
+						return true;
+					break;
+				case cTextExclusionTypeStartsWith:
+					if (theString.startsWith(query))
+						return true;
+					break;
+				case cTextExclusionTypeEndsWith:
+					if (theString.endsWith(query))
+						return true;
+					break;
+				case cTextExclusionTypeContains:
+					if (theString.contains(query))
+						return true;
+					break;
+				case cTextExclusionTypeRegEx:
+					if (regexMatcher.reset(theString).matches())
+						return true;
+					break;
+					}
+				}
+			}
+		return false;
+		}
+
+	/**
+	 * Returns the column's trigram index of lower case cell text, if it is ready to be used.
+	 * Otherwise, the index is built on the background pool, while this and further queries
+	 * are answered without index until it is ready. Changes of column data reset the index.
+	 * The index is kept as long as any text filter uses it.
+	 * @param column
+	 * @param exclusionFlagNo flag of the text filter asking for the index
+	 * @return usable text index or null
+	 */
+	private TextTrigramIndex getTextIndex(int column, int exclusionFlagNo) {
+		Integer previousColumn = mTextIndexColumnMap.get(exclusionFlagNo);
+		if (previousColumn == null || previousColumn != column) {
+			releaseTextIndex(exclusionFlagNo);
+			mTextIndexColumnMap.put(exclusionFlagNo, column);
+			}
+
+		CompoundTableColumnInfo columnInfo = mColumnInfo[column];
+		synchronized (columnInfo) {
+			TextTrigramIndex textIndex = columnInfo.textIndex;
+			if (textIndex != null && textIndex.isValid(mRecords))
+				return textIndex.isUsable(mRecords) ? textIndex : null;
+
+			if (columnInfo.textIndexBuild == null) {
+				final Object build = new Object();
+				final int rowCount = mRecords;
+				final CompoundRecord[] recordByID = new CompoundRecord[rowCount];
+				for (int row=0; row<rowCount; row++)
+					recordByID[mRecord[row].mOriginalIndex] = mRecord[row];
+
+				columnInfo.textIndexBuild = build;
+				ComputeScheduler.getInstance().submit(ComputeScheduler.PRIORITY_BACKGROUND, () -> {
+					TextTrigramIndex newIndex = null;
+					try {
+						newIndex = new TextTrigramIndex(rowCount, id -> recordByID[id].getData(column) == null ?
+								null : encodeData(recordByID[id], column).toLowerCase());
+						}
+					catch (Exception e) {}	// column data may have changed meanwhile
+					synchronized (columnInfo) {
+						if (columnInfo.textIndexBuild == build) {	// not reset meanwhile
+							columnInfo.textIndex = newIndex;
+							columnInfo.textIndexBuild = null;
+							}
+						}
+					} );
+				}
+
+			return null;
+			}
+		}
+
+	/**
+	 * Drops the text index used by the text filter with the given flag,
+	 * unless another text filter uses the same column's index.
+	 * @param exclusionFlagNo
+	 */
+	private void releaseTextIndex(int exclusionFlagNo) {
+		Integer column = mTextIndexColumnMap.remove(exclusionFlagNo);
+		if (column != null
+		 && column < mAllColumns
+		 && !mTextIndexColumnMap.containsValue(column))
+			resetTextIndex(column);
+		}
+
+	private void resetTextIndex(int column) {
+		CompoundTableColumnInfo columnInfo = mColumnInfo[column];
+		synchronized (columnInfo) {
+			columnInfo.textIndex = null;
+			columnInfo.textIndexBuild = null;
+			}
+		}
+
+	/**
+	 * Returns the column's index of rows with equal cell content, which provides aggregated values
+	 * of other columns per category, e.g. for JEP functions like meanInCategory(). The index is built,
+	 * if it doesn't exist yet or if the row count has changed. Changes of column data reset the index.
+	 * @param column
+	 * @return category aggregate index
+	 */
+	public CategoryAggregateIndex getCategoryAggregateIndex(int column) {
+		CategoryAggregateIndex aggregateIndex = mColumnInfo[column].aggregateIndex;
+		if (aggregateIndex == null || !aggregateIndex.isValid(mRecords)) {
+			aggregateIndex = new CategoryAggregateIndex(this, column);
+			mColumnInfo[column].aggregateIndex = aggregateIndex;
+			}
+		return aggregateIndex;
+		}
+
+	/**
+	 * Discards the column's aggregate index and any values of this column, which other
+	 * columns' aggregate indexes have aggregated.
+	 * @param column
+	 */
+	private void invalidateAggregateIndexes(int column) {
+		mColumnInfo[column].aggregateIndex = null;
+		for (CompoundTableColumnInfo info:mColumnInfo)
+			if (info != null && info.aggregateIndex != null)
+				info.aggregateIndex.removeAggregates(column);
+		}
+
+	/**
+	 * Updates the exclusion flag of a range filter. If the same filter was applied before
+	 * with the same column and inverse setting, and if no column value has changed since,
+	 * then only rows with values between the old and the new bounds are visited.
+	 * Otherwise, all rows are checked.
+	 * @param column
+	 * @param exclusionFlagNo
+	 * @param low
+	 * @param high
+	 * @param inverse
+	 * @param isAdjusting
+	 */
 	public void setDoubleExclusion(int column, int exclusionFlagNo,
 								   float low, float high,
 								   boolean inverse, boolean isAdjusting) {
+		int[] sortedID = mRecordStore.getSortedIDs(column, mRecords);
+		RangeExclusion range = mRangeExclusionMap.get(exclusionFlagNo);
+		if (range != null
+		 && range.column == column
+		 && range.inverse == inverse
+		 && range.sortedID == sortedID) {
+			updateDoubleExclusion(range, exclusionFlagNo, low, high, isAdjusting);
+			return;
+			}
+
 		boolean changed = false;
-		long mask = convertRowFlagToMask(exclusionFlagNo);
+		float[] columnValue = mRecordStore.getFloatColumn(column);
 		for (int row=0; row<mRecords; row++) {
-			float value = mRecord[row].mFloat[column];
-			boolean isSet = ((mRecord[row].mFlags & mask) != 0);
+			float value = columnValue[mRecord[row].mOriginalIndex];
+			boolean isSet = mRecord[row].isFlagSet(exclusionFlagNo);
 			boolean mustBeSet;
 			if (Float.isNaN(value) || Float.isInfinite(value))
 				mustBeSet = !inverse;
@@ -3277,44 +3637,110 @@ public class CompoundTableModel extends AbstractTableModel
 
 			if (isSet ^ mustBeSet) {
 				if (mustBeSet)
-					mRecord[row].mFlags |= mask;
+					mRecord[row].setFlag(exclusionFlagNo);
 				else
-					mRecord[row].mFlags &= ~mask;
+					mRecord[row].clearFlag(exclusionFlagNo);
 				changed = true;
 				}
 			}
 
+		mRangeExclusionMap.put(exclusionFlagNo, new RangeExclusion(column, low, high, inverse, sortedID, mRecord, mRecords));
+
 		if (changed) {
-			mDirtyCompoundFlags |= mask;
+			setRowFlagToDirty(exclusionFlagNo);
 			updateVisibleRecords(isAdjusting);
 			}
 		}
 
+	/**
+	 * Moves the bounds of a range filter, whose flags are up-to-date for range's bounds,
+	 * to low and high. Only rows in the sorted ID index between the old and new positions
+	 * of both bounds may change their exclusion state and, thus, are visited.
+	 * @param range previous state of the filter
+	 * @param exclusionFlagNo
+	 * @param low
+	 * @param high
+	 * @param isAdjusting
+	 */
+	private void updateDoubleExclusion(RangeExclusion range, int exclusionFlagNo, float low, float high, boolean isAdjusting) {
+		float[] columnValue = mRecordStore.getFloatColumn(range.column);
+		int[] sortedID = range.sortedID;
+		int oldFrom = findSortedIndex(sortedID, columnValue, range.low, false);
+		int oldTo = findSortedIndex(sortedID, columnValue, range.high, true);
+		int newFrom = findSortedIndex(sortedID, columnValue, low, false);
+		int newTo = findSortedIndex(sortedID, columnValue, high, true);
+		range.low = low;
+		range.high = high;
+
+		int[] changedID = new int[Math.abs(newFrom-oldFrom) + Math.abs(newTo-oldTo)];
+		int changedCount = 0;
+		for (int part=0; part<2; part++) {
+			int from = (part == 0) ? Math.min(oldFrom, newFrom) : Math.min(oldTo, newTo);
+			int to = (part == 0) ? Math.max(oldFrom, newFrom) : Math.max(oldTo, newTo);
+			for (int i=from; i<to; i++) {
+				int id = sortedID[i];
+				float value = columnValue[id];
+				CompoundRecord record = range.record[id];
+				boolean mustBeSet = (range.inverse ^ (value < low || value > high));
+				if (record.isFlagSet(exclusionFlagNo) ^ mustBeSet) {
+					if (mustBeSet)
+						record.setFlag(exclusionFlagNo);
+					else
+						record.clearFlag(exclusionFlagNo);
+					changedID[changedCount++] = id;
+					}
+				}
+			}
+
+		if (changedCount != 0) {
+			setRowFlagToDirty(exclusionFlagNo);
+			updateVisibleRecords(isAdjusting, Arrays.copyOf(changedID, changedCount));
+			}
+		}
+
+	/**
+	 * @param sortedID row IDs in ascending value order
+	 * @param value column values indexed by row ID
+	 * @param limit
+	 * @param isUpperLimit
+	 * @return index of first ID with value > limit, if isUpperLimit, or with value >= limit otherwise
+	 */
+	private static int findSortedIndex(int[] sortedID, float[] value, float limit, boolean isUpperLimit) {
+		int low = 0;
+		int high = sortedID.length;
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			float v = value[sortedID[mid]];
+			if (v < limit || (isUpperLimit && v == limit))
+				low = mid + 1;
+			else
+				high = mid;
+			}
+		return low;
+		}
+
 	public void setHitlistExclusion(int hitlistIndex, int exclusionFlagNo, boolean inverse) {
 		boolean changed = false;
-		long mask = convertRowFlagToMask(exclusionFlagNo);
-
-		long hitlistMask = (hitlistIndex == CompoundTableListHandler.LISTINDEX_NONE) ? -1L : mHitlistHandler.getListMask(hitlistIndex);
 
 		for (int row=0; row<mRecords; row++) {
-			boolean isSet = ((mRecord[row].mFlags & mask) != 0);
+			boolean isSet = mRecord[row].isFlagSet(exclusionFlagNo);
 			boolean mustBeSet;
 			if (hitlistIndex == CompoundTableListHandler.LISTINDEX_NONE)
 				mustBeSet = inverse;
 			else
-				mustBeSet = (inverse == ((mRecord[row].mFlags & hitlistMask) != 0));
+				mustBeSet = (inverse == mHitlistHandler.isListMember(mRecord[row], hitlistIndex));
 
 			if (isSet ^ mustBeSet) {
 				if (mustBeSet)
-					mRecord[row].mFlags |= mask;
+					mRecord[row].setFlag(exclusionFlagNo);
 				else
-					mRecord[row].mFlags &= ~mask;
+					mRecord[row].clearFlag(exclusionFlagNo);
 				changed = true;
 				}
 			}
 
 		if (changed) {
-			mDirtyCompoundFlags |= mask;
+			setRowFlagToDirty(exclusionFlagNo);
 			updateVisibleRecords(false);
 			}
 		}
@@ -3339,12 +3765,11 @@ public class CompoundTableModel extends AbstractTableModel
 	 * @param inverse
 	 */
 	public void setRetronExclusion(final AtomicInteger rowIndex, final int exclusionFlagNo, final int rxncodeColumn, final StereoMolecule retron, final boolean inverse) {
-		int threadCount = Runtime.getRuntime().availableProcessors();
+		int threadCount = ComputeScheduler.getInstance().getThreadCount(ComputeScheduler.PRIORITY_INTERACTIVE);
 		rowIndex.set(mRecord.length);
 
 		final int reactantFFPColumn = getChildColumn(rxncodeColumn, DESCRIPTOR_FFP512.shortName, cReactionPartReactants);
 		final int productFFPColumn = getChildColumn(rxncodeColumn, DESCRIPTOR_FFP512.shortName, cReactionPartProducts);
-		final long mask = convertRowFlagToMask(exclusionFlagNo);
 
 		final boolean isMapped = (getChildColumn(rxncodeColumn, cColumnTypeReactionMapping) != -1);
 
@@ -3354,82 +3779,72 @@ public class CompoundTableModel extends AbstractTableModel
 
 		// set flag: excluded as default
 		for (int row=0; row<mRecord.length; row++)
-			mRecord[row].mFlags |= mask;
+			mRecord[row].setFlag(exclusionFlagNo);
 
 		ConcurrentLinkedQueue<Object> searcherQueue = new ConcurrentLinkedQueue<>();
 		mStoppableSearcherMap.put(exclusionFlagNo, searcherQueue);
 
-		Thread[] worker = new Thread[threadCount];
-		for (int i=0; i<threadCount; i++) {
-			worker[i] = new Thread("Retron-Matcher "+(i+1)) {
-				public void run() {
-					SSSearcherWithIndex reactantSearcher = new SSSearcherWithIndex();
-					searcherQueue.add(reactantSearcher);
-					reactantSearcher.setFragment(retron, (long[])null);
-					SSSearcherWithIndex productSearcher = new SSSearcherWithIndex();
-					searcherQueue.add(productSearcher);
-					productSearcher.setFragment(retron, (long[])null);
-					int recordIndex = rowIndex.decrementAndGet();
-					while (recordIndex >= 0) {
-						if ((mRecord[recordIndex].mFlags & mask) != 0) {
-							// do the substructure search in two steps for not unneccessarily creating the product molecule
-							long[] productFFP = (long[])mRecord[recordIndex].getData(productFFPColumn);
-							long[] reactantFFP = (long[])mRecord[recordIndex].getData(reactantFFPColumn);
-							if (!mColumnInfo[productFFPColumn].descriptorHandler.calculationFailed(productFFP)
-							 && !mColumnInfo[productFFPColumn].descriptorHandler.calculationFailed(reactantFFP)) {
-								productSearcher.setMolecule((StereoMolecule)null, productFFP);
-								if (productSearcher.isFragmentIndexInMoleculeIndex()) {
-									StereoMolecule product = getChemicalStructureFromReaction(mRecord[recordIndex], rxncodeColumn, cReactionPartProducts, isMapped);
-									productSearcher.setMolecule(product, productFFP);
-									int inProductCount = productSearcher.findFragmentInMoleculeWithoutIndex(SSSearcher.cCountModeOverlapping);
-									if (inProductCount != 0) {
-										reactantSearcher.setMolecule((StereoMolecule)null, reactantFFP);
-										int inReactantCount = 0;
-										if (reactantSearcher.isFragmentIndexInMoleculeIndex()) {
-											StereoMolecule reactant = getChemicalStructureFromReaction(mRecord[recordIndex], rxncodeColumn, cReactionPartReactants, isMapped);
-											reactantSearcher.setMolecule(reactant, reactantFFP);
-											inReactantCount = reactantSearcher.findFragmentInMoleculeWithoutIndex(SSSearcher.cCountModeOverlapping);
-											if (inReactantCount != 0 && isMapped) {
-												inProductCount -= countEquivalentMatches(product, productSearcher.getGraphMatcher().getMatchList());
-												if (inProductCount <= inReactantCount)
-													inReactantCount -= countEquivalentMatches(reactant, reactantSearcher.getGraphMatcher().getMatchList());
-												}
-											}
-										// TODO check, whether we also have to take into account in catalyst occurences
-										if (inProductCount > inReactantCount) {
-											mRecord[recordIndex].mFlags &= ~mask;
-											}
+		ComputeScheduler.getInstance().runParallel(ComputeScheduler.PRIORITY_INTERACTIVE, threadCount, () -> {
+			SSSearcherWithIndex reactantSearcher = new SSSearcherWithIndex();
+			searcherQueue.add(reactantSearcher);
+			reactantSearcher.setFragment(retron, (long[])null);
+			SSSearcherWithIndex productSearcher = new SSSearcherWithIndex();
+			searcherQueue.add(productSearcher);
+			productSearcher.setFragment(retron, (long[])null);
+			int recordIndex = rowIndex.decrementAndGet();
+			while (recordIndex >= 0) {
+				if (mRecord[recordIndex].isFlagSet(exclusionFlagNo)) {
+					// do the substructure search in two steps for not unneccessarily creating the product molecule
+					long[] productFFP = (long[])mRecord[recordIndex].getData(productFFPColumn);
+					long[] reactantFFP = (long[])mRecord[recordIndex].getData(reactantFFPColumn);
+					if (!mColumnInfo[productFFPColumn].descriptorHandler.calculationFailed(productFFP)
+					 && !mColumnInfo[productFFPColumn].descriptorHandler.calculationFailed(reactantFFP)) {
+						productSearcher.setMolecule((StereoMolecule)null, productFFP);
+						if (productSearcher.isFragmentIndexInMoleculeIndex()) {
+							StereoMolecule product = getChemicalStructureFromReaction(mRecord[recordIndex], rxncodeColumn, cReactionPartProducts, isMapped);
+							productSearcher.setMolecule(product, productFFP);
+							int inProductCount = productSearcher.findFragmentInMoleculeWithoutIndex(SSSearcher.cCountModeOverlapping);
+							if (inProductCount != 0) {
+								reactantSearcher.setMolecule((StereoMolecule)null, reactantFFP);
+								int inReactantCount = 0;
+								if (reactantSearcher.isFragmentIndexInMoleculeIndex()) {
+									StereoMolecule reactant = getChemicalStructureFromReaction(mRecord[recordIndex], rxncodeColumn, cReactionPartReactants, isMapped);
+									reactantSearcher.setMolecule(reactant, reactantFFP);
+									inReactantCount = reactantSearcher.findFragmentInMoleculeWithoutIndex(SSSearcher.cCountModeOverlapping);
+									if (inReactantCount != 0 && isMapped) {
+										inProductCount -= countEquivalentMatches(product, productSearcher.getGraphMatcher().getMatchList());
+										if (inProductCount <= inReactantCount)
+											inReactantCount -= countEquivalentMatches(reactant, reactantSearcher.getGraphMatcher().getMatchList());
 										}
 									}
+								// TODO check, whether we also have to take into account in catalyst occurences
+								if (inProductCount > inReactantCount) {
+									mRecord[recordIndex].clearFlag(exclusionFlagNo);
+									}
 								}
 							}
-
-						recordIndex = rowIndex.decrementAndGet();
 						}
 					}
-				};
-			worker[i].setPriority(Thread.MIN_PRIORITY);
-			worker[i].start();
-			}
 
-		for (Thread t:worker)
-			try { t.join(); } catch (InterruptedException e) {}
+				recordIndex = rowIndex.decrementAndGet();
+				}
+			}, null);
 
 		mStoppableSearcherMap.remove(exclusionFlagNo);
 
 		// optionally invert flag
 		if (inverse)
 			for (CompoundRecord record : mRecord)
-				record.mFlags ^= mask;
+				record.invertFlag(exclusionFlagNo);
 
 		if (SwingUtilities.isEventDispatchThread()) {
-			mDirtyCompoundFlags |= mask;
+			setRowFlagToDirty(exclusionFlagNo);
 			updateVisibleRecords(false);
 			}
 		else  {
 			try {
 				SwingUtilities.invokeAndWait(() -> {
-					mDirtyCompoundFlags |= mask;
+					setRowFlagToDirty(exclusionFlagNo);
 					updateVisibleRecords(false);
 					});
 				}
@@ -3462,13 +3877,12 @@ public class CompoundTableModel extends AbstractTableModel
 		}
 
 	public void setSubReactionExclusion(final AtomicInteger rowAndFragmentIndex, final int exclusionFlagNo, final int rxncodeColumn, final Reaction[] queryrxn, final boolean inverse) {
-		int threadCount = Runtime.getRuntime().availableProcessors();
+		int threadCount = ComputeScheduler.getInstance().getThreadCount(ComputeScheduler.PRIORITY_INTERACTIVE);
 		rowAndFragmentIndex.set(mRecord.length*queryrxn.length);
 
 		final int mappingColumn = getChildColumn(rxncodeColumn, CompoundTableConstants.cColumnTypeReactionMapping);
 		final int reactantFFPColumn = getChildColumn(rxncodeColumn, DESCRIPTOR_FFP512.shortName, CompoundTableConstants.cReactionPartReactants);
 		final int productFFPColumn = getChildColumn(rxncodeColumn, DESCRIPTOR_FFP512.shortName, CompoundTableConstants.cReactionPartProducts);
-		final long mask = convertRowFlagToMask(exclusionFlagNo);
 
 		// These fragments instances are read my multiple threads simultaneously.
 		// To prevent collision we must calculate all helper arrays in advance
@@ -3486,67 +3900,57 @@ public class CompoundTableModel extends AbstractTableModel
 
 		// set flag: excluded as default
 		for (CompoundRecord record : mRecord)
-			record.mFlags |= mask;
+			record.setFlag(exclusionFlagNo);
 
 		ConcurrentLinkedQueue<Object> searcherQueue = new ConcurrentLinkedQueue<>();
 		mStoppableSearcherMap.put(exclusionFlagNo, searcherQueue);
 
-		Thread[] worker = new Thread[threadCount];
-		for (int i=0; i<threadCount; i++) {
-			worker[i] = new Thread("SRS-Matcher "+(i+1)) {
-				public void run() {
-					SRSearcher searcher = new SRSearcher();
-					searcherQueue.add(searcher);
-
-					int combinedIndex = rowAndFragmentIndex.decrementAndGet();
-					int queryIndex = -1;
-					while (combinedIndex >= 0) {
-						int recordIndex = combinedIndex % mRecord.length;
-						if ((mRecord[recordIndex].mFlags & mask) != 0) {
-							int newFragmentIndex = combinedIndex / mRecord.length;
-							if (queryIndex != newFragmentIndex) {
-								queryIndex = newFragmentIndex;
-								searcher.setQuery(subrxn[queryIndex], queryReactantFFP[queryIndex], queryProductFFP[queryIndex]);
-								}
-
-							byte[] rxncode = (byte[])mRecord[recordIndex].getData(rxncodeColumn);
-							if (rxncode != null) {
-								byte[] mapping = (byte[])mRecord[recordIndex].getData(mappingColumn);
-								long[] reactantFFP = (long[])mRecord[recordIndex].getData(reactantFFPColumn);
-								long[] productFFP = (long[])mRecord[recordIndex].getData(productFFPColumn);
-								searcher.setReaction(rxncode, mapping, null, reactantFFP, productFFP);
+		ComputeScheduler.getInstance().runParallel(ComputeScheduler.PRIORITY_INTERACTIVE, threadCount, () -> {
+			SRSearcher searcher = new SRSearcher();
+			searcherQueue.add(searcher);
+
+			int combinedIndex = rowAndFragmentIndex.decrementAndGet();
+			int queryIndex = -1;
+			while (combinedIndex >= 0) {
+				int recordIndex = combinedIndex % mRecord.length;
+				if (mRecord[recordIndex].isFlagSet(exclusionFlagNo)) {
+					int newFragmentIndex = combinedIndex / mRecord.length;
+					if (queryIndex != newFragmentIndex) {
+						queryIndex = newFragmentIndex;
+						searcher.setQuery(subrxn[queryIndex], queryReactantFFP[queryIndex], queryProductFFP[queryIndex]);
+						}
 
-								if (searcher.isQueryInReaction())
-									mRecord[recordIndex].mFlags &= ~mask;
-								}
-							}
+					byte[] rxncode = (byte[])mRecord[recordIndex].getData(rxncodeColumn);
+					if (rxncode != null) {
+						byte[] mapping = (byte[])mRecord[recordIndex].getData(mappingColumn);
+						long[] reactantFFP = (long[])mRecord[recordIndex].getData(reactantFFPColumn);
+						long[] productFFP = (long[])mRecord[recordIndex].getData(productFFPColumn);
+						searcher.setReaction(rxncode, mapping, null, reactantFFP, productFFP);
 
-						combinedIndex = rowAndFragmentIndex.decrementAndGet();
+						if (searcher.isQueryInReaction())
+							mRecord[recordIndex].clearFlag(exclusionFlagNo);
 						}
 					}
-				};
-			worker[i].setPriority(Thread.MIN_PRIORITY);
-			worker[i].start();
-			}
 
-		for (Thread t:worker)
-			try { t.join(); } catch (InterruptedException e) {}
+				combinedIndex = rowAndFragmentIndex.decrementAndGet();
+				}
+			}, null);
 
 		mStoppableSearcherMap.remove(exclusionFlagNo);
 
 		// optionally invert flag
 		if (inverse)
 			for (int row=0; row<mRecord.length; row++)
-				mRecord[row].mFlags ^= mask;
+				mRecord[row].invertFlag(exclusionFlagNo);
 
 		if (SwingUtilities.isEventDispatchThread()) {
-			mDirtyCompoundFlags |= mask;
+			setRowFlagToDirty(exclusionFlagNo);
 			updateVisibleRecords(false);
 			}
 		else  {
 			try {
 				SwingUtilities.invokeAndWait(() -> {
-					mDirtyCompoundFlags |= mask;
+					setRowFlagToDirty(exclusionFlagNo);
 					updateVisibleRecords(false);
 					});
 				}
@@ -3564,13 +3968,12 @@ public class CompoundTableModel extends AbstractTableModel
 		 */
 	public void setSubStructureExclusion(final AtomicInteger rowAndFragmentIndex, final int exclusionFlagNo, final int idcodeColumn, final StereoMolecule[] fragment, String reactionPart, final boolean inverse) {
 //int threadCount = 1;
-		int threadCount = Runtime.getRuntime().availableProcessors();
+		int threadCount = ComputeScheduler.getInstance().getThreadCount(ComputeScheduler.PRIORITY_INTERACTIVE);
 		rowAndFragmentIndex.set(mRecord.length*fragment.length);
 
 		final int allFragColumn = getChildColumn(idcodeColumn, DESCRIPTOR_ALLFRAG.shortName, reactionPart);
 		final boolean isAllFrag = (allFragColumn != -1);
 		final int fingerprintColumn = isAllFrag ? allFragColumn : getChildColumn(idcodeColumn, DESCRIPTOR_FFP512.shortName, reactionPart);
-		final long mask = convertRowFlagToMask(exclusionFlagNo);
 
 		// These fragments instances are read my multiple threads simultaneously.
 		// To prevent collision we must calculate all helper arrays in advance
@@ -3579,84 +3982,74 @@ public class CompoundTableModel extends AbstractTableModel
 
 		// set flag: excluded as default
 		for (int row=0; row<mRecord.length; row++)
-			mRecord[row].mFlags |= mask;
+			mRecord[row].setFlag(exclusionFlagNo);
 
 		ConcurrentLinkedQueue<Object> searcherQueue = new ConcurrentLinkedQueue<>();
 		mStoppableSearcherMap.put(exclusionFlagNo, searcherQueue);
 
-		Thread[] worker = new Thread[threadCount];
-		for (int i=0; i<threadCount; i++) {
-			worker[i] = new Thread("SSS-Matcher "+(i+1)) {
-				public void run() {
-					SSSearcherWithIndex searcherWithIndex = new SSSearcherWithIndex(isAllFrag ?
-										new DescriptorHandlerAllFragmentsFP() : null);
-					searcherQueue.add(searcherWithIndex);
+		ComputeScheduler.getInstance().runParallel(ComputeScheduler.PRIORITY_INTERACTIVE, threadCount, () -> {
+			SSSearcherWithIndex searcherWithIndex = new SSSearcherWithIndex(isAllFrag ?
+								new DescriptorHandlerAllFragmentsFP() : null);
+			searcherQueue.add(searcherWithIndex);
 
 //long time = System.currentTimeMillis();
 //int graphSearchCount = 0;
 //int graphMatchCount = 0;
-					int combinedIndex = rowAndFragmentIndex.decrementAndGet();
-					int fragmentIndex = -1;
-					while (combinedIndex >= 0) {
-						int recordIndex = combinedIndex % mRecord.length;
-						if ((mRecord[recordIndex].mFlags & mask) != 0) {
-							int newFragmentIndex = combinedIndex / mRecord.length;
-							if (fragmentIndex != newFragmentIndex) {
-								fragmentIndex = newFragmentIndex;
-								searcherWithIndex.setFragment(fragment[fragmentIndex], (long[])null);
-								}
+			int combinedIndex = rowAndFragmentIndex.decrementAndGet();
+			int fragmentIndex = -1;
+			while (combinedIndex >= 0) {
+				int recordIndex = combinedIndex % mRecord.length;
+				if (mRecord[recordIndex].isFlagSet(exclusionFlagNo)) {
+					int newFragmentIndex = combinedIndex / mRecord.length;
+					if (fragmentIndex != newFragmentIndex) {
+						fragmentIndex = newFragmentIndex;
+						searcherWithIndex.setFragment(fragment[fragmentIndex], (long[])null);
+						}
 	
-							if (cColumnTypeRXNCode.equals(getColumnSpecialType(idcodeColumn))) {
-								// do the substructure search in two steps for not unneccessarily creating the product molecule
-								long[] molIndex = (long[])mRecord[recordIndex].getData(fingerprintColumn);
-								searcherWithIndex.setMolecule((StereoMolecule)null, molIndex);
-								if (searcherWithIndex.isFragmentIndexInMoleculeIndex()) {
-									searcherWithIndex.setMolecule(getChemicalStructureFromReaction(mRecord[recordIndex], idcodeColumn, reactionPart, false), molIndex);
-									if (searcherWithIndex.isFragmentInMoleculeWithoutIndex())
-										mRecord[recordIndex].mFlags &= ~mask;
-									}
-								}
-							else {	// idcode is normal molecule
-								byte[] idcode = (byte[])mRecord[recordIndex].getData(idcodeColumn);
-								if (idcode != null) {
+					if (cColumnTypeRXNCode.equals(getColumnSpecialType(idcodeColumn))) {
+						// do the substructure search in two steps for not unneccessarily creating the product molecule
+						long[] molIndex = (long[])mRecord[recordIndex].getData(fingerprintColumn);
+						searcherWithIndex.setMolecule((StereoMolecule)null, molIndex);
+						if (searcherWithIndex.isFragmentIndexInMoleculeIndex()) {
+							searcherWithIndex.setMolecule(getChemicalStructureFromReaction(mRecord[recordIndex], idcodeColumn, reactionPart, false), molIndex);
+							if (searcherWithIndex.isFragmentInMoleculeWithoutIndex())
+								mRecord[recordIndex].clearFlag(exclusionFlagNo);
+							}
+						}
+					else {	// idcode is normal molecule
+						byte[] idcode = (byte[])mRecord[recordIndex].getData(idcodeColumn);
+						if (idcode != null) {
 //if (searcherWithIndex.isFragmentIndexInMoleculeIndex()) graphSearchCount++;
-									searcherWithIndex.setMolecule(idcode, (long[])mRecord[recordIndex].getData(fingerprintColumn));
-									if (searcherWithIndex.isFragmentInMolecule())
+							searcherWithIndex.setMolecule(idcode, (long[])mRecord[recordIndex].getData(fingerprintColumn));
+							if (searcherWithIndex.isFragmentInMolecule())
 //{
-										mRecord[recordIndex].mFlags &= ~mask;
+								mRecord[recordIndex].clearFlag(exclusionFlagNo);
 //graphMatchCount++;
 //}
-									}
-								}
 							}
-
-						combinedIndex = rowAndFragmentIndex.decrementAndGet();
 						}
-//System.out.println("indexHits:"+graphSearchCount+" sssHits:"+graphMatchCount+" millis:"+(System.currentTimeMillis()-time)+" idcode:"+new Canonizer(fragment[0]).getIDCode());
 					}
-				};
-			worker[i].setPriority(Thread.MIN_PRIORITY);
-			worker[i].start();
-			}
 
-		for (Thread t:worker)
-			try { t.join(); } catch (InterruptedException e) {}
+				combinedIndex = rowAndFragmentIndex.decrementAndGet();
+				}
+//System.out.println("indexHits:"+graphSearchCount+" sssHits:"+graphMatchCount+" millis:"+(System.currentTimeMillis()-time)+" idcode:"+new Canonizer(fragment[0]).getIDCode());
+			}, null);
 
 		mStoppableSearcherMap.remove(exclusionFlagNo);
 
 		// optionally invert flag
 		if (inverse)
 			for (int row=0; row<mRecord.length; row++)
-				mRecord[row].mFlags ^= mask;
+				mRecord[row].invertFlag(exclusionFlagNo);
 
 		if (SwingUtilities.isEventDispatchThread()) {
-			mDirtyCompoundFlags |= mask;
+			setRowFlagToDirty(exclusionFlagNo);
 			updateVisibleRecords(false);
 			}
 		else  {
 			try {
 				SwingUtilities.invokeAndWait(() -> {
-					mDirtyCompoundFlags |= mask;
+					setRowFlagToDirty(exclusionFlagNo);
 					updateVisibleRecords(false);
 					});
 				}
@@ -3705,14 +4098,13 @@ public class CompoundTableModel extends AbstractTableModel
 	public void setReactionSimilarityExclusion(int exclusionFlagNo, int descriptorColumn, float[][][] similarity,
 											   float minReactionCenterSimilarity, float minPeripherySimilarity,
 											   boolean inverse, boolean isAdjusting) {
-		long mask = convertRowFlagToMask(exclusionFlagNo);
 		for (int row=0; row<mRecords; row++) {
 			Object descriptor = mRecord[row].getData(descriptorColumn);
 			if (descriptor == null) {
 				if (inverse)
-					mRecord[row].mFlags &= ~mask;
+					mRecord[row].clearFlag(exclusionFlagNo);
 				else
-					mRecord[row].mFlags |= mask;
+					mRecord[row].setFlag(exclusionFlagNo);
 				}
 			else {
 				boolean found = false;
@@ -3724,13 +4116,13 @@ public class CompoundTableModel extends AbstractTableModel
 						}
 					}
 				if (inverse ^ found)
-					mRecord[row].mFlags &= ~mask;
+					mRecord[row].clearFlag(exclusionFlagNo);
 				else
-					mRecord[row].mFlags |= mask;
+					mRecord[row].setFlag(exclusionFlagNo);
 				}
 			}
 
-		mDirtyCompoundFlags |= mask;
+		setRowFlagToDirty(exclusionFlagNo);
 
 		updateVisibleRecords(isAdjusting);
 		}
@@ -3739,13 +4131,12 @@ public class CompoundTableModel extends AbstractTableModel
 												StereoMolecule[] molecule,
 												float[][] similarity, float minSimilarity,
 												boolean inverse, boolean isAdjusting) {
-		long mask = convertRowFlagToMask(exclusionFlagNo);
 		for (int row=0; row<mRecords; row++) {
 			if (mRecord[row].getData(descriptorColumn) == null) {
 				if (inverse)
-					mRecord[row].mFlags &= ~mask;
+					mRecord[row].clearFlag(exclusionFlagNo);
 				else
-					mRecord[row].mFlags |= mask;
+					mRecord[row].setFlag(exclusionFlagNo);
 			}
 			else {
 				boolean found = false;
@@ -3756,13 +4147,13 @@ public class CompoundTableModel extends AbstractTableModel
 					}
 				}
 				if (inverse ^ found)
-					mRecord[row].mFlags &= ~mask;
+					mRecord[row].clearFlag(exclusionFlagNo);
 				else
-					mRecord[row].mFlags |= mask;
+					mRecord[row].setFlag(exclusionFlagNo);
 			}
 		}
 
-		mDirtyCompoundFlags |= mask;
+		setRowFlagToDirty(exclusionFlagNo);
 		updateVisibleRecords(isAdjusting);
 	}
 
@@ -3866,7 +4257,7 @@ public class CompoundTableModel extends AbstractTableModel
 
 	protected void unselectInvisibleRecords() {
 		for (int row=0; row<mRecords; row++)
-			if ((mRecord[row].mFlags & mAllocatedExclusionFlags) != 0)
+			if (!isVisible(mRecord[row]))
 				mRecord[row].mFlags &= ~CompoundRecord.cFlagMaskSelected;
 		}
 
@@ -3907,6 +4298,11 @@ public class CompoundTableModel extends AbstractTableModel
 		}
 
 	public float[] createStructureSimilarityList(Object chemObject, Object refDescriptor, int descriptorColumn) {
+		Object reference = getSimilarityCacheReference(chemObject, refDescriptor, null, descriptorColumn);
+		float[][] cachedList = mSimilarityListCache.get(descriptorColumn, reference, mRecord.length);
+		if (cachedList != null)
+			return cachedList[0];
+
 		if (refDescriptor == null)
 			refDescriptor = mColumnInfo[descriptorColumn].getCachedDescriptor(chemObject);
 		DescriptorHandler<Object,Object> descriptorHandler = mColumnInfo[descriptorColumn].descriptorHandler;
@@ -3916,12 +4312,20 @@ public class CompoundTableModel extends AbstractTableModel
 			if (descriptor != null)
 				similarity[mRecord[row].mOriginalIndex] = descriptorHandler.getSimilarity(refDescriptor, descriptor);
 			}
+
+		if (!mColumnInfo[descriptorColumn].isDescriptorIncomplete)
+			mSimilarityListCache.put(descriptorColumn, reference, new float[][] { similarity });
+
 		return similarity;
 		}
 
 	public float[][] createReactionSimilarityList(Object chemObject, Object refDescriptor, int descriptorColumn) {
 		if (refDescriptor == null)
 			refDescriptor = mColumnInfo[descriptorColumn].getCachedDescriptor(chemObject);
+		float[][] cachedList = mSimilarityListCache.get(descriptorColumn, refDescriptor, mRecord.length);
+		if (cachedList != null)
+			return cachedList;
+
 		// strange double casting, but it works!!!
 		DescriptorHandlerReactionFP descriptorHandler = (DescriptorHandlerReactionFP)(DescriptorHandler)mColumnInfo[descriptorColumn].descriptorHandler;
 		float[][] similarity = new float[2][mRecord.length];
@@ -3932,30 +4336,71 @@ public class CompoundTableModel extends AbstractTableModel
 				similarity[1][mRecord[row].mOriginalIndex] = descriptorHandler.getPeripherySimilarity((long[])refDescriptor, descriptor);
 				}
 			}
+
+		if (!mColumnInfo[descriptorColumn].isDescriptorIncomplete)
+			mSimilarityListCache.put(descriptorColumn, refDescriptor, similarity);
+
 		return similarity;
 		}
 
 	/**
-	 * Checks, whether the cache contains a matching similarity list for the given idcode
-	 * (currently only flexophores are cached).
+	 * Returns an index of the descriptor column's fingerprints, which finds most similar rows
+	 * without comparing all fingerprints. The index is built, if it doesn't exist yet or if the
+	 * row count has changed. Changes of column data reset the index.
+	 * @param descriptorColumn
+	 * @return index or null, if the descriptor type is not supported or descriptors are not complete
+	 */
+	public FingerprintSimilarityIndex getFingerprintSimilarityIndex(int descriptorColumn) {
+		if (!FingerprintSimilarityIndex.isSupported(mColumnInfo[descriptorColumn].descriptorHandler)
+		 || mColumnInfo[descriptorColumn].isDescriptorIncomplete)
+			return null;
+
+		FingerprintSimilarityIndex fingerprintIndex = mColumnInfo[descriptorColumn].fingerprintIndex;
+		if (fingerprintIndex == null || !fingerprintIndex.isValid(mRecords)) {
+			fingerprintIndex = new FingerprintSimilarityIndex(mRecord, mRecords, descriptorColumn,
+															  mColumnInfo[descriptorColumn].descriptorHandler);
+			mColumnInfo[descriptorColumn].fingerprintIndex = fingerprintIndex;
+			}
+		return fingerprintIndex;
+		}
+
+	/**
+	 * Checks, whether the cache contains a matching similarity list for the given idcode.
 	 * @param idcode
 	 * @param descriptorColumn
-	 * @return
+	 * @return cached similarity list or null
 	 */
 	public float[] getStructureSimilarityListFromCache(String idcode, int descriptorColumn) {
-		if (mFlexophoreSimilarityListCache != null
-		 && idcode != null
-		 && mColumnInfo[descriptorColumn].descriptorHandler instanceof DescriptorHandlerFlexophore) {
-			return mFlexophoreSimilarityListCache.get(idcode);
-			}
+		float[][] list = (idcode == null) ? null : mSimilarityListCache.get(descriptorColumn, idcode, mRecord.length);
+		return (list == null) ? null : list[0];
+		}
 
+	/**
+	 * Determines the key, which identifies the reference of a similarity list in the similarity list cache.
+	 * Molecules are identified by their idcode; binary descriptors are used as they are. Other references
+	 * are not cached.
+	 * @param chemObject null or StereoMolecule/Reaction
+	 * @param descriptor null or reference descriptor
+	 * @param idcode null or idcode of reference molecule
+	 * @param descriptorColumn
+	 * @return idcode, descriptor or null
+	 */
+	private Object getSimilarityCacheReference(Object chemObject, Object descriptor, String idcode, int descriptorColumn) {
+		if (idcode != null)
+			return idcode;
+		if (SimilarityListCache.isCacheable(descriptor))
+			return descriptor;
+		if (chemObject instanceof StereoMolecule)
+			return new Canonizer((StereoMolecule)chemObject).getIDCode();
+		if (chemObject instanceof Reaction && mColumnInfo[descriptorColumn].descriptorHandler.getInfo().type == DESCRIPTOR_TYPE_REACTION)
+			return mColumnInfo[descriptorColumn].getCachedDescriptor(chemObject);
 		return null;
 		}
 
 	/**
-	 * If a valid similarity list can be obtained from the cache, then it is returned
-	 * (currently only flexophores are cached). The given idcode is used as key for the cache.
-	 * If idcode==null then the idcode is constructed from chemObject.<br>
+	 * If a valid similarity list can be obtained from the cache, then it is returned.
+	 * The given idcode is used as key for the cache. If idcode==null then the descriptor
+	 * or the idcode constructed from chemObject is used.<br>
 	 * If the cache didn't contain a matching similarity list, then this method calculates on
 	 * all available cores the similarities of all rows against the given chemistry object
 	 * (molecule or reaction) or the given descriptor.<br>
@@ -3976,99 +4421,104 @@ public class CompoundTableModel extends AbstractTableModel
 										final int descriptorColumn, final ProgressController pc,
 										final boolean waitUntilCompletion) {
 //System.out.println("CompoundTabelModel createSimilarityListSMP() Start");
-		Thread coordinator = new Thread("Similarity Calculator") {
-			public void run() {
-				final int threadCount = Runtime.getRuntime().availableProcessors();
-				mSimRecordIndex = new AtomicInteger(mRecord.length);
-				mSMPSimilarityThreads = new AtomicInteger(threadCount);
-				mSMPSimilarityErrors = 0;
+		Runnable coordinator = () -> {
+			final Object reference = getSimilarityCacheReference(chemObject, descriptor, idcode, descriptorColumn);
+			float[][] cachedList = mSimilarityListCache.get(descriptorColumn, reference, mRecord.length);
+			if (cachedList != null) {
+				mSimilarityListSMP = cachedList[cachedList.length-1];
+				mSimilarityList2SMP = (cachedList.length == 2) ? cachedList[0] : null;
+				if (!waitUntilCompletion)
+					pc.stopProgress();
+				return;
+				}
 
-				final DescriptorHandler<Object,Object> dh = mColumnInfo[descriptorColumn].descriptorHandler;
-				final boolean isReaction = dh.getInfo().type == DESCRIPTOR_TYPE_REACTION;
+			final int threadCount = ComputeScheduler.getInstance().getThreadCount(ComputeScheduler.PRIORITY_INTERACTIVE);
+			final int chunkSize = ComputeScheduler.getChunkSize(mRecord.length, threadCount, cMaxSimilarityChunkSize);
+			final AtomicInteger errorCount = new AtomicInteger();
+			mSimRecordIndex = new AtomicInteger(mRecord.length);
+			mSMPSimilarityThreads = new AtomicInteger(threadCount);
 
-				pc.startProgress("Calculating query descriptor...", 0, 0);
-		
-				final Object refDescriptor = (descriptor != null) ? descriptor
-						: mColumnInfo[descriptorColumn].getCachedDescriptor(chemObject);
-				if (pc.threadMustDie()) {
-					mSimilarityListSMP = null;
-					if (!waitUntilCompletion)
-						pc.stopProgress();
-					return;
-					}
+			final DescriptorHandler<Object,Object> dh = mColumnInfo[descriptorColumn].descriptorHandler;
+			final boolean isReaction = dh.getInfo().type == DESCRIPTOR_TYPE_REACTION;
+
+			pc.startProgress("Calculating query descriptor...", 0, 0);
 		
-				pc.startProgress("Calculating similarities...", 0, mRecord.length);
-
-				mSimilarityListSMP = new float[mRecord.length];
-				if (isReaction)
-					mSimilarityList2SMP = new float[mRecord.length];
-
-				Thread[] worker = new Thread[threadCount];
-				for (int i=0; i<threadCount; i++) {
-					worker[i] = new Thread(getColumnSpecialType(descriptorColumn)+" calculator "+(i+1)) {
-						public void run() {
-							int recordIndex = mSimRecordIndex.decrementAndGet();
-							while (recordIndex >= 0 && !pc.threadMustDie()) {
-								if (pc.threadMustDie())
-									break;
+			final Object refDescriptor = (descriptor != null) ? descriptor
+					: mColumnInfo[descriptorColumn].getCachedDescriptor(chemObject);
+			if (pc.threadMustDie()) {
+				mSimilarityListSMP = null;
+				if (!waitUntilCompletion)
+					pc.stopProgress();
+				return;
+				}
 		
-								try {
-									Object descriptor = mRecord[recordIndex].getData(descriptorColumn);
-									if (descriptor != null) {
-										if (!isReaction)
-											mSimilarityListSMP[mRecord[recordIndex].mOriginalIndex]
-													= dh.getSimilarity(refDescriptor, descriptor);
-										else {
-											mSimilarityListSMP[mRecord[recordIndex].mOriginalIndex]
-													= ((DescriptorHandlerReactionFP)(DescriptorHandler)dh).getPeripherySimilarity((long[])refDescriptor, (long[])descriptor);
-											mSimilarityList2SMP[mRecord[recordIndex].mOriginalIndex]
-													= ((DescriptorHandlerReactionFP)(DescriptorHandler)dh).getReactionCenterSimilarity((long[])refDescriptor, (long[])descriptor);
-											}
-										}
+			pc.startProgress("Calculating similarities...", 0, mRecord.length);
+
+			mSimilarityListSMP = new float[mRecord.length];
+			if (isReaction)
+				mSimilarityList2SMP = new float[mRecord.length];
+
+			ComputeScheduler.getInstance().runParallel(ComputeScheduler.PRIORITY_INTERACTIVE, threadCount, () -> {
+				CompoundRecord[] record = mRecord;
+				float[] similarity = mSimilarityListSMP;
+				float[] similarity2 = mSimilarityList2SMP;
+				int errors = 0;
+
+				// claim chunks of records to keep the shared counter and the progress controller out of the inner loop
+				int chunkEnd = mSimRecordIndex.getAndAdd(-chunkSize);
+				while (chunkEnd > 0 && !pc.threadMustDie()) {
+					int chunkStart = Math.max(0, chunkEnd - chunkSize);
+					for (int recordIndex=chunkEnd-1; recordIndex>=chunkStart; recordIndex--) {
+						try {
+							Object rowDescriptor = record[recordIndex].getData(descriptorColumn);
+							if (rowDescriptor != null) {
+								if (!isReaction)
+									similarity[record[recordIndex].mOriginalIndex]
+											= dh.getSimilarity(refDescriptor, rowDescriptor);
+								else {
+									similarity[record[recordIndex].mOriginalIndex]
+											= ((DescriptorHandlerReactionFP)(DescriptorHandler)dh).getPeripherySimilarity((long[])refDescriptor, (long[])rowDescriptor);
+									similarity2[record[recordIndex].mOriginalIndex]
+											= ((DescriptorHandlerReactionFP)(DescriptorHandler)dh).getReactionCenterSimilarity((long[])refDescriptor, (long[])rowDescriptor);
 									}
-								catch (Exception e) {
-									mSMPSimilarityErrors++;
-									}
-		
-								pc.updateProgress(-1);
-								recordIndex = mSimRecordIndex.decrementAndGet();
 								}
+							}
+						catch (Exception e) {
+							errors++;
+							}
+						}
+
+					pc.updateProgress(chunkStart-chunkEnd);	// negative values are increments
+					chunkEnd = mSimRecordIndex.getAndAdd(-chunkSize);
+					}
+
+				if (errors != 0)
+					errorCount.addAndGet(errors);
 
 //System.out.println("CompoundTabelModel createSimilarityListSMP() threads left:"+(mSMPSimilarityThreads.get()-1));
 
-							if (mSMPSimilarityThreads.decrementAndGet() == 0) {
-								if (pc.threadMustDie())
-									mSimilarityListSMP = null;
-								else if (mSMPSimilarityErrors != 0)
-									pc.showErrorMessage(getColumnSpecialType(descriptorColumn)
-											+" similarity calculation failed on "+mSMPSimilarityErrors+" molecules.");
-								else if (dh instanceof DescriptorHandlerFlexophore) {
-									String key = idcode;
-									if (key == null && chemObject != null)
-										key = new Canonizer((StereoMolecule)chemObject).getIDCode();
-									if (key != null) {
-										if (mFlexophoreSimilarityListCache == null)
-											mFlexophoreSimilarityListCache = new ConcurrentHashMap<String,float[]>();
-										mFlexophoreSimilarityListCache.put(key, mSimilarityListSMP);
-										}
-									}
+				if (mSMPSimilarityThreads.decrementAndGet() == 0) {
+					if (pc.threadMustDie())
+						mSimilarityListSMP = null;
+					else if (errorCount.get() != 0)
+						pc.showErrorMessage(getColumnSpecialType(descriptorColumn)
+								+" similarity calculation failed on "+errorCount.get()+" molecules.");
+					else if (!mColumnInfo[descriptorColumn].isDescriptorIncomplete) {
+						mSimilarityListCache.put(descriptorColumn, reference, isReaction ?
+								new float[][] { mSimilarityList2SMP, mSimilarityListSMP } : new float[][] { mSimilarityListSMP });
+						}
 
-								mSMPSimilarityThreads = null;
-								if (!waitUntilCompletion)
-									pc.stopProgress();
-								}
-							}
-						};
-					worker[i].setPriority(Thread.MIN_PRIORITY);
-					worker[i].start();
+					mSMPSimilarityThreads = null;
+					if (!waitUntilCompletion)
+						pc.stopProgress();
 					}
-				for (int i=0; i<worker.length; i++)
-					try { worker[i].join(); } catch (InterruptedException ie) {}
-				}
+				}, null);
 			};
-		coordinator.start();
+		// the coordinator waits for its workers and, therefore, must not occupy a thread of the pool
 		if (waitUntilCompletion)
-			try { coordinator.join(); } catch (InterruptedException ie) {}
+			coordinator.run();
+		else
+			new Thread(coordinator, "Similarity Calculator").start();
 		}
 
 	/**
@@ -4236,6 +4686,7 @@ public class CompoundTableModel extends AbstractTableModel
 		}
 
 	public void fireCompoundTableChanged(CompoundTableEvent e) {
+		mStructureCache.compoundTableChanged(e);
 		for (int i=mCompoundTableListener.size()-1; i>=0; i--)
 			mCompoundTableListener.get(i).compoundTableChanged(e);
 		}
@@ -4489,6 +4940,9 @@ public class CompoundTableModel extends AbstractTableModel
 	 * @param isAfterDeletion
 	 */
 	private void analyzeColumn(int column, int firstRow, boolean isAfterDeletion) {
+		resetTextIndex(column);
+		mColumnInfo[column].fingerprintIndex = null;
+		invalidateAggregateIndexes(column);
 		analyzeCompleteness(column, firstRow);
 
 		if (!isAfterDeletion
@@ -4774,22 +5228,101 @@ public class CompoundTableModel extends AbstractTableModel
 	 * @param column
 	 */
 	private void assignRecordsToCategories(int column) {
+		CategoryIndex categoryIndex = createCategoryIndex(column);
+		mColumnInfo[column].categoryIndex = categoryIndex;
+
 		if ((mColumnInfo[column].type & (cColumnTypeCategory | cColumnTypeDouble | cColumnTypeDate)) == cColumnTypeCategory) {
 			int categoryCount = mColumnInfo[column].categoryList.getSize();
 			mColumnInfo[column].minValue = 0.0f;
 			mColumnInfo[column].maxValue = mColumnInfo[column].belongsToMultipleCategories ? categoryCount+1 : categoryCount;
 
 			for (int row=0; row<mRecord.length; row++)
-				mRecord[row].mFloat[column] = 0.5f + calcCategoryIndex(column, mRecord[row]);
+				setRecordFloat(mRecord[row], column, 0.5f + categoryIndex.getCellCategory(mRecord[row].mOriginalIndex));
+			}
+		}
+
+	/**
+	 * Returns the column's category index, which is rebuilt, if the category list
+	 * or the number of rows has changed since it was created. Since views may ask
+	 * from multiple paint threads at the same time, the rebuild is done only once
+	 * while other threads wait for it.
+	 * @param column category column
+	 * @return valid category index of column
+	 */
+	private CategoryIndex ensureCategoryIndex(int column) {
+		CompoundTableColumnInfo columnInfo = mColumnInfo[column];
+		CategoryIndex categoryIndex = columnInfo.categoryIndex;
+		if (categoryIndex == null || !categoryIndex.isValid(columnInfo.categoryList, mRecords)) {
+			synchronized (columnInfo) {
+				categoryIndex = columnInfo.categoryIndex;
+				if (categoryIndex == null || !categoryIndex.isValid(columnInfo.categoryList, mRecords)) {
+					categoryIndex = createCategoryIndex(column);
+					columnInfo.categoryIndex = categoryIndex;
+					}
+				}
+			}
+		return categoryIndex;
+		}
+
+	/**
+	 * Separates the entries of all cells of the column once and determines their
+	 * category indexes. If all entries of a cell belong to the same category,
+	 * then this category's index is the cell's category. Otherwise, the number of
+	 * categories is used as indication for 'multiple categories'.
+	 * @param column category column
+	 * @return new category index for the column's current category list
+	 */
+	private CategoryIndex createCategoryIndex(int column) {
+		CategoryList<?> categoryList = mColumnInfo[column].categoryList;
+		int multipleCategoriesIndex = categoryList.getSize();
+
+		CompoundRecord[] recordByID = new CompoundRecord[mRecords];
+		for (int row=0; row<mRecords; row++)
+			recordByID[mRecord[row].mOriginalIndex] = mRecord[row];
+
+		int[] cellCategory = new int[mRecords];
+		int[] entryStart = null;
+		int[] entryCategory = null;
+		int entryCount = 0;
+		for (int id=0; id<mRecords; id++) {
+			String[] entry = separateEntries(encodeData(recordByID[id], column));
+			int index = categoryList.getIndexOfString(entry[0]);
+			cellCategory[id] = index;
+
+			if (entry.length > 1 && entryStart == null) {	// first cell with multiple entries
+				entryStart = new int[mRecords+1];
+				entryCategory = new int[mRecords+entry.length];
+				for (int i=0; i<id; i++) {
+					entryStart[i] = i;
+					entryCategory[i] = cellCategory[i];
+					}
+				entryCount = id;
+				}
+
+			if (entryStart != null) {
+				entryStart[id] = entryCount;
+				if (entryCount+entry.length > entryCategory.length)
+					entryCategory = Arrays.copyOf(entryCategory, Math.max(entryCount+entry.length, 2*entryCategory.length));
+				entryCategory[entryCount++] = index;
+				for (int i=1; i<entry.length; i++) {
+					int entryIndex = categoryList.getIndexOfString(entry[i]);
+					entryCategory[entryCount++] = entryIndex;
+					if (entryIndex != index)
+						cellCategory[id] = multipleCategoriesIndex;
+					}
+				}
 			}
+		if (entryStart != null)
+			entryStart[mRecords] = entryCount;
+
+		return new CategoryIndex(categoryList, cellCategory, entryStart, entryCategory);
 		}
 
 	/**
 	 * If all entries of the defined cell belong to the same category,
 	 * then this category's index is returned. Otherwise, the number of
 	 * categories is returned as indication for 'multiple categories'.
-	 * In non-date/non-double category columns the returned value is
-	 * identical to record.mDouble[column].
+	 * This is used for records, which are not part of the category index.
 	 * @param column
 	 * @param record
 	 * @return
@@ -4812,7 +5345,7 @@ public class CompoundTableModel extends AbstractTableModel
 	 * zero based index into the category list. However, if the column is at
 	 * the same time of type date or float, then the record.mDouble[column]
 	 * represents the original value instead. In this case the category index
-	 * can be calculated with this method on the fly.
+	 * is taken from the column's pre-calculated category index.
 	 * If the record belongs to multiple categories, then the size of the
 	 * category list is returned.
 	 * @param column is the total column index
@@ -4821,9 +5354,11 @@ public class CompoundTableModel extends AbstractTableModel
 	 */
 	public int getCategoryIndex(int column, CompoundRecord record) {
 		if ((mColumnInfo[column].type & (cColumnTypeDouble | cColumnTypeDate)) == 0)
-			return (int)record.mFloat[column];
+			return (int)record.getDouble(column);
 
-		return calcCategoryIndex(column, record);
+		int id = record.mOriginalIndex;
+		CategoryIndex categoryIndex = ensureCategoryIndex(column);
+		return (id >= 0 && id < mRecords) ? categoryIndex.getCellCategory(id) : calcCategoryIndex(column, record);
 		}
 
 	/**
@@ -4847,6 +5382,8 @@ public class CompoundTableModel extends AbstractTableModel
 	 * @return true if at least one cell is numerical and the remaining cells are empty
 	 */
 	private boolean setupDoubleValues(int column, int firstRow) {
+		invalidateAggregateIndexes(column);
+
 		if (getExplicitDataType(column) != cDataTypeAutomatic
 		 && getExplicitDataType(column) != cDataTypeFloat
 		 && getExplicitDataType(column) != cDataTypeInteger)
@@ -4873,14 +5410,14 @@ public class CompoundTableModel extends AbstractTableModel
 
 					found = true;
 					}
-				mRecord[row].mFloat[column] = value;
+				setRecordFloat(mRecord[row], column, value);
 				}
 			catch (NumberFormatException e) {
 				if (getExplicitDataType(column) != cDataTypeInteger
 				 && getExplicitDataType(column) != cDataTypeFloat) {
 					return false;
 					}
-				mRecord[row].mFloat[column] = Float.NaN;
+				setRecordFloat(mRecord[row], column, Float.NaN);
 				}
 			}
 
@@ -5216,7 +5753,7 @@ public class CompoundTableModel extends AbstractTableModel
 				}
 
 			if (count == 0) {
-				mRecord[row].mFloat[column] = Float.NaN;
+				setRecordFloat(mRecord[row], column, Float.NaN);
 				}
 			else {
 				found = true;
@@ -5224,16 +5761,16 @@ public class CompoundTableModel extends AbstractTableModel
 				case cSummaryModeMinimum:
 				case cSummaryModeMaximum:
 				case cSummaryModeSum:
-					mRecord[row].mFloat[column] = (float)(date/86400000);
+					setRecordFloat(mRecord[row], column, (float)(date/86400000));
 					break;
 				case cSummaryModeMedian:
 					Arrays.sort(medianMillis, 0, count);
 					long millis = ((count & 1) != 0) ? medianMillis[count/2]
 							: (medianMillis[count/2-1] + medianMillis[count/2])/2;
-					mRecord[row].mFloat[column] = (float)(millis/86400000);
+					setRecordFloat(mRecord[row], column, (float)(millis/86400000));
 					break;
 				default:    // mean or normal
-					mRecord[row].mFloat[column] = (float)((date/count)/86400000);
+					setRecordFloat(mRecord[row], column, (float)((date/count)/86400000));
 					break;
 					}
 				}
@@ -5247,7 +5784,19 @@ public class CompoundTableModel extends AbstractTableModel
 		return found;
 		}
 
+	private void setRecordFloat(CompoundRecord record, int column, float value) {
+		mRecordStore.setFloat(column, record.mOriginalIndex, value);
+		}
+
 	private void updateVisibleRecords(boolean isAdjusting) {
+		updateVisibleRecords(isAdjusting, null);
+		}
+
+	/**
+	 * @param isAdjusting
+	 * @param changedID IDs of all rows, whose exclusion flags have changed, or null if unknown
+	 */
+	private void updateVisibleRecords(boolean isAdjusting, int[] changedID) {
 		int oldVisibleRecords = mNonExcludedRecords;
 		compileVisibleRecords();
 
@@ -5261,7 +5810,7 @@ public class CompoundTableModel extends AbstractTableModel
 
 		mExclusionTag++;
 
-		fireEventsLater(new CompoundTableEvent(this, CompoundTableEvent.cChangeExcluded, -1, isAdjusting),
+		fireEventsLater(new CompoundTableEvent(this, CompoundTableEvent.cChangeExcluded, -1, isAdjusting, changedID),
 						new TableModelEvent(this, 0, mNonExcludedRecords-1, TableModelEvent.ALL_COLUMNS, mode));
 		}
 
@@ -5278,8 +5827,24 @@ public class CompoundTableModel extends AbstractTableModel
 
 	private void compileVisibleRecords() {
 		mNonExcludedRecords = 0;
+		if (mExtendedExclusionFlags.isEmpty()) {
+			for (int row=0; row<mRecords; row++) {
+				if ((mRecord[row].mFlags & mAllocatedExclusionFlags) == 0) {
+					mNonExcludedRecord[mNonExcludedRecords++] = mRecord[row];
+					}
+				}
+			return;
+			}
+
+		// OR all extended exclusion bitsets word by word into one bitset of excluded row IDs
+		long[] excluded = new long[mRecordStore.getWordCount()];
+		for (int flagNo:mExtendedExclusionFlagNo)
+			mRecordStore.orFlagWords(flagNo, excluded);
+
 		for (int row=0; row<mRecords; row++) {
-			if ((mRecord[row].mFlags & mAllocatedExclusionFlags) == 0) {
+			int id = mRecord[row].mOriginalIndex;
+			if ((mRecord[row].mFlags & mAllocatedExclusionFlags) == 0
+			 && (excluded[id >>> 6] & (1L << id)) == 0) {
 				mNonExcludedRecord[mNonExcludedRecords++] = mRecord[row];
 				}
 			}
@@ -5303,8 +5868,9 @@ public class CompoundTableModel extends AbstractTableModel
 			mColumnInfo[column].isComplete = true;
 			}
 
+		float[] columnValue = mRecordStore.getFloatColumn(column);
 		for (int row=firstRow; row<mRecord.length; row++) {
-			float value = mRecord[row].mFloat[column];
+			float value = columnValue[mRecord[row].mOriginalIndex];
 			if (Float.isNaN(value) || Float.isInfinite(value)) {
 				mColumnInfo[column].isComplete = false;
 				continue;
@@ -5561,132 +6127,136 @@ public class CompoundTableModel extends AbstractTableModel
 		new Thread("Descriptor Calculation Supervisor") {
 			public void run() {
 				if (mSMPThread != null) {
-					mSMPStopDescriptorCalculation = true;
+					mSMPDescriptorCancellation.cancel();
 					try {
 						mSMPThread.join();
 						}
 					catch (InterruptedException ie) {}
 					}
 
+				final ComputeScheduler.CancellationToken cancellation = new ComputeScheduler.CancellationToken();
+				mSMPDescriptorCancellation = cancellation;
 				mSMPThread = Thread.currentThread();
-				mSMPStopDescriptorCalculation = false;
 
 				mSMPProcessWaiting = false;
 
-				int descriptorColumnCount = 0;
-				boolean containsFlexophore = false;
+				try {
+					calculateDescriptors(cancellation);
+					}
+				finally {
+					mSMPColumnSpec = null;
+					mSMPThread = null;	// last thing to do as indication that all threads are done
+					}
+				}
+			}.start();
+		}
 
-				synchronized(CompoundTableModel.this) {
-					for (int column=0; column<mColumnInfo.length; column++)
-						if (isDescriptorColumn(column)
-						 && mColumnInfo[column].isDescriptorIncomplete)
-							descriptorColumnCount++;
+	/**
+	 * Calculates all incomplete descriptors on the background pool of the ComputeScheduler.
+	 * @param cancellation token, which is cancelled by stopDescriptorCalculation() or by a new calculation
+	 */
+	private void calculateDescriptors(ComputeScheduler.CancellationToken cancellation) {
+		int descriptorColumnCount = 0;
+		boolean containsFlexophore = false;
+
+		synchronized(CompoundTableModel.this) {
+			for (int column=0; column<mColumnInfo.length; column++)
+				if (isDescriptorColumn(column)
+				 && mColumnInfo[column].isDescriptorIncomplete)
+					descriptorColumnCount++;
 	
-					if (descriptorColumnCount != 0) {
-						mSMPColumnSpec = new DescriptorColumnSpec[descriptorColumnCount];
-						descriptorColumnCount = 0;
-						for (int column=0; column<mColumnInfo.length; column++)
-							if (isDescriptorColumn(column)
-							 && mColumnInfo[column].isDescriptorIncomplete) {
-								mSMPColumnSpec[descriptorColumnCount++] = new DescriptorColumnSpec(column);
-								if (DescriptorConstants.DESCRIPTOR_Flexophore.shortName.equals(mColumnInfo[column].descriptorHandler.getInfo().shortName))
-									containsFlexophore = true;
-							}
-						}
+			if (descriptorColumnCount != 0) {
+				mSMPColumnSpec = new DescriptorColumnSpec[descriptorColumnCount];
+				descriptorColumnCount = 0;
+				for (int column=0; column<mColumnInfo.length; column++)
+					if (isDescriptorColumn(column)
+					 && mColumnInfo[column].isDescriptorIncomplete) {
+						mSMPColumnSpec[descriptorColumnCount++] = new DescriptorColumnSpec(column);
+						if (DescriptorConstants.DESCRIPTOR_Flexophore.shortName.equals(mColumnInfo[column].descriptorHandler.getInfo().shortName))
+							containsFlexophore = true;
 					}
+				}
+			}
 
-				if (containsFlexophore)
-					RigidFragmentCache.getDefaultInstance().loadDefaultCache();
-
-				if (descriptorColumnCount != 0) {
-					Arrays.sort(mSMPColumnSpec);	// sort descriptors by ascending calculation priority
-
-					int threadCount = Runtime.getRuntime().availableProcessors();
-					mSMPDescriptorThreads = new AtomicInteger(threadCount);
-					mSMPThreadIndex = new AtomicInteger(threadCount);
-					mSMPIndex = new AtomicInteger(mRecords*descriptorColumnCount);
-					mSMPRecord = mRecord;
-
-					final DescriptorHandler<Object,Object>[][] dh = new DescriptorHandler[threadCount][descriptorColumnCount];
-					for (int t=0; t<threadCount; t++)
-						for (int i=0; i<descriptorColumnCount; i++)
-							dh[t][i] = mColumnInfo[mSMPColumnSpec[i].descriptorColumn].descriptorHandler.getThreadSafeCopy();
-
-					final int _records = mRecords;
-					Thread[] thread = new Thread[threadCount];
-					for (int i=0; i<threadCount; i++) {
-						thread[i] = new Thread("Descriptor Calculator "+(i+1)) {
-							public void run() {
-								int threadIndex = mSMPThreadIndex.decrementAndGet();
-								StereoMolecule molecule = new StereoMolecule();    // this is the default
-								int index = mSMPIndex.decrementAndGet();
-								while (index>=0 && !mSMPStopDescriptorCalculation) {
-									int descriptorIndex = index / _records;
-									int recordIndex = index % _records;
-
-									DescriptorColumnSpec spec = mSMPColumnSpec[descriptorIndex];
-
-									if (recordIndex == _records - 1)
-										for (int i = 0; i<mProgressListener.size(); i++)
-											mProgressListener.get(i).startProgress("Calculating "
-													+ spec.descriptorHandler.getInfo().shortName + "...", 0, _records/256);
-
-									updateDescriptor(mSMPRecord[recordIndex], spec, dh[threadIndex][descriptorIndex], molecule);
-
-									if ((recordIndex & 255) == 0)
-										for (ProgressListener pl : mProgressListener)
-											pl.updateProgress((_records-recordIndex)/256);
-
-									index = mSMPIndex.decrementAndGet();
-									}
+		if (containsFlexophore)
+			RigidFragmentCache.getDefaultInstance().loadDefaultCache();
 
-								if (mSMPDescriptorThreads.decrementAndGet() == 0) {
-									synchronized(CompoundTableModel.this) {
-										for (ProgressListener pl:mProgressListener)
-											pl.stopProgress();
+		if (descriptorColumnCount != 0) {
+			Arrays.sort(mSMPColumnSpec);	// sort descriptors by ascending calculation priority
 
-										mSMPRecord = null;
-										}
-									}
-								}
-							};
-						thread[i].setPriority(Thread.MIN_PRIORITY);
-						thread[i].start();
+			int threadCount = ComputeScheduler.getInstance().getThreadCount(ComputeScheduler.PRIORITY_BACKGROUND);
+			mSMPDescriptorThreads = new AtomicInteger(threadCount);
+			mSMPThreadIndex = new AtomicInteger(threadCount);
+			mSMPIndex = new AtomicInteger(mRecords*descriptorColumnCount);
+			mSMPRecord = mRecord;
+
+			final DescriptorHandler<Object,Object>[][] dh = new DescriptorHandler[threadCount][descriptorColumnCount];
+			for (int t=0; t<threadCount; t++)
+				for (int i=0; i<descriptorColumnCount; i++)
+					dh[t][i] = mColumnInfo[mSMPColumnSpec[i].descriptorColumn].descriptorHandler.getThreadSafeCopy();
+
+			final int _records = mRecords;
+			final int chunkSize = ComputeScheduler.getChunkSize(_records, threadCount, cMaxDescriptorChunkSize);
+			ComputeScheduler.getInstance().runParallel(ComputeScheduler.PRIORITY_BACKGROUND, threadCount, () -> {
+				int threadIndex = mSMPThreadIndex.decrementAndGet();
+				StereoMolecule molecule = new StereoMolecule();    // this is the default
+				int chunkEnd = mSMPIndex.getAndAdd(-chunkSize);
+				while (chunkEnd>0 && !cancellation.isCancelled()) {
+					int chunkStart = Math.max(0, chunkEnd - chunkSize);
+					for (int index=chunkEnd-1; index>=chunkStart && !cancellation.isCancelled(); index--) {
+						int descriptorIndex = index / _records;
+						int recordIndex = index % _records;
+
+						DescriptorColumnSpec spec = mSMPColumnSpec[descriptorIndex];
+
+						if (recordIndex == _records - 1)
+							for (int i = 0; i<mProgressListener.size(); i++)
+								mProgressListener.get(i).startProgress("Calculating "
+										+ spec.descriptorHandler.getInfo().shortName + "...", 0, _records/256);
+
+						updateDescriptor(mSMPRecord[recordIndex], spec, dh[threadIndex][descriptorIndex], molecule);
+
+						if ((recordIndex & 255) == 0)
+							for (ProgressListener pl : mProgressListener)
+								pl.updateProgress((_records-recordIndex)/256);
 						}
 
-					for (int i=0; i<threadCount; i++)
-						try { thread[i].join(); } catch (InterruptedException ie) {}
-
-					for (DescriptorColumnSpec spec:mSMPColumnSpec) {
-						synchronized (CompoundTableModel.this) {
-							if (!mSMPStopDescriptorCalculation) {
-								String errorMsg = null;
-								if (spec.isOutdated)
-									setColumnProperty(spec.descriptorColumn, cColumnPropertyDescriptorVersion, spec.descriptorHandler.getVersion());
-
-								mColumnInfo[spec.descriptorColumn].isDescriptorIncomplete = false;
-								mColumnInfo[spec.descriptorColumn].isComplete = spec.isComplete;
-								mColumnInfo[spec.descriptorColumn].isCompleteChild = spec.isCompleteChild;
-
-								if (spec.errorCount != 0) {
-									errorMsg = ((errorMsg == null) ? "" : errorMsg + "/n")
-											+ "Descriptor '" + getColumnSpecialType(spec.descriptorColumn) + "' calculation failed in " + spec.errorCount + " cases.";
-									for (ProgressListener pl : mProgressListener)
-										pl.showErrorMessage(errorMsg);
-									}
-								}
+					chunkEnd = mSMPIndex.getAndAdd(-chunkSize);
+					}
+				}, cancellation);
+
+			synchronized(CompoundTableModel.this) {
+				for (ProgressListener pl:mProgressListener)
+					pl.stopProgress();
+
+				mSMPRecord = null;
+				}
 
-							if (!mSMPStopDescriptorCalculation)
-								if (spec.updateCount != 0)
-									fireEventsLater(new CompoundTableEvent(this, CompoundTableEvent.cChangeColumnData, spec.descriptorColumn, -1, -1), null);
+			for (DescriptorColumnSpec spec:mSMPColumnSpec) {
+				synchronized (CompoundTableModel.this) {
+					if (!cancellation.isCancelled()) {
+						String errorMsg = null;
+						if (spec.isOutdated)
+							setColumnProperty(spec.descriptorColumn, cColumnPropertyDescriptorVersion, spec.descriptorHandler.getVersion());
+
+						mColumnInfo[spec.descriptorColumn].isDescriptorIncomplete = false;
+						mColumnInfo[spec.descriptorColumn].isComplete = spec.isComplete;
+						mColumnInfo[spec.descriptorColumn].isCompleteChild = spec.isCompleteChild;
+
+						if (spec.errorCount != 0) {
+							errorMsg = ((errorMsg == null) ? "" : errorMsg + "/n")
+									+ "Descriptor '" + getColumnSpecialType(spec.descriptorColumn) + "' calculation failed in " + spec.errorCount + " cases.";
+							for (ProgressListener pl : mProgressListener)
+								pl.showErrorMessage(errorMsg);
 							}
 						}
 
-					mSMPColumnSpec = null;
-					mSMPThread = null;	// last thing to do as indication that all threads are done
+					if (!cancellation.isCancelled())
+						if (spec.updateCount != 0)
+							fireEventsLater(new CompoundTableEvent(this, CompoundTableEvent.cChangeColumnData, spec.descriptorColumn, -1, -1), null);
 					}
 				}
-			}.start();
+			}
 		}
 
 	private void updateDescriptor(CompoundRecord record, DescriptorColumnSpec spec,
@@ -5698,7 +6268,7 @@ public class CompoundTableModel extends AbstractTableModel
 			byte[] coords = null;
 			boolean needsCoords = false;
 			synchronized(CompoundTableModel.this) {
-				if (!mSMPStopDescriptorCalculation) {
+				if (!mSMPDescriptorCancellation.isCancelled()) {
 					if (!spec.isOutdated && record.getData(spec.descriptorColumn) != null) {
 						existingDescriptorIsValid = true;
 						}
@@ -5742,7 +6312,7 @@ public class CompoundTableModel extends AbstractTableModel
 			}
 
 		synchronized(CompoundTableModel.this) {
-			if (!mSMPStopDescriptorCalculation) {
+			if (!mSMPDescriptorCancellation.isCancelled()) {
 				if (existingDescriptorIsValid) {
 					spec.untouchedCount++;
 					}
@@ -5761,7 +6331,8 @@ public class CompoundTableModel extends AbstractTableModel
 		}
 
 	private synchronized void stopDescriptorCalculation() {
-		mSMPStopDescriptorCalculation = true;
+		if (mSMPDescriptorCancellation != null)
+			mSMPDescriptorCancellation.cancel();
 		}
 
 	private class DescriptorColumnSpec implements Comparable<DescriptorColumnSpec> {
@@ -5810,6 +6381,29 @@ public class CompoundTableModel extends AbstractTableModel
 			return name1.compareTo(name2);
 			}
 		}
+
+	/**
+	 * Bounds of the most recent setDoubleExclusion() call of a range filter together
+	 * with the sorted ID index, which was valid at that time.
+	 */
+	private static class RangeExclusion {
+		final int column;
+		final boolean inverse;
+		final int[] sortedID;
+		final CompoundRecord[] record;	// indexed by record ID
+		float low,high;
+
+		public RangeExclusion(int column, float low, float high, boolean inverse, int[] sortedID, CompoundRecord[] rowRecord, int rowCount) {
+			this.column = column;
+			this.low = low;
+			this.high = high;
+			this.inverse = inverse;
+			this.sortedID = sortedID;
+			record = new CompoundRecord[rowCount];
+			for (int row=0; row<rowCount; row++)
+				record[rowRecord[row].mOriginalIndex] = rowRecord[row];
+			}
+		}
 	}
 
 class CompoundTableColumnInfo {
@@ -5822,6 +6416,11 @@ class CompoundTableColumnInfo {
 	protected float				minValue,maxValue,dataMin,dataMax;
 	protected double			roundingValue;
 	protected CategoryList<?>	categoryList;
+	protected volatile CategoryIndex categoryIndex;	// cell category indexes matching categoryList
+	protected volatile TextTrigramIndex textIndex;	// built on demand for text search; reset when column data changes
+	protected Object			textIndexBuild;	// identifies running background build of textIndex; null if none
+	protected volatile FingerprintSimilarityIndex fingerprintIndex;	// built on demand for nearest neighbor searches; reset when column data changes
+	protected volatile CategoryAggregateIndex aggregateIndex;	// built on demand for xxxInCategory() functions; reset when column data changes
 	protected UniqueList<String> mCategoryCustomOrder;
 	protected String			name;
 	protected String			alias;		  // is treated as runtime property
@@ -5932,159 +6531,6 @@ class DescriptorCacheEntry {
 		}
 	}
 
-class DoubleComparator implements Comparator<CompoundRecord> {
-	private final int mColumn;
-	private final boolean mInverse;
-	private final boolean mSelectedFirst;
-
-	public DoubleComparator(int column, boolean inverse, boolean selectedFirst) {
-		mColumn = column;
-		mInverse = inverse;
-		mSelectedFirst = selectedFirst;
-		}
-
-	public int compare(CompoundRecord o1, CompoundRecord o2) {
-		if (mSelectedFirst && (o1.isSelected() != o2.isSelected()))
-			return o1.isSelected() ? -1 : 1;
-		float d1 = o1.mFloat[mColumn];
-		float d2 = o2.mFloat[mColumn];
-		if (Float.isNaN(d1))
-			return (Float.isNaN(d2)) ? 0 : 1;
-		if (Float.isNaN(d2))
-			return -1;
-		int comparison = Float.compare(d1, d2);
-		return (mInverse) ? -comparison : comparison;
-		}
-	}
-
-class StringComparator implements Comparator<CompoundRecord> {
-	private int mColumn;
-	private boolean mInverse,mSelectedFirst;
-
-	public StringComparator(int column, boolean inverse, boolean selectedFirst) {
-		mColumn = column;
-		mInverse = inverse;
-		mSelectedFirst = selectedFirst;
-		}
-
-	public int compare(CompoundRecord o1, CompoundRecord o2) {
-		if (mSelectedFirst && (o1.isSelected() != o2.isSelected()))
-			return o1.isSelected() ? -1 : 1;
-		byte[] s1 = (byte[])o1.getData(mColumn);
-		byte[] s2 = (byte[])o2.getData(mColumn);
-		if (s1 == null)
-			return (s2 == null) ? 0 : 1;
-		if (s2 == null)
-			return -1;
-		int comparison = compare(s1, s2);
-		return (mInverse) ? -comparison : comparison;
-		}
-
-	private int compare(byte[] s1, byte[] s2) {
-		for (int i=0; i<s1.length; i++) {
-			if (s2.length == i)
-				return 1;
-			if (s1[i] != s2[i])
-				return (s1[i] < s2[i]) ? -1 : 1;
-			}
-		return (s2.length > s1.length) ? -1 : 0;
-		}
-	}
-
-class ActNoComparator implements Comparator<CompoundRecord> {
-	private final int mColumn;
-	private final boolean mInverse,mSelectedFirst;
-
-	public ActNoComparator(int column, boolean inverse, boolean selectedFirst) {
-		mColumn = column;
-		mInverse = inverse;
-		mSelectedFirst = selectedFirst;
-		}
-
-	public int compare(CompoundRecord o1, CompoundRecord o2) {
-		if (mSelectedFirst && (o1.isSelected() != o2.isSelected()))
-			return o1.isSelected() ? -1 : 1;
-		byte[] s1 = (byte[])o1.getData(mColumn);
-		byte[] s2 = (byte[])o2.getData(mColumn);
-		if (s1 == null)
-			return (s2 == null) ? 0 : 1;
-		if (s2 == null)
-			return -1;
-		int comparison = compare(s1, s2);
-		return (mInverse) ? -comparison : comparison;
-		}
-
-	private int compare(byte[] s1, byte[] s2) {
-		// if we have IDOR and ACT formats, the IDOR is larger
-		if ((s1.length > 13 && s1[9] == '-') ^ (s2.length > 13 && s2[9] == '-'))
-			return (s2.length > 13 && s2[9] == '-') ? -1 : 1;
-
-		// if we have old and new ActNo formats, the new one is larger
-		if ((s1.length > 11 && s1[8] == '-') ^ (s2.length > 11 && s2[8] == '-'))
-			return (s2.length > 11 && s2[8] == '-') ? -1 : 1;
-
-		for (int i=0; i<s1.length; i++) {
-			if (s2.length == i)
-				return 1;
-			if (s1[i] != s2[i])
-				return (s1[i] < s2[i]) ? -1 : 1;
-			}
-		return (s2.length > s1.length) ? -1 : 0;
-		}
-	}
-
-class IDCodeComparator implements Comparator<CompoundRecord> {
-	private final int mColumn;
-	private final boolean mInverse,mSelectedFirst;
-	private final IDCodeParser mParser;
-
-	public IDCodeComparator(int column, boolean inverse, boolean selectedFirst) {
-		mColumn = column;
-		mInverse = inverse;
-		mSelectedFirst = selectedFirst;
-		mParser = new IDCodeParser(false);
-		}
-
-	public int compare(CompoundRecord o1, CompoundRecord o2) {
-		byte[] s1 = (byte[])o1.getData(mColumn);
-		byte[] s2 = (byte[])o2.getData(mColumn);
-		if (mSelectedFirst && (o1.isSelected() != o2.isSelected()))
-			return o1.isSelected() ? -1 : 1;
-		if (s1 == null)
-			return (s2 == null) ? 0 : 1;
-		if (s2 == null)
-			return -1;
-		int a1 = getAtomCount(s1);
-		int a2 = getAtomCount(s2);
-		int comparison = (a1 < a2) ? -1 : (a1 == a2) ? compare(s1, s2) : 1;
-		return (mInverse) ? -comparison : comparison;
-		}
-
-	private int getAtomCount(byte[] idcode) {
-		int atomCount = 0;
-		int index = 0;
-		while (index < idcode.length) {
-			atomCount += mParser.getAtomCount(idcode, index);
-			while (index<idcode.length && idcode[index] != '\n')
-				index++;
-			index++;
-			}
-
-			// put valid idcodes with 0 atoms at the end of the list
-		return (atomCount == 0) ? Integer.MAX_VALUE : atomCount;
-		}
-
-	private int compare(byte[] s1, byte[] s2) {
-		for (int i=0; i<s1.length; i++) {
-			if (s2.length == i)
-				return 1;
-			if (s1[i] != s2[i])
-				return (s1[i] < s2[i]) ? -1 : 1;
-			}
-		return (s2.length > s1.length) ? -1 : 0;
-		}
-	}
-
 class EntryAnalysis {
 	// The first modifier of any type is the default one if multiple modifiers
 	// of the same type are merged, e.g. for mean generation.
@@ -0,0 +1,224 @@
+/*
+ * Copyright 2017 Idorsia Pharmaceuticals Ltd., Hegenheimermattweg 91, CH-4123 Allschwil, Switzerland
+ *
+ * This file is part of DataWarrior.
+ *
+ * DataWarrior is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * DataWarrior is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License along with DataWarrior.
+ * If not, see http://www.gnu.org/licenses/.
+ *
+ * @author Thomas Sander
+ */
+
+package com.actelion.research.table.model;
+
+import java.util.ArrayList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Shared work-stealing thread pools for all multi-threaded calculations of the table model
+ * and its loader. Instead of spawning availableProcessors() new threads per call, callers
+ * submit one worker per thread to a pool of the desired priority and wait for completion.
+ * Interactive work (filters, similarity sliders) runs on a pool with normal thread priority.
+ * Background work (descriptor calculation, structure parsing) runs on a separate pool with
+ * minimum thread priority that leaves one core to interactive work. The maximum number of
+ * threads of both pools can be limited with the system property 'maxthreads' or with
+ * setMaxThreadCount().
+ * Workers may be cancelled cooperatively with a CancellationToken.
+ */
+public class ComputeScheduler {
+	public static final int PRIORITY_INTERACTIVE = 0;
+	public static final int PRIORITY_BACKGROUND = 1;
+
+	private static final String SYSTEM_PROPERTY_MAX_THREADS = "maxthreads";
+
+	private static ComputeScheduler sInstance;
+
+	private final ForkJoinPool[] mPool;
+	private int mMaxThreadCount;
+
+	public static synchronized ComputeScheduler getInstance() {
+		if (sInstance == null)
+			sInstance = new ComputeScheduler();
+		return sInstance;
+		}
+
+	private ComputeScheduler() {
+		mPool = new ForkJoinPool[2];
+		mMaxThreadCount = Runtime.getRuntime().availableProcessors();
+		String maxThreads = System.getProperty(SYSTEM_PROPERTY_MAX_THREADS);
+		if (maxThreads != null) {
+			try {
+				mMaxThreadCount = Math.max(1, Math.min(mMaxThreadCount, Integer.parseInt(maxThreads)));
+				}
+			catch (NumberFormatException nfe) {}
+			}
+		}
+
+	/**
+	 * Limits the number of threads used for calculations. Pools are re-created on next use,
+	 * while running workers complete on the old pools.
+	 * @param maxThreadCount 0 to use all available processors
+	 */
+	public synchronized void setMaxThreadCount(int maxThreadCount) {
+		int available = Runtime.getRuntime().availableProcessors();
+		maxThreadCount = (maxThreadCount <= 0) ? available : Math.min(available, maxThreadCount);
+		if (mMaxThreadCount != maxThreadCount) {
+			mMaxThreadCount = maxThreadCount;
+			for (int i=0; i<mPool.length; i++) {
+				if (mPool[i] != null) {
+					mPool[i].shutdown();
+					mPool[i] = null;
+					}
+				}
+			}
+		}
+
+	public synchronized int getMaxThreadCount() {
+		return mMaxThreadCount;
+		}
+
+	/**
+	 * @param priority PRIORITY_INTERACTIVE or PRIORITY_BACKGROUND
+	 * @return number of workers that can run concurrently with the given priority
+	 */
+	public synchronized int getThreadCount(int priority) {
+		return (priority == PRIORITY_BACKGROUND && mMaxThreadCount > 1) ? mMaxThreadCount-1 : mMaxThreadCount;
+		}
+
+	/**
+	 * Determines how many work items a worker should claim at once from a shared counter.
+	 * Claiming chunks instead of single items avoids contention on the counter and on
+	 * progress reporting, while still keeping about 16 chunks per thread for load balancing.
+	 * @param itemCount total number of work items
+	 * @param threadCount number of concurrent workers
+	 * @param maxChunkSize upper limit, which should be low for expensive work items
+	 * @return chunk size between 1 and maxChunkSize
+	 */
+	public static int getChunkSize(int itemCount, int threadCount, int maxChunkSize) {
+		return Math.max(1, Math.min(maxChunkSize, itemCount / (16 * Math.max(1, threadCount))));
+		}
+
+	/**
+	 * Runs workerCount instances of worker in the pool of the given priority and waits until
+	 * all of them are done. Typically, workers claim work items from a shared counter until no
+	 * work is left. If the calling thread belongs to the same pool, it helps executing workers
+	 * instead of blocking. Exceptions thrown by workers are re-thrown by this method.
+	 * @param priority PRIORITY_INTERACTIVE or PRIORITY_BACKGROUND
+	 * @param workerCount usually getThreadCount(priority)
+	 * @param worker is run workerCount times in parallel
+	 * @param token null or token, which causes not yet started workers to be skipped, if cancelled
+	 */
+	public void runParallel(int priority, int workerCount, Runnable worker, CancellationToken token) {
+		if (workerCount <= 1) {
+			if (token == null || !token.isCancelled())
+				worker.run();
+			return;
+			}
+
+		ArrayList<ForkJoinTask<?>> taskList = new ArrayList<>(workerCount);
+		for (int i=0; i<workerCount; i++) {
+			taskList.add(ForkJoinTask.adapt(() -> {
+				if (token == null || !token.isCancelled())
+					worker.run();
+				} ));
+			}
+
+		ForkJoinPool pool = getPool(priority);
+		if (ForkJoinTask.inForkJoinPool() && ForkJoinTask.getPool() == pool)
+			ForkJoinTask.invokeAll(taskList);
+		else
+			pool.invoke(ForkJoinTask.adapt(() -> ForkJoinTask.invokeAll(taskList)));
+		}
+
+	/**
+	 * Processes the items 0...itemCount-1 in the pool of the given priority and waits until all
+	 * items are done. Workers claim chunks of consecutive items from a shared counter.
+	 * @param priority PRIORITY_INTERACTIVE or PRIORITY_BACKGROUND
+	 * @param itemCount number of items to be processed
+	 * @param maxChunkSize upper limit of items per chunk, which should be low for expensive items
+	 * @param worker is called for every chunk, possibly from multiple threads concurrently
+	 */
+	public void runParallelChunks(int priority, int itemCount, int maxChunkSize, ChunkWorker worker) {
+		int threadCount = getThreadCount(priority);
+		int chunkSize = getChunkSize(itemCount, threadCount, maxChunkSize);
+		int workerCount = Math.min(threadCount, (itemCount + chunkSize - 1) / chunkSize);
+		AtomicInteger nextItem = new AtomicInteger();
+		runParallel(priority, workerCount, () -> {
+			for (int start=nextItem.getAndAdd(chunkSize); start<itemCount; start=nextItem.getAndAdd(chunkSize))
+				worker.process(start, Math.min(itemCount, start + chunkSize));
+			}, null);
+		}
+
+	/**
+	 * Submits a single task to the pool of the given priority without waiting for it.
+	 * @param priority PRIORITY_INTERACTIVE or PRIORITY_BACKGROUND
+	 * @param task
+	 * @return the task's ForkJoinTask, which may be used to wait for completion
+	 */
+	public ForkJoinTask<?> submit(int priority, Runnable task) {
+		return getPool(priority).submit(task);
+		}
+
+	/**
+	 * Submits a single task, which returns a result, to the pool of the given priority without waiting for it.
+	 * @param priority PRIORITY_INTERACTIVE or PRIORITY_BACKGROUND
+	 * @param task
+	 * @return the task's ForkJoinTask, which may be used to wait for the result
+	 */
+	public <T> ForkJoinTask<T> submit(int priority, Callable<T> task) {
+		return getPool(priority).submit(task);
+		}
+
+	private synchronized ForkJoinPool getPool(int priority) {
+		if (mPool[priority] == null) {
+			final String name = (priority == PRIORITY_BACKGROUND) ? "Background" : "Interactive";
+			final int threadPriority = (priority == PRIORITY_BACKGROUND) ? Thread.MIN_PRIORITY : Thread.NORM_PRIORITY;
+			final AtomicInteger threadNo = new AtomicInteger();
+			mPool[priority] = new ForkJoinPool(getThreadCount(priority), pool -> {
+				ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+				thread.setName(name+"-Compute-"+threadNo.incrementAndGet());
+				thread.setPriority(threadPriority);
+				return thread;
+				}, null, false);
+			}
+		return mPool[priority];
+		}
+
+	/**
+	 * Processes one chunk of items passed to runParallelChunks().
+	 */
+	public interface ChunkWorker {
+		/**
+		 * @param start first item of the chunk
+		 * @param end item after the last item of the chunk
+		 */
+		void process(int start, int end);
+		}
+
+	/**
+	 * Cooperative cancellation flag shared between the party that started a calculation
+	 * and its workers, which are expected to check isCancelled() regularly.
+	 */
+	public static class CancellationToken {
+		private volatile boolean mIsCancelled;
+
+		public void cancel() {
+			mIsCancelled = true;
+			}
+
+		public boolean isCancelled() {
+			return mIsCancelled;
+			}
+		}
+	}
@@ -0,0 +1,151 @@
+/*
+ * Copyright 2017 Idorsia Pharmaceuticals Ltd., Hegenheimermattweg 91, CH-4123 Allschwil, Switzerland
+ *
+ * This file is part of DataWarrior.
+ *
+ * DataWarrior is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * DataWarrior is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License along with DataWarrior.
+ * If not, see http://www.gnu.org/licenses/.
+ *
+ * @author Thomas Sander
+ */
+
+package com.actelion.research.table.model;
+
+import com.actelion.research.chem.descriptor.DescriptorHandler;
+import com.actelion.research.chem.descriptor.DescriptorHandlerLongFFP512;
+import com.actelion.research.chem.descriptor.DescriptorHandlerLongPFP512;
+
+/**
+ * Index of the binary fingerprints of a descriptor column, whose similarity is a monotonic
+ * function of the Tanimoto coefficient. Fingerprints are bucketed by their number of set bits.
+ * Since the Tanimoto coefficient of two fingerprints with b1 and b2 set bits cannot exceed
+ * min(b1,b2)/max(b1,b2), a nearest neighbor search visits buckets in the order of decreasing
+ * upper bound and stops as soon as no remaining bucket can contain a more similar fingerprint.
+ * Results are exactly the same as with comparing all fingerprints. The index is immutable
+ * and may be queried concurrently. It is obtained from CompoundTableModel.getFingerprintSimilarityIndex().
+ */
+public class FingerprintSimilarityIndex {
+	private final DescriptorHandler<Object,Object> mDescriptorHandler;
+	private final long[][] mFingerprint;	// sorted by bit count
+	private final int[] mID;				// record ID of fingerprint
+	private final int[] mBucketStart;		// [bit count], first fingerprint index with this bit count
+	private final int mRowCount;
+
+	/**
+	 * @param descriptorHandler
+	 * @return whether fingerprints of this descriptor type can be indexed
+	 */
+	protected static boolean isSupported(DescriptorHandler<?,?> descriptorHandler) {
+		return descriptorHandler instanceof DescriptorHandlerLongFFP512
+			|| descriptorHandler instanceof DescriptorHandlerLongPFP512;
+		}
+
+	/**
+	 * @param record all records of the table
+	 * @param column descriptor column containing long[] fingerprints
+	 * @param descriptorHandler column's descriptor handler used to calculate final similarity values
+	 */
+	protected FingerprintSimilarityIndex(CompoundRecord[] record, int rowCount, int column,
+										 DescriptorHandler<Object,Object> descriptorHandler) {
+		mDescriptorHandler = descriptorHandler;
+		mRowCount = rowCount;
+
+		int fingerprintCount = 0;
+		int maxBitCount = 0;
+		int[] bitCount = new int[rowCount];
+		for (int row=0; row<rowCount; row++) {
+			long[] fingerprint = (long[])record[row].getData(column);
+			if (fingerprint != null) {
+				bitCount[row] = getBitCount(fingerprint);
+				maxBitCount = Math.max(maxBitCount, bitCount[row]);
+				fingerprintCount++;
+				}
+			}
+
+		mBucketStart = new int[maxBitCount+2];
+		for (int row=0; row<rowCount; row++)
+			if (record[row].getData(column) != null)
+				mBucketStart[bitCount[row]+1]++;
+		for (int i=1; i<mBucketStart.length; i++)
+			mBucketStart[i] += mBucketStart[i-1];
+
+		mFingerprint = new long[fingerprintCount][];
+		mID = new int[fingerprintCount];
+		int[] index = mBucketStart.clone();
+		for (int row=0; row<rowCount; row++) {
+			long[] fingerprint = (long[])record[row].getData(column);
+			if (fingerprint != null) {
+				int i = index[bitCount[row]]++;
+				mFingerprint[i] = fingerprint;
+				mID[i] = record[row].mOriginalIndex;
+				}
+			}
+		}
+
+	protected boolean isValid(int rowCount) {
+		return mRowCount == rowCount;
+		}
+
+	/**
+	 * Finds the most similar indexed fingerprint to the query and returns its similarity
+	 * as calculated by the column's descriptor handler.
+	 * @param query long[] fingerprint of the same descriptor type
+	 * @param excludedID record ID, whose fingerprint shall not be considered, or -1
+	 * @return maximum similarity or NaN, if no other fingerprint exists
+	 */
+	public float getMaxSimilarity(long[] query, int excludedID) {
+		int queryBitCount = getBitCount(query);
+		int maxBitCount = mBucketStart.length - 2;
+
+		int best = -1;
+		double bestTanimoto = -1.0;
+		int lowBitCount = Math.min(queryBitCount, maxBitCount);
+		int highBitCount = lowBitCount + 1;
+		while (lowBitCount >= 0 || highBitCount <= maxBitCount) {
+			double lowBound = (lowBitCount < 0) ? -1.0 : getTanimotoBound(queryBitCount, lowBitCount);
+			double highBound = (highBitCount > maxBitCount) ? -1.0 : getTanimotoBound(queryBitCount, highBitCount);
+			int bitCount = (lowBound >= highBound) ? lowBitCount-- : highBitCount++;
+			if (Math.max(lowBound, highBound) <= bestTanimoto)
+				break;
+
+			for (int i=mBucketStart[bitCount]; i<mBucketStart[bitCount+1]; i++) {
+				if (mID[i] != excludedID) {
+					double tanimoto = getTanimoto(query, queryBitCount, mFingerprint[i], bitCount);
+					if (bestTanimoto < tanimoto) {
+						bestTanimoto = tanimoto;
+						best = i;
+						}
+					}
+				}
+			}
+
+		return (best == -1) ? Float.NaN : mDescriptorHandler.getSimilarity(query, mFingerprint[best]);
+		}
+
+	private static double getTanimotoBound(int bitCount1, int bitCount2) {
+		return (bitCount1 == bitCount2) ? 1.0 : (double)Math.min(bitCount1, bitCount2) / Math.max(bitCount1, bitCount2);
+		}
+
+	private static double getTanimoto(long[] f1, int bitCount1, long[] f2, int bitCount2) {
+		int sharedCount = 0;
+		int length = Math.min(f1.length, f2.length);
+		for (int i=0; i<length; i++)
+			sharedCount += Long.bitCount(f1[i] & f2[i]);
+		int unionCount = bitCount1 + bitCount2 - sharedCount;
+		return (unionCount == 0) ? 0.0 : (double)sharedCount / unionCount;
+		}
+
+	private static int getBitCount(long[] fingerprint) {
+		int bitCount = 0;
+		for (long l:fingerprint)
+			bitCount += Long.bitCount(l);
+		return bitCount;
+		}
+	}
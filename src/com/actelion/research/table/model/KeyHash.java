@@ -0,0 +1,83 @@
+/*
+ * Copyright 2017 Idorsia Pharmaceuticals Ltd., Hegenheimermattweg 91, CH-4123 Allschwil, Switzerland
+ *
+ * This file is part of DataWarrior.
+ *
+ * DataWarrior is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * DataWarrior is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License along with DataWarrior.
+ * If not, see http://www.gnu.org/licenses/.
+ *
+ * @author Thomas Sander
+ */
+
+package com.actelion.research.table.model;
+
+/**
+ * 64-bit FNV-1a hashing of cell content for hash tables, which group or join rows by key.
+ * A hash is started with start(), fed with add() and completed with finish(), which mixes
+ * all bits into the lower ones, because these are used as index into open-addressing tables.
+ */
+public class KeyHash {
+	private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+	private static final long FNV_PRIME = 0x100000001b3L;
+
+	private KeyHash() {}
+
+	/**
+	 * @return initial hash value
+	 */
+	public static long start() {
+		return FNV_OFFSET;
+		}
+
+	/**
+	 * @param h current hash value
+	 * @param value byte, char or separator value
+	 * @return updated hash value
+	 */
+	public static long add(long h, int value) {
+		return (h ^ value) * FNV_PRIME;
+		}
+
+	/**
+	 * @param h current hash value
+	 * @param bytes unsigned bytes to be hashed
+	 * @return updated hash value
+	 */
+	public static long add(long h, byte[] bytes) {
+		for (byte b:bytes)
+			h = (h ^ (b & 0xFF)) * FNV_PRIME;
+		return h;
+		}
+
+	/**
+	 * @param h current hash value
+	 * @param s chars to be hashed
+	 * @return updated hash value
+	 */
+	public static long add(long h, String s) {
+		for (int i=0; i<s.length(); i++)
+			h = (h ^ s.charAt(i)) * FNV_PRIME;
+		return h;
+		}
+
+	/**
+	 * Applies the murmur3 finalizer, because FNV leaves the lower bits poorly distributed.
+	 * @param h current hash value
+	 * @return final hash value
+	 */
+	public static long finish(long h) {
+		h ^= h >>> 33;
+		h *= 0xff51afd7ed558ccdL;
+		h ^= h >>> 33;
+		h *= 0xc4ceb9fe1a85ec53L;
+		h ^= h >>> 33;
+		return h;
+		}
+	}
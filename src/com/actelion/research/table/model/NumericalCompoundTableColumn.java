@@ -64,15 +64,14 @@ public class NumericalCompoundTableColumn implements INumericalDataColumn {
 
 	public static int[] compileCustomRows(int listIndex, CompoundTableModel tableModel) {
 		CompoundTableListHandler listHandler = tableModel.getListHandler();
-		long flag = listHandler.getListMask(listIndex);
 		int count = 0;
 		for (int row=0; row<tableModel.getTotalRowCount(); row++)
-			if ((tableModel.getTotalRecord(row).getFlags() & flag) != 0)
+			if (listHandler.isListMember(tableModel.getTotalRecord(row), listIndex))
 				count++;
 		int[] customRows = new int[count];
 		count = 0;
 		for (int row=0; row<tableModel.getTotalRowCount(); row++)
-			if ((tableModel.getTotalRecord(row).getFlags() & flag) != 0)
+			if (listHandler.isListMember(tableModel.getTotalRecord(row), listIndex))
 				customRows[count++] = row;
 
 		return customRows;
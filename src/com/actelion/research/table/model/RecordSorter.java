@@ -0,0 +1,222 @@
+/*
+ * Copyright 2017 Idorsia Pharmaceuticals Ltd., Hegenheimermattweg 91, CH-4123 Allschwil, Switzerland
+ *
+ * This file is part of DataWarrior.
+ *
+ * DataWarrior is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * DataWarrior is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License along with DataWarrior.
+ * If not, see http://www.gnu.org/licenses/.
+ *
+ * @author Thomas Sander
+ */
+
+package com.actelion.research.table.model;
+
+import com.actelion.research.chem.IDCodeParser;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Sorts records by one or more sort keys. Instead of comparing records with comparators,
+ * which access cell data or even parse idcodes on every comparison, every key is converted
+ * once into one int per record, whose natural order is the desired order of the key.
+ * Empty cells and NaN values always sort to the end. The records are then sorted by
+ * stable primitive sorts of the keys, starting with the least significant one.
+ */
+class RecordSorter {
+	private static final int EMPTY_KEY = Integer.MAX_VALUE;
+	private static final int ATOM_COUNT_CHUNK_SIZE = 1024;
+
+	private final CompoundRecord[] mRecord;
+	private final ArrayList<int[]> mKeyList;
+
+	protected RecordSorter(CompoundRecord[] record) {
+		mRecord = record;
+		mKeyList = new ArrayList<>();
+		}
+
+	/**
+	 * Adds a key, which moves selected records in front of unselected ones.
+	 */
+	protected void addSelectionKey() {
+		int[] key = new int[mRecord.length];
+		for (int i=0; i<mRecord.length; i++)
+			key[i] = mRecord[i].isSelected() ? 0 : 1;
+		mKeyList.add(key);
+		}
+
+	/**
+	 * Adds a key, which sorts by the numerical value of the column, e.g. values, category indexes or similarities.
+	 * @param column
+	 * @param descending
+	 */
+	protected void addFloatKey(int column, boolean descending) {
+		int[] key = new int[mRecord.length];
+		for (int i=0; i<mRecord.length; i++) {
+			float value = mRecord[i].getDouble(column);
+			if (Float.isNaN(value)) {
+				key[i] = EMPTY_KEY;
+				}
+			else {
+				int bits = Float.floatToIntBits(value);
+				bits ^= (bits >> 31) & 0x7FFFFFFF;	// int order equals float order
+				key[i] = descending ? ~bits : bits;
+				}
+			}
+		mKeyList.add(key);
+		}
+
+	/**
+	 * Adds a key, which sorts by the byte[] content of the column.
+	 * @param column
+	 * @param descending
+	 * @param comparator defines the order of the cell content
+	 */
+	protected void addBytesKey(int column, boolean descending, Comparator<byte[]> comparator) {
+		byte[][] value = new byte[mRecord.length][];
+		for (int i=0; i<mRecord.length; i++)
+			value[i] = (byte[])mRecord[i].getData(column);
+		mKeyList.add(createRankKey(value, descending, (i1, i2) -> comparator.compare(value[i1], value[i2])));
+		}
+
+	/**
+	 * Adds a key, which sorts idcodes by their atom count first and then alphabetically.
+	 * Atom counts are determined once per record in parallel.
+	 * @param column
+	 * @param descending
+	 */
+	protected void addIDCodeKey(int column, boolean descending) {
+		byte[][] value = new byte[mRecord.length][];
+		for (int i=0; i<mRecord.length; i++)
+			value[i] = (byte[])mRecord[i].getData(column);
+
+		int[] atomCount = new int[mRecord.length];
+		AtomicInteger nextIndex = new AtomicInteger();
+		ComputeScheduler scheduler = ComputeScheduler.getInstance();
+		int threadCount = Math.min(scheduler.getThreadCount(ComputeScheduler.PRIORITY_INTERACTIVE),
+								   1 + mRecord.length / ATOM_COUNT_CHUNK_SIZE);
+		scheduler.runParallel(ComputeScheduler.PRIORITY_INTERACTIVE, threadCount, () -> {
+			IDCodeParser parser = new IDCodeParser(false);
+			for (int start=nextIndex.getAndAdd(ATOM_COUNT_CHUNK_SIZE); start<value.length; start=nextIndex.getAndAdd(ATOM_COUNT_CHUNK_SIZE)) {
+				int end = Math.min(value.length, start+ATOM_COUNT_CHUNK_SIZE);
+				for (int i=start; i<end; i++)
+					if (value[i] != null)
+						atomCount[i] = getAtomCount(parser, value[i]);
+				}
+			}, null);
+
+		mKeyList.add(createRankKey(value, descending, (i1, i2) -> {
+			int a1 = atomCount[i1];
+			int a2 = atomCount[i2];
+			return (a1 < a2) ? -1 : (a1 == a2) ? compareBytes(value[i1], value[i2]) : 1;
+			} ));
+		}
+
+	/**
+	 * Sorts the records in place by all keys added so far. The first added key is the most
+	 * significant one. Records with identical keys keep their relative order.
+	 */
+	protected void sort() {
+		int count = mRecord.length;
+		int[] order = new int[count];	// order[position] = original index
+		for (int i=0; i<count; i++)
+			order[i] = i;
+
+		long[] entry = new long[count];
+		for (int k=mKeyList.size()-1; k>=0; k--) {
+			int[] key = mKeyList.get(k);
+			// the current position as low int makes the sort stable
+			for (int i=0; i<count; i++)
+				entry[i] = ((long)key[order[i]] << 32) | i;
+			Arrays.parallelSort(entry);
+			int[] newOrder = new int[count];
+			for (int i=0; i<count; i++)
+				newOrder[i] = order[(int)entry[i]];
+			order = newOrder;
+			}
+
+		CompoundRecord[] original = mRecord.clone();
+		for (int i=0; i<count; i++)
+			mRecord[i] = original[order[i]];
+		}
+
+	/**
+	 * Creates dense ranks of all non-null values. Null values get EMPTY_KEY.
+	 * @param value
+	 * @param descending
+	 * @param comparator compares indexes of two non-null values
+	 * @return key for every record
+	 */
+	private int[] createRankKey(byte[][] value, boolean descending, Comparator<Integer> comparator) {
+		int nonNullCount = 0;
+		for (byte[] v:value)
+			if (v != null)
+				nonNullCount++;
+
+		Integer[] index = new Integer[nonNullCount];
+		nonNullCount = 0;
+		for (int i=0; i<value.length; i++)
+			if (value[i] != null)
+				index[nonNullCount++] = i;
+		Arrays.parallelSort(index, comparator);
+
+		int[] key = new int[value.length];
+		Arrays.fill(key, EMPTY_KEY);
+		int rank = 0;
+		for (int i=0; i<index.length; i++) {
+			if (i != 0 && comparator.compare(index[i-1], index[i]) != 0)
+				rank++;
+			key[index[i]] = rank;
+			}
+		if (descending)
+			for (int i=0; i<index.length; i++)
+				key[index[i]] = rank - key[index[i]];
+
+		return key;
+		}
+
+	private static int getAtomCount(IDCodeParser parser, byte[] idcode) {
+		int atomCount = 0;
+		int index = 0;
+		while (index < idcode.length) {
+			atomCount += parser.getAtomCount(idcode, index);
+			while (index<idcode.length && idcode[index] != '\n')
+				index++;
+			index++;
+			}
+
+			// put valid idcodes with 0 atoms at the end of the list
+		return (atomCount == 0) ? Integer.MAX_VALUE : atomCount;
+		}
+
+	protected static int compareBytes(byte[] s1, byte[] s2) {
+		for (int i=0; i<s1.length; i++) {
+			if (s2.length == i)
+				return 1;
+			if (s1[i] != s2[i])
+				return (s1[i] < s2[i]) ? -1 : 1;
+			}
+		return (s2.length > s1.length) ? -1 : 0;
+		}
+
+	protected static int compareActNo(byte[] s1, byte[] s2) {
+		// if we have IDOR and ACT formats, the IDOR is larger
+		if ((s1.length > 13 && s1[9] == '-') ^ (s2.length > 13 && s2[9] == '-'))
+			return (s2.length > 13 && s2[9] == '-') ? -1 : 1;
+
+		// if we have old and new ActNo formats, the new one is larger
+		if ((s1.length > 11 && s1[8] == '-') ^ (s2.length > 11 && s2[8] == '-'))
+			return (s2.length > 11 && s2[8] == '-') ? -1 : 1;
+
+		return compareBytes(s1, s2);
+		}
+	}
@@ -0,0 +1,283 @@
+/*
+ * Copyright 2017 Idorsia Pharmaceuticals Ltd., Hegenheimermattweg 91, CH-4123 Allschwil, Switzerland
+ *
+ * This file is part of DataWarrior.
+ *
+ * DataWarrior is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * DataWarrior is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License along with DataWarrior.
+ * If not, see http://www.gnu.org/licenses/.
+ *
+ * @author Thomas Sander
+ */
+
+package com.actelion.research.table.model;
+
+import com.actelion.research.calc.ProgressController;
+import com.actelion.research.chem.descriptor.DescriptorHandler;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Sparse graph of all pairs of rows, whose descriptor similarity is at least a given minimum.
+ * Pairs are found by comparing tiles of BLOCK_SIZE x BLOCK_SIZE rows, where every tile row is
+ * processed by one worker of the ComputeScheduler's background pool into its own primitive pair
+ * buffer. Buffers are concatenated in tile order, which makes the pair order independent of the
+ * thread count.
+ * Fingerprints of descriptor types supported by the FingerprintSimilarityIndex are packed into
+ * one array sorted by bit count. Since their similarity is a monotonic function of the Tanimoto
+ * coefficient, whose upper bound is given by the bit counts of two fingerprints, most pairs are
+ * skipped without being compared. Pairs are the same as with comparing all rows with
+ * CompoundTableModel.getDescriptorSimilarity().
+ */
+public class SimilarityGraph {
+	private static final int BLOCK_SIZE = 256;	// rows per tile edge
+
+	private int mPairCount;
+	private int[] mRow1,mRow2;		// total row indexes with row1 < row2
+	private float[] mSimilarity;
+
+	/**
+	 * Finds all similar pairs. If the progress controller's threadMustDie() becomes true,
+	 * then the search is stopped and the graph contains only part of the pairs.
+	 * @param tableModel
+	 * @param descriptorColumn
+	 * @param minSimilarity minimum similarity of pairs to be included
+	 * @param pc null or progress controller to report progress and to be asked for cancellation
+	 */
+	@SuppressWarnings("unchecked")
+	public SimilarityGraph(CompoundTableModel tableModel, int descriptorColumn, float minSimilarity, ProgressController pc) {
+		DescriptorHandler<Object,Object> dh = tableModel.getDescriptorHandler(descriptorColumn);
+		int rowCount = tableModel.getTotalRowCount();
+		int[] row = new int[rowCount];
+		int count = 0;
+		for (int r=0; r<rowCount; r++)
+			if (tableModel.getTotalRecord(r).getData(descriptorColumn) != null)
+				row[count++] = r;
+
+		PairBuffer[] buffer = FingerprintSimilarityIndex.isSupported(dh)
+				&& count != 0 && tableModel.getTotalRecord(row[0]).getData(descriptorColumn) instanceof long[] ?
+				  findFingerprintPairs(tableModel, descriptorColumn, dh, Arrays.copyOf(row, count), minSimilarity, pc)
+				: findPairs(tableModel, descriptorColumn, dh, Arrays.copyOf(row, count), minSimilarity, pc);
+
+		for (PairBuffer b:buffer)
+			mPairCount += b.count;
+		mRow1 = new int[mPairCount];
+		mRow2 = new int[mPairCount];
+		mSimilarity = new float[mPairCount];
+		int offset = 0;
+		for (PairBuffer b:buffer) {
+			System.arraycopy(b.row1, 0, mRow1, offset, b.count);
+			System.arraycopy(b.row2, 0, mRow2, offset, b.count);
+			System.arraycopy(b.similarity, 0, mSimilarity, offset, b.count);
+			offset += b.count;
+			}
+		}
+
+	public int getPairCount() {
+		return mPairCount;
+		}
+
+	/**
+	 * @param pair
+	 * @return the pair's lower total row index
+	 */
+	public int getRow1(int pair) {
+		return mRow1[pair];
+		}
+
+	/**
+	 * @param pair
+	 * @return the pair's higher total row index
+	 */
+	public int getRow2(int pair) {
+		return mRow2[pair];
+		}
+
+	public float getSimilarity(int pair) {
+		return mSimilarity[pair];
+		}
+
+	private PairBuffer[] findPairs(CompoundTableModel tableModel, int column, DescriptorHandler<Object,Object> dh,
+								   int[] row, float minSimilarity, ProgressController pc) {
+		int count = row.length;
+		Object[] descriptor = new Object[count];
+		for (int i=0; i<count; i++)
+			descriptor[i] = tableModel.getTotalRecord(row[i]).getData(column);
+
+		int blockCount = (count + BLOCK_SIZE - 1) / BLOCK_SIZE;
+		PairBuffer[] buffer = new PairBuffer[blockCount];
+		AtomicInteger nextBlock = new AtomicInteger();
+		if (pc != null)
+			pc.startProgress("Finding similar pairs...", 0, blockCount);
+
+		ComputeScheduler scheduler = ComputeScheduler.getInstance();
+		scheduler.runParallel(ComputeScheduler.PRIORITY_BACKGROUND, scheduler.getThreadCount(ComputeScheduler.PRIORITY_BACKGROUND), () -> {
+			// tiles of low blocks are more numerous; therefore, blocks are claimed in ascending order
+			for (int block=nextBlock.getAndIncrement(); block<blockCount; block=nextBlock.getAndIncrement()) {
+				buffer[block] = new PairBuffer();
+				int start1 = block * BLOCK_SIZE;
+				int end1 = Math.min(count, start1 + BLOCK_SIZE);
+				for (int start2=start1; start2<count && (pc == null || !pc.threadMustDie()); start2+=BLOCK_SIZE) {
+					int end2 = Math.min(count, start2 + BLOCK_SIZE);
+					for (int i=start1; i<end1; i++) {
+						for (int j=Math.max(i+1, start2); j<end2; j++) {
+							float similarity = dh.getSimilarity(descriptor[i], descriptor[j]);
+							if (similarity >= minSimilarity)
+								buffer[block].add(row[i], row[j], similarity);
+							}
+						}
+					}
+				if (pc != null)
+					pc.updateProgress(-1);	// negative values are increments
+				}
+			}, null);
+
+		return buffer;
+		}
+
+	private PairBuffer[] findFingerprintPairs(CompoundTableModel tableModel, int column, DescriptorHandler<Object,Object> dh,
+											  int[] row, float minSimilarity, ProgressController pc) {
+		int count = row.length;
+		int length = ((long[])tableModel.getTotalRecord(row[0]).getData(column)).length;
+
+		// sort rows by bit count and pack fingerprints in that order
+		long[] key = new long[count];	// bit count in high int, row in low int
+		for (int i=0; i<count; i++)
+			key[i] = ((long)getBitCount((long[])tableModel.getTotalRecord(row[i]).getData(column)) << 32) | row[i];
+		Arrays.parallelSort(key);
+
+		int[] sortedRow = new int[count];
+		int[] bitCount = new int[count];
+		long[][] fingerprint = new long[count][];
+		long[] packed = new long[count * length];
+		for (int i=0; i<count; i++) {
+			sortedRow[i] = (int)key[i];
+			bitCount[i] = (int)(key[i] >>> 32);
+			fingerprint[i] = (long[])tableModel.getTotalRecord(sortedRow[i]).getData(column);
+			System.arraycopy(fingerprint[i], 0, packed, i * length, Math.min(length, fingerprint[i].length));
+			}
+
+		// pairs with a Tanimoto coefficient of at most maxSkipped/bitLength cannot reach minSimilarity
+		int bitLength = 64 * length;
+		int maxSkipped = getMaxSkippedTanimoto(dh, length, minSimilarity);
+
+		int blockCount = (count + BLOCK_SIZE - 1) / BLOCK_SIZE;
+		PairBuffer[] buffer = new PairBuffer[blockCount];
+		AtomicInteger nextBlock = new AtomicInteger();
+		if (pc != null)
+			pc.startProgress("Finding similar pairs...", 0, blockCount);
+
+		ComputeScheduler scheduler = ComputeScheduler.getInstance();
+		scheduler.runParallel(ComputeScheduler.PRIORITY_BACKGROUND, scheduler.getThreadCount(ComputeScheduler.PRIORITY_BACKGROUND), () -> {
+			// tiles of low blocks are more numerous; therefore, blocks are claimed in ascending order
+			for (int block=nextBlock.getAndIncrement(); block<blockCount; block=nextBlock.getAndIncrement()) {
+				buffer[block] = new PairBuffer();
+				int start1 = block * BLOCK_SIZE;
+				int end1 = Math.min(count, start1 + BLOCK_SIZE);
+				for (int start2=start1; start2<count && (pc == null || !pc.threadMustDie()); start2+=BLOCK_SIZE) {
+					// bit counts increase with the index; no later tile can contain a similar pair
+					if (start2 != start1 && isSkipped(bitCount[end1-1], bitCount[start2], maxSkipped, bitLength))
+						break;
+
+					int end2 = Math.min(count, start2 + BLOCK_SIZE);
+					for (int i=start1; i<end1; i++) {
+						int offset1 = i * length;
+						for (int j=Math.max(i+1, start2); j<end2; j++) {
+							if (isSkipped(bitCount[i], bitCount[j], maxSkipped, bitLength))
+								break;
+
+							int offset2 = j * length;
+							int sharedCount = 0;
+							for (int k=0; k<length; k++)
+								sharedCount += Long.bitCount(packed[offset1+k] & packed[offset2+k]);
+							int unionCount = bitCount[i] + bitCount[j] - sharedCount;
+							if (unionCount == 0 || (long)sharedCount * bitLength > (long)maxSkipped * unionCount) {
+								float similarity = dh.getSimilarity(fingerprint[i], fingerprint[j]);
+								if (similarity >= minSimilarity)
+									buffer[block].add(Math.min(sortedRow[i], sortedRow[j]), Math.max(sortedRow[i], sortedRow[j]), similarity);
+								}
+							}
+						}
+					}
+				if (pc != null)
+					pc.updateProgress(-1);	// negative values are increments
+				}
+			}, null);
+
+		return buffer;
+		}
+
+	/**
+	 * @return whether the Tanimoto upper bound min(b1,b2)/max(b1,b2) is at most maxSkipped/bitLength
+	 */
+	private static boolean isSkipped(int bitCount1, int bitCount2, int maxSkipped, int bitLength) {
+		if (bitCount2 == 0 && bitCount1 == 0)	// the similarity of two empty fingerprints is up to the descriptor handler
+			return false;
+		return (long)Math.min(bitCount1, bitCount2) * bitLength <= (long)maxSkipped * Math.max(bitCount1, bitCount2);
+		}
+
+	/**
+	 * Determines by binary search on synthetic fingerprints with a known Tanimoto coefficient
+	 * the highest k, for which a Tanimoto coefficient of k/bitLength still results in a
+	 * similarity below minSimilarity.
+	 * @return k or -1, if even a Tanimoto coefficient of 0 reaches minSimilarity
+	 */
+	private static int getMaxSkippedTanimoto(DescriptorHandler<Object,Object> dh, int length, float minSimilarity) {
+		int bitLength = 64 * length;
+		long[] full = new long[length];
+		Arrays.fill(full, -1L);
+
+		int low = -1;			// highest k known to be below minSimilarity
+		int high = bitLength;	// lowest k known to reach minSimilarity
+		if (dh.getSimilarity(createFingerprint(length, bitLength), full) < minSimilarity)
+			return bitLength;
+		while (high - low > 1) {
+			int k = (low + high) / 2;
+			if (dh.getSimilarity(createFingerprint(length, k), full) < minSimilarity)
+				low = k;
+			else
+				high = k;
+			}
+		return low;
+		}
+
+	private static long[] createFingerprint(int length, int bitCount) {
+		long[] fingerprint = new long[length];
+		for (int i=0; i<bitCount; i++)
+			fingerprint[i >> 6] |= 1L << (i & 63);
+		return fingerprint;
+		}
+
+	private static int getBitCount(long[] fingerprint) {
+		int bitCount = 0;
+		for (long l:fingerprint)
+			bitCount += Long.bitCount(l);
+		return bitCount;
+		}
+
+	private static class PairBuffer {
+		private int count;
+		private int[] row1 = new int[16];
+		private int[] row2 = new int[16];
+		private float[] similarity = new float[16];
+
+		private void add(int r1, int r2, float s) {
+			if (count == row1.length) {
+				row1 = Arrays.copyOf(row1, 2 * count);
+				row2 = Arrays.copyOf(row2, 2 * count);
+				similarity = Arrays.copyOf(similarity, 2 * count);
+				}
+			row1[count] = r1;
+			row2[count] = r2;
+			similarity[count] = s;
+			count++;
+			}
+		}
+	}
@@ -0,0 +1,154 @@
+/*
+ * Copyright 2017 Idorsia Pharmaceuticals Ltd., Hegenheimermattweg 91, CH-4123 Allschwil, Switzerland
+ *
+ * This file is part of DataWarrior.
+ *
+ * DataWarrior is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * DataWarrior is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License along with DataWarrior.
+ * If not, see http://www.gnu.org/licenses/.
+ *
+ * @author Thomas Sander
+ */
+
+package com.actelion.research.table.model;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Least-recently-used cache of similarity lists of all rows against a reference molecule or reaction.
+ * Lists are indexed by record ID and, thus, stay valid when rows are sorted. They are keyed by
+ * descriptor column and reference, which is either the idcode of the reference molecule
+ * or the reference descriptor itself, if it is a long[] or int[]. The cache is limited by the
+ * total number of bytes of all cached lists, which is a fraction of the maximum heap size.
+ * If the limit is exceeded, least recently used lists are evicted.
+ */
+class SimilarityListCache {
+	private static final int HEAP_FRACTION = 32;	// use at most 1/32 of the maximum heap
+
+	private final LinkedHashMap<Key,float[][]> mMap;
+	private final long mMaxBytes;
+	private long mBytes;
+
+	protected SimilarityListCache() {
+		mMap = new LinkedHashMap<>(16, 0.75f, true);
+		mMaxBytes = Runtime.getRuntime().maxMemory() / HEAP_FRACTION;
+		}
+
+	/**
+	 * @param reference idcode, long[] or int[] descriptor; other types are not cached
+	 * @return whether lists for this reference can be cached
+	 */
+	protected static boolean isCacheable(Object reference) {
+		return reference instanceof String || reference instanceof long[] || reference instanceof int[];
+		}
+
+	/**
+	 * @param descriptorColumn
+	 * @param reference idcode, long[] or int[] descriptor
+	 * @param rowCount current row count; lists of a different length are not returned
+	 * @return cached similarity list(s) or null; reactions have two lists (reaction center, periphery)
+	 */
+	protected synchronized float[][] get(int descriptorColumn, Object reference, int rowCount) {
+		if (!isCacheable(reference))
+			return null;
+		float[][] list = mMap.get(new Key(descriptorColumn, reference));
+		return (list == null || list[0].length != rowCount) ? null : list;
+		}
+
+	/**
+	 * Adds one or two similarity lists to the cache and evicts least recently used lists,
+	 * if the cache size limit is exceeded.
+	 * @param descriptorColumn
+	 * @param reference idcode, long[] or int[] descriptor
+	 * @param list similarity lists, which must not be modified afterwards
+	 */
+	protected synchronized void put(int descriptorColumn, Object reference, float[][] list) {
+		long bytes = getBytes(list);
+		if (!isCacheable(reference) || bytes > mMaxBytes)
+			return;
+		if (reference instanceof long[])
+			reference = ((long[])reference).clone();
+		else if (reference instanceof int[])
+			reference = ((int[])reference).clone();
+		float[][] oldList = mMap.put(new Key(descriptorColumn, reference), list);
+		if (oldList != null)
+			mBytes -= getBytes(oldList);
+		mBytes += bytes;
+
+		Iterator<float[][]> iterator = mMap.values().iterator();
+		while (mBytes > mMaxBytes && iterator.hasNext()) {
+			mBytes -= getBytes(iterator.next());
+			iterator.remove();
+			}
+		}
+
+	/**
+	 * Removes all lists, which were calculated from the given descriptor column.
+	 * @param descriptorColumn
+	 */
+	protected synchronized void remove(int descriptorColumn) {
+		Iterator<Map.Entry<Key,float[][]>> iterator = mMap.entrySet().iterator();
+		while (iterator.hasNext()) {
+			Map.Entry<Key,float[][]> entry = iterator.next();
+			if (entry.getKey().mColumn == descriptorColumn) {
+				mBytes -= getBytes(entry.getValue());
+				iterator.remove();
+				}
+			}
+		}
+
+	protected synchronized void clear() {
+		mMap.clear();
+		mBytes = 0;
+		}
+
+	private static long getBytes(float[][] list) {
+		long bytes = 0;
+		for (float[] l:list)
+			bytes += 4L * l.length;
+		return bytes;
+		}
+
+	private static class Key {
+		private final int mColumn;
+		private final Object mReference;
+		private final int mHashCode;
+
+		public Key(int column, Object reference) {
+			mColumn = column;
+			mReference = reference;
+			int hash = (reference instanceof long[]) ? Arrays.hashCode((long[])reference)
+					 : (reference instanceof int[]) ? Arrays.hashCode((int[])reference)
+					 : reference.hashCode();
+			mHashCode = 31 * hash + column;
+			}
+
+		@Override
+		public int hashCode() {
+			return mHashCode;
+			}
+
+		@Override
+		public boolean equals(Object o) {
+			if (!(o instanceof Key))
+				return false;
+			Key key = (Key)o;
+			if (key.mColumn != mColumn || key.mHashCode != mHashCode)
+				return false;
+			if (mReference instanceof long[])
+				return key.mReference instanceof long[] && Arrays.equals((long[])mReference, (long[])key.mReference);
+			if (mReference instanceof int[])
+				return key.mReference instanceof int[] && Arrays.equals((int[])mReference, (int[])key.mReference);
+			return mReference.equals(key.mReference);
+			}
+		}
+	}
@@ -0,0 +1,266 @@
+/*
+ * Copyright 2017 Idorsia Pharmaceuticals Ltd., Hegenheimermattweg 91, CH-4123 Allschwil, Switzerland
+ *
+ * This file is part of DataWarrior.
+ *
+ * DataWarrior is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * DataWarrior is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License along with DataWarrior.
+ * If not, see http://www.gnu.org/licenses/.
+ *
+ * @author Thomas Sander
+ */
+
+package com.actelion.research.table.model;
+
+import com.actelion.research.chem.IDCodeParser;
+import com.actelion.research.chem.StereoMolecule;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Least-recently-used cache of molecules parsed by CompoundTableModel.getChemicalStructure()
+ * for repeatedly painting the same structures in tables, grids and marker labels.
+ * Molecules are keyed by record and column and are cached without atom colors, because these
+ * may depend on filters or the current row. Cached molecules are never handed out, but are
+ * copied into the caller's molecule, because depictors change coordinates, and then colorized.
+ * Entries are removed when a CompoundTableEvent indicates that the underlying data changed.
+ * Structures of rows, which are about to become visible, may be prefetched by a background
+ * thread, where every new prefetch request supersedes the previous one.
+ */
+class StructureCache {
+	private static final int MAX_ENTRIES = 4096;
+	private static final int MAX_PREFETCH_ATOMS_WITHOUT_COORDS = 255;	// larger ones are not painted without 2D-coords
+
+	private final CompoundTableModel mTableModel;
+	private final LinkedHashMap<Key,Entry> mMap;
+	private int mGeneration;	// incremented on every removal to not cache molecules parsed from outdated data
+	private volatile PrefetchRequest mPrefetchRequest;
+	private Thread mPrefetchThread;
+
+	protected StructureCache(CompoundTableModel tableModel) {
+		mTableModel = tableModel;
+		mMap = new LinkedHashMap<Key,Entry>(16, 0.75f, true) {
+			private static final long serialVersionUID = 20261018L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Key,Entry> eldest) {
+				return size() > MAX_ENTRIES;
+				}
+			};
+		}
+
+	/**
+	 * Same as CompoundTableModel.getChemicalStructure(), but parses the structure only if it is
+	 * not cached yet.
+	 * @param record
+	 * @param column idcode column or 3D-coords column
+	 * @param atomColorMode one of ATOM_COLOR_MODE_...
+	 * @param mol null or a StereoMolecule to be filled
+	 * @return null, if record doesn't contain molecule information
+	 */
+	protected StereoMolecule getChemicalStructure(CompoundRecord record, int column, int atomColorMode, StereoMolecule mol) {
+		if (record == null || column == -1)
+			return null;
+
+		Entry entry = getOrParse(record, column);
+		if (entry == null)
+			return null;
+
+		if (mol == null)
+			mol = new StereoMolecule(entry.mol);
+		else
+			entry.mol.copyMolecule(mol);
+
+		if (entry.isColorizable && atomColorMode != CompoundTableModel.ATOM_COLOR_MODE_NONE)
+			mTableModel.colorizeStructureAtoms(record, column, atomColorMode, mol);
+
+		return mol;
+		}
+
+	/**
+	 * Starts parsing the given records' structures in a background thread, unless they are cached already.
+	 * Any still running prefetch request is abandoned.
+	 * @param record records in the order they are expected to be painted
+	 * @param column idcode column
+	 */
+	protected synchronized void prefetch(CompoundRecord[] record, int column) {
+		mPrefetchRequest = new PrefetchRequest(record, column);
+		if (mPrefetchThread == null) {
+			mPrefetchThread = new Thread(this::prefetchStructures, "Structure Prefetch");
+			mPrefetchThread.setDaemon(true);
+			mPrefetchThread.setPriority(Thread.MIN_PRIORITY);
+			mPrefetchThread.start();
+			}
+		}
+
+	/**
+	 * Removes all molecules, which may have been affected by the change described by the event.
+	 * @param e
+	 */
+	protected void compoundTableChanged(CompoundTableEvent e) {
+		switch (e.getType()) {
+		case CompoundTableEvent.cChangeColumnData:
+			if (e.getColumn() >= 0 && e.getColumn() < mTableModel.getTotalColumnCount())
+				remove(e.getColumn());
+			else
+				clear();
+			break;
+		case CompoundTableEvent.cNewTable:
+		case CompoundTableEvent.cDeleteRows:
+		case CompoundTableEvent.cAddColumns:	// may add 2D-coords or atom colors to existing structures
+		case CompoundTableEvent.cRemoveColumns:
+		case CompoundTableEvent.cChangeColumnName:
+		case CompoundTableEvent.cChangeColumnReference:
+			clear();
+			break;
+			}
+		}
+
+	protected synchronized void clear() {
+		mMap.clear();
+		mGeneration++;
+		}
+
+	/**
+	 * Removes all molecules, which depend on the given column, i.e. molecules of the column itself,
+	 * of its parent column or of structure columns using it as identifier column.
+	 * @param changedColumn
+	 */
+	private void remove(int changedColumn) {
+		boolean[] isAffected = new boolean[mTableModel.getTotalColumnCount()];
+		isAffected[changedColumn] = true;
+		int parentColumn = mTableModel.getParentColumn(changedColumn);
+		if (parentColumn != -1)
+			isAffected[parentColumn] = true;
+		for (int column=0; column<isAffected.length; column++) {
+			String identifierColumnName = mTableModel.getColumnProperty(column, CompoundTableModel.cColumnPropertyRelatedIdentifierColumn);
+			if (identifierColumnName != null && mTableModel.findColumn(identifierColumnName) == changedColumn)
+				isAffected[column] = true;
+			}
+
+		synchronized (this) {
+			Iterator<Key> iterator = mMap.keySet().iterator();
+			while (iterator.hasNext()) {
+				int column = iterator.next().mColumn;
+				if (column >= isAffected.length || isAffected[column])
+					iterator.remove();
+				}
+			mGeneration++;
+			}
+		}
+
+	private Entry getOrParse(CompoundRecord record, int column) {
+		Key key = new Key(record, column);
+		int generation;
+		synchronized (this) {
+			Entry entry = mMap.get(key);
+			if (entry != null)
+				return entry;
+			generation = mGeneration;
+			}
+
+		StereoMolecule mol = mTableModel.getChemicalStructure(record, column, CompoundTableModel.ATOM_COLOR_MODE_NONE, null);
+		if (mol == null)
+			return null;
+
+		// getChemicalStructure() colorizes single structures only, but not multiple idcodes or 3D-coords
+		byte[] idcode = mTableModel.isColumnTypeStructure(column) ? (byte[])record.getData(column) : null;
+		boolean isColorizable = (idcode != null && new String(idcode).indexOf('\n') == -1);
+
+		Entry entry = new Entry(mol, isColorizable);
+		synchronized (this) {
+			if (generation == mGeneration)
+				mMap.put(key, entry);
+			}
+		return entry;
+		}
+
+	private synchronized boolean contains(CompoundRecord record, int column) {
+		return mMap.containsKey(new Key(record, column));
+		}
+
+	private void prefetchStructures() {
+		while (true) {
+			PrefetchRequest request;
+			synchronized (this) {
+				request = mPrefetchRequest;
+				mPrefetchRequest = null;
+				if (request == null) {
+					mPrefetchThread = null;
+					return;
+					}
+				}
+
+			try {
+				int coordsColumn = mTableModel.getChildColumn(request.column, CompoundTableModel.cColumnType2DCoordinates);
+				for (CompoundRecord record:request.record) {
+					if (mPrefetchRequest != null)	// superseded by a newer request
+						break;
+
+					if (contains(record, request.column))
+						continue;
+
+					byte[] idcode = (byte[])record.getData(request.column);
+					if (idcode != null
+					 && (coordsColumn == -1 || record.getData(coordsColumn) == null)
+					 && new IDCodeParser().getAtomCount(idcode, 0) > MAX_PREFETCH_ATOMS_WITHOUT_COORDS)
+						continue;
+
+					getOrParse(record, request.column);
+					}
+				}
+			catch (Exception e) {}	// columns may have been removed meanwhile
+			}
+		}
+
+	private static class Entry {
+		private final StereoMolecule mol;
+		private final boolean isColorizable;
+
+		public Entry(StereoMolecule mol, boolean isColorizable) {
+			this.mol = mol;
+			this.isColorizable = isColorizable;
+			}
+		}
+
+	private static class PrefetchRequest {
+		private final CompoundRecord[] record;
+		private final int column;
+
+		public PrefetchRequest(CompoundRecord[] record, int column) {
+			this.record = record;
+			this.column = column;
+			}
+		}
+
+	private static class Key {
+		private final CompoundRecord mRecord;
+		private final int mColumn;
+
+		public Key(CompoundRecord record, int column) {
+			mRecord = record;
+			mColumn = column;
+			}
+
+		@Override
+		public int hashCode() {
+			return 31 * System.identityHashCode(mRecord) + mColumn;
+			}
+
+		@Override
+		public boolean equals(Object o) {
+			if (!(o instanceof Key))
+				return false;
+			Key key = (Key)o;
+			return key.mRecord == mRecord && key.mColumn == mColumn;
+			}
+		}
+	}
@@ -0,0 +1,162 @@
+/*
+ * Copyright 2017 Idorsia Pharmaceuticals Ltd., Hegenheimermattweg 91, CH-4123 Allschwil, Switzerland
+ *
+ * This file is part of DataWarrior.
+ *
+ * DataWarrior is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * DataWarrior is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License along with DataWarrior.
+ * If not, see http://www.gnu.org/licenses/.
+ *
+ * @author Thomas Sander
+ */
+
+package com.actelion.research.table.model;
+
+import java.util.Arrays;
+import java.util.function.IntFunction;
+
+/**
+ * Inverted index from character trigrams of lower case cell text to the IDs of all rows
+ * containing them. It is used to find candidate rows for case-insensitive 'contains'
+ * queries of at least three characters: only rows that contain every trigram of the
+ * query may contain the query. Trigrams are hashed into ints. Hash collisions cause
+ * additional candidates, but never missing ones. Thus, candidates must be verified.
+ */
+class TextTrigramIndex {
+	public static final int MIN_QUERY_LENGTH = 3;
+	private static final int MAX_ENTRY_COUNT = 1 << 25;	// don't index columns with more (trigram,row) pairs
+
+	private final int mRowCount;
+	private final int[] mTrigram;		// sorted distinct trigram hashes; null if the column was too large to be indexed
+	private final int[] mEntryStart;	// [trigram index], one more than trigram count
+	private final int[] mEntryID;		// row IDs in ascending order per trigram
+
+	/**
+	 * Creates the index from the text of all rows.
+	 * @param rowCount
+	 * @param text returns lower case text of row with given ID; null for empty cells
+	 */
+	protected TextTrigramIndex(int rowCount, IntFunction<String> text) {
+		mRowCount = rowCount;
+
+		long[] entry = new long[Math.max(16, rowCount)];	// trigram hash in high, row ID in low int
+		int entryCount = 0;
+		for (int id=0; id<rowCount && entryCount != -1; id++) {
+			String s = text.apply(id);
+			if (s != null) {
+				for (int i=0; i<=s.length()-MIN_QUERY_LENGTH; i++) {
+					if (entryCount == entry.length) {
+						if (entryCount == MAX_ENTRY_COUNT) {
+							entryCount = -1;
+							break;
+							}
+						entry = Arrays.copyOf(entry, Math.min(MAX_ENTRY_COUNT, 2*entryCount));
+						}
+					entry[entryCount++] = ((long)hash(s, i) << 32) | id;
+					}
+				}
+			}
+
+		if (entryCount == -1) {
+			mTrigram = null;
+			mEntryStart = null;
+			mEntryID = null;
+			return;
+			}
+
+		Arrays.sort(entry, 0, entryCount);
+
+		int trigramCount = 0;
+		int idCount = 0;
+		for (int i=0; i<entryCount; i++) {
+			if (i == 0 || entry[i] != entry[i-1]) {
+				idCount++;
+				if (i == 0 || (int)(entry[i] >> 32) != (int)(entry[i-1] >> 32))
+					trigramCount++;
+				}
+			}
+
+		mTrigram = new int[trigramCount];
+		mEntryStart = new int[trigramCount+1];
+		mEntryID = new int[idCount];
+		trigramCount = 0;
+		idCount = 0;
+		for (int i=0; i<entryCount; i++) {
+			if (i == 0 || entry[i] != entry[i-1]) {
+				int trigram = (int)(entry[i] >> 32);
+				if (trigramCount == 0 || trigram != mTrigram[trigramCount-1]) {
+					mTrigram[trigramCount] = trigram;
+					mEntryStart[trigramCount++] = idCount;
+					}
+				mEntryID[idCount++] = (int)entry[i];
+				}
+			}
+		mEntryStart[trigramCount] = idCount;
+		}
+
+	/**
+	 * @param rowCount current row count
+	 * @return whether the index can be used to find candidate rows
+	 */
+	protected boolean isUsable(int rowCount) {
+		return mTrigram != null && mRowCount == rowCount;
+		}
+
+	/**
+	 * @return whether the index was built for rowCount rows, even if the column was too large to be indexed
+	 */
+	protected boolean isValid(int rowCount) {
+		return mRowCount == rowCount;
+		}
+
+	/**
+	 * @param query lower case query with at least MIN_QUERY_LENGTH characters
+	 * @return IDs in ascending order of all rows that may contain the query
+	 */
+	protected int[] getCandidateIDs(String query) {
+		int trigramCount = query.length() - MIN_QUERY_LENGTH + 1;
+		int[] from = new int[trigramCount];
+		int[] to = new int[trigramCount];
+		for (int i=0; i<trigramCount; i++) {
+			int index = Arrays.binarySearch(mTrigram, hash(query, i));
+			if (index < 0)
+				return new int[0];
+			from[i] = mEntryStart[index];
+			to[i] = mEntryStart[index+1];
+			}
+
+		// start with the shortest ID list and intersect with all others
+		int shortest = 0;
+		for (int i=1; i<trigramCount; i++)
+			if (to[i]-from[i] < to[shortest]-from[shortest])
+				shortest = i;
+
+		int[] candidate = Arrays.copyOfRange(mEntryID, from[shortest], to[shortest]);
+		int candidateCount = candidate.length;
+		for (int i=0; i<trigramCount && candidateCount != 0; i++) {
+			if (i != shortest) {
+				int count = 0;
+				int j = from[i];
+				for (int k=0; k<candidateCount; k++) {
+					while (j < to[i] && mEntryID[j] < candidate[k])
+						j++;
+					if (j < to[i] && mEntryID[j] == candidate[k])
+						candidate[count++] = candidate[k];
+					}
+				candidateCount = count;
+				}
+			}
+
+		return (candidateCount == candidate.length) ? candidate : Arrays.copyOf(candidate, candidateCount);
+		}
+
+	private static int hash(String s, int index) {
+		return (s.charAt(index) * 31 + s.charAt(index+1)) * 31 + s.charAt(index+2);
+		}
+	}
@@ -0,0 +1,195 @@
+/*
+ * Copyright 2017 Idorsia Pharmaceuticals Ltd., Hegenheimermattweg 91, CH-4123 Allschwil, Switzerland
+ *
+ * This file is part of DataWarrior.
+ *
+ * DataWarrior is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * DataWarrior is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License along with DataWarrior.
+ * If not, see http://www.gnu.org/licenses/.
+ *
+ * @author Thomas Sander
+ */
+
+package com.actelion.research.table.view;
+
+import com.actelion.research.table.model.ComputeScheduler;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.Arrays;
+
+/**
+ * Renders very many markers as a screen resolution density image rather than individually.
+ * The caller assigns every point its pixel index (or -1) and its ARGB marker color.
+ * Points are then sorted by horizontal pixel band with a parallel counting sort, such that
+ * bands can be binned concurrently, each of them visiting its own points only. Every pixel
+ * shows the average color of its points with an opacity that increases logarithmically
+ * with the number of points.
+ * Point buffers and pixel accumulators are kept between paints to avoid frequent allocation
+ * of large arrays.
+ */
+class DensityRenderer {
+	private static final float MIN_OPACITY = 0.25f;
+	private static final int BAND_HEIGHT = 16;				// pixel rows per band
+	private static final int POINT_CHUNKS_PER_THREAD = 4;
+	private static final int MAX_COLOR_SAMPLES = 1 << 23;	// keeps color sums of one pixel within int range
+
+	private int[] mPointPixel,mPointColor,mSortedPoint;
+	private int[] mCount,mRed,mGreen,mBlue;
+	private BufferedImage mImage;
+
+	/**
+	 * @param pointCount
+	 * @return buffer to receive pixel indexes (y*width+x) of the first pointCount points; -1 for points not shown
+	 */
+	public int[] getPixelBuffer(int pointCount) {
+		if (mPointPixel == null || mPointPixel.length < pointCount)
+			mPointPixel = new int[pointCount];
+		return mPointPixel;
+		}
+
+	/**
+	 * @param pointCount
+	 * @return buffer to receive ARGB colors of the first pointCount points
+	 */
+	public int[] getColorBuffer(int pointCount) {
+		if (mPointColor == null || mPointColor.length < pointCount)
+			mPointColor = new int[pointCount];
+		return mPointColor;
+		}
+
+	/**
+	 * Creates the density image from the pixel and color buffers. The image is reused
+	 * by the next call and, therefore, must be drawn before render() is called again.
+	 * @param width
+	 * @param height
+	 * @param pointCount
+	 * @param maxOpacity opacity of pixels with the highest point count; 1.0 for fully opaque
+	 * @return image with transparent background
+	 */
+	public BufferedImage render(int width, int height, int pointCount, float maxOpacity) {
+		int pixelCount = width * height;
+		if (mCount == null || mCount.length < pixelCount) {
+			mCount = new int[pixelCount];
+			mRed = new int[pixelCount];
+			mGreen = new int[pixelCount];
+			mBlue = new int[pixelCount];
+			}
+		if (mSortedPoint == null || mSortedPoint.length < pointCount)
+			mSortedPoint = new int[pointCount];
+		if (mImage == null || mImage.getWidth() != width || mImage.getHeight() != height)
+			mImage = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+
+		final int[] pointPixel = mPointPixel;
+		final int[] pointColor = mPointColor;
+		final int[] sortedPoint = mSortedPoint;
+		final int[] count = mCount;
+		final int[] red = mRed;
+		final int[] green = mGreen;
+		final int[] blue = mBlue;
+		final int[] data = ((DataBufferInt)mImage.getRaster().getDataBuffer()).getData();
+
+		ComputeScheduler scheduler = ComputeScheduler.getInstance();
+		int bandCount = Math.max(1, (height + BAND_HEIGHT - 1) / BAND_HEIGHT);
+		int bandPixels = BAND_HEIGHT * width;
+
+		// counting sort of shown points by band: count per chunk of points, ...
+		int chunkCount = Math.max(1, Math.min(pointCount, POINT_CHUNKS_PER_THREAD
+				* scheduler.getThreadCount(ComputeScheduler.PRIORITY_INTERACTIVE)));
+		int chunkSize = (pointCount + chunkCount - 1) / chunkCount;
+		int[][] bandOffset = new int[chunkCount][bandCount+1];	// [chunk][band]; index 0 counts hidden points
+		scheduler.runParallelChunks(ComputeScheduler.PRIORITY_INTERACTIVE, chunkCount, 1, (firstChunk, endChunk) -> {
+			for (int chunk=firstChunk; chunk<endChunk; chunk++) {
+				int[] offset = bandOffset[chunk];
+				for (int i=chunk*chunkSize, end=Math.min(pointCount, i+chunkSize); i<end; i++)
+					offset[pointPixel[i] == -1 ? 0 : 1 + pointPixel[i] / bandPixels]++;
+				}
+			} );
+
+		// ... turn counts into positions of chunk points within their band's section, ...
+		int[] bandStart = new int[bandCount+1];
+		int position = 0;
+		for (int band=1; band<=bandCount; band++) {
+			bandStart[band-1] = position;
+			for (int chunk=0; chunk<chunkCount; chunk++) {
+				int c = bandOffset[chunk][band];
+				bandOffset[chunk][band] = position;
+				position += c;
+				}
+			}
+		bandStart[bandCount] = position;
+
+		// ... and place the point indexes
+		scheduler.runParallelChunks(ComputeScheduler.PRIORITY_INTERACTIVE, chunkCount, 1, (firstChunk, endChunk) -> {
+			for (int chunk=firstChunk; chunk<endChunk; chunk++) {
+				int[] offset = bandOffset[chunk];
+				for (int i=chunk*chunkSize, end=Math.min(pointCount, i+chunkSize); i<end; i++)
+					if (pointPixel[i] != -1)
+						sortedPoint[offset[1 + pointPixel[i] / bandPixels]++] = i;
+				}
+			} );
+
+		// bin the points of every band into the band's pixels
+		int[] bandMaxCount = new int[bandCount];
+		scheduler.runParallelChunks(ComputeScheduler.PRIORITY_INTERACTIVE, bandCount, 1, (firstBand, endBand) -> {
+			for (int band=firstBand; band<endBand; band++) {
+				int firstPixel = band * bandPixels;
+				int endPixel = Math.min(pixelCount, firstPixel + bandPixels);
+				Arrays.fill(count, firstPixel, endPixel, 0);
+				Arrays.fill(red, firstPixel, endPixel, 0);
+				Arrays.fill(green, firstPixel, endPixel, 0);
+				Arrays.fill(blue, firstPixel, endPixel, 0);
+				int maxCount = 0;
+				for (int j=bandStart[band]; j<bandStart[band+1]; j++) {
+					int i = sortedPoint[j];
+					int pixel = pointPixel[i];
+					int c = ++count[pixel];
+					if (c <= MAX_COLOR_SAMPLES) {
+						int argb = pointColor[i];
+						red[pixel] += (argb >> 16) & 0xFF;
+						green[pixel] += (argb >> 8) & 0xFF;
+						blue[pixel] += argb & 0xFF;
+						}
+					maxCount = Math.max(maxCount, c);
+					}
+				bandMaxCount[band] = maxCount;
+				}
+			} );
+
+		int maxCount = 0;
+		for (int c:bandMaxCount)
+			maxCount = Math.max(maxCount, c);
+		final int _maxCount = maxCount;
+		final float logMaxCount = (float)Math.log1p(maxCount);
+
+		scheduler.runParallelChunks(ComputeScheduler.PRIORITY_INTERACTIVE, bandCount, 1, (firstBand, endBand) -> {
+			for (int band=firstBand; band<endBand; band++) {
+				int firstPixel = band * bandPixels;
+				int endPixel = Math.min(pixelCount, firstPixel + bandPixels);
+				for (int pixel=firstPixel; pixel<endPixel; pixel++) {
+					int c = count[pixel];
+					if (c == 0) {
+						data[pixel] = 0;
+						}
+					else {
+						float opacity = maxOpacity * ((_maxCount == 1) ? 1f
+								: MIN_OPACITY + (1f - MIN_OPACITY) * (float)Math.log1p(c) / logMaxCount);
+						int samples = Math.min(c, MAX_COLOR_SAMPLES);
+						data[pixel] = (Math.round(255 * opacity) << 24)
+									| ((red[pixel] / samples) << 16)
+									| ((green[pixel] / samples) << 8)
+									| (blue[pixel] / samples);
+						}
+					}
+				}
+			} );
+
+		return mImage;
+		}
+	}
@@ -414,6 +414,22 @@ public class JStructureGrid extends JScrollPane
 		return (mFocusRow == null) ? mTableModel.getRecord(row) : mTableModel.getRecord(mFocusRow[row]);
 		}
 
+	/**
+	 * Lets the table model parse the structures of the given rows in the background,
+	 * such that they are available when the user scrolls down.
+	 * @param firstRow
+	 * @param rowCount
+	 */
+	private void prefetchStructures(int firstRow, int rowCount) {
+		rowCount = Math.min(rowCount, mTableModel.getRowCount() - firstRow);
+		if (rowCount > 0) {
+			CompoundRecord[] record = new CompoundRecord[rowCount];
+			for (int i=0; i<rowCount; i++)
+				record[i] = getRecord(firstRow+i);
+			mTableModel.prefetchChemicalStructures(record, mStructureColumn);
+			}
+		}
+
 	public void setDetailPopupProvider(DetailPopupProvider p) {
 		mDetailPopupProvider = p;
 		}
@@ -1043,6 +1059,9 @@ public class JStructureGrid extends JScrollPane
 
 			// create and add not yet available structure images to imagelist
 			if (mSelectionChanged || firstNonVisible - firstVisible > mImageList.size()) {
+				if (mStructureColumn != -1)
+					prefetchStructures(firstNonVisible, firstNonVisible - firstVisible);
+
 				StereoMolecule molContainer = new StereoMolecule();
 				int indexAfterLastImage = mIndexOfFirstImage + mImageList.size();
 				for (int i=firstVisible; i<firstNonVisible; i++) {
@@ -1206,7 +1225,7 @@ public class JStructureGrid extends JScrollPane
 								CompoundTableChemistryCellRenderer.showOnTheFlyAtomCoordsExceededMessage(ig, bounds);
 								}
 							else {
-								StereoMolecule mol = mTableModel.getChemicalStructure(getRecord(i), mStructureColumn, CompoundTableModel.ATOM_COLOR_MODE_ALL, molContainer);
+								StereoMolecule mol = mTableModel.getCachedChemicalStructure(getRecord(i), mStructureColumn, CompoundTableModel.ATOM_COLOR_MODE_ALL, molContainer);
 								if (mol != null) {
 									AbstractDepictor depictor = new Depictor2D(mol, mStructureDrawMode);
 									depictor.validateView(ig,
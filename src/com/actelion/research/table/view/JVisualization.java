@@ -75,6 +75,7 @@ public abstract class JVisualization extends JComponent
 	protected static final int cAbsoluteDefaultFontSize = 8; // in case of absolute font sizes, this is the reference
 	private static final float cFontRefenceViewSize = 420f;  // View size that independent of font size mode should have ABSOLUTE_FONT_SIZE * mReativeFontSize
 	private static final float cFontHeightFactor = cAbsoluteDefaultFontSize / cFontRefenceViewSize;
+	private static final float MAX_MARKER_HIT_DISTANCE = 4f;	// findMarker() returns markers up to this distance
 
 	public static final String[] FONT_SIZE_MODE_TEXT = { "Relative font size:", "Adaptive font size:", "Absolute font size:" };
 	public static final String[] FONT_SIZE_MODE_CODE = { "relative", "adaptive", "absolute" };
@@ -218,6 +219,7 @@ public abstract class JVisualization extends JComponent
 									mTreeViewIsDynamic,mTreeViewIsInverted,mMarkerSizeProportional,
 									mIsGloballyHidingRows,mIsIgnoreGlobalExclusion,mIsDynamicScale;
 	private Polygon			 		mLassoRegion;
+	private MarkerIndex				mMarkerIndex;
 	private DetailPopupProvider		mDetailPopupProvider;
 	private ViewSelectionHelper		mViewSelectionHelper;
 
@@ -560,17 +562,16 @@ public abstract class JVisualization extends JComponent
 		if (mConnectionLineListMode == cConnectionListModeNone)
 			return false;
 
-		long flag1 = mTableModel.getListHandler().getListMask(mConnectionLineList1);
+		CompoundTableListHandler listHandler = mTableModel.getListHandler();
 
 		boolean found = false;
 		if (mConnectionLineList2 == -1) {
-			found = ((p1.record.getFlags() & flag1) != 0L
-				  || (p2.record.getFlags() & flag1) != 0L);
+			found = (listHandler.isListMember(p1.record, mConnectionLineList1)
+				  || listHandler.isListMember(p2.record, mConnectionLineList1));
 			}
 		else {
-			long flag2 = mTableModel.getListHandler().getListMask(mConnectionLineList2);
-			found = (((p1.record.getFlags() & flag1) != 0L && (p2.record.getFlags() & flag2) != 0L)
-				  || ((p1.record.getFlags() & flag2) != 0L && (p2.record.getFlags() & flag1) != 0L));
+			found = ((listHandler.isListMember(p1.record, mConnectionLineList1) && listHandler.isListMember(p2.record, mConnectionLineList2))
+				  || (listHandler.isListMember(p1.record, mConnectionLineList2) && listHandler.isListMember(p2.record, mConnectionLineList1)));
 			}
 
 		return found ^ (mConnectionLineListMode != cConnectionListModeHide);
@@ -3657,12 +3658,23 @@ public abstract class JVisualization extends JComponent
 	 * @return
 	 */
 	public VisualizationPoint findMarker(int x, int y) {
-		// inverted order to prefer markers that are in the front
 		boolean searchLabels = showAnyLabels();
 		mHighlightedLabelPosition = null;
+
+		// only points close to x,y are considered, if the marker index can be used
+		int[] candidate = null;
+		if (mPoint != null) {
+			if (mMarkerIndex == null || !mMarkerIndex.isIndexOf(mPoint, mDataPoints))
+				mMarkerIndex = new MarkerIndex(this, mPoint, mDataPoints, getWidth(), getHeight());
+			if (mMarkerIndex.isValid() && mMarkerIndex.covers(x, y))
+				candidate = mMarkerIndex.getCandidates(x, y);
+			}
+
+		// inverted order to prefer markers that are in the front
 		VisualizationPoint p = null;
 		float minDistance = Float.MAX_VALUE;
-		for (int i=mDataPoints-1; i>=0; i--) {
+		for (int c=(candidate == null) ? mDataPoints-1 : candidate.length-1; c>=0; c--) {
+			int i = (candidate == null) ? c : candidate[c];
 			if (isVisible(mPoint[i])) {
 				float dvp = Float.MAX_VALUE;
 				if (mLabelColumn[cMidCenter] == -1) {
@@ -3675,7 +3687,7 @@ public abstract class JVisualization extends JComponent
 					if (mHighlightedLabelPosition != null)
 						return mPoint[i];
 					}
-				if (dvp < 4 && minDistance > dvp) {
+				if (dvp < MAX_MARKER_HIT_DISTANCE && minDistance > dvp) {
 					p = mPoint[i];
 					minDistance = dvp;
 					}
@@ -3685,6 +3697,26 @@ public abstract class JVisualization extends JComponent
 		return p;
 		}
 
+	/**
+	 * Discards the index used by findMarker() to locate markers and labels near the mouse.
+	 * This must be called whenever marker coordinates, marker sizes, label positions or the
+	 * visibility of markers may have changed, typically before painting the view content.
+	 */
+	protected void invalidateMarkerIndex() {
+		mMarkerIndex = null;
+		}
+
+	/**
+	 * Returns the maximum distance in x or y from the marker center, at which getDistanceToMarker()
+	 * may still return a distance below MAX_MARKER_HIT_DISTANCE. If getDistanceToMarker() is
+	 * overwritten, then this method must be overwritten accordingly.
+	 * @param vp
+	 * @return max distance or Float.NaN, if unknown, which causes findMarker() to check all markers
+	 */
+	protected float getMarkerHitRange(VisualizationPoint vp) {
+		return Math.max(Math.abs(vp.widthOrAngle1), Math.abs(vp.heightOrAngle2)) / 2f + MAX_MARKER_HIT_DISTANCE;
+		}
+
 	/**
 	 * This method assumes a rectangular marker shape and uses the
 	 * VisualizationPoint's width and height values.
@@ -3817,8 +3849,10 @@ public abstract class JVisualization extends JComponent
 		else if (mDragMode == DRAG_MODE_LASSO_SELECT) {
 			boolean isCustomFilter = (mUseAsFilterFlagNo != -1);
 			boolean customSelectionFound = false;
+			Rectangle lassoBounds = mLassoRegion.getBounds();
 			for (int i=0; i<mDataPoints; i++) {
-				boolean isSelected = mLassoRegion.contains(mPoint[i].screenX, mPoint[i].screenY)
+				boolean isSelected = lassoBounds.contains(mPoint[i].screenX, mPoint[i].screenY)
+						&& mLassoRegion.contains(mPoint[i].screenX, mPoint[i].screenY)
 						&& isVisible(mPoint[i]);
 				if (isCustomFilter) {
 					if (isSelected) {
@@ -4554,6 +4588,35 @@ public abstract class JVisualization extends JComponent
 			&& isVisibleInModel(point);
 		}
 
+	/**
+	 * If a cChangeExcluded event names the rows, whose exclusion has changed, then this checks,
+	 * whether any of these rows is shown by this view. Rows that are hidden by zooming or by
+	 * this view's detail graph stay hidden, no matter whether a filter excludes them.
+	 * NaN exclusion is not considered, because NaN values may be shown.
+	 * Since the event is delivered later, rows may have been deleted meanwhile. Therefore,
+	 * IDs out of the current row range are considered shown.
+	 * @param e cChangeExcluded event
+	 * @return false, if the exclusion change doesn't affect any row shown by this view
+	 */
+	protected boolean isExclusionChangeShown(CompoundTableEvent e) {
+		int[] changedID = e.getChangedRowIDs();
+		if (changedID == null)
+			return true;
+
+		int rowCount = mTableModel.getTotalRowCount();
+		int hidingFlags = mActiveExclusionFlags & ~EXCLUSION_FLAGS_NAN;
+		BitSet isShown = new BitSet(mDataPoints);
+		for (int i=0; i<mDataPoints; i++)
+			if ((mPoint[i].exclusionFlags & hidingFlags) == 0)
+				isShown.set(mPoint[i].record.getID());
+
+		for (int id:changedID)
+			if (id < 0 || id >= rowCount || isShown.get(id))
+				return true;
+
+		return false;
+		}
+
 	/**
 	 * Checks, whether this visualization point is visible in this view,
 	 * i.e. whether it is not excluded by filters, foreign views or local view
@@ -4746,17 +4809,15 @@ public abstract class JVisualization extends JComponent
 
 					if (mLocalExclusionFlagNo != -1) {
 						boolean excludedRecordsFound = false;
-						long mask = mTableModel.convertRowFlagToMask(mLocalExclusionFlagNo);
-						long listMask = mTableModel.getListHandler().getListMask(mLocalExclusionList);
 						for (int i=0; i<mDataPoints; i++) {
 							if ((mPoint[i].exclusionFlags & mActiveExclusionFlags) == 0
 							 || (mShowNaNValues && (mPoint[i].exclusionFlags & ~EXCLUSION_FLAGS_NAN) == 0)
 							 || (mLocalExclusionList != CompoundTableListHandler.LISTINDEX_NONE
-									&& (mPoint[i].record.getFlags() & listMask) == 0)) {
-								mPoint[i].record.clearFlags(mask);
+									&& !mTableModel.getListHandler().isListMember(mPoint[i].record, mLocalExclusionList))) {
+								mPoint[i].record.clearFlag(mLocalExclusionFlagNo);
 								}
 							else {
-								mPoint[i].record.setFlags(mask);
+								mPoint[i].record.setFlag(mLocalExclusionFlagNo);
 								excludedRecordsFound = true;
 								}
 							}
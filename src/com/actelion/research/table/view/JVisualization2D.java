@@ -52,6 +52,7 @@ import java.awt.print.PageFormat;
 import java.io.*;
 import java.text.DateFormat;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static com.actelion.research.table.view.VisualizationColor.cUseAsFilterColor;
 
@@ -102,6 +103,11 @@ public class JVisualization2D extends JVisualization {
 	// if paintComponent() with full detail takes more than this, the next paintComponent() will skip detail if EDT is busy or paintComponent()s are believed to be adjusting
 	private static final long MAX_FULL_DETAIL_PAINT_TIME = 80;
 
+	// scatter plots with at least this many visible markers are painted as density image
+	private static final int DENSITY_RENDERING_MIN_POINTS = 250000;
+	private static final int DENSITY_MAX_CHUNK_SIZE = 16384;
+	private static final int BACKGROUND_MAX_CHUNK_SIZE = 16;	// background grid or image lines
+
 	// delay between finishing last paintComponent() till start of next one. Delays smaller than this indicate adjusting=true, i.e. more paints to expect
 	private static final long MAX_MILLIS_BETWEEN_LOW_DETAIL_PAINTS = 500;
 
@@ -174,8 +180,8 @@ public class JVisualization2D extends JVisualization {
 	private int				mBorder,mCurveInfo,mBackgroundHCount,mBackgroundVCount,mCrossHairMode,
 							mBackgroundColorConsidered,mCurveSplitCategoryColumn,mCurveRowList,mCaseSeparationAxis,
 							mConnectionFromIndex1,mConnectionFromIndex2,mShownCorrelationType,mMultiValueMarkerMode;
-	private long			mPreviousPaintEnd,mPreviousFullDetailPaintMillis,mMostRecentRepaintMillis;
-	private boolean			mBackgroundValid,mIsHighResolution,mScaleTitleCentered,
+	private long			mPreviousPaintEnd,mPreviousFullDetailPaintMillis,mMostRecentRepaintMillis,mBackgroundHash;
+	private boolean			mBackgroundValid,mBackgroundCoordinatesChanged,mIsHighResolution,mScaleTitleCentered,
 							mDrawMarkerOutline,mDrawBarPieBoxOutline;
 	private int[]           mMultiValueMarkerColumns;
 	private final  int[]	mScaleTextMode,mScaleDepictorOffset,mSplittingMolIndex;
@@ -183,6 +189,7 @@ public class JVisualization2D extends JVisualization {
 	private final int[]     mNaNSize;   // 0: NaN area width left of Y-axis; 1: NaN area height beneath X-axis
 	private final VisualizationColor mBackgroundColor;
 	private LabelHelper     mLabelHelper;
+	private DensityRenderer mDensityRenderer;
 	private Color[]			mMultiValueMarkerColor;
 	private final Depictor2D[][] mScaleDepictor,mSplittingDepictor;
 	private VolatileImage	mOffImage;
@@ -291,7 +298,7 @@ public class JVisualization2D extends JVisualization {
 			}
 
 		if (!mCoordinatesValid) {
-			mBackgroundValid = false;
+			mBackgroundCoordinatesChanged = true;
 			mOffImageValid = false;
 			}
 
@@ -472,6 +479,8 @@ public class JVisualization2D extends JVisualization {
 		}
 
 	private void paintContent(final Rectangle bounds, boolean transparentBG) {
+		invalidateMarkerIndex();
+
 		if (validateSplittingIndices())
 			mBackgroundValid = false;
 
@@ -791,8 +800,11 @@ public class JVisualization2D extends JVisualization {
 			  || mSplitter.getVCount() != mBackgroundVCount))
 				mBackgroundValid = false;
 
-			if (!mBackgroundValid)
+			// recalculate only if coordinates changed in a way that affects the background
+			if (!mBackgroundValid
+			 || (mBackgroundCoordinatesChanged && getBackgroundHash(graphRect) != mBackgroundHash))
 				calculateBackground(graphRect);
+			mBackgroundCoordinatesChanged = false;
 			}
 
 		if (mShowNaNValues)
@@ -844,6 +856,11 @@ public class JVisualization2D extends JVisualization {
 			if (drawConnectionLinesInFocus)
 				drawConnectionLines(true, true);
 			}
+		else if (isDensityRendering(mBoundsWithoutLegend)) {
+			if (drawConnectionLinesInFocus)
+				drawConnectionLines(true, true);
+			paintMarkerDensity(mBoundsWithoutLegend);
+			}
 		else {
 			int focusFlagNo = getFocusFlag();
 			int firstFocusIndex = 0;
@@ -960,6 +977,92 @@ public class JVisualization2D extends JVisualization {
 			}
 		}
 
+	/**
+	 * Scatter plots with very many visible markers are painted as density image instead of individual
+	 * markers, because these would overlap anyway and take long to paint. If labels, multi-value markers
+	 * or high resolution output are requested, then markers are painted individually.
+	 * @param bounds
+	 * @return whether paintMarkerDensity() shall be used instead of painting individual markers
+	 */
+	private boolean isDensityRendering(Rectangle bounds) {
+		if (mIsHighResolution
+		 || !mChartType.isScatterPlot()
+		 || mTreeNodeList != null
+		 || mLabelHelper != null
+		 || (mMultiValueMarkerMode != cMultiValueMarkerModeNone && mMultiValueMarkerColumns != null)
+		 || mDataPoints < DENSITY_RENDERING_MIN_POINTS)
+			return false;
+
+		AtomicInteger count = new AtomicInteger();
+		ComputeScheduler.getInstance().runParallelChunks(ComputeScheduler.PRIORITY_INTERACTIVE, mDataPoints, DENSITY_MAX_CHUNK_SIZE, (start, end) -> {
+			int chunkCount = 0;
+			for (int i=start; i<end; i++)
+				if (isVisible(mPoint[i]) && bounds.contains(mPoint[i].screenX, mPoint[i].screenY))
+					chunkCount++;
+			count.addAndGet(chunkCount);
+			} );
+		return count.get() >= DENSITY_RENDERING_MIN_POINTS;
+		}
+
+	/**
+	 * Paints all visible markers as one image, where every pixel shows the average color
+	 * of its markers with an opacity reflecting the number of markers. Marker colors,
+	 * focus, selection, filter and marker transparency are considered as when painting
+	 * individual markers.
+	 * @param bounds area containing all markers, i.e. all sub-views of a split view
+	 */
+	private void paintMarkerDensity(Rectangle bounds) {
+		if (mDensityRenderer == null)
+			mDensityRenderer = new DensityRenderer();
+
+		int focusFlagNo = getFocusFlag();
+		boolean useSelectionColor = mFocusList != FocusableView.cFocusOnSelection
+				&& mSplittingColumn[0] != CompoundTableListHandler.PSEUDO_COLUMN_SELECTION
+				&& mSplittingColumn[1] != CompoundTableListHandler.PSEUDO_COLUMN_SELECTION;
+		boolean isFilter = mUseAsFilterFlagNo != -1 && !mTableModel.isRowFlagSuspended(mUseAsFilterFlagNo);
+
+		// index 0 for markers in focus, index 1 for markers out of focus
+		Color background = getViewBackground();
+		Color[] colorList = mMarkerColor.getColorList();
+		int[][] markerRGB = new int[2][colorList.length];
+		for (int i=0; i<colorList.length; i++) {
+			markerRGB[0][i] = colorList[i].getRGB();
+			markerRGB[1][i] = VisualizationColor.lowContrastColor(colorList[i], background).getRGB();
+			}
+		int[] filterRGB = { cUseAsFilterColor.getRGB(), VisualizationColor.lowContrastColor(cUseAsFilterColor, background).getRGB() };
+		int[] selectedRGB = { VisualizationColor.cSelectedColor.getRGB(),
+							  VisualizationColor.lowContrastColor(VisualizationColor.cSelectedColor, background).getRGB() };
+
+		int[] pixel = mDensityRenderer.getPixelBuffer(mDataPoints);
+		int[] color = mDensityRenderer.getColorBuffer(mDataPoints);
+		ComputeScheduler.getInstance().runParallelChunks(ComputeScheduler.PRIORITY_INTERACTIVE, mDataPoints, DENSITY_MAX_CHUNK_SIZE, (start, end) -> {
+			for (int i=start; i<end; i++) {
+				VisualizationPoint vp = mPoint[i];
+				pixel[i] = -1;
+				if (isVisible(vp)) {
+					vp.widthOrAngle1 = vp.heightOrAngle2 = (int)getMarkerSize(vp);
+					int x = (int)(vp.screenX - bounds.x);
+					int y = (int)(vp.screenY - bounds.y);
+					if (vp.widthOrAngle1 != 0 && x >= 0 && x < bounds.width && y >= 0 && y < bounds.height) {
+						int focus = (focusFlagNo == -1 || vp.record.isFlagSet(focusFlagNo)) ? 0 : 1;
+						color[i] = (isFilter && !vp.record.isFlagSet(mUseAsFilterFlagNo)) ? filterRGB[focus]
+								 : (vp.record.isSelected() && useSelectionColor) ? selectedRGB[focus]
+								 : markerRGB[focus][vp.markerColorIndex];
+						pixel[i] = y * bounds.width + x;
+						}
+					}
+				vp.removeNonCustomLabelPositions();
+				}
+			} );
+
+		// marker transparency is part of the image's pixel opacity
+		BufferedImage image = mDensityRenderer.render(bounds.width, bounds.height, mDataPoints, 1f - mMarkerTransparency);
+		Composite composite = mG.getComposite();
+		mG.setComposite(AlphaComposite.SrcOver);
+		mG.drawImage(image, bounds.x, bounds.y, null);
+		mG.setComposite(composite);
+		}
+
 	public void drawMarkerLabels(MarkerLabelInfo[] labelInfo, Color labelFG, Color labelBG, Color outlineColor, boolean isTreeView, Composite composite) {
 		if (mMarkerLabelSize != 1.0)
 			setFontHeightAndScaleToSplitView(mMarkerLabelSize * mFontHeight);
@@ -1050,7 +1153,7 @@ public class JVisualization2D extends JVisualization {
 		if (isMolecule) {
 			if (mLabelMolecule == null)
 				mLabelMolecule = new StereoMolecule();
-			StereoMolecule mol = mTableModel.getChemicalStructure(vp.record, column, CompoundTableModel.ATOM_COLOR_MODE_EXPLICIT, mLabelMolecule);
+			StereoMolecule mol = mTableModel.getCachedChemicalStructure(vp.record, column, CompoundTableModel.ATOM_COLOR_MODE_EXPLICIT, mLabelMolecule);
 			if (mol != null) {
 				float zoom = Float.isNaN(mMarkerSizeZoomAdaption) ? 1f : mMarkerSizeZoomAdaption;
 				mli.depictor = new Depictor2D(mol, Depictor2D.cDModeSuppressChiralText);
@@ -1481,9 +1584,7 @@ public class JVisualization2D extends JVisualization {
 		}
 
 	private void drawCategoryConnectionLines(boolean considerFocus, boolean inFocus) {
-		long focusMask = (mFocusList == FocusableView.cFocusNone) ? 0
-					   : (mFocusList == FocusableView.cFocusOnSelection) ? CompoundRecord.cFlagMaskSelected
-					   : mTableModel.getListHandler().getListMask(mFocusList);
+		int focusFlag = getFocusFlag();
 
 		int fromIndex1 = mConnectionFromIndex1;
 		int fromIndex2 = mConnectionFromIndex2;
@@ -1515,7 +1616,7 @@ public class JVisualization2D extends JVisualization {
 							if (isVisibleExcludeNaN(mConnectionLinePoint[j])
 							 && (!considerFocus
 							  || (inFocus
-								^ (mConnectionLinePoint[j].record.getFlags() & focusMask) == 0)))
+								^ (focusFlag == -1 || !mConnectionLinePoint[j].record.isFlagSet(focusFlag)))))
 								drawConnectionLine(mConnectionLinePoint[i], mConnectionLinePoint[j], considerFocus && !inFocus, 0.0f, false);
 
 			fromIndex1 = toIndex1;
@@ -1536,9 +1637,7 @@ public class JVisualization2D extends JVisualization {
 		}
 
 	private void drawReferenceConnectionLines(boolean considerFocus, boolean inFocus) {
-		long focusMask = (mFocusList == FocusableView.cFocusNone) ? 0
-					   : (mFocusList == FocusableView.cFocusOnSelection) ? CompoundRecord.cFlagMaskSelected
-					   : mTableModel.getListHandler().getListMask(mFocusList);
+		int focusFlag = getFocusFlag();
 		int strengthColumn = mTableModel.findColumn(mTableModel.getColumnProperty(mConnectionColumn,
 				CompoundTableConstants.cColumnPropertyReferenceStrengthColumn));
 		boolean isRedundant = CompoundTableConstants.cColumnPropertyReferenceTypeRedundant.equals(
@@ -1562,7 +1661,7 @@ public class JVisualization2D extends JVisualization {
 					 && isVisible(vp2)
 					 && (!considerFocus
 					  || (inFocus
-						^ (vp1.record.getFlags() & vp2.record.getFlags() & focusMask) == 0))) {
+						^ (focusFlag == -1 || !vp1.record.isFlagSet(focusFlag) || !vp2.record.isFlagSet(focusFlag))))) {
 						if (strength > 0f)
 							drawConnectionLine(vp1, vp2, considerFocus && !inFocus,
 									(1f-strength) * mConnectionLineTransparency, !isRedundant);
@@ -1609,7 +1708,7 @@ public class JVisualization2D extends JVisualization {
 							 && (!isRedundant || (vp1.record.getID() < vp2.record.getID()))
 							 && (!considerFocus
 							  || (inFocus
-							   ^ (vp1.record.getFlags() & vp2.record.getFlags() & focusMask) == 0))) {
+							   ^ (focusFlag == -1 || !vp1.record.isFlagSet(focusFlag) || !vp2.record.isFlagSet(focusFlag))))) {
 								float transparency = mConnectionLineTransparency;
 								if (strength != null) {
 									try {
@@ -1802,9 +1901,8 @@ public class JVisualization2D extends JVisualization {
 
 		int catCount = getSplitCurveCategoryCount();
 		Rectangle[][] bounds = new Rectangle[mHVCount][catCount];
-		long mask = mTableModel.getListHandler().getListMask(mCurveRowList);
 		for (int i=0; i<mDataPoints; i++) {
-			if (isConsideredForCurve(mPoint[i], mask)) {
+			if (isConsideredForCurve(mPoint[i])) {
 				int hv = mPoint[i].hvIndex;
 				int cat = (catCount == 1) ? 0 : getSplitCurveCategoryIndex(mPoint[i]);
 				int x = Math.round(mPoint[i].screenX);
@@ -2073,14 +2171,14 @@ public class JVisualization2D extends JVisualization {
 		return splittingCategory;
 		}
 
-	private boolean isConsideredForCurve(VisualizationPoint vp, long listMask) {
+	private boolean isConsideredForCurve(VisualizationPoint vp) {
 		if (!isVisibleExcludeNaN(vp) || vp.hvIndex == -1)
 			return false;
 
 		if (mCurveRowList == cCurveRowListVisible)
 			return true;
 
-		return (vp.record.getFlags() & listMask) != 0;
+		return mTableModel.getListHandler().isListMember(vp.record, mCurveRowList);
 		}
 
 	private void drawVerticalMeanLine(Rectangle baseGraphRect, Rectangle[][] splitCurveBounds) {
@@ -2088,9 +2186,8 @@ public class JVisualization2D extends JVisualization {
 		int[][] count = new int[mHVCount][catCount];
 		float[][] xmean = new float[mHVCount][catCount];
 		float[][] stdDev = new float[mHVCount][catCount];
-		long mask = mTableModel.getListHandler().getListMask(mCurveRowList);
 		for (int i=0; i<mDataPoints; i++) {
-			if (isConsideredForCurve(mPoint[i], mask)) {
+			if (isConsideredForCurve(mPoint[i])) {
 				int cat = (catCount == 1) ? 0 : getSplitCurveCategoryIndex(mPoint[i]);
 				xmean[mPoint[i].hvIndex][cat] += mPoint[i].screenX;
 				count[mPoint[i].hvIndex][cat]++;
@@ -2105,7 +2202,7 @@ public class JVisualization2D extends JVisualization {
 		boolean showStdDev = ((mCurveInfo & cCurveStandardDeviation) != 0);
 		if (showStdDev) {
 			for (int i=0; i<mDataPoints; i++) {
-				if (isConsideredForCurve(mPoint[i], mask)) {
+				if (isConsideredForCurve(mPoint[i])) {
 					int cat = (catCount == 1) ? 0 : getSplitCurveCategoryIndex(mPoint[i]);
 					stdDev[mPoint[i].hvIndex][cat] += (mPoint[i].screenX - xmean[mPoint[i].hvIndex][cat])
 											   		* (mPoint[i].screenX - xmean[mPoint[i].hvIndex][cat]);
@@ -2156,9 +2253,8 @@ public class JVisualization2D extends JVisualization {
 		int[][] count = new int[mHVCount][catCount];
 		float[][] ymean = new float[mHVCount][catCount];
 		float[][] stdDev = new float[mHVCount][catCount];
-		long mask = mTableModel.getListHandler().getListMask(mCurveRowList);
 		for (int i=0; i<mDataPoints; i++) {
-			if (isConsideredForCurve(mPoint[i], mask)) {
+			if (isConsideredForCurve(mPoint[i])) {
 				int cat = (catCount == 1) ? 0 : getSplitCurveCategoryIndex(mPoint[i]);
 				ymean[mPoint[i].hvIndex][cat] += mPoint[i].screenY;
 				count[mPoint[i].hvIndex][cat]++;
@@ -2173,7 +2269,7 @@ public class JVisualization2D extends JVisualization {
 		boolean showStdDev = ((mCurveInfo & cCurveStandardDeviation) != 0);
 		if (showStdDev) {
 			for (int i=0; i<mDataPoints; i++) {
-				if (isConsideredForCurve(mPoint[i], mask)) {
+				if (isConsideredForCurve(mPoint[i])) {
 					int cat = (catCount == 1) ? 0 : getSplitCurveCategoryIndex(mPoint[i]);
 					stdDev[mPoint[i].hvIndex][cat] += (mPoint[i].screenY - ymean[mPoint[i].hvIndex][cat])
 													* (mPoint[i].screenY - ymean[mPoint[i].hvIndex][cat]);
@@ -2256,12 +2352,11 @@ public class JVisualization2D extends JVisualization {
 					: baseGraphRect.y + baseGraphRect.height * (1 - (y - (float)mAxisVisMin[1]) / (float)(mAxisVisMax[1] - mAxisVisMin[1]));
 			}
 
-		long mask = mTableModel.getListHandler().getListMask(mCurveRowList);
 		if ((mCurveInfo & cCurveStandardDeviation) != 0) {
 			mCurveStdDev = new float[mHVCount][1];
 			int[][] stdDevCount = new int[mHVCount][1];
 			for (int i=0; i<mDataPoints; i++) {
-				if (isConsideredForCurve(mPoint[i], mask)) {
+				if (isConsideredForCurve(mPoint[i])) {
 					int hv = mPoint[i].hvIndex;
 					int dx = mSplitter == null ? 0 : mSplitter.getHIndex(hv) * mSplitter.getGridWidth();
 					int dy = mSplitter == null ? 0 : mSplitter.getVIndex(hv) * mSplitter.getGridHeight();
@@ -2301,9 +2396,8 @@ public class JVisualization2D extends JVisualization {
 				xmax[hv][cat] = Float.MIN_VALUE;
 				}
 			}
-		long mask = mTableModel.getListHandler().getListMask(mCurveRowList);
 		for (int i=0; i<mDataPoints; i++) {
-			if (isConsideredForCurve(mPoint[i], mask)) {
+			if (isConsideredForCurve(mPoint[i])) {
 				int cat = (catCount == 1) ? 0 : getSplitCurveCategoryIndex(mPoint[i]);
 				int hv = mPoint[i].hvIndex;
 				if (mCurveXMin[hv][cat] > mPoint[i].screenX)
@@ -2335,7 +2429,7 @@ public class JVisualization2D extends JVisualization {
 		float weightFactor = mCurveSmoothing * mCurveSmoothing * 200f;
 
 		for (int i=0; i<mDataPoints; i++) {
-			if (isConsideredForCurve(mPoint[i], mask)) {
+			if (isConsideredForCurve(mPoint[i])) {
 				int cat = (catCount == 1) ? 0 : getSplitCurveCategoryIndex(mPoint[i]);
 				int hv = mPoint[i].hvIndex;
 				if (mCurveY[hv][cat] != null) {
@@ -2359,7 +2453,7 @@ public class JVisualization2D extends JVisualization {
 			mCurveStdDev = new float[mHVCount][catCount];
 			int[][] stdDevCount = new int[mHVCount][catCount];
 			for (int i=0; i<mDataPoints; i++) {
-				if (isConsideredForCurve(mPoint[i], mask)) {
+				if (isConsideredForCurve(mPoint[i])) {
 					int cat = (catCount == 1) ? 0 : getSplitCurveCategoryIndex(mPoint[i]);
 					int hv = mPoint[i].hvIndex;
 					if (mCurveY[hv][cat] != null) {
@@ -2514,9 +2608,8 @@ public class JVisualization2D extends JVisualization {
 		double[][] sy = new double[mHVCount][catCount];
 		double[][] sx2 = new double[mHVCount][catCount];
 		double[][] sxy = new double[mHVCount][catCount];
-		long mask = mTableModel.getListHandler().getListMask(mCurveRowList);
 		for (int i=0; i<mDataPoints; i++) {
-			if (isConsideredForCurve(mPoint[i], mask)) {
+			if (isConsideredForCurve(mPoint[i])) {
 				int cat = (catCount == 1) ? 0 : getSplitCurveCategoryIndex(mPoint[i]);
 				sx[mPoint[i].hvIndex][cat] += mPoint[i].screenX;
 				sy[mPoint[i].hvIndex][cat] += mPoint[i].screenY;
@@ -2539,7 +2632,7 @@ public class JVisualization2D extends JVisualization {
 		if (showStdDev) {
 			stdDev = new double[mHVCount][catCount];
 			for (int i=0; i<mDataPoints; i++) {
-				if (isConsideredForCurve(mPoint[i], mask)) {
+				if (isConsideredForCurve(mPoint[i])) {
 					int cat = (catCount == 1) ? 0 : getSplitCurveCategoryIndex(mPoint[i]);
 					double b2 = mPoint[i].screenY + mPoint[i].screenX/m[mPoint[i].hvIndex][cat];
 					double xs = (b2-b[mPoint[i].hvIndex][cat])/(m[mPoint[i].hvIndex][cat]+1.0f/m[mPoint[i].hvIndex][cat]);
@@ -2665,7 +2758,6 @@ public class JVisualization2D extends JVisualization {
 		setFontHeight(scaledFontHeight);
 		mG.setColor(getContrastGrey(SCALE_STRONG));
 
-		final long mask = mTableModel.getListHandler().getListMask(mCurveRowList);
 
 		mCorrelationCoefficient = new float[mHVCount];
 		if (mHVCount == 1) {
@@ -2675,7 +2767,7 @@ public class JVisualization2D extends JVisualization {
 							return mDataPoints;
 							}
 						public double getValueAt(int row) {
-							return isConsideredForCurve(mPoint[row], mask) ? getAxisValue(mPoint[row].record, 0) : Float.NaN;
+							return isConsideredForCurve(mPoint[row]) ? getAxisValue(mPoint[row].record, 0) : Float.NaN;
 							}
 						},
 					new INumericalDataColumn() {
@@ -2683,7 +2775,7 @@ public class JVisualization2D extends JVisualization {
 							return mDataPoints;
 							}
 						public double getValueAt(int row) {
-							return isConsideredForCurve(mPoint[row], mask) ? getAxisValue(mPoint[row].record, 1) : Float.NaN;
+							return isConsideredForCurve(mPoint[row]) ? getAxisValue(mPoint[row].record, 1) : Float.NaN;
 							}
 						},
 					mShownCorrelationType);
@@ -2696,7 +2788,7 @@ public class JVisualization2D extends JVisualization {
 		else {
 			int[] count = new int[mHVCount];
 			for (int i=0; i<mDataPoints; i++)
-				if (isConsideredForCurve(mPoint[i], mask))
+				if (isConsideredForCurve(mPoint[i]))
 					count[mPoint[i].hvIndex]++;
 			float[][][] value = new float[mHVCount][2][];
 			for (int hv=0; hv<mHVCount; hv++) {
@@ -2705,7 +2797,7 @@ public class JVisualization2D extends JVisualization {
 				}
 			count = new int[mHVCount];
 			for (int i=0; i<mDataPoints; i++) {
-				if (isConsideredForCurve(mPoint[i], mask)) {
+				if (isConsideredForCurve(mPoint[i])) {
 					value[mPoint[i].hvIndex][0][count[mPoint[i].hvIndex]] = getAxisValue(mPoint[i].record, 0);
 					value[mPoint[i].hvIndex][1][count[mPoint[i].hvIndex]] = getAxisValue(mPoint[i].record, 1);
 					count[mPoint[i].hvIndex]++;
@@ -2990,12 +3082,14 @@ public class JVisualization2D extends JVisualization {
 		super.compoundTableChanged(e);
 
 		if (e.getType() == CompoundTableEvent.cChangeExcluded) {
-			if (mChartType.isDistributionPlot()) {  // TODO: why not pies and bars???
-				invalidateOffImage(true);
+			if (isExclusionChangeShown(e)) {	// e.g. rows filtered out within a zoomed-out area don't matter
+				if (mChartType.isDistributionPlot()) {  // TODO: why not pies and bars???
+					invalidateOffImage(true);
+					}
+				if (mBackgroundColorConsidered == BACKGROUND_VISIBLE_RECORDS)
+					mBackgroundValid = false;
+				mCurveY = null;
 				}
-			if (mBackgroundColorConsidered == BACKGROUND_VISIBLE_RECORDS)
-				mBackgroundValid = false;
-			mCurveY = null;
 			}
 		else if (e.getType() == CompoundTableEvent.cAddRows
 			  || e.getType() == CompoundTableEvent.cDeleteRows) {
@@ -3240,7 +3334,6 @@ public class JVisualization2D extends JVisualization {
 			mMarkerTransparency = markerTransparency;
 			mMarkerLabelTransparency = labelTransparency;
 			mConnectionLineTransparency = connectionLineTransparency;
-			mBackgroundValid = false;
 			invalidateOffImage(false);
 			}
 		}
@@ -3412,6 +3505,23 @@ public class JVisualization2D extends JVisualization {
 		return super.getDistanceToMarker(vp, x, y);
 		}
 
+	@Override
+	protected float getMarkerHitRange(VisualizationPoint vp) {
+		if (mMultiValueMarkerMode != cMultiValueMarkerModeNone
+		 && mMultiValueMarkerColumns != null
+		 && mChartType.isShownAsMarker(vp)) {
+			if (mMultiValueMarkerMode == cMultiValueMarkerModePies)
+				return Float.NaN;	// pie slice radii depend on the values
+
+			// getDistanceToMarker() considers bars only within these limits
+			float maxdx = (mMultiValueMarkerColumns.length*Math.max(2, Math.round(vp.widthOrAngle1 /(2f*(float)Math.sqrt(mMultiValueMarkerColumns.length))))+8)/2f;
+			float maxdy = Math.round(vp.heightOrAngle2 *2f)+4;
+			return Math.max(maxdx, maxdy);
+			}
+
+		return super.getMarkerHitRange(vp);
+		}
+
 	@Override
 	protected float getMarkerWidth(VisualizationPoint vp) {
 		// Pie charts don't use this function because marker location is handled
@@ -4143,6 +4253,8 @@ public class JVisualization2D extends JVisualization {
 	 * @param graphBounds
 	 */
 	private void calculateBackground(Rectangle graphBounds) {
+		mBackgroundHash = getBackgroundHash(graphBounds);
+
 		float visFactorX = (float)(mPruningBarHigh[0] - mPruningBarLow[0]);
 		float visFactorY = (float)(mPruningBarHigh[1] - mPruningBarLow[1]);
 
@@ -4332,81 +4444,44 @@ public class JVisualization2D extends JVisualization {
 				}
 			}
 
-		// Create helper array with influence factors to be applied
-		float[][] influence = new float[bgRadiusX][bgRadiusY];
-		for (int x=0; x<bgRadiusX; x++) {
-			float dx = (0.5f + x) / bgRadiusX;
-			for (int y=0; y<bgRadiusY; y++) {
-				float dy = (0.5f + y) / bgRadiusY;
-				float distance = (float)Math.sqrt(dx*dx + dy*dy);
-				if (distance <= 1f)
-					influence[x][y] = (float)(0.5 + Math.cos(Math.PI*distance) / 2.0);
-//					influence[x][y] = 1f - distance;
-				}
-			}
-
-		float[][][] smoothR = new float[mHVCount][visBGWidth][visBGHeight];
-		float[][][] smoothG = new float[mHVCount][visBGWidth][visBGHeight];
-		float[][][] smoothB = new float[mHVCount][visBGWidth][visBGHeight];
-		float[][][] smoothC = new float[mHVCount][visBGWidth][visBGHeight];
-
-		int marginX = bgZoomX0 + bgZoomX1;
-		int marginY = bgZoomY0 + bgZoomY1;
-
-		for (int x=0; x<bgWidth; x++) {
-			int xmin = x-bgRadiusX+1-bgMarginX0;
-			if (xmin < 0 && (!xIsCyclic || xmin >= -marginX))
-				xmin = 0;
-			int xmax = x+bgRadiusX-1-bgMarginX0;
-			if (xmax >= visBGWidth && (!xIsCyclic || xmax - visBGWidth < marginX))
-				xmax = visBGWidth-1;
-
-			for (int y=0; y<bgHeight; y++) {
-				int ymin = y-bgRadiusY+1-bgMarginY0;
-				if (ymin < 0 && (!yIsCyclic || ymin >= -marginY))
-					ymin = 0;
-				int ymax = y+bgRadiusY-1-bgMarginY0;
-				if (ymax >= visBGHeight && (!yIsCyclic || ymax - visBGHeight < marginY))
-					ymax = visBGHeight-1;
-
-				for (int hv=0; hv<mHVCount; hv++) {
-					if (backgroundC[hv][x][y] > 0f) {
-						for (int ix=xmin; ix<=xmax; ix++) {
-							if ((ix < 0 && ix >= -marginX) || (ix >= visBGWidth && ix < visBGWidth + marginX))
-								continue;
-
-							int dx = Math.abs(x-ix-bgMarginX0);
-
-							int destX = ix;
-							if (destX < 0)
-								destX += visBGWidth + marginX;
-							else if (destX >= visBGWidth)
-								destX -= visBGWidth + marginX;
-
-							for (int iy=ymin; iy<=ymax; iy++) {
-								if ((iy < 0 && iy >= -marginY) || (iy >= visBGHeight && iy < visBGHeight + marginY))
-									continue;
-
-								int dy = Math.abs(y-iy-bgMarginY0);
-
-								int destY = iy;
-								if (destY < 0)
-									destY += visBGHeight + marginY;
-								else if (destY >= visBGHeight)
-									destY -= visBGHeight + marginY;
-
-								if (influence[dx][dy] > 0f) {
-									smoothR[hv][destX][destY] += influence[dx][dy] * backgroundR[hv][x][y];
-									smoothG[hv][destX][destY] += influence[dx][dy] * backgroundG[hv][x][y];
-									smoothB[hv][destX][destY] += influence[dx][dy] * backgroundB[hv][x][y];
-									smoothC[hv][destX][destY] += influence[dx][dy] * backgroundC[hv][x][y];
-									}
-								}
-							}
-						}
-					}
-				}
-			}
+		// Spread grid values over their neighbourhood. The influence decreases with a Gaussian of the
+		// distance, which is separable. Thus, values are spread along x first and then along y, which
+		// is done in parallel for all split views and grid lines.
+		SpreadTable spreadX = new SpreadTable(bgWidth, bgRadiusX, bgMarginX0, visBGWidth, bgZoomX0 + bgZoomX1, xIsCyclic);
+		SpreadTable spreadY = new SpreadTable(bgHeight, bgRadiusY, bgMarginY0, visBGHeight, bgZoomY0 + bgZoomY1, yIsCyclic);
+
+		float[][][][] backgroundRGBC = { backgroundR, backgroundG, backgroundB, backgroundC };
+		float[][][][] spreadRGBC = new float[4][mHVCount][visBGWidth][bgHeight];
+		ComputeScheduler scheduler = ComputeScheduler.getInstance();
+		scheduler.runParallelChunks(ComputeScheduler.PRIORITY_INTERACTIVE, mHVCount * bgHeight, BACKGROUND_MAX_CHUNK_SIZE, (start, end) -> {
+			for (int i=start; i<end; i++) {
+				int hv = i / bgHeight;
+				int y = i % bgHeight;
+				for (int x=0; x<bgWidth; x++)
+					if (backgroundC[hv][x][y] > 0f)
+						for (int j=0; j<spreadX.dest[x].length; j++)
+							for (int c=0; c<4; c++)
+								spreadRGBC[c][hv][spreadX.dest[x][j]][y] += spreadX.weight[x][j] * backgroundRGBC[c][hv][x][y];
+				}
+			} );
+
+		float[][][][] smoothRGBC = new float[4][mHVCount][visBGWidth][visBGHeight];
+		scheduler.runParallelChunks(ComputeScheduler.PRIORITY_INTERACTIVE, mHVCount * visBGWidth, BACKGROUND_MAX_CHUNK_SIZE, (start, end) -> {
+			for (int i=start; i<end; i++) {
+				int hv = i / visBGWidth;
+				int x = i % visBGWidth;
+				for (int y=0; y<bgHeight; y++)
+					if (spreadRGBC[3][hv][x][y] > 0f)
+						for (int j=0; j<spreadY.dest[y].length; j++)
+							for (int c=0; c<4; c++)
+								smoothRGBC[c][hv][x][spreadY.dest[y][j]] += spreadY.weight[y][j] * spreadRGBC[c][hv][x][y];
+				}
+			} );
+
+		float[][][] smoothR = smoothRGBC[0];
+		float[][][] smoothG = smoothRGBC[1];
+		float[][][] smoothB = smoothRGBC[2];
+		float[][][] smoothC = smoothRGBC[3];
 
 		// find highest sum of RGB components
 		float max = (float)0.0;
@@ -4446,11 +4521,17 @@ public class JVisualization2D extends JVisualization {
 
 		int d = pixelPerColor - 1;
 		mMarkerBackgroundImage = new BufferedImage[mHVCount];
+		byte[][] imageData = new byte[mHVCount][];
 		for (int hv=0; hv<mHVCount; hv++) {
 			mMarkerBackgroundImage[hv] = new BufferedImage(graphBounds.width, graphBounds.height, BufferedImage.TYPE_4BYTE_ABGR);
-			byte[] data = ((DataBufferByte)mMarkerBackgroundImage[hv].getRaster().getDataBuffer()).getData();
-			int index = 0;
-			for (int y=graphBounds.height-1; y>=0; y--) {
+			imageData[hv] = ((DataBufferByte)mMarkerBackgroundImage[hv].getRaster().getDataBuffer()).getData();
+			}
+		scheduler.runParallelChunks(ComputeScheduler.PRIORITY_INTERACTIVE, mHVCount * graphBounds.height, BACKGROUND_MAX_CHUNK_SIZE, (start, end) -> {
+			for (int i=start; i<end; i++) {
+				int hv = i / graphBounds.height;
+				int y = i % graphBounds.height;
+				byte[] data = imageData[hv];
+				int index = 4 * (graphBounds.height - 1 - y) * graphBounds.width;
 				int sy = y / pixelPerColor;
 				int iy = y % pixelPerColor;
 				for (int x=0; x<graphBounds.width; x++) {
@@ -4474,11 +4555,41 @@ public class JVisualization2D extends JVisualization {
 								  + f[d-iy][d-ix] * background[3][hv][sx+1][sy+1]);
 					}
 				}
-			}
+			} );
 
 		mBackgroundValid = true;
 		}
 
+	/**
+	 * Calculates a hash of the graph bounds, zoom state, detail level and of the screen positions
+	 * and background colors of all points. Points contribute independently of their order,
+	 * because paintMarkers() may reorder them.
+	 * @param graphBounds
+	 * @return hash of everything that may change the background when coordinates are recalculated
+	 */
+	private long getBackgroundHash(Rectangle graphBounds) {
+		long hash = graphBounds.hashCode();
+		hash = 31 * hash + Arrays.hashCode(mPruningBarLow);
+		hash = 31 * hash + Arrays.hashCode(mPruningBarHigh);
+		hash = 31 * hash + Arrays.hashCode(mAxisVisMin);
+		hash = 31 * hash + Arrays.hashCode(mAxisVisMax);
+		hash = 31 * hash + mHVCount;
+		hash = 31 * hash + (mIsHighResolution ? 1 : renderFaster() ? 2 : 3);
+
+		long pointHash = 0;
+		for (VisualizationPoint vp:mPoint) {
+			long h = vp.record.getID();
+			h = 31 * h + Float.floatToIntBits(vp.screenX);
+			h = 31 * h + Float.floatToIntBits(vp.screenY);
+			h = 31 * h + vp.hvIndex;
+			h = 31 * h + ((VisualizationPoint2D)vp).backgroundColorIndex;
+			h *= 0x9E3779B97F4A7C15L;
+			pointHash += h ^ (h >>> 32);
+			}
+
+		return 31 * hash + pointHash;
+		}
+
 	private void drawBackground(Graphics2D g, Rectangle graphRect, int hvIndex) {
 		ViewPort port = new ViewPort();
 
@@ -5540,4 +5651,67 @@ protected void paintLegend(Rectangle bounds, boolean transparentBG) {
 			return max[dimension] - min[dimension];
 			}
 		}
+
+	/**
+	 * For every background grid position along one axis this contains the positions of the visible
+	 * background grid, to which it spreads its color, and the respective influence factors.
+	 * The influence is a Gaussian of the distance, which drops to 50% at half the radius. It is
+	 * lowered by its value at the radius and rescaled, such that it tapers to 0 at the radius
+	 * instead of ending with a hard edge, which would draw visible rings around sparse points.
+	 */
+	private static class SpreadTable {
+		private static final float VARIANCE = (float)(0.125 / Math.log(2.0));	// relative to squared radius
+
+		int[][] dest;
+		float[][] weight;
+
+		/**
+		 * @param size background grid size including margins
+		 * @param radius influence radius in grid positions
+		 * @param margin0 low margin of the background grid
+		 * @param visSize size of the visible background grid
+		 * @param zoomMargin size of both zoomed-out areas together
+		 * @param isCyclic
+		 */
+		SpreadTable(int size, int radius, int margin0, int visSize, int zoomMargin, boolean isCyclic) {
+			float edgeInfluence = (float)Math.exp(-1f / (2f * VARIANCE));
+			float[] influence = new float[radius];
+			for (int i=0; i<radius; i++) {
+				float distance = (0.5f + i) / radius;
+				influence[i] = ((float)Math.exp(-distance * distance / (2f * VARIANCE)) - edgeInfluence) / (1f - edgeInfluence);
+				}
+
+			dest = new int[size][];
+			weight = new float[size][];
+			int[] destBuffer = new int[2*radius];
+			float[] weightBuffer = new float[2*radius];
+			for (int i=0; i<size; i++) {
+				int min = i-radius+1-margin0;
+				if (min < 0 && (!isCyclic || min >= -zoomMargin))
+					min = 0;
+				int max = i+radius-1-margin0;
+				if (max >= visSize && (!isCyclic || max - visSize < zoomMargin))
+					max = visSize-1;
+
+				int count = 0;
+				for (int j=min; j<=max; j++) {
+					if ((j < 0 && j >= -zoomMargin) || (j >= visSize && j < visSize + zoomMargin))
+						continue;
+
+					int destIndex = j;
+					if (destIndex < 0)
+						destIndex += visSize + zoomMargin;
+					else if (destIndex >= visSize)
+						destIndex -= visSize + zoomMargin;
+
+					destBuffer[count] = destIndex;
+					weightBuffer[count] = influence[Math.abs(i-j-margin0)];
+					count++;
+					}
+
+				dest[i] = Arrays.copyOf(destBuffer, count);
+				weight[i] = Arrays.copyOf(weightBuffer, count);
+				}
+			}
+		}
 	}
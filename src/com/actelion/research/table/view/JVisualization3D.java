@@ -658,6 +658,10 @@ public class JVisualization3D extends JVisualization implements ComponentListene
 		}
 
 	private void paintContent(Graphics g, Rectangle bounds, Rectangle clipRect) {
+		// highlight-only repaints (clipRect != null) don't change markers or labels; therefore the index is kept
+		if (clipRect == null)
+			invalidateMarkerIndex();
+
 		mHVCount = 1;	// we don't use view splitting in 3D-views
 
 		if (mChartInfo == null) {
@@ -695,13 +699,16 @@ public class JVisualization3D extends JVisualization implements ComponentListene
 				}
 			}
 
-		if (!mCoordinatesValid)
+		if (!mCoordinatesValid) {
+			invalidateMarkerIndex();
 			calculateCoordinates(g, bounds);
+			}
 
 		if (!mIsAdjusting && !mDepthOrderValid) {
 			// this is needed for highlighting the frontmost marker by mouse movement
 			   Arrays.sort(mPoint, new VisualizationPoint3DComparator());
 			   mDepthOrderValid = true;
+			   invalidateMarkerIndex();
 			   }
 
 		if (!(mGridMode == cGridModeHidden && mScaleMode == cScaleModeHidden)) {
@@ -836,7 +843,7 @@ public class JVisualization3D extends JVisualization implements ComponentListene
 		if (isMolecule) {
 			if (mLabelMolecule == null)
 				mLabelMolecule = new StereoMolecule();
-			StereoMolecule mol = mTableModel.getChemicalStructure(vp.record, mLabelColumn[position], CompoundTableModel.ATOM_COLOR_MODE_NONE, mLabelMolecule);
+			StereoMolecule mol = mTableModel.getCachedChemicalStructure(vp.record, mLabelColumn[position], CompoundTableModel.ATOM_COLOR_MODE_NONE, mLabelMolecule);
 			if (mol == null)
 				return null;
 
@@ -2738,7 +2745,7 @@ public class JVisualization3D extends JVisualization implements ComponentListene
 			if (isMolecule) {
 				if (mLabelMolecule == null)
 					mLabelMolecule = new StereoMolecule();
-				StereoMolecule mol = mTableModel.getChemicalStructure(vp.record, column, CompoundTableModel.ATOM_COLOR_MODE_EXPLICIT, mLabelMolecule);
+				StereoMolecule mol = mTableModel.getCachedChemicalStructure(vp.record, column, CompoundTableModel.ATOM_COLOR_MODE_EXPLICIT, mLabelMolecule);
 				if (mol == null)
 					return;
 
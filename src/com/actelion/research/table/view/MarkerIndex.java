@@ -0,0 +1,198 @@
+/*
+ * Copyright 2017 Idorsia Pharmaceuticals Ltd., Hegenheimermattweg 91, CH-4123 Allschwil, Switzerland
+ *
+ * This file is part of DataWarrior.
+ *
+ * DataWarrior is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * DataWarrior is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License along with DataWarrior.
+ * If not, see http://www.gnu.org/licenses/.
+ *
+ * @author Thomas Sander
+ */
+
+package com.actelion.research.table.view;
+
+import java.util.Arrays;
+
+/**
+ * Uniform grid over the visible area of a JVisualization, which allows to locate marker and
+ * label candidates for a screen position without looking at all VisualizationPoints.
+ * Every visible point is stored in the cell containing its marker center. Additionally, it is
+ * stored in all cells overlapped by any of its labels. Candidates for a position are all points
+ * of all cells within the maximum hit range of any marker from the position's cell. To not let
+ * few large markers inflate this range, markers with a large hit range are stored in all cells
+ * overlapped by their hit area instead.
+ * The index reflects screen coordinates, marker sizes and label positions at the time of its
+ * creation and, thus, must be recreated whenever the view is painted.
+ */
+class MarkerIndex {
+	private static final int POINTS_PER_CELL = 4;
+	private static final int MIN_CELL_SIZE = 4;
+	private static final int MAX_CELLS_PER_RANGE = 8;	// larger markers are stored in all cells of their hit area
+
+	private final VisualizationPoint[] mPoint;
+	private final int mPointCount,mWidth,mHeight;
+	private int mCellSize,mColumns,mRows,mMaxRange;
+	private int[] mCellStart,mCellPoint;
+	private int[] mCandidate;
+
+	/**
+	 * Creates the index from the current screen coordinates of all visible points.
+	 * If the hit range of any visible marker is unknown, then the index is not valid.
+	 * @param visualization
+	 * @param point
+	 * @param pointCount
+	 * @param width of visible area
+	 * @param height of visible area
+	 */
+	public MarkerIndex(JVisualization visualization, VisualizationPoint[] point, int pointCount, int width, int height) {
+		mPoint = point;
+		mPointCount = pointCount;
+		mWidth = Math.max(1, width);
+		mHeight = Math.max(1, height);
+
+		int visibleCount = 0;
+		for (int i=0; i<pointCount; i++) {
+			if (visualization.isVisible(point[i])) {
+				if (Float.isNaN(visualization.getMarkerHitRange(point[i]))
+				 || Float.isNaN(point[i].screenX) || Float.isNaN(point[i].screenY))
+					return;	// mCellSize == 0 marks the index as invalid
+				visibleCount++;
+				}
+			}
+
+		mCellSize = Math.max(MIN_CELL_SIZE, (int)Math.sqrt((double)mWidth * mHeight * POINTS_PER_CELL / Math.max(1, visibleCount)));
+		mColumns = (mWidth + mCellSize - 1) / mCellSize;
+		mRows = (mHeight + mCellSize - 1) / mCellSize;
+
+		// first pass counts entries per cell, second pass fills them in point order
+		mCellStart = new int[mColumns * mRows + 1];
+		int[] lastPoint = new int[mColumns * mRows];
+		for (int pass=0; pass<2; pass++) {
+			Arrays.fill(lastPoint, -1);
+			int[] cellIndex = (pass == 0) ? null : Arrays.copyOf(mCellStart, mCellStart.length - 1);
+			for (int i=0; i<pointCount; i++) {
+				if (visualization.isVisible(point[i])) {
+					VisualizationPoint vp = point[i];
+					float range = visualization.getMarkerHitRange(vp);
+					if (vp.screenX > -range && vp.screenX < mWidth + range
+					 && vp.screenY > -range && vp.screenY < mHeight + range) {
+						if (range > MAX_CELLS_PER_RANGE * mCellSize)
+							addToCells(i, getColumn(vp.screenX - range), getRow(vp.screenY - range),
+									   getColumn(vp.screenX + range), getRow(vp.screenY + range), lastPoint, cellIndex);
+						else {
+							addToCells(i, getColumn(vp.screenX), getRow(vp.screenY), getColumn(vp.screenX), getRow(vp.screenY), lastPoint, cellIndex);
+							mMaxRange = Math.max(mMaxRange, (int)Math.ceil(range));
+							}
+						}
+
+					for (LabelPosition2D lp=vp.labelPosition; lp!=null; lp=lp.getNext()) {
+						if (lp.getScreenX2() >= 0 && lp.getScreenX1() < mWidth
+						 && lp.getScreenY2() >= 0 && lp.getScreenY1() < mHeight)
+							addToCells(i, getColumn(lp.getScreenX1()), getRow(lp.getScreenY1()),
+									   getColumn(lp.getScreenX2()), getRow(lp.getScreenY2()), lastPoint, cellIndex);
+						}
+					}
+				}
+
+			if (pass == 0) {
+				for (int cell=mColumns*mRows; cell>0; cell--)
+					mCellStart[cell] = mCellStart[cell-1];
+				mCellStart[0] = 0;
+				for (int cell=1; cell<=mColumns*mRows; cell++)
+					mCellStart[cell] += mCellStart[cell-1];
+				mCellPoint = new int[mCellStart[mColumns*mRows]];
+				}
+			}
+
+		mCandidate = new int[64];
+		}
+
+	/**
+	 * @return false, if the hit range of any marker is unknown and points must be searched exhaustively
+	 */
+	public boolean isValid() {
+		return mCellSize != 0;
+		}
+
+	/**
+	 * @param point the VisualizationPoint array of the view
+	 * @param pointCount
+	 * @return whether this index was created from the given points
+	 */
+	public boolean isIndexOf(VisualizationPoint[] point, int pointCount) {
+		return point == mPoint && pointCount == mPointCount;
+		}
+
+	/**
+	 * @param x
+	 * @param y
+	 * @return whether the position is within the indexed area
+	 */
+	public boolean covers(int x, int y) {
+		return x >= 0 && x < mWidth && y >= 0 && y < mHeight;
+		}
+
+	/**
+	 * Returns all points, whose marker or label may be hit at the given position. Only positions
+	 * covered by this index are allowed.
+	 * @param x
+	 * @param y
+	 * @return point indexes in ascending order
+	 */
+	public int[] getCandidates(int x, int y) {
+		int column1 = getColumn(x - mMaxRange);
+		int column2 = getColumn(x + mMaxRange);
+		int row1 = getRow(y - mMaxRange);
+		int row2 = getRow(y + mMaxRange);
+
+		int count = 0;
+		for (int row=row1; row<=row2; row++) {
+			for (int column=column1; column<=column2; column++) {
+				int cell = row * mColumns + column;
+				int cellCount = mCellStart[cell+1] - mCellStart[cell];
+				if (count + cellCount > mCandidate.length)
+					mCandidate = Arrays.copyOf(mCandidate, Math.max(2 * mCandidate.length, count + cellCount));
+				System.arraycopy(mCellPoint, mCellStart[cell], mCandidate, count, cellCount);
+				count += cellCount;
+				}
+			}
+
+		Arrays.sort(mCandidate, 0, count);
+		int uniqueCount = 0;
+		for (int i=0; i<count; i++)
+			if (uniqueCount == 0 || mCandidate[uniqueCount-1] != mCandidate[i])
+				mCandidate[uniqueCount++] = mCandidate[i];
+
+		return Arrays.copyOf(mCandidate, uniqueCount);
+		}
+
+	private void addToCells(int point, int column1, int row1, int column2, int row2, int[] lastPoint, int[] cellIndex) {
+		for (int row=row1; row<=row2; row++) {
+			for (int column=column1; column<=column2; column++) {
+				int cell = row * mColumns + column;
+				if (lastPoint[cell] != point) {
+					lastPoint[cell] = point;
+					if (cellIndex == null)
+						mCellStart[cell]++;
+					else
+						mCellPoint[cellIndex[cell]++] = point;
+					}
+				}
+			}
+		}
+
+	private int getColumn(float x) {
+		return Math.min(mColumns-1, Math.max(0, (int)Math.floor(x / mCellSize)));
+		}
+
+	private int getRow(float y) {
+		return Math.min(mRows-1, Math.max(0, (int)Math.floor(y / mCellSize)));
+		}
+	}
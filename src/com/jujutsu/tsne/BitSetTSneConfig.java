@@ -0,0 +1,30 @@
+package com.jujutsu.tsne;
+
+/**
+ * Configuration for t-SNE on binary fingerprints, which are passed as packed long[] rows
+ * rather than as a dense double matrix. Fingerprints are compared by their Jaccard distance.
+ * Neither PCA nor normalization is applied to the input data.
+ */
+public class BitSetTSneConfig extends TSneConfig {
+	protected long[][] bits;
+
+	public BitSetTSneConfig(long[][] bits, int outputDims, double perplexity, int max_iter,
+			double theta, boolean silent, boolean print_error) {
+		super(null, outputDims, bits[0].length * 64, perplexity, max_iter, false, theta, silent, print_error);
+		this.bits = bits;
+	}
+
+	public long[][] getBits() {
+		return bits;
+	}
+
+	@Override
+	public int getXStartDim() {
+		return bits[0].length * 64;
+	}
+
+	@Override
+	public int getNrRows() {
+		return bits.length;
+	}
+}
@@ -33,6 +33,7 @@
 package com.jujutsu.tsne.barneshut;
 
 import com.actelion.research.calc.ProgressController;
+import com.jujutsu.tsne.BitSetTSneConfig;
 import com.jujutsu.tsne.PrincipalComponentAnalysis;
 import com.jujutsu.tsne.TSneConfiguration;
 import com.jujutsu.utils.MatrixOps;
@@ -97,7 +98,9 @@ public class BHTSne implements BarnesHutTSne {
 		if (pc.threadMustDie())
 			return null;
 
-		double [] X = flatten(Xin);	
+		// Binary fingerprints are neither flattened nor normalized, but compared as they are
+		long [][] bits = (parameterObject instanceof BitSetTSneConfig) ? ((BitSetTSneConfig)parameterObject).getBits() : null;
+		double [] X = (bits != null) ? null : flatten(Xin);
 		int N = parameterObject.getNrRows();
 		int no_dims = parameterObject.getOutputDims();
 
@@ -124,12 +127,14 @@ public class BHTSne implements BarnesHutTSne {
 		pc.startProgress("BH-TSNE Computing input similarities...", 0, 0);
 		long start = System.currentTimeMillis();
 		//zeroMean(X, N, D);
-		double max_X = .0;
-		for(int i = 0; i < N * D; i++) {
-			if(X[i] > max_X) max_X = X[i];
-		}
+		if (X != null) {
+			double max_X = .0;
+			for(int i = 0; i < N * D; i++) {
+				if(X[i] > max_X) max_X = X[i];
+			}
 
-		for(int i = 0; i < N * D; i++) X[i] /= max_X;
+			for(int i = 0; i < N * D; i++) X[i] /= max_X;
+		}
 
 		double [] P = null;
 		int K  = (int) (3 * perplexity);
@@ -167,7 +172,10 @@ public class BHTSne implements BarnesHutTSne {
 		else {
 
 			// Compute asymmetric pairwise input similarities
-			computeGaussianPerplexity(X, N, D, row_P, col_P, val_P, perplexity, K);
+			if (bits != null)
+				computeGaussianPerplexity(createDataPoints(bits), new TanimotoDistance(), N, row_P, col_P, val_P, perplexity, K);
+			else
+				computeGaussianPerplexity(createDataPoints(X, N, D), distance, N, row_P, col_P, val_P, perplexity, K);
 
 			// Verified that val_P,col_P,row_P is the same at this point
 
@@ -465,8 +473,24 @@ if (iter != 0)
 		}
 	}
 
+	DataPoint[] createDataPoints(double [] X, int N, int D) {
+		final DataPoint [] obj_X = new DataPoint [N];
+		for(int n = 0; n < N; n++) {
+			double [] row = MatrixOps.extractRowFromFlatMatrix(X,n,D);
+			obj_X[n] = new DataPoint(D, n, row);
+		}
+		return obj_X;
+	}
+
+	DataPoint[] createDataPoints(long [][] bits) {
+		final DataPoint [] obj_X = new DataPoint [bits.length];
+		for(int n = 0; n < bits.length; n++)
+			obj_X[n] = new BitSetDataPoint(n, bits[n]);
+		return obj_X;
+	}
+
 	// Compute input similarities with a fixed perplexity using ball trees
-	void computeGaussianPerplexity(double [] X, int N, int D, int [] _row_P, int [] _col_P, double [] _val_P, double perplexity, int K) {
+	void computeGaussianPerplexity(DataPoint [] obj_X, Distance distance, int N, int [] _row_P, int [] _col_P, double [] _val_P, double perplexity, int K) {
 		if(perplexity > K) System.out.println("BH-TSNE Perplexity should be lower than K!");
 
 		// Allocate the memory we need
@@ -484,11 +508,6 @@ if (iter != 0)
 
 		// Build ball tree on data set
 		VpTree<DataPoint> tree = new VpTree<DataPoint>(distance);
-		final DataPoint [] obj_X = new DataPoint [N];
-		for(int n = 0; n < N; n++) {
-			double [] row = MatrixOps.extractRowFromFlatMatrix(X,n,D);
-			obj_X[n] = new DataPoint(D, n, row);
-		}
 		tree.create(obj_X);
 
 		// VERIFIED THAT TREES LOOK THE SAME
@@ -0,0 +1,26 @@
+package com.jujutsu.tsne.barneshut;
+
+/**
+ * Data point, whose coordinates are the bits of a binary fingerprint packed into a long[].
+ * Bits are not copied and not expanded into doubles, which keeps large fingerprint data sets
+ * in memory. Distances between BitSetDataPoints are calculated by a TanimotoDistance.
+ */
+public class BitSetDataPoint extends DataPoint {
+	long [] _bits;
+
+	public BitSetDataPoint(int ind, long [] bits) {
+		_D = bits.length * 64;
+		_ind = ind;
+		_bits = bits;
+	}
+
+	@Override
+	double x(int d) {
+		return ((_bits[d >> 6] & (1L << (d & 63))) != 0) ? 1.0 : 0.0;
+	}
+
+	@Override
+	public String toString() {
+		return "BitSetDataPoint (index=" + _ind+ ", Dim=" + _D + ")";
+	}
+}
@@ -0,0 +1,238 @@
+package com.jujutsu.tsne.barneshut;
+
+import static java.lang.Math.exp;
+import static java.lang.Math.log;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.DoubleStream;
+
+import com.actelion.research.table.model.ComputeScheduler;
+
+/**
+ * Barnes-Hut t-SNE, which in addition to ParallelBHTsne runs all remaining per-iteration
+ * and preparation phases multi-threaded: the nearest neighbor search together with the
+ * perplexity calibration, the symmetrization of the input similarities, and the attractive
+ * and repulsive gradient terms, which are computed in blocks of points on a FlatSPTree.
+ * Results are equivalent to BHTSne except for the order of floating point summations.
+ * All phases run on the background pool of the ComputeScheduler.
+ */
+public class FlatBHTSne extends ParallelBHTsne {
+
+	private static final int BLOCK_SIZE = 256;				// points per gradient task
+	private static final int MAX_SEARCH_CHUNK_SIZE = 16;	// points per neighbor search chunk
+	private static final int MAX_ROW_CHUNK_SIZE = 256;		// rows per symmetrization chunk
+	private static final int MAX_VALUE_CHUNK_SIZE = 16384;	// values per chunk of cheap element-wise operations
+
+	// Compute gradient of the t-SNE cost function (using Barnes-Hut algorithm)
+	@Override
+	void computeGradient(double [] P, int [] inp_row_P,
+			int [] inp_col_P, double [] inp_val_P, double [] Y, int N, int D,
+			double [] dC, double theta)
+	{
+		// Construct space-partitioning tree on current map
+		FlatSPTree tree = new FlatSPTree(D, Y, N);
+
+		double[] sum_Q = new double[N];
+		double[] neg_f = new double[N * D];
+
+		// Positive forces go directly into dC; every block writes its own points only
+		int blockCount = (N + BLOCK_SIZE - 1) / BLOCK_SIZE;
+		ComputeScheduler scheduler = ComputeScheduler.getInstance();
+		scheduler.runParallelChunks(ComputeScheduler.PRIORITY_BACKGROUND, blockCount, 1, (firstBlock, endBlock) -> {
+			double[] buff = new double[D];
+			for (int block = firstBlock; block < endBlock; block++) {
+				int end = Math.min(N, (block + 1) * BLOCK_SIZE);
+				for (int n = block * BLOCK_SIZE; n < end; n++) {
+					for (int d = 0; d < D; d++)
+						dC[n * D + d] = .0;
+					tree.computeEdgeForces(n, inp_row_P, inp_col_P, inp_val_P, dC, buff);
+					sum_Q[n] = tree.computeNonEdgeForces(n, theta, neg_f, buff);
+				}
+			}
+		});
+		double totalSum_Q = DoubleStream.of(sum_Q).sum();
+
+		// Compute final t-SNE gradient
+		scheduler.runParallelChunks(ComputeScheduler.PRIORITY_BACKGROUND, N * D, MAX_VALUE_CHUNK_SIZE, (start, end) -> {
+			for (int i = start; i < end; i++)
+				dC[i] -= neg_f[i] / totalSum_Q;
+		});
+	}
+
+	// Makes data zero-mean
+	@Override
+	void zeroMean(double [] X, int N, int D) {
+		// Every chunk of points sums up its coordinates before adding them to the total
+		double [] mean = new double[D];
+		ComputeScheduler scheduler = ComputeScheduler.getInstance();
+		scheduler.runParallelChunks(ComputeScheduler.PRIORITY_BACKGROUND, N, MAX_VALUE_CHUNK_SIZE / Math.max(1, D), (start, end) -> {
+			double [] sum = new double[D];
+			for(int n = start; n < end; n++)
+				for(int d = 0; d < D; d++)
+					sum[d] += X[n * D + d];
+			synchronized(mean) {
+				for(int d = 0; d < D; d++)
+					mean[d] += sum[d];
+			}
+		});
+		for(int d = 0; d < D; d++)
+			mean[d] /= (double) N;
+
+		scheduler.runParallelChunks(ComputeScheduler.PRIORITY_BACKGROUND, N * D, MAX_VALUE_CHUNK_SIZE, (start, end) -> {
+			for (int i = start; i < end; i++)
+				X[i] -= mean[i % D];
+		});
+	}
+
+	// Compute input similarities with a fixed perplexity using ball trees
+	@Override
+	void computeGaussianPerplexity(DataPoint [] obj_X, Distance distance, int N, int [] row_P, int [] col_P, double [] val_P, double perplexity, int K) {
+		row_P[0] = 0;
+		for(int n = 0; n < N; n++) row_P[n + 1] = row_P[n] + K;
+
+		// Build ball tree on data set
+		VpTree<DataPoint> tree = new VpTree<DataPoint>(distance);
+		tree.create(obj_X);
+
+		// Find nearest neighbors and calibrate the Gaussian kernel of every point independently
+		ComputeScheduler.getInstance().runParallelChunks(ComputeScheduler.PRIORITY_BACKGROUND, N, MAX_SEARCH_CHUNK_SIZE, (start, end) -> {
+			double [] dist = new double[K];
+			double [] cur_P = new double[K];
+			for(int n = start; n < end; n++) {
+				List<DataPoint> indices = new ArrayList<>(K + 1);
+				List<Double> distances = new ArrayList<>(K + 1);
+				tree.search(obj_X[n], K + 1, indices, distances);
+
+				for(int m = 0; m < K; m++) dist[m] = distances.get(m + 1);
+
+				computeGaussianKernelRow(dist, perplexity, cur_P);
+
+				for(int m = 0; m < K; m++) {
+					col_P[row_P[n] + m] = indices.get(m + 1).index();
+					val_P[row_P[n] + m] = cur_P[m];
+				}
+			}
+		});
+	}
+
+	// Binary search for the kernel width matching the perplexity; cur_P receives the row-normalized kernel
+	static void computeGaussianKernelRow(double [] dist, double perplexity, double [] cur_P) {
+		int K = dist.length;
+		boolean found = false;
+		double beta = 1.0;
+		double min_beta = -Double.MAX_VALUE;
+		double max_beta =  Double.MAX_VALUE;
+		double tol = 1e-5;
+
+		// Iterate until we found a good perplexity
+		int iter = 0;
+		double sum_P = 0.;
+		while(!found && iter < 200) {
+
+			// Compute Gaussian kernel row and entropy of current row
+			sum_P = Double.MIN_VALUE;
+			double H = .0;
+			for(int m = 0; m < K; m++) {
+				cur_P[m] = exp(-beta * dist[m]);
+				sum_P += cur_P[m];
+				H += beta * (dist[m] * cur_P[m]);
+			}
+			H = (H / sum_P) + log(sum_P);
+
+			// Evaluate whether the entropy is within the tolerance level
+			double Hdiff = H - log(perplexity);
+			if(Hdiff < tol && -Hdiff < tol) {
+				found = true;
+			}
+			else {
+				if(Hdiff > 0) {
+					min_beta = beta;
+					if(max_beta == Double.MAX_VALUE || max_beta == -Double.MAX_VALUE)
+						beta *= 2.0;
+					else
+						beta = (beta + max_beta) / 2.0;
+				}
+				else {
+					max_beta = beta;
+					if(min_beta == -Double.MAX_VALUE || min_beta == Double.MAX_VALUE)
+						beta /= 2.0;
+					else
+						beta = (beta + min_beta) / 2.0;
+				}
+			}
+
+			// Update iteration counter
+			iter++;
+		}
+
+		// Row-normalize current row of P
+		for(int m = 0; m < K; m++) cur_P[m] /= sum_P;
+	}
+
+	// Symmetrize P by merging every row of P with the same row of its transpose, all rows in parallel
+	@Override
+	SymResult symmetrizeMatrix(int [] row_P, int [] col_P, double [] val_P, int N) {
+
+		// Transpose P; rows of the transpose are sorted by column, because rows of P are visited in order
+		int [] t_row_P = new int[N + 1];
+		for(int i = 0; i < row_P[N]; i++) t_row_P[col_P[i] + 1]++;
+		for(int n = 0; n < N; n++) t_row_P[n + 1] += t_row_P[n];
+		int [] t_col_P = new int[row_P[N]];
+		double [] t_val_P = new double[row_P[N]];
+		int [] offset = Arrays.copyOf(t_row_P, N);
+		for(int n = 0; n < N; n++) {
+			for(int i = row_P[n]; i < row_P[n + 1]; i++) {
+				int j = offset[col_P[i]]++;
+				t_col_P[j] = n;
+				t_val_P[j] = val_P[i];
+			}
+		}
+
+		// Merge (n, m) and (m, n) elements of every row
+		int [][] row_col = new int[N][];
+		double [][] row_val = new double[N][];
+		ComputeScheduler scheduler = ComputeScheduler.getInstance();
+		scheduler.runParallelChunks(ComputeScheduler.PRIORITY_BACKGROUND, N, MAX_ROW_CHUNK_SIZE, (start, end) -> {
+			for(int n = start; n < end; n++) {
+				int count1 = row_P[n + 1] - row_P[n];
+				long [] key = new long[count1];		// column in high int, position in low int
+				for(int i = 0; i < count1; i++) key[i] = ((long) col_P[row_P[n] + i] << 32) | i;
+				Arrays.sort(key);
+
+				int count2 = t_row_P[n + 1] - t_row_P[n];
+				int [] col = new int[count1 + count2];
+				double [] val = new double[count1 + count2];
+				int i1 = 0, i2 = t_row_P[n], count = 0;
+				while(i1 < count1 || i2 < t_row_P[n + 1]) {
+					int c1 = (i1 < count1) ? (int) (key[i1] >>> 32) : Integer.MAX_VALUE;
+					int c2 = (i2 < t_row_P[n + 1]) ? t_col_P[i2] : Integer.MAX_VALUE;
+					int m = Math.min(c1, c2);
+					double v = .0;
+					while(i1 < count1 && (int) (key[i1] >>> 32) == m) v += val_P[row_P[n] + (int) key[i1++]];
+					while(i2 < t_row_P[n + 1] && t_col_P[i2] == m) v += t_val_P[i2++];
+					col[count] = m;
+					val[count] = v / 2.0;
+					count++;
+				}
+				row_col[n] = Arrays.copyOf(col, count);
+				row_val[n] = Arrays.copyOf(val, count);
+			}
+		});
+
+		int [] sym_row_P = new int[N + 1];
+		for(int n = 0; n < N; n++) sym_row_P[n + 1] = sym_row_P[n] + row_col[n].length;
+
+		int [] sym_col_P = new int[sym_row_P[N]];
+		double [] sym_val_P = new double[sym_row_P[N]];
+		scheduler.runParallelChunks(ComputeScheduler.PRIORITY_BACKGROUND, N, MAX_ROW_CHUNK_SIZE, (start, end) -> {
+			for(int n = start; n < end; n++) {
+				System.arraycopy(row_col[n], 0, sym_col_P, sym_row_P[n], row_col[n].length);
+				System.arraycopy(row_val[n], 0, sym_val_P, sym_row_P[n], row_val[n].length);
+			}
+		});
+
+		return new SymResult(sym_row_P, sym_col_P, sym_val_P);
+	}
+}
@@ -0,0 +1,234 @@
+package com.jujutsu.tsne.barneshut;
+
+import static java.lang.Math.max;
+import static java.lang.Math.sqrt;
+
+import java.util.Arrays;
+
+/**
+ * Space-partitioning tree equivalent to SPTree, but with all nodes held in flat primitive
+ * arrays instead of one object per node. Children of a node are stored consecutively.
+ * Once filled, the tree is immutable and computeNonEdgeForces() may be called concurrently.
+ */
+public class FlatSPTree {
+
+	// Fixed constants
+	final static int QT_NODE_CAPACITY = 1;	// points per leaf; SPTree uses the same
+
+	private final int dimension;
+	private final int no_children;
+	private final double[] data;
+
+	private int node_count;
+	private double[] corner;			// [node * dimension + d], center of the node's cell
+	private double[] width;				// [node * dimension + d], half width of the node's cell
+	private double[] max_width;			// [node]
+	private double[] center_of_mass;	// [node * dimension + d]
+	private int[] cum_size;				// [node]
+	private int[] first_child;			// [node], -1 for leaves
+	private int[] point;				// [node], point index in leaf or -1
+
+	public FlatSPTree(int D, double[] inp_data, int N) {
+		dimension = D;
+		no_children = 1 << D;
+		data = inp_data;
+
+		// Compute mean, width, and height of current map (boundaries of tree)
+		double [] mean_Y = new double [D];
+		double []  min_Y = new double [D];
+		double []  max_Y = new double [D];
+		for(int d = 0; d < D; d++)  {
+			min_Y[d] = Double.POSITIVE_INFINITY;
+			max_Y[d] = Double.NEGATIVE_INFINITY;
+		}
+		for(int n = 0; n < N; n++) {
+			for(int d = 0; d < D; d++) {
+				double y = inp_data[n * D + d];
+				mean_Y[d] += y;
+				if(y < min_Y[d]) min_Y[d] = y;
+				if(y > max_Y[d]) max_Y[d] = y;
+			}
+		}
+		for(int d = 0; d < D; d++) mean_Y[d] /= (double) N;
+
+		allocate(2 * N + no_children);
+		int root = addNode();
+		for(int d = 0; d < D; d++) {
+			corner[d] = mean_Y[d];
+			width[d] = max(max_Y[d] - mean_Y[d], mean_Y[d] - min_Y[d]) + 1e-5;
+			max_width[root] = max(max_width[root], width[d]);
+		}
+
+		for(int n = 0; n < N; n++) insert(n);
+	}
+
+	private void allocate(int capacity) {
+		corner = new double[capacity * dimension];
+		width = new double[capacity * dimension];
+		max_width = new double[capacity];
+		center_of_mass = new double[capacity * dimension];
+		cum_size = new int[capacity];
+		first_child = new int[capacity];
+		point = new int[capacity];
+	}
+
+	private int addNode() {
+		if(node_count == cum_size.length) {
+			int capacity = 2 * node_count;
+			corner = Arrays.copyOf(corner, capacity * dimension);
+			width = Arrays.copyOf(width, capacity * dimension);
+			max_width = Arrays.copyOf(max_width, capacity);
+			center_of_mass = Arrays.copyOf(center_of_mass, capacity * dimension);
+			cum_size = Arrays.copyOf(cum_size, capacity);
+			first_child = Arrays.copyOf(first_child, capacity);
+			point = Arrays.copyOf(point, capacity);
+		}
+		first_child[node_count] = -1;
+		point[node_count] = -1;
+		return node_count++;
+	}
+
+	// Insert a point walking down from the root; same cell assignment and duplicate handling as SPTree
+	private void insert(int new_index) {
+		int ind = new_index * dimension;
+		int node = 0;
+		while(true) {
+			addToCenterOfMass(node, ind);
+
+			if(first_child[node] == -1) {
+				// If there is space in this leaf, add the object here
+				if(point[node] == -1) {
+					point[node] = new_index;
+					return;
+				}
+
+				// Don't add duplicates for now (this is not very nice)
+				if(isDuplicate(point[node] * dimension, ind)) return;
+
+				subdivide(node);
+			}
+
+			node = first_child[node] + getChild(node, ind);
+		}
+	}
+
+	private void addToCenterOfMass(int node, int ind) {
+		cum_size[node]++;
+		double mult1 = (double) (cum_size[node] - 1) / (double) cum_size[node];
+		double mult2 = 1.0 / (double) cum_size[node];
+		int nD = node * dimension;
+		for(int d = 0; d < dimension; d++) {
+			center_of_mass[nD + d] *= mult1;
+			center_of_mass[nD + d] += mult2 * data[ind + d];
+		}
+	}
+
+	private boolean isDuplicate(int ind1, int ind2) {
+		for(int d = 0; d < dimension; d++)
+			if(data[ind1 + d] != data[ind2 + d]) return false;
+		return true;
+	}
+
+	// Index of the child cell containing the point; points on the center belong to the upper cell as in SPTree
+	private int getChild(int node, int ind) {
+		int child = 0;
+		int nD = node * dimension;
+		for(int d = 0; d < dimension; d++)
+			if(data[ind + d] < corner[nD + d]) child |= (1 << d);
+		return child;
+	}
+
+	// Create children which fully divide this cell and move the existing point into the correct child
+	private void subdivide(int node) {
+		int first = node_count;
+		for(int i = 0; i < no_children; i++) {
+			int child = addNode();
+			int nD = node * dimension;
+			int cD = child * dimension;
+			for(int d = 0; d < dimension; d++) {
+				width[cD + d] = .5 * width[nD + d];
+				if(((i >> d) & 1) == 1) corner[cD + d] = corner[nD + d] - .5 * width[nD + d];
+				else                    corner[cD + d] = corner[nD + d] + .5 * width[nD + d];
+			}
+			max_width[child] = .5 * max_width[node];
+		}
+		first_child[node] = first;
+
+		int existing = point[node];
+		int ind = existing * dimension;
+		int child = first + getChild(node, ind);
+		addToCenterOfMass(child, ind);
+		point[child] = existing;
+		point[node] = -1;
+	}
+
+	int getNodeCount() {
+		return node_count;
+	}
+
+	/**
+	 * Computes the repulsive forces on one point using the Barnes-Hut approximation.
+	 * @param neg_f flat array of all points' negative forces; only the entries of point_index are updated
+	 * @param buff buffer of length dimension, which must not be shared between threads
+	 * @return point's contribution to the normalization term sum_Q
+	 */
+	double computeNonEdgeForces(int point_index, double theta, double[] neg_f, double[] buff) {
+		return computeNonEdgeForces(0, point_index, theta, neg_f, buff);
+	}
+
+	private double computeNonEdgeForces(int node, int point_index, double theta, double[] neg_f, double[] buff) {
+		// Make sure that we spend no time on empty nodes or self-interactions
+		boolean is_leaf = (first_child[node] == -1);
+		if(cum_size[node] == 0 || (is_leaf && point[node] == point_index))
+			return 0.0;
+
+		// Compute distance between point and center-of-mass
+		double D = .0;
+		int ind = point_index * dimension;
+		int nD = node * dimension;
+		for(int d = 0; d < dimension; d++) {
+			buff[d] = data[ind + d] - center_of_mass[nD + d];
+			D += buff[d] * buff[d];
+		}
+
+		// Check whether we can use this node as a "summary"
+		if(is_leaf || max_width[node] / sqrt(D) < theta) {
+			// Compute and add t-SNE force between point and current node
+			D = 1.0 / (1.0 + D);
+			double mult = cum_size[node] * D;
+			double sum_Q = mult;
+			mult *= D;
+			for(int d = 0; d < dimension; d++)
+				neg_f[ind + d] += mult * buff[d];
+			return sum_Q;
+		}
+
+		// Recursively apply Barnes-Hut to children
+		double sum_Q = .0;
+		int first = first_child[node];
+		for(int i = 0; i < no_children; i++)
+			sum_Q += computeNonEdgeForces(first + i, point_index, theta, neg_f, buff);
+		return sum_Q;
+	}
+
+	/**
+	 * Computes the attractive forces on one point along the edges of the sparse input similarity matrix.
+	 * @param pos_f flat array of all points' positive forces; only the entries of n are updated
+	 */
+	void computeEdgeForces(int n, int[] row_P, int[] col_P, double[] val_P, double[] pos_f, double[] buff) {
+		int ind1 = n * dimension;
+		for(int i = row_P[n]; i < row_P[n + 1]; i++) {
+			// Compute pairwise distance and Q-value
+			double D = 1.0;
+			int ind2 = col_P[i] * dimension;
+			for(int d = 0; d < dimension; d++) {
+				buff[d] = data[ind1 + d] - data[ind2 + d];
+				D += buff[d] * buff[d];
+			}
+			D = val_P[i] / D;
+
+			// Sum positive force
+			for(int d = 0; d < dimension; d++) pos_f[ind1 + d] += D * buff[d];
+		}
+	}
+}
@@ -7,8 +7,6 @@ import java.util.List;
 import java.util.stream.DoubleStream;
 import java.util.stream.IntStream;
 
-import com.jujutsu.utils.MatrixOps;
-
 public class ParallelBHTsne extends BHTSne {
 
 	@Override
@@ -57,7 +55,7 @@ public class ParallelBHTsne extends BHTSne {
 
 	@Override
 	// Compute input similarities with a fixed perplexity using ball trees
-	void computeGaussianPerplexity(double [] X, int N, int D, int [] _row_P, int [] _col_P, double [] _val_P, double perplexity, int K) {
+	void computeGaussianPerplexity(DataPoint [] obj_X, Distance distance, int N, int [] _row_P, int [] _col_P, double [] _val_P, double perplexity, int K) {
 		if(perplexity > K) System.out.println("Perplexity should be lower than K!");
 
 		// Allocate the memory we need
@@ -75,11 +73,6 @@ public class ParallelBHTsne extends BHTSne {
 
 		// Build ball tree on data set
 		ParallelVpTree<DataPoint> tree = new ParallelVpTree<DataPoint>(distance);
-		final DataPoint [] obj_X = new DataPoint [N];
-		for(int n = 0; n < N; n++) {
-			double [] row = MatrixOps.extractRowFromFlatMatrix(X,n,D);
-			obj_X[n] = new DataPoint(D, n, row);
-		}
 		tree.create(obj_X);
 
 		// VERIFIED THAT TREES LOOK THE SAME
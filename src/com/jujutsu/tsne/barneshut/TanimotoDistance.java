@@ -0,0 +1,25 @@
+package com.jujutsu.tsne.barneshut;
+
+/**
+ * Jaccard distance, i.e. 1 - Tanimoto similarity, between BitSetDataPoints calculated
+ * with bit counts on the packed fingerprints. The Jaccard distance is a metric, which
+ * satisfies the triangle inequality and, thus, can be used to build a VpTree.
+ */
+public class TanimotoDistance implements Distance {
+
+	public TanimotoDistance() {
+	}
+
+	@Override
+	public double distance(DataPoint d1, DataPoint d2) {
+		long [] b1 = ((BitSetDataPoint)d1)._bits;
+		long [] b2 = ((BitSetDataPoint)d2)._bits;
+		int shared = 0;
+		int union = 0;
+		for(int i = 0; i < b1.length; i++) {
+			shared += Long.bitCount(b1[i] & b2[i]);
+			union += Long.bitCount(b1[i] | b2[i]);
+		}
+		return union == 0 ? .0 : 1.0 - (double)shared / union;
+	}
+}
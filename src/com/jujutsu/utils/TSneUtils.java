@@ -1,5 +1,6 @@
 package com.jujutsu.utils;
 
+import com.jujutsu.tsne.BitSetTSneConfig;
 import com.jujutsu.tsne.CheckResult;
 import com.jujutsu.tsne.PrincipalComponentAnalysis;
 import com.jujutsu.tsne.TSneConfig;
@@ -21,6 +22,10 @@ public class TSneUtils {
 			double perplexity, int max_iter) {
 		return new TSneConfig(xin, outputDims, initial_dims, perplexity, max_iter, true, 0.5, false, true);
 	}
+
+	public static TSneConfiguration buildConfig(long[][] bits, int outputDims, double perplexity, int max_iter) {
+		return new BitSetTSneConfig(bits, outputDims, perplexity, max_iter, 0.5, false, true);
+	}
 	
 	public CheckResult check(TSneConfiguration parameterObject) {
 		int D = parameterObject.getXStartDim();
@@ -0,0 +1,66 @@
+/*
+ * BSD 3-Clause License
+ * Copyright (c) 2017, Leland McInnes, 2019 Tag.bio (Java port).
+ * See LICENSE.txt.
+ */
+package com.tagbio.umap;
+
+import com.tagbio.umap.metric.JaccardMetric;
+import com.tagbio.umap.metric.Metric;
+
+/**
+ * Read-only binary matrix, whose rows are bit sets packed into arrays of longs.
+ * This is a compact representation of binary fingerprints, which needs 64 times less
+ * memory than a dense matrix. Jaccard distances between rows are computed directly
+ * on the packed bits.
+ */
+public class BitSetMatrix extends Matrix {
+
+  private final long[][] mData;
+
+  /**
+   * Construct a matrix backed by the given bit sets.  Note the array is NOT copied.
+   * @param bits one bit set per row, all of the same length
+   */
+  BitSetMatrix(final long[][] bits) {
+    super(bits.length, bits[0].length * Long.SIZE);
+    mData = bits;
+  }
+
+  @Override
+  float get(final int row, final int col) {
+    return (mData[row][col >>> 6] & (1L << col)) != 0 ? 1 : 0;
+  }
+
+  @Override
+  void set(final int row, final int col, final float val) {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override
+  boolean isFinite() {
+    return true;
+  }
+
+  @Override
+  Matrix copy() {
+    return this;  // immutable
+  }
+
+  /**
+   * Get the packed bits of a row.
+   * @param row row number
+   * @return bit set, which must not be modified
+   */
+  long[] bits(final int row) {
+    return mData[row];
+  }
+
+  @Override
+  float distance(final int row, final Matrix other, final int otherRow, final Metric metric) {
+    if (metric == JaccardMetric.SINGLETON && other instanceof BitSetMatrix) {
+      return JaccardMetric.SINGLETON.distance(mData[row], ((BitSetMatrix) other).mData[otherRow]);
+    }
+    return super.distance(row, other, otherRow, metric);
+  }
+}
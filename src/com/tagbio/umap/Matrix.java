@@ -7,6 +7,8 @@ package com.tagbio.umap;
 
 import java.util.Arrays;
 
+import com.tagbio.umap.metric.Metric;
+
 /**
  * Base class for matrices.
  * @author Sean A. Irvine
@@ -299,6 +301,19 @@ public abstract class Matrix {
     return data;
   }
 
+  /**
+   * Compute the distance between a row of this matrix and a row of another matrix.
+   * Subclasses may override this to compute distances without copying rows.
+   * @param row row number in this matrix
+   * @param other other matrix
+   * @param otherRow row number in other matrix
+   * @param metric distance metric
+   * @return distance
+   */
+  float distance(final int row, final Matrix other, final int otherRow, final Metric metric) {
+    return metric.distance(row(row), other.row(otherRow));
+  }
+
   Matrix max(final Matrix other) {
     if (!isShapeSame(other)) {
       throw new IllegalArgumentException("Incompatible sizes");
@@ -32,7 +32,7 @@ class NearestNeighborSearch {
         if (index < 0) {
           continue;
         }
-        final float d = mDist.distance(data.row(index), queryPoints.row(i));
+        final float d = data.distance(index, queryPoints, i, mDist);
         heap.push(i, d, index, true);
       }
     }
@@ -42,7 +42,7 @@ class NearestNeighborSearch {
     for (int i = 0; i < queryPoints.rows(); ++i) {
       final int[] indices = Utils.rejectionSample(nNeighbors, data.rows(), random);
       for (final int index : indices) {
-        final float d = mDist.distance(data.row(index), queryPoints.row(i));
+        final float d = data.distance(index, queryPoints, i, mDist);
         heap.push(i, d, index, true);
       }
     }
@@ -68,7 +68,7 @@ class NearestNeighborSearch {
           if (candidate == vertex || candidate == -1 || tried.contains(candidate)) {
             continue;
           }
-          final float d = mDist.distance(data.row(candidate), queryPoints.row(i));
+          final float d = data.distance(candidate, queryPoints, i, mDist);
           initialization.uncheckedHeapPush(i, d, candidate, true);
           tried.add(candidate);
         }
@@ -26,9 +26,8 @@ public class PairwiseDistances {
     final int n = x.rows();
     final float[][] distances = new float[n][n];
     for (int k = 0; k < n; ++k) {
-      final float[] xk = x.row(k);
       for (int j = 0; j < n; ++j) {
-        distances[k][j] = metric.distance(xk, x.row(j));
+        distances[k][j] = x.distance(k, x, j, metric);
       }
     }
     return new DefaultMatrix(distances);
@@ -42,9 +41,8 @@ public class PairwiseDistances {
     final int yn = y.rows();
     final float[][] distances = new float[xn][yn];
     for (int k = 0; k < xn; ++k) {
-      final float[] xk = x.row(k);
       for (int j = 0; j < yn; ++j) {
-        distances[k][j] = metric.distance(xk, y.row(j));
+        distances[k][j] = x.distance(k, y, j, metric);
       }
     }
     return new DefaultMatrix(distances);
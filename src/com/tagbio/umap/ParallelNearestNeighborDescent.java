@@ -63,9 +63,8 @@ class ParallelNearestNeighborDescent extends  NearestNeighborDescent {
         final int hi = Math.min((t + 1) * chunkSize, nVertices);
         futures.add(executor.submit(() -> {
           for (int i = lo; i < hi; ++i) {
-            final float[] iRow = data.row(i);
             for (final int index : Utils.rejectionSample(nNeighbors, data.rows(), random)) {
-              final float d = mMetric.distance(iRow, data.row(index));
+              final float d = data.distance(i, data, index, mMetric);
               currentGraph.push(i, d, index, true);
               currentGraph.push(index, d, i, true);
             }
@@ -85,9 +84,8 @@ class ParallelNearestNeighborDescent extends  NearestNeighborDescent {
             for (int l = lo; l < hi; ++l) {
               for (final int[] leaf : forest.get(l).getIndices()) {
                 for (int i = 0; i < leaf.length; ++i) {
-                  final float[] iRow = data.row(leaf[i]);
                   for (int j = i + 1; j < leaf.length; ++j) {
-                    final float d = mMetric.distance(iRow, data.row(leaf[j]));
+                    final float d = data.distance(leaf[i], data, leaf[j], mMetric);
                     currentGraph.push(leaf[i], d, leaf[j], true);
                     currentGraph.push(leaf[j], d, leaf[i], true);
                   }
@@ -130,7 +128,7 @@ class ParallelNearestNeighborDescent extends  NearestNeighborDescent {
                     continue;
                   }
 
-                  final float d = mMetric.distance(data.row(p), data.row(q));
+                  final float d = data.distance(p, data, q, mMetric);
                   if (currentGraph.push(p, d, q, true)) {
                     ++c;
                   }
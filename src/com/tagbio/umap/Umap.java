@@ -7,6 +7,9 @@ package com.tagbio.umap;
 
 import com.tagbio.umap.metric.*;
 
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Writer;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
@@ -28,6 +31,11 @@ public class Umap {
 
   private static final int SMALL_PROBLEM_THRESHOLD = 4096;
 
+  /** Maximum number of nearest neighbors per instance, which are written as part of the search graph. */
+  private static final int MAX_MODEL_NEIGHBORS = 30;
+  private static final String MODEL_START = "umapModel\t1";
+  private static final String MODEL_END = "endUmapModel";
+
   /**
    * Compute a continuous version of the distance to the kth nearest
    * neighbor. That is, this is similar to knn-distance but allows continuous
@@ -1212,6 +1220,18 @@ public class Umap {
     return fitTransform(new DefaultMatrix(instances), null).toArray();
   }
 
+  /**
+   * Fit binary instances into an embedded space and return that transformed output.
+   * Instances are kept as packed bit sets, which for the Jaccard metric are compared
+   * by bit counts without expanding them into a dense matrix.
+   * @param instances one bit set per sample packed into longs, all of the same length
+   * @return array of shape <code>(nSamples, nComponents)</code>
+   * Embedding of the training data in low-dimensional space.
+   */
+  public float[][] fitTransform(final long[][] instances) {
+    return fitTransform(new BitSetMatrix(instances), null).toArray();
+  }
+
   /**
    * Fit instances into an embedded space and return that transformed output.
    * This version internally converts all the doubles to floats.
@@ -1347,4 +1367,173 @@ public class Umap {
   public float[][] transform(final float[][] instances) {
     return transform(new DefaultMatrix(instances)).toArray();
   }
+
+  /**
+   * Transform binary instances into the existing embedded space, which must have
+   * been fitted with binary instances of the same length.
+   * @param instances one bit set per sample packed into longs
+   * @return array, shape <code>(nSamples, nComponents)</code>
+   * Embedding of the new data in low-dimensional space.
+   */
+  public float[][] transform(final long[][] instances) {
+    return transform(new BitSetMatrix(instances)).toArray();
+  }
+
+  /**
+   * Write the fitted model as text, such that it can be restored with <code>readModel()</code>
+   * to transform new instances without fitting again. This includes the training data, their
+   * embedding and, for large data sets, the nearest neighbor search graph, which is limited
+   * to the closest <code>MAX_MODEL_NEIGHBORS</code> neighbors per instance. Random projection
+   * trees are not written; a restored model initializes its neighbor searches randomly.
+   * @param writer destination
+   * @throws IOException if writing fails
+   * @throws IllegalStateException if the model was not fitted or its metric cannot be written
+   */
+  public void writeModel(final Writer writer) throws IOException {
+    final String metricName = Metric.getName(mMetric);
+    if (mEmbedding == null || mSearch == null || metricName == null) {
+      throw new IllegalStateException("Model cannot be written.");
+    }
+
+    writer.write(MODEL_START + "\n");
+    writer.write(metricName + "\t" + mNComponents + "\t" + mRunNNeighbors + "\t" + mRunA + "\t" + mRunB
+      + "\t" + mInitialAlpha + "\t" + mRepulsionStrength + "\t" + mNegativeSampleRate + "\t" + mLocalConnectivity
+      + "\t" + mTransformQueueSize + "\t" + (mNEpochs == null ? 0 : mNEpochs) + "\t" + mSmallData + "\n");
+
+    final boolean isBinary = mRawData instanceof BitSetMatrix;
+    writer.write((isBinary ? "bits" : "floats") + "\t" + mRawData.rows() + "\t" + mRawData.cols() + "\n");
+    final StringBuilder sb = new StringBuilder();
+    for (int row = 0; row < mRawData.rows(); ++row) {
+      sb.setLength(0);
+      if (isBinary) {
+        for (final long l : ((BitSetMatrix) mRawData).bits(row)) {
+          sb.append(Long.toHexString(l)).append(' ');
+        }
+      } else {
+        for (int col = 0; col < mRawData.cols(); ++col) {
+          sb.append(mRawData.get(row, col)).append(' ');
+        }
+      }
+      sb.setCharAt(sb.length() - 1, '\n');
+      writer.write(sb.toString());
+    }
+
+    for (int row = 0; row < mEmbedding.rows(); ++row) {
+      sb.setLength(0);
+      for (int col = 0; col < mEmbedding.cols(); ++col) {
+        sb.append(mEmbedding.get(row, col)).append(' ');
+      }
+      sb.setCharAt(sb.length() - 1, '\n');
+      writer.write(sb.toString());
+    }
+
+    if (!mSmallData) {
+      for (int row = 0; row < mKnnIndices.length; ++row) {
+        sb.setLength(0);
+        final int[] order = MathUtils.argsort(Arrays.copyOf(mKnnDists[row], mKnnDists[row].length));
+        int count = 0;
+        for (int i = 0; i < order.length && count < MAX_MODEL_NEIGHBORS; ++i) {
+          if (mKnnDists[row][order[i]] != 0 && mKnnIndices[row][order[i]] >= 0) {
+            sb.append(mKnnIndices[row][order[i]]).append(' ');
+            ++count;
+          }
+        }
+        sb.append('\n');
+        writer.write(sb.toString());
+      }
+    }
+
+    writer.write(MODEL_END + "\n");
+  }
+
+  /**
+   * Restore a model written by <code>writeModel()</code>.
+   * @param reader source positioned at the first line of the model
+   * @return model, which can be used to transform new instances
+   * @throws IOException if reading fails or the model is not valid
+   */
+  public static Umap readModel(final BufferedReader reader) throws IOException {
+    try {
+      if (!MODEL_START.equals(reader.readLine())) {
+        throw new IOException("Invalid UMAP model");
+      }
+
+      final Umap umap = new Umap();
+      final String[] param = readLine(reader).split("\t");
+      umap.mMetric = Metric.getMetric(param[0]);
+      umap.mNComponents = Integer.parseInt(param[1]);
+      umap.mRunNNeighbors = Integer.parseInt(param[2]);
+      umap.mRunA = Float.parseFloat(param[3]);
+      umap.mRunB = Float.parseFloat(param[4]);
+      umap.mInitialAlpha = Float.parseFloat(param[5]);
+      umap.mRepulsionStrength = Float.parseFloat(param[6]);
+      umap.mNegativeSampleRate = Integer.parseInt(param[7]);
+      umap.mLocalConnectivity = Integer.parseInt(param[8]);
+      umap.mTransformQueueSize = Float.parseFloat(param[9]);
+      final int epochs = Integer.parseInt(param[10]);
+      umap.mNEpochs = (epochs == 0) ? null : epochs;
+      umap.mSmallData = Boolean.parseBoolean(param[11]);
+      umap.mSearch = new NearestNeighborSearch(umap.mMetric);
+
+      final String[] shape = readLine(reader).split("\t");
+      final int rows = Integer.parseInt(shape[1]);
+      final int cols = Integer.parseInt(shape[2]);
+      if ("bits".equals(shape[0])) {
+        final long[][] bits = new long[rows][];
+        for (int row = 0; row < rows; ++row) {
+          final String[] value = readLine(reader).split(" ");
+          bits[row] = new long[value.length];
+          for (int i = 0; i < value.length; ++i) {
+            bits[row][i] = Long.parseUnsignedLong(value[i], 16);
+          }
+        }
+        umap.mRawData = new BitSetMatrix(bits);
+      } else {
+        umap.mRawData = new DefaultMatrix(readFloats(reader, rows, cols));
+      }
+
+      umap.mEmbedding = new DefaultMatrix(readFloats(reader, rows, umap.mNComponents));
+
+      umap.mRpForest = Collections.emptyList();
+      if (!umap.mSmallData) {
+        umap.mKnnIndices = new int[rows][];
+        umap.mSearchGraph = new SearchGraph(rows);
+        for (int row = 0; row < rows; ++row) {
+          final String line = readLine(reader);
+          final String[] value = line.isEmpty() ? new String[0] : line.split(" ");
+          umap.mKnnIndices[row] = new int[value.length];
+          for (int i = 0; i < value.length; ++i) {
+            umap.mKnnIndices[row][i] = Integer.parseInt(value[i]);
+            umap.mSearchGraph.set(row, umap.mKnnIndices[row][i]);
+          }
+        }
+      }
+
+      if (!MODEL_END.equals(reader.readLine())) {
+        throw new IOException("Invalid UMAP model");
+      }
+      return umap;
+    } catch (final RuntimeException e) {
+      throw new IOException("Invalid UMAP model", e);
+    }
+  }
+
+  private static String readLine(final BufferedReader reader) throws IOException {
+    final String line = reader.readLine();
+    if (line == null) {
+      throw new IOException("Unexpected end of UMAP model");
+    }
+    return line;
+  }
+
+  private static float[][] readFloats(final BufferedReader reader, final int rows, final int cols) throws IOException {
+    final float[][] data = new float[rows][cols];
+    for (int row = 0; row < rows; ++row) {
+      final String[] value = readLine(reader).split(" ");
+      for (int col = 0; col < cols; ++col) {
+        data[row][col] = Float.parseFloat(value[col]);
+      }
+    }
+    return data;
+  }
 }
@@ -35,4 +35,25 @@ public final class JaccardMetric extends Metric {
        return (numNonZero - numEqual) / (float) numNonZero;
      }
   }
+
+  /**
+   * Jaccard distance between two bit sets packed into arrays of longs.
+   * @param x first bit set
+   * @param y second bit set of the same length
+   * @return distance between the bit sets
+   */
+  public float distance(final long[] x, final long[] y) {
+    int numNonZero = 0;
+    int numEqual = 0;
+    for (int i = 0; i < x.length; ++i) {
+      numNonZero += Long.bitCount(x[i] | y[i]);
+      numEqual += Long.bitCount(x[i] & y[i]);
+    }
+
+    if (numNonZero == 0) {
+      return 0;
+    } else {
+      return (numNonZero - numEqual) / (float) numNonZero;
+    }
+  }
 }
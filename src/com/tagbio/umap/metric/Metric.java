@@ -47,6 +47,28 @@ public abstract class Metric {
    * @return metric
    */
   public static Metric getMetric(final String name) {
+    final Metric m = getMetrics().get(name.toLowerCase());
+    if (m == null) {
+      throw new IllegalArgumentException("Unknown metric: " + name);
+    }
+    return m;
+  }
+
+  /**
+   * Retrieve the name of a metric, such that it can later be retrieved with <code>getMetric()</code>.
+   * @param metric metric
+   * @return name of metric or null, if the metric is not available by name
+   */
+  public static String getName(final Metric metric) {
+    for (final Map.Entry<String, Metric> e : getMetrics().entrySet()) {
+      if (e.getValue() == metric) {
+        return e.getKey();
+      }
+    }
+    return null;
+  }
+
+  private static synchronized Map<String, Metric> getMetrics() {
     if (sMETRICS == null) {
       sMETRICS = new HashMap<>();
       sMETRICS.put("euclidean", EuclideanMetric.SINGLETON);
@@ -74,11 +96,6 @@ public abstract class Metric {
       sMETRICS.put("sokalmichener", SokalMichenerMetric.SINGLETON);
       sMETRICS.put("yule", YuleMetric.SINGLETON);
     }
-
-    final Metric m = sMETRICS.get(name.toLowerCase());
-    if (m == null) {
-      throw new IllegalArgumentException("Unknown metric: " + name);
-    }
-    return m;
+    return sMETRICS;
   }
 }